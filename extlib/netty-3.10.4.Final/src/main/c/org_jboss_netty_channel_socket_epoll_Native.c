@@ -0,0 +1,553 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/*
+ * JNI layer of the edge-triggered epoll transport.  Every function is a thin
+ * wrapper around a single system call; all state lives on the Java side.
+ *
+ * The epoll flags are translated so the Java code never depends on the
+ * values of the Linux headers:
+ *
+ *   Native.EPOLLIN  (0x01) <-> EPOLLIN | EPOLLRDHUP (EPOLLHUP is reported as EPOLLIN)
+ *   Native.EPOLLOUT (0x02) <-> EPOLLOUT
+ *   Native.EPOLLERR (0x04) <-  EPOLLERR
+ *
+ * EPOLLET is always set.
+ */
+#define _GNU_SOURCE
+#include <jni.h>
+#include <errno.h>
+#include <stdio.h>
+#include <string.h>
+#include <unistd.h>
+#include <stdint.h>
+#include <sys/types.h>
+#include <sys/socket.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <netinet/in.h>
+#include <netinet/tcp.h>
+#include <arpa/inet.h>
+
+#define JAVA_EPOLLIN  0x01
+#define JAVA_EPOLLOUT 0x02
+#define JAVA_EPOLLERR 0x04
+
+#define MAX_EVENTS 512
+#define ADDRESS_LENGTH 24
+
+static const unsigned char ipv4MappedPrefix[] = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0xff, 0xff };
+
+static void throwException(JNIEnv *env, const char *className, const char *message) {
+    jclass cls = (*env)->FindClass(env, className);
+    if (cls != NULL) {
+        (*env)->ThrowNew(env, cls, message);
+    }
+}
+
+static void throwIOException(JNIEnv *env, const char *operation, int err) {
+    char message[256];
+    snprintf(message, sizeof(message), "%s() failed: %s", operation, strerror(err));
+    throwException(env, "java/io/IOException", message);
+}
+
+static void throwConnectException(JNIEnv *env, int err) {
+    throwException(env, "java/net/ConnectException", strerror(err));
+}
+
+static int socketDomain(int fd) {
+    int domain;
+    socklen_t len = sizeof(domain);
+    if (getsockopt(fd, SOL_SOCKET, SO_DOMAIN, &domain, &len) < 0) {
+        return AF_INET6;
+    }
+    return domain;
+}
+
+static int toSockaddr(JNIEnv *env, int fd, jbyteArray address, jint scopeId, jint port,
+                      struct sockaddr_storage *addr, socklen_t *addrLen) {
+    jbyte bytes[16];
+    jsize len = (*env)->GetArrayLength(env, address);
+    if (len != 4 && len != 16) {
+        throwException(env, "java/lang/IllegalArgumentException", "address length");
+        return -1;
+    }
+    (*env)->GetByteArrayRegion(env, address, 0, len, bytes);
+
+    memset(addr, 0, sizeof(struct sockaddr_storage));
+    if (socketDomain(fd) == AF_INET6) {
+        struct sockaddr_in6 *in6 = (struct sockaddr_in6 *) addr;
+        in6->sin6_family = AF_INET6;
+        in6->sin6_port = htons((uint16_t) port);
+        in6->sin6_scope_id = (uint32_t) scopeId;
+        if (len == 4) {
+            memcpy(in6->sin6_addr.s6_addr, ipv4MappedPrefix, sizeof(ipv4MappedPrefix));
+            memcpy(in6->sin6_addr.s6_addr + 12, bytes, 4);
+        } else {
+            memcpy(in6->sin6_addr.s6_addr, bytes, 16);
+        }
+        *addrLen = sizeof(struct sockaddr_in6);
+    } else {
+        struct sockaddr_in *in = (struct sockaddr_in *) addr;
+        in->sin_family = AF_INET;
+        in->sin_port = htons((uint16_t) port);
+        if (len == 16) {
+            if (memcmp(bytes, ipv4MappedPrefix, sizeof(ipv4MappedPrefix)) != 0) {
+                throwException(env, "java/net/SocketException", "IPv6 is not supported");
+                return -1;
+            }
+            memcpy(&in->sin_addr.s_addr, bytes + 12, 4);
+        } else {
+            memcpy(&in->sin_addr.s_addr, bytes, 4);
+        }
+        *addrLen = sizeof(struct sockaddr_in);
+    }
+    return 0;
+}
+
+static jbyteArray fromSockaddr(JNIEnv *env, const struct sockaddr_storage *addr) {
+    jbyte bytes[ADDRESS_LENGTH];
+    uint32_t scopeId = 0;
+    uint32_t port;
+    jbyteArray array;
+
+    if (addr->ss_family == AF_INET6) {
+        const struct sockaddr_in6 *in6 = (const struct sockaddr_in6 *) addr;
+        memcpy(bytes, in6->sin6_addr.s6_addr, 16);
+        scopeId = in6->sin6_scope_id;
+        port = ntohs(in6->sin6_port);
+    } else {
+        const struct sockaddr_in *in = (const struct sockaddr_in *) addr;
+        memcpy(bytes, ipv4MappedPrefix, sizeof(ipv4MappedPrefix));
+        memcpy(bytes + 12, &in->sin_addr.s_addr, 4);
+        port = ntohs(in->sin_port);
+    }
+    bytes[16] = (jbyte) (scopeId >> 24);
+    bytes[17] = (jbyte) (scopeId >> 16);
+    bytes[18] = (jbyte) (scopeId >> 8);
+    bytes[19] = (jbyte) scopeId;
+    bytes[20] = (jbyte) (port >> 24);
+    bytes[21] = (jbyte) (port >> 16);
+    bytes[22] = (jbyte) (port >> 8);
+    bytes[23] = (jbyte) port;
+
+    array = (*env)->NewByteArray(env, ADDRESS_LENGTH);
+    if (array != NULL) {
+        (*env)->SetByteArrayRegion(env, array, 0, ADDRESS_LENGTH, bytes);
+    }
+    return array;
+}
+
+static uint32_t toEpollFlags(jint flags) {
+    uint32_t events = EPOLLET;
+    if (flags & JAVA_EPOLLIN) {
+        events |= EPOLLIN | EPOLLRDHUP;
+    }
+    if (flags & JAVA_EPOLLOUT) {
+        events |= EPOLLOUT;
+    }
+    return events;
+}
+
+static jint fromEpollFlags(uint32_t events) {
+    jint flags = 0;
+    if (events & (EPOLLIN | EPOLLRDHUP | EPOLLHUP)) {
+        flags |= JAVA_EPOLLIN;
+    }
+    if (events & EPOLLOUT) {
+        flags |= JAVA_EPOLLOUT;
+    }
+    if (events & EPOLLERR) {
+        flags |= JAVA_EPOLLERR;
+    }
+    return flags;
+}
+
+static void epollCtl(JNIEnv *env, jint efd, int op, jint fd, jint flags) {
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    ev.events = toEpollFlags(flags);
+    ev.data.fd = fd;
+    if (epoll_ctl(efd, op, fd, &ev) < 0) {
+        throwIOException(env, "epoll_ctl", errno);
+    }
+}
+
+static void setIntOption(JNIEnv *env, jint fd, int level, int optname, int value) {
+    if (setsockopt(fd, level, optname, &value, sizeof(value)) < 0) {
+        throwException(env, "java/net/SocketException", strerror(errno));
+    }
+}
+
+static int getIntOption(JNIEnv *env, jint fd, int level, int optname) {
+    int value = 0;
+    socklen_t len = sizeof(value);
+    if (getsockopt(fd, level, optname, &value, &len) < 0) {
+        throwException(env, "java/net/SocketException", strerror(errno));
+    }
+    return value;
+}
+
+static void *bufferAddress(JNIEnv *env, jobject buffer) {
+    void *address = (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) {
+        throwException(env, "java/lang/IllegalArgumentException", "not a direct buffer");
+    }
+    return address;
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_epollCreate(JNIEnv *env, jclass clazz) {
+    int efd = epoll_create1(EPOLL_CLOEXEC);
+    if (efd < 0) {
+        throwIOException(env, "epoll_create1", errno);
+    }
+    return efd;
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_epollWait(
+        JNIEnv *env, jclass clazz, jint efd, jlongArray events, jint timeout) {
+    struct epoll_event ev[MAX_EVENTS];
+    jlong encoded[MAX_EVENTS];
+    int max = (*env)->GetArrayLength(env, events);
+    int ready;
+    int i;
+
+    if (max > MAX_EVENTS) {
+        max = MAX_EVENTS;
+    }
+    ready = epoll_wait(efd, ev, max, timeout);
+    if (ready < 0) {
+        if (errno == EINTR) {
+            return 0;
+        }
+        throwIOException(env, "epoll_wait", errno);
+        return -1;
+    }
+    for (i = 0; i < ready; i ++) {
+        encoded[i] = ((jlong) ev[i].data.fd) << 32 | (jlong) fromEpollFlags(ev[i].events);
+    }
+    (*env)->SetLongArrayRegion(env, events, 0, ready, encoded);
+    return ready;
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_epollCtlAdd(
+        JNIEnv *env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, efd, EPOLL_CTL_ADD, fd, flags);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_epollCtlMod(
+        JNIEnv *env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, efd, EPOLL_CTL_MOD, fd, flags);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_epollCtlDel(
+        JNIEnv *env, jclass clazz, jint efd, jint fd) {
+    struct epoll_event ev;
+    if (epoll_ctl(efd, EPOLL_CTL_DEL, fd, &ev) < 0 && errno != ENOENT && errno != EBADF) {
+        throwIOException(env, "epoll_ctl", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_eventFd(JNIEnv *env, jclass clazz) {
+    int fd = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+    if (fd < 0) {
+        throwIOException(env, "eventfd", errno);
+    }
+    return fd;
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_eventFdWrite(
+        JNIEnv *env, jclass clazz, jint fd, jlong value) {
+    uint64_t v = (uint64_t) value;
+    if (write(fd, &v, sizeof(v)) < 0 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_write", errno);
+    }
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_eventFdRead(JNIEnv *env, jclass clazz, jint fd) {
+    uint64_t v;
+    if (read(fd, &v, sizeof(v)) < 0 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_read", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_socketStream(JNIEnv *env, jclass clazz) {
+    int fd = socket(AF_INET6, SOCK_STREAM | SOCK_NONBLOCK | SOCK_CLOEXEC, 0);
+    if (fd >= 0) {
+        int v6only = 0;
+        setsockopt(fd, IPPROTO_IPV6, IPV6_V6ONLY, &v6only, sizeof(v6only));
+        return fd;
+    }
+    if (errno == EAFNOSUPPORT) {
+        fd = socket(AF_INET, SOCK_STREAM | SOCK_NONBLOCK | SOCK_CLOEXEC, 0);
+    }
+    if (fd < 0) {
+        throwIOException(env, "socket", errno);
+    }
+    return fd;
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_bind(
+        JNIEnv *env, jclass clazz, jint fd, jbyteArray address, jint scopeId, jint port) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen;
+    if (toSockaddr(env, fd, address, scopeId, port, &addr, &addrLen) < 0) {
+        return;
+    }
+    if (bind(fd, (struct sockaddr *) &addr, addrLen) < 0) {
+        throwException(env, "java/net/BindException", strerror(errno));
+    }
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_listen(
+        JNIEnv *env, jclass clazz, jint fd, jint backlog) {
+    if (listen(fd, backlog) < 0) {
+        throwIOException(env, "listen", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_accept(JNIEnv *env, jclass clazz, jint fd) {
+    for (;;) {
+        int child = accept4(fd, NULL, NULL, SOCK_NONBLOCK | SOCK_CLOEXEC);
+        if (child >= 0) {
+            return child;
+        }
+        if (errno == EINTR) {
+            continue;
+        }
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return -1;
+        }
+        throwIOException(env, "accept", errno);
+        return -1;
+    }
+}
+
+JNIEXPORT jboolean JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_connect(
+        JNIEnv *env, jclass clazz, jint fd, jbyteArray address, jint scopeId, jint port) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen;
+    int res;
+    if (toSockaddr(env, fd, address, scopeId, port, &addr, &addrLen) < 0) {
+        return JNI_FALSE;
+    }
+    do {
+        res = connect(fd, (struct sockaddr *) &addr, addrLen);
+    } while (res < 0 && errno == EINTR);
+    if (res == 0) {
+        return JNI_TRUE;
+    }
+    if (errno != EINPROGRESS) {
+        throwConnectException(env, errno);
+    }
+    return JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_finishConnect(
+        JNIEnv *env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen = sizeof(addr);
+    int err = getIntOption(env, fd, SOL_SOCKET, SO_ERROR);
+    if ((*env)->ExceptionCheck(env)) {
+        return JNI_FALSE;
+    }
+    if (err != 0) {
+        throwConnectException(env, err);
+        return JNI_FALSE;
+    }
+    if (getpeername(fd, (struct sockaddr *) &addr, &addrLen) < 0) {
+        if (errno == ENOTCONN) {
+            return JNI_FALSE;
+        }
+        throwConnectException(env, errno);
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_read(
+        JNIEnv *env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char *address = bufferAddress(env, buffer);
+    ssize_t res;
+    if (address == NULL) {
+        return -1;
+    }
+    do {
+        res = recv(fd, address + pos, (size_t) (limit - pos), 0);
+    } while (res < 0 && errno == EINTR);
+    if (res > 0) {
+        return (jint) res;
+    }
+    if (res == 0) {
+        return -1;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "read", errno);
+    return -1;
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_write(
+        JNIEnv *env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char *address = bufferAddress(env, buffer);
+    ssize_t res;
+    if (address == NULL) {
+        return 0;
+    }
+    do {
+        res = send(fd, address + pos, (size_t) (limit - pos), MSG_NOSIGNAL);
+    } while (res < 0 && errno == EINTR);
+    if (res >= 0) {
+        return (jint) res;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "write", errno);
+    return 0;
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_shutdown(
+        JNIEnv *env, jclass clazz, jint fd, jboolean input, jboolean output) {
+    int how;
+    if (input && output) {
+        how = SHUT_RDWR;
+    } else if (input) {
+        how = SHUT_RD;
+    } else if (output) {
+        how = SHUT_WR;
+    } else {
+        return;
+    }
+    if (shutdown(fd, how) < 0 && errno != ENOTCONN) {
+        throwIOException(env, "shutdown", errno);
+    }
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_close(JNIEnv *env, jclass clazz, jint fd) {
+    if (close(fd) < 0 && errno != EINTR) {
+        throwIOException(env, "close", errno);
+    }
+}
+
+JNIEXPORT jbyteArray JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_localAddress(
+        JNIEnv *env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen = sizeof(addr);
+    if (getsockname(fd, (struct sockaddr *) &addr, &addrLen) < 0) {
+        return NULL;
+    }
+    return fromSockaddr(env, &addr);
+}
+
+JNIEXPORT jbyteArray JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_remoteAddress(
+        JNIEnv *env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen = sizeof(addr);
+    if (getpeername(fd, (struct sockaddr *) &addr, &addrLen) < 0) {
+        return NULL;
+    }
+    return fromSockaddr(env, &addr);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setTcpNoDelay(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, IPPROTO_TCP, TCP_NODELAY, value);
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getTcpNoDelay(
+        JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, IPPROTO_TCP, TCP_NODELAY);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setKeepAlive(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_KEEPALIVE, value);
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getKeepAlive(
+        JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_KEEPALIVE);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setReuseAddress(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_REUSEADDR, value);
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getReuseAddress(
+        JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_REUSEADDR);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setReceiveBufferSize(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_RCVBUF, value);
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getReceiveBufferSize(
+        JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_RCVBUF);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setSendBufferSize(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_SNDBUF, value);
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getSendBufferSize(
+        JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_SNDBUF);
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setSoLinger(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    struct linger l;
+    l.l_onoff = value >= 0;
+    l.l_linger = value >= 0 ? value : 0;
+    if (setsockopt(fd, SOL_SOCKET, SO_LINGER, &l, sizeof(l)) < 0) {
+        throwException(env, "java/net/SocketException", strerror(errno));
+    }
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getSoLinger(
+        JNIEnv *env, jclass clazz, jint fd) {
+    struct linger l;
+    socklen_t len = sizeof(l);
+    if (getsockopt(fd, SOL_SOCKET, SO_LINGER, &l, &len) < 0) {
+        throwException(env, "java/net/SocketException", strerror(errno));
+        return -1;
+    }
+    return l.l_onoff ? l.l_linger : -1;
+}
+
+JNIEXPORT void JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_setTrafficClass(
+        JNIEnv *env, jclass clazz, jint fd, jint value) {
+    if (socketDomain(fd) == AF_INET6) {
+        setIntOption(env, fd, IPPROTO_IPV6, IPV6_TCLASS, value);
+    } else {
+        setIntOption(env, fd, IPPROTO_IP, IP_TOS, value);
+    }
+}
+
+JNIEXPORT jint JNICALL Java_org_jboss_netty_channel_socket_epoll_Native_getTrafficClass(
+        JNIEnv *env, jclass clazz, jint fd) {
+    if (socketDomain(fd) == AF_INET6) {
+        return getIntOption(env, fd, IPPROTO_IPV6, IPV6_TCLASS);
+    }
+    return getIntOption(env, fd, IPPROTO_IP, IP_TOS);
+}
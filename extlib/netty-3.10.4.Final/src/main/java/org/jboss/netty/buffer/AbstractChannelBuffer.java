@@ -519,8 +519,7 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
             return "";
         }
 
-        return ChannelBuffers.decodeString(
-                toByteBuffer(index, length), charset);
+        return ChannelBuffers.decodeString(this, index, length, charset);
     }
 
     public int indexOf(int fromIndex, int toIndex, byte value) {
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.ConcurrentHashMap;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of a sampled fraction of the buffers allocated by a
+ * {@link ChannelBufferFactory}, in order to find out which code retains how
+ * much buffer memory and which buffers outlive their channel.
+ * <p>
+ * {@link #track(ChannelBufferFactory)} wraps a factory so that every
+ * {@linkplain #getSampleRate() N-th} buffer it returns is recorded together
+ * with its allocation site and its size class (the capacity rounded up to the
+ * next power of two).  The allocation site is the stack from the first caller
+ * outside of this package up to the first caller outside of Netty, so that the
+ * buffers which Netty allocates on behalf of different user code, or from
+ * different transports and codecs, are reported separately.  It is at most
+ * 8 frames long.  A recorded buffer is considered live until it is garbage
+ * collected or, if it is a {@link ReleasableChannelBuffer}, until it is
+ * released.  The tracker itself never keeps a buffer from being garbage
+ * collected.
+ * <p>
+ * The default channel configurations wrap their buffer factory with the
+ * {@linkplain #getInstance() shared tracker} automatically, and a channel
+ * notifies the tracker when it is closed.  A buffer which is still live after
+ * the channel it was allocated for has been closed is reported by
+ * {@link #getRetainedAfterClose()}.
+ *
+ * <h3>Configuration</h3>
+ *
+ * The shared tracker is disabled by default, in which case
+ * {@link #track(ChannelBufferFactory)} returns the specified factory as it is
+ * and tracking has no cost at all.  It is enabled by setting the system
+ * property {@code org.jboss.netty.buffer.tracker.sampleRate} to {@code N},
+ * which records every {@code N}-th allocation ({@code 1} records all of them).
+ */
+public final class ChannelBufferTracker {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(ChannelBufferTracker.class);
+
+    private static final String BUFFER_PACKAGE = "org.jboss.netty.buffer.";
+    private static final String NETTY_PACKAGE = "org.jboss.netty.";
+    static final int MAX_SITE_FRAMES = 8;
+
+    private static final ChannelBufferTracker INSTANCE = new ChannelBufferTracker(
+            SystemPropertyUtil.getInt("org.jboss.netty.buffer.tracker.sampleRate", 0));
+
+    static {
+        if (INSTANCE.isEnabled()) {
+            logger.debug("Tracking every " + INSTANCE.getSampleRate() + ". buffer allocation.");
+        }
+    }
+
+    /**
+     * Returns the shared tracker which is configured by the
+     * {@code org.jboss.netty.buffer.tracker.sampleRate} system property.
+     */
+    public static ChannelBufferTracker getInstance() {
+        return INSTANCE;
+    }
+
+    private final int sampleRate;
+    private final AtomicLong allocations = new AtomicLong();
+    private final ConcurrentMap<Record, Boolean> records = new ConcurrentHashMap<Record, Boolean>();
+    private final ReferenceQueue<ChannelBuffer> collected = new ReferenceQueue<ChannelBuffer>();
+
+    /**
+     * Creates a new tracker which records every {@code sampleRate}-th
+     * allocation.
+     *
+     * @param sampleRate {@code 0} to disable tracking
+     */
+    public ChannelBufferTracker(int sampleRate) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("sampleRate: " + sampleRate + " (expected: 0+)");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns {@code true} if and only if this tracker records allocations.
+     */
+    public boolean isEnabled() {
+        return sampleRate != 0;
+    }
+
+    /**
+     * Returns the number of allocations per recorded allocation, or {@code 0}
+     * if this tracker is disabled.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns a factory which allocates its buffers from the specified
+     * {@code factory} and records a sampled fraction of them.  If this tracker
+     * is disabled, the specified factory is returned as it is.
+     */
+    public ChannelBufferFactory track(ChannelBufferFactory factory) {
+        return track(factory, null);
+    }
+
+    /**
+     * Returns a factory which allocates its buffers from the specified
+     * {@code factory} and records a sampled fraction of them.  If
+     * {@code previous} has been returned by this tracker, the new factory
+     * belongs to the same owner, so that the buffers allocated before and after
+     * a factory change are reported together when the owner is closed.  If
+     * this tracker is disabled, the specified factory is returned as it is.
+     */
+    public ChannelBufferFactory track(ChannelBufferFactory factory, ChannelBufferFactory previous) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+        if (!isEnabled()) {
+            return factory;
+        }
+        if (factory instanceof TrackingChannelBufferFactory) {
+            factory = ((TrackingChannelBufferFactory) factory).delegate;
+        }
+
+        Owner owner;
+        if (previous instanceof TrackingChannelBufferFactory &&
+            ((TrackingChannelBufferFactory) previous).tracker == this) {
+            owner = ((TrackingChannelBufferFactory) previous).owner;
+        } else {
+            owner = new Owner();
+        }
+        return new TrackingChannelBufferFactory(this, factory, owner);
+    }
+
+    /**
+     * Notifies this tracker that the owner of the specified factory, usually a
+     * {@link org.jboss.netty.channel.Channel}, has been closed.  Any buffer
+     * allocated from the factory which stays live from now on is reported by
+     * {@link #getRetainedAfterClose()}.  This method does nothing if the
+     * factory has not been returned by this tracker.
+     */
+    public void closed(ChannelBufferFactory factory, Object owner) {
+        if (factory instanceof TrackingChannelBufferFactory &&
+            ((TrackingChannelBufferFactory) factory).tracker == this) {
+            Owner o = ((TrackingChannelBufferFactory) factory).owner;
+            o.name = String.valueOf(owner);
+            o.closed = true;
+        }
+    }
+
+    /**
+     * Returns the number of live bytes per allocation site, largest first.
+     */
+    public Map<String, Long> getLiveBytesPerSite() {
+        Map<String, Long> bytesPerSite = new HashMap<String, Long>();
+        for (Record r: liveRecords()) {
+            Long bytes = bytesPerSite.get(r.site);
+            bytesPerSite.put(r.site, bytes == null? r.capacity : bytes + r.capacity);
+        }
+
+        List<Entry<String, Long>> entries = new ArrayList<Entry<String, Long>>(bytesPerSite.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, Long>>() {
+            public int compare(Entry<String, Long> o1, Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        Map<String, Long> sorted = new LinkedHashMap<String, Long>();
+        for (Entry<String, Long> e: entries) {
+            sorted.put(e.getKey(), e.getValue());
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns a description of every live buffer whose owner has been
+     * {@linkplain #closed(ChannelBufferFactory, Object) closed}: its
+     * allocation site, size class and owner.
+     */
+    public List<String> getRetainedAfterClose() {
+        List<String> retained = new ArrayList<String>();
+        for (Record r: liveRecords()) {
+            if (r.owner.closed) {
+                retained.add(r.site + " (size class: " + r.sizeClass + ", owner: " + r.owner.name + ')');
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Logs the live bytes per allocation site and the buffers which have been
+     * retained after their owner was closed.
+     */
+    public void report() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (Entry<String, Long> e: getLiveBytesPerSite().entrySet()) {
+            logger.info("Live buffer bytes (sampled 1/" + sampleRate + "): " + e.getValue() + " at " + e.getKey());
+        }
+        for (String r: getRetainedAfterClose()) {
+            logger.warn("Buffer retained after its channel was closed: " + r);
+        }
+    }
+
+    /**
+     * Records the specified buffer if it is the next sample.
+     */
+    ChannelBuffer allocated(ChannelBuffer buffer, Owner owner) {
+        if (allocations.getAndIncrement() % sampleRate != 0) {
+            return buffer;
+        }
+
+        expungeCollected();
+        String site = allocationSite(new Throwable().getStackTrace());
+        records.put(new Record(buffer, collected, site, owner), Boolean.TRUE);
+        return buffer;
+    }
+
+    private List<Record> liveRecords() {
+        expungeCollected();
+        List<Record> live = new ArrayList<Record>();
+        for (Record r: records.keySet()) {
+            ChannelBuffer buffer = r.get();
+            if (buffer == null ||
+                buffer instanceof ReleasableChannelBuffer && ((ReleasableChannelBuffer) buffer).refCnt() == 0) {
+                records.remove(r);
+            } else {
+                live.add(r);
+            }
+        }
+        return live;
+    }
+
+    private void expungeCollected() {
+        for (;;) {
+            Record r = (Record) collected.poll();
+            if (r == null) {
+                break;
+            }
+            records.remove(r);
+        }
+    }
+
+    /**
+     * Returns the allocation site described by the specified stack trace, with
+     * one frame per line.
+     */
+    static String allocationSite(StackTraceElement[] trace) {
+        int start = 0;
+        while (start < trace.length && trace[start].getClassName().startsWith(BUFFER_PACKAGE)) {
+            start ++;
+        }
+        if (start == trace.length) {
+            return trace.length == 0? "unknown" : trace[trace.length - 1].toString();
+        }
+
+        StringBuilder buf = new StringBuilder();
+        int end = Math.min(trace.length, start + MAX_SITE_FRAMES);
+        for (int i = start; i < end; i ++) {
+            if (i != start) {
+                buf.append("\n\tat ");
+            }
+            buf.append(trace[i]);
+            if (!trace[i].getClassName().startsWith(NETTY_PACKAGE)) {
+                break;
+            }
+        }
+        return buf.toString();
+    }
+
+    static int sizeClass(int capacity) {
+        int sizeClass = 1;
+        while (sizeClass < capacity && sizeClass > 0) {
+            sizeClass <<= 1;
+        }
+        return sizeClass > 0? sizeClass : Integer.MAX_VALUE;
+    }
+
+    /**
+     * The state shared by all factories of the same owner.
+     */
+    static final class Owner {
+        volatile boolean closed;
+        volatile String name;
+    }
+
+    private static final class Record extends WeakReference<ChannelBuffer> {
+        final String site;
+        final int capacity;
+        final int sizeClass;
+        final Owner owner;
+
+        Record(ChannelBuffer buffer, ReferenceQueue<ChannelBuffer> queue, String site, Owner owner) {
+            super(buffer, queue);
+            this.site = site;
+            capacity = buffer.capacity();
+            sizeClass = sizeClass(capacity);
+            this.owner = owner;
+        }
+    }
+}
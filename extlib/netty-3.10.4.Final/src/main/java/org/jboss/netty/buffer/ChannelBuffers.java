@@ -16,15 +16,20 @@
 package org.jboss.netty.buffer;
 
 import org.jboss.netty.util.CharsetUtil;
+import org.jboss.netty.util.internal.UnsafeUtil;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -104,6 +109,9 @@ public final class ChannelBuffers {
 
     private static final char[] HEXDUMP_TABLE = new char[256 * 4];
 
+    private static final long WORD_LSB = 0x0101010101010101L;
+    private static final long WORD_LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
     static {
         final char[] DIGITS = "0123456789abcdef".toCharArray();
         for (int i = 0; i < 256; i ++) {
@@ -232,6 +240,45 @@ public final class ChannelBuffers {
         return new DynamicChannelBuffer(endianness, estimatedLength, factory);
     }
 
+    /**
+     * Creates a new big-endian dynamic buffer which grows by appending
+     * chunks of {@link ChunkedDynamicChannelBuffer#DEFAULT_CHUNK_SIZE} bytes
+     * instead of reallocating and copying its content.  The first chunk has
+     * the specified estimated data length.  The new buffer's
+     * {@code readerIndex} and {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer chunkedDynamicBuffer(int estimatedLength) {
+        return chunkedDynamicBuffer(BIG_ENDIAN, estimatedLength);
+    }
+
+    /**
+     * Creates a new dynamic buffer with the specified endianness which grows
+     * by appending chunks of {@link ChunkedDynamicChannelBuffer#DEFAULT_CHUNK_SIZE}
+     * bytes instead of reallocating and copying its content.  The first chunk
+     * has the specified estimated data length.  The new buffer's
+     * {@code readerIndex} and {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer chunkedDynamicBuffer(ByteOrder endianness, int estimatedLength) {
+        return new ChunkedDynamicChannelBuffer(endianness, estimatedLength);
+    }
+
+    /**
+     * Creates a new dynamic buffer which grows by appending chunks of
+     * {@link ChunkedDynamicChannelBuffer#DEFAULT_CHUNK_SIZE} bytes allocated
+     * by the specified factory instead of reallocating and copying its
+     * content.  The first chunk has the specified estimated data length.  The
+     * new buffer's {@code readerIndex} and {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer chunkedDynamicBuffer(int estimatedLength, ChannelBufferFactory factory) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+
+        return new ChunkedDynamicChannelBuffer(
+                factory.getDefaultOrder(), estimatedLength,
+                ChunkedDynamicChannelBuffer.DEFAULT_CHUNK_SIZE, factory);
+    }
+
     /**
      * Creates a new big-endian buffer which wraps the specified {@code array}.
      * A modification on the specified array's content will be visible to the
@@ -505,6 +552,29 @@ public final class ChannelBuffers {
         return EMPTY_BUFFER;
     }
 
+    /**
+     * Creates a new read-only big-endian buffer which maps {@code length}
+     * bytes of the specified file, starting at {@code position}, into memory.
+     * The file is not read until the content of the returned buffer is
+     * accessed.  The new buffer's {@code readerIndex} and {@code writerIndex}
+     * are {@code 0} and {@code length} respectively.
+     *
+     * @throws IllegalArgumentException
+     *         if {@code length} is greater than {@link Integer#MAX_VALUE}
+     * @throws IOException
+     *         if failed to map the file
+     */
+    public static ChannelBuffer wrappedMappedFile(
+            FileChannel channel, long position, long length) throws IOException {
+        if (length == 0) {
+            if (channel == null) {
+                throw new NullPointerException("channel");
+            }
+            return EMPTY_BUFFER;
+        }
+        return new MappedFileChannelBuffer(channel, position, length);
+    }
+
     /**
      * Creates a new big-endian buffer whose content is a copy of the
      * specified {@code array}.  The new buffer's {@code readerIndex} and
@@ -738,6 +808,17 @@ public final class ChannelBuffers {
             return copiedBuffer(endianness, (CharBuffer) string, charset);
         }
 
+        if (string instanceof String && !isFastCharset(charset)) {
+            // String.getBytes() encodes into the returned array directly.
+            byte[] array;
+            try {
+                array = ((String) string).getBytes(charset.name());
+            } catch (UnsupportedEncodingException e) {
+                throw new UnsupportedCharsetException(charset.name());
+            }
+            return wrappedBuffer(endianness, array);
+        }
+
         return copiedBuffer(endianness, CharBuffer.wrap(string), charset);
     }
 
@@ -830,13 +911,138 @@ public final class ChannelBuffers {
     }
 
     private static ChannelBuffer copiedBuffer(ByteOrder endianness, CharBuffer buffer, Charset charset) {
-        CharBuffer src = buffer;
-        ByteBuffer dst = encodeString(src, charset);
-        ChannelBuffer result = wrappedBuffer(endianness, dst.array());
-        result.writerIndex(dst.remaining());
+        byte[] dst;
+        int length;
+        if (charset.equals(CharsetUtil.UTF_8)) {
+            dst = new byte[utf8Length(buffer)];
+            length = encodeUtf8(buffer, dst);
+        } else if (charset.equals(CharsetUtil.ISO_8859_1)) {
+            dst = new byte[buffer.remaining()];
+            length = encodeSingleByte(buffer, dst, '\u00FF');
+        } else if (charset.equals(CharsetUtil.US_ASCII)) {
+            dst = new byte[buffer.remaining()];
+            length = encodeSingleByte(buffer, dst, '\u007F');
+        } else {
+            ByteBuffer encoded = encodeString(buffer, charset);
+            dst = encoded.array();
+            length = encoded.remaining();
+        }
+
+        ChannelBuffer result = wrappedBuffer(endianness, dst);
+        result.writerIndex(length);
         return result;
     }
 
+    /**
+     * Returns {@code true} if the specified charset is encoded and decoded
+     * without a {@link CharsetEncoder} or {@link CharsetDecoder}.
+     */
+    private static boolean isFastCharset(Charset charset) {
+        return charset.equals(CharsetUtil.UTF_8) ||
+               charset.equals(CharsetUtil.ISO_8859_1) ||
+               charset.equals(CharsetUtil.US_ASCII);
+    }
+
+    /**
+     * Encodes {@code src} into a single-byte charset whose highest character
+     * is {@code max}.  Like a {@link CharsetEncoder} which replaces unmappable
+     * characters, a character above {@code max} or a surrogate pair becomes
+     * a single {@code '?'}.
+     *
+     * @return the number of bytes written to {@code dst}
+     */
+    private static int encodeSingleByte(CharSequence src, byte[] dst, char max) {
+        final int length = src.length();
+        int j = 0;
+        for (int i = 0; i < length; i ++) {
+            char c = src.charAt(i);
+            if (c <= max) {
+                dst[j ++] = (byte) c;
+            } else {
+                dst[j ++] = '?';
+                if (Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(src.charAt(i + 1))) {
+                    i ++;
+                }
+            }
+        }
+        return j;
+    }
+
+    /**
+     * Returns the number of bytes {@link #encodeUtf8(CharSequence, byte[])}
+     * writes for the specified {@code src}.
+     */
+    private static int utf8Length(CharSequence src) {
+        final int length = src.length();
+        int utf8Length = length;
+        for (int i = 0; i < length; i ++) {
+            char c = src.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utf8Length ++;
+            } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                       Character.isLowSurrogate(src.charAt(i + 1))) {
+                // 2 chars, 4 bytes
+                utf8Length += 2;
+                i ++;
+            }
+            // An unpaired surrogate becomes a single '?'.
+        }
+        return utf8Length;
+    }
+
+    /**
+     * Encodes {@code src} as UTF-8.  Like a {@link CharsetEncoder} which
+     * replaces malformed input, an unpaired surrogate becomes a single
+     * {@code '?'}.
+     *
+     * @return the number of bytes written to {@code dst}
+     */
+    private static int encodeUtf8(CharSequence src, byte[] dst) {
+        final int length = src.length();
+        int j = 0;
+        int i = 0;
+
+        // Fast path for the ASCII prefix.
+        while (i < length) {
+            char c = src.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            dst[j ++] = (byte) c;
+            i ++;
+        }
+
+        for (; i < length; i ++) {
+            char c = src.charAt(i);
+            if (c < 0x80) {
+                dst[j ++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[j ++] = (byte) (0xC0 | c >> 6);
+                dst[j ++] = (byte) (0x80 | c & 0x3F);
+            } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                dst[j ++] = (byte) (0xE0 | c >> 12);
+                dst[j ++] = (byte) (0x80 | c >> 6 & 0x3F);
+                dst[j ++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                       Character.isLowSurrogate(src.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, src.charAt(++ i));
+                dst[j ++] = (byte) (0xF0 | codePoint >> 18);
+                dst[j ++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                dst[j ++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                dst[j ++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                dst[j ++] = '?';
+            }
+        }
+        return j;
+    }
+
     /**
      * Creates a read-only buffer which disallows any modification operations
      * on the specified {@code buffer}.  The new buffer has the same
@@ -850,6 +1056,20 @@ public final class ChannelBuffers {
         return new ReadOnlyChannelBuffer(buffer);
     }
 
+    /**
+     * Releases the specified {@code buffer} if it is a
+     * {@link ReleasableChannelBuffer}.  Otherwise, this method does nothing.
+     *
+     * @return {@code true} if and only if the buffer has been released and its
+     *         memory has been returned to its factory
+     */
+    public static boolean release(ChannelBuffer buffer) {
+        if (buffer instanceof ReleasableChannelBuffer) {
+            return ((ReleasableChannelBuffer) buffer).release();
+        }
+        return false;
+    }
+
     /**
      * Create a {@link ChannelBuffer} from the given <a href="http://en.wikipedia.org/wiki/Hex_dump">hex dump</a>
      */
@@ -1091,13 +1311,68 @@ public final class ChannelBuffers {
     }
 
     private static int firstIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte value) {
+        return firstIndexOf(buffer, fromIndex, toIndex, value, value);
+    }
+
+    /**
+     * Returns the index of the first byte which equals to either {@code a} or
+     * {@code b}.  Eight bytes are tested per step: a word is XOR'd with the
+     * repeated search byte and every zero byte of the result marks a match.
+     * Only the range below the capacity is scanned word by word, so that an
+     * out-of-range {@code toIndex} still fails on the same index as a byte by
+     * byte search would.
+     */
+    private static int firstIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte a, byte b) {
         fromIndex = Math.max(fromIndex, 0);
         if (fromIndex >= toIndex || buffer.capacity() == 0) {
             return -1;
         }
 
-        for (int i = fromIndex; i < toIndex; i ++) {
-            if (buffer.getByte(i) == value) {
+        final int wordEndIndex = Math.min(toIndex, buffer.capacity());
+        final long patternA = WORD_LSB * (a & 0xFF);
+        final long patternB = WORD_LSB * (b & 0xFF);
+        int i = fromIndex;
+        if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            final int offset = buffer.arrayOffset();
+            if (UnsafeUtil.isAvailable()) {
+                for (; wordEndIndex - i >= 8; i += 8) {
+                    long word = UnsafeUtil.getLong(array, offset + i);
+                    long match = matchBytes(word, patternA) | matchBytes(word, patternB);
+                    if (match != 0) {
+                        return i + firstMatch(match, UnsafeUtil.BIG_ENDIAN_NATIVE_ORDER);
+                    }
+                }
+            }
+            for (; i < wordEndIndex; i ++) {
+                byte v = array[offset + i];
+                if (v == a || v == b) {
+                    return i;
+                }
+            }
+        } else if (buffer instanceof UnsafeDirectChannelBuffer) {
+            final long address = ((UnsafeDirectChannelBuffer) buffer).memoryAddress();
+            for (; wordEndIndex - i >= 8; i += 8) {
+                long word = UnsafeUtil.getLong(address + i);
+                long match = matchBytes(word, patternA) | matchBytes(word, patternB);
+                if (match != 0) {
+                    return i + firstMatch(match, UnsafeUtil.BIG_ENDIAN_NATIVE_ORDER);
+                }
+            }
+        } else {
+            final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+            for (; wordEndIndex - i >= 8; i += 8) {
+                long word = buffer.getLong(i);
+                long match = matchBytes(word, patternA) | matchBytes(word, patternB);
+                if (match != 0) {
+                    return i + firstMatch(match, bigEndian);
+                }
+            }
+        }
+
+        for (; i < toIndex; i ++) {
+            byte v = buffer.getByte(i);
+            if (v == a || v == b) {
                 return i;
             }
         }
@@ -1105,6 +1380,26 @@ public final class ChannelBuffers {
         return -1;
     }
 
+    /**
+     * Returns a word whose bytes are {@code 0x80} where the corresponding
+     * bytes of {@code word} and {@code pattern} are equal and {@code 0x00}
+     * elsewhere.  Unlike the well-known {@code (x - 0x01..) & ~x & 0x80..}
+     * trick, no borrow crosses byte boundaries, so the result is exact in
+     * both byte orders.
+     */
+    private static long matchBytes(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~((x & WORD_LOW_BITS) + WORD_LOW_BITS | x | WORD_LOW_BITS);
+    }
+
+    private static int firstMatch(long match, boolean bigEndian) {
+        if (bigEndian) {
+            return Long.numberOfLeadingZeros(match) >>> 3;
+        } else {
+            return Long.numberOfTrailingZeros(match) >>> 3;
+        }
+    }
+
     private static int lastIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte value) {
         fromIndex = Math.min(fromIndex, buffer.capacity());
         if (fromIndex < 0 || buffer.capacity() == 0) {
@@ -1122,6 +1417,23 @@ public final class ChannelBuffers {
 
     private static int firstIndexOf(
             ChannelBuffer buffer, int fromIndex, int toIndex, ChannelBufferIndexFinder indexFinder) {
+        // Well-known finders which match one or two byte values are searched word by word.
+        if (indexFinder == ChannelBufferIndexFinder.NUL) {
+            return firstIndexOf(buffer, fromIndex, toIndex, (byte) 0, (byte) 0);
+        }
+        if (indexFinder == ChannelBufferIndexFinder.CR) {
+            return firstIndexOf(buffer, fromIndex, toIndex, (byte) '\r', (byte) '\r');
+        }
+        if (indexFinder == ChannelBufferIndexFinder.LF) {
+            return firstIndexOf(buffer, fromIndex, toIndex, (byte) '\n', (byte) '\n');
+        }
+        if (indexFinder == ChannelBufferIndexFinder.CRLF) {
+            return firstIndexOf(buffer, fromIndex, toIndex, (byte) '\r', (byte) '\n');
+        }
+        if (indexFinder == ChannelBufferIndexFinder.LINEAR_WHITESPACE) {
+            return firstIndexOf(buffer, fromIndex, toIndex, (byte) ' ', (byte) '\t');
+        }
+
         fromIndex = Math.max(fromIndex, 0);
         if (fromIndex >= toIndex || buffer.capacity() == 0) {
             return -1;
@@ -1172,10 +1484,82 @@ public final class ChannelBuffers {
         return dst;
     }
 
-    static String decodeString(ByteBuffer src, Charset charset) {
+    /**
+     * Decodes the specified region of {@code buffer}.  The content of a heap
+     * buffer is decoded in place, the content of a direct buffer is decoded
+     * straight from its NIO view, and ISO-8859-1 and US-ASCII are decoded
+     * without a {@link CharsetDecoder}.
+     */
+    @SuppressWarnings("deprecation")
+    static String decodeString(ChannelBuffer buffer, int index, int length, Charset charset) {
+        if (index < 0 || length < 0 || index > buffer.capacity() - length) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", length: " + length + ", maximum is " + buffer.capacity());
+        }
+
+        final byte[] array;
+        final int offset;
+        if (buffer.hasArray()) {
+            array = buffer.array();
+            offset = buffer.arrayOffset() + index;
+        } else {
+            ByteBuffer src = buffer.toByteBuffer(index, length);
+            if (!src.hasArray()) {
+                return decodeString(src, charset);
+            }
+            array = src.array();
+            offset = src.arrayOffset() + src.position();
+        }
+
+        if (charset.equals(CharsetUtil.ISO_8859_1)) {
+            return new String(array, 0, offset, length);
+        }
+        if (charset.equals(CharsetUtil.US_ASCII)) {
+            final int end = offset + length;
+            for (int i = offset; i < end; i ++) {
+                if (array[i] < 0) {
+                    return decodeAscii(array, offset, length);
+                }
+            }
+            return new String(array, 0, offset, length);
+        }
+
+        // String's constructor decodes into the resulting string directly and
+        // replaces malformed input just like CharsetUtil.getDecoder() does.
+        try {
+            return new String(array, offset, length, charset.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new UnsupportedCharsetException(charset.name());
+        }
+    }
+
+    /**
+     * Decodes the remaining content of a {@link ByteBuffer} without a backing
+     * array, such as a direct buffer, without copying it into a heap array
+     * first.
+     */
+    private static String decodeString(ByteBuffer src, Charset charset) {
+        final int position = src.position();
+        final int length = src.remaining();
+        if (charset.equals(CharsetUtil.ISO_8859_1)) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i ++) {
+                chars[i] = (char) (src.get(position + i) & 0xFF);
+            }
+            return new String(chars);
+        }
+        if (charset.equals(CharsetUtil.US_ASCII)) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i ++) {
+                byte b = src.get(position + i);
+                chars[i] = b < 0? '\uFFFD' : (char) b;
+            }
+            return new String(chars);
+        }
+
         final CharsetDecoder decoder = CharsetUtil.getDecoder(charset);
         final CharBuffer dst = CharBuffer.allocate(
-                (int) ((double) src.remaining() * decoder.maxCharsPerByte()));
+                (int) ((double) length * decoder.maxCharsPerByte()));
         try {
             CoderResult cr = decoder.decode(src, dst, true);
             if (!cr.isUnderflow()) {
@@ -1188,7 +1572,20 @@ public final class ChannelBuffers {
         } catch (CharacterCodingException x) {
             throw new IllegalStateException(x);
         }
-        return dst.flip().toString();
+        return new String(dst.array(), 0, dst.position());
+    }
+
+    /**
+     * Decodes US-ASCII, replacing every byte above {@code 0x7F} with
+     * {@code '\uFFFD'}.
+     */
+    private static String decodeAscii(byte[] array, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i ++) {
+            byte b = array[offset + i];
+            chars[i] = b < 0? '\uFFFD' : (char) b;
+        }
+        return new String(chars);
     }
 
     private ChannelBuffers() {
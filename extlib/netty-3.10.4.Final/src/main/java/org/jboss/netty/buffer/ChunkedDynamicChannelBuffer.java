@@ -0,0 +1,625 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+import org.jboss.netty.util.internal.DetectionUtil;
+
+/**
+ * A dynamic capacity buffer which increases its capacity by appending
+ * fixed-size chunks instead of reallocating and copying its content.  The
+ * first chunk has the estimated length and every following chunk has the
+ * chunk size, so locating the chunk of an index costs a shift.  Use
+ * {@link #toByteBuffers(int, int)} to get the content without merging the
+ * chunks; the NIO transport writes this buffer with a gathering write.  It is
+ * recommended to use {@link ChannelBuffers#chunkedDynamicBuffer(int)} instead
+ * of calling the constructor explicitly.
+ */
+public class ChunkedDynamicChannelBuffer extends AbstractChannelBuffer {
+
+    /**
+     * The default size of the chunks appended after the first one.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final ChannelBufferFactory factory;
+    private final ByteOrder endianness;
+    private final int firstChunkSize;
+    private final int chunkShift;
+    private final int chunkMask;
+    private ChannelBuffer[] chunks;
+    private int chunkCount;
+    private int capacity;
+
+    public ChunkedDynamicChannelBuffer(int estimatedLength) {
+        this(ByteOrder.BIG_ENDIAN, estimatedLength);
+    }
+
+    public ChunkedDynamicChannelBuffer(ByteOrder endianness, int estimatedLength) {
+        this(endianness, estimatedLength, DEFAULT_CHUNK_SIZE, HeapChannelBufferFactory.getInstance(endianness));
+    }
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param estimatedLength the capacity of the first chunk
+     * @param chunkSize       the capacity of the chunks appended when the
+     *                        buffer grows; must be a power of two
+     */
+    public ChunkedDynamicChannelBuffer(
+            ByteOrder endianness, int estimatedLength, int chunkSize, ChannelBufferFactory factory) {
+        if (estimatedLength < 0) {
+            throw new IllegalArgumentException("estimatedLength: " + estimatedLength);
+        }
+        if (chunkSize <= 0 || (chunkSize & chunkSize - 1) != 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize: " + chunkSize + " (expected: a power of 2)");
+        }
+        if (endianness == null) {
+            throw new NullPointerException("endianness");
+        }
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+        this.factory = factory;
+        this.endianness = endianness;
+        firstChunkSize = estimatedLength;
+        chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        chunkMask = chunkSize - 1;
+        chunks = new ChannelBuffer[4];
+        chunks[0] = factory.getBuffer(endianness, estimatedLength);
+        chunkCount = 1;
+        capacity = estimatedLength;
+    }
+
+    /**
+     * Returns the number of chunks this buffer consists of.
+     */
+    public int numChunks() {
+        return chunkCount;
+    }
+
+    @Override
+    public void ensureWritableBytes(int minWritableBytes) {
+        if (minWritableBytes <= writableBytes()) {
+            return;
+        }
+
+        long minNewCapacity = (long) writerIndex() + minWritableBytes;
+        if (minNewCapacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum size of 2gb exceeded");
+        }
+
+        int chunkSize = chunkMask + 1;
+        while (capacity < minNewCapacity) {
+            if (chunkCount == chunks.length) {
+                ChannelBuffer[] newChunks = new ChannelBuffer[chunkCount << 1];
+                System.arraycopy(chunks, 0, newChunks, 0, chunkCount);
+                chunks = newChunks;
+            }
+            // The last chunk may be smaller if the capacity is close to the 2gb limit.
+            int newChunkSize = (int) Math.min(chunkSize, (long) Integer.MAX_VALUE - capacity);
+            chunks[chunkCount ++] = factory.getBuffer(endianness, newChunkSize);
+            capacity += newChunkSize;
+        }
+    }
+
+    public ChannelBufferFactory factory() {
+        return factory;
+    }
+
+    public ByteOrder order() {
+        return endianness;
+    }
+
+    public boolean isDirect() {
+        return chunks[chunkCount - 1].isDirect();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean hasArray() {
+        return false;
+    }
+
+    public byte[] array() {
+        throw new UnsupportedOperationException();
+    }
+
+    public int arrayOffset() {
+        throw new UnsupportedOperationException();
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        int chunkId = chunkId(index);
+        return chunks[chunkId].getByte(chunkIndex(chunkId, index));
+    }
+
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 2 <= chunks[chunkId].capacity()) {
+            return chunks[chunkId].getShort(chunkIndex);
+        }
+        return (short) getAcrossChunks(index, 2);
+    }
+
+    public int getUnsignedMedium(int index) {
+        checkIndex(index, 3);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 3 <= chunks[chunkId].capacity()) {
+            return chunks[chunkId].getUnsignedMedium(chunkIndex);
+        }
+        return (int) getAcrossChunks(index, 3);
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 4 <= chunks[chunkId].capacity()) {
+            return chunks[chunkId].getInt(chunkIndex);
+        }
+        return (int) getAcrossChunks(index, 4);
+    }
+
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 8 <= chunks[chunkId].capacity()) {
+            return chunks[chunkId].getLong(chunkIndex);
+        }
+        return getAcrossChunks(index, 8);
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dstIndex < 0 || dstIndex > dst.length - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to read - Needs "
+                    + (dstIndex + length) + ", maximum is " + dst.length);
+        }
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            chunks[chunkId].getBytes(chunkIndex, dst, dstIndex, localLength);
+            index += localLength;
+            dstIndex += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dstIndex < 0 || dstIndex > dst.capacity() - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to read - Needs "
+                    + (dstIndex + length) + ", maximum is " + dst.capacity());
+        }
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            chunks[chunkId].getBytes(chunkIndex, dst, dstIndex, localLength);
+            index += localLength;
+            dstIndex += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        int length = dst.remaining();
+        checkIndex(index, length);
+        int limit = dst.limit();
+        try {
+            while (length > 0) {
+                int chunkId = chunkId(index);
+                int chunkIndex = chunkIndex(chunkId, index);
+                int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+                dst.limit(dst.position() + localLength);
+                chunks[chunkId].getBytes(chunkIndex, dst);
+                index += localLength;
+                length -= localLength;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length)
+            throws IOException {
+        if (DetectionUtil.javaVersion() >= 7) {
+            return (int) out.write(toByteBuffers(index, length));
+        }
+
+        // Gathering write is broken on older JDKs; see CompositeChannelBuffer.
+        int writtenBytes = 0;
+        for (ByteBuffer b: toByteBuffers(index, length)) {
+            int expectedBytes = b.remaining();
+            int localWrittenBytes = out.write(b);
+            writtenBytes += localWrittenBytes;
+            if (localWrittenBytes < expectedBytes) {
+                break;
+            }
+        }
+        return writtenBytes;
+    }
+
+    public void getBytes(int index, OutputStream out, int length)
+            throws IOException {
+        checkIndex(index, length);
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            chunks[chunkId].getBytes(chunkIndex, out, localLength);
+            index += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void setByte(int index, int value) {
+        checkIndex(index, 1);
+        int chunkId = chunkId(index);
+        chunks[chunkId].setByte(chunkIndex(chunkId, index), value);
+    }
+
+    public void setShort(int index, int value) {
+        checkIndex(index, 2);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 2 <= chunks[chunkId].capacity()) {
+            chunks[chunkId].setShort(chunkIndex, value);
+        } else {
+            setAcrossChunks(index, value, 2);
+        }
+    }
+
+    public void setMedium(int index, int value) {
+        checkIndex(index, 3);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 3 <= chunks[chunkId].capacity()) {
+            chunks[chunkId].setMedium(chunkIndex, value);
+        } else {
+            setAcrossChunks(index, value, 3);
+        }
+    }
+
+    public void setInt(int index, int value) {
+        checkIndex(index, 4);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 4 <= chunks[chunkId].capacity()) {
+            chunks[chunkId].setInt(chunkIndex, value);
+        } else {
+            setAcrossChunks(index, value, 4);
+        }
+    }
+
+    public void setLong(int index, long value) {
+        checkIndex(index, 8);
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + 8 <= chunks[chunkId].capacity()) {
+            chunks[chunkId].setLong(chunkIndex, value);
+        } else {
+            setAcrossChunks(index, value, 8);
+        }
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkIndex(index, length);
+        if (srcIndex < 0 || srcIndex > src.length - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to write - Needs "
+                    + (srcIndex + length) + ", maximum is " + src.length);
+        }
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            chunks[chunkId].setBytes(chunkIndex, src, srcIndex, localLength);
+            index += localLength;
+            srcIndex += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        checkIndex(index, length);
+        if (srcIndex < 0 || srcIndex > src.capacity() - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to write - Needs "
+                    + (srcIndex + length) + ", maximum is " + src.capacity());
+        }
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            chunks[chunkId].setBytes(chunkIndex, src, srcIndex, localLength);
+            index += localLength;
+            srcIndex += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        int length = src.remaining();
+        checkIndex(index, length);
+        int limit = src.limit();
+        try {
+            while (length > 0) {
+                int chunkId = chunkId(index);
+                int chunkIndex = chunkIndex(chunkId, index);
+                int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+                src.limit(src.position() + localLength);
+                chunks[chunkId].setBytes(chunkIndex, src);
+                index += localLength;
+                length -= localLength;
+            }
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    public int setBytes(int index, InputStream in, int length)
+            throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            // Same as an ordinary buffer - let the stream tell if it reached EOF.
+            return in.read(new byte[0]);
+        }
+        int readBytes = 0;
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            int localReadBytes = chunks[chunkId].setBytes(chunkIndex, in, localLength);
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+            index += localReadBytes;
+            length -= localReadBytes;
+            readBytes += localReadBytes;
+        }
+        return readBytes;
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length)
+            throws IOException {
+        checkIndex(index, length);
+        int readBytes = 0;
+        while (length > 0) {
+            int chunkId = chunkId(index);
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            int localReadBytes = chunks[chunkId].setBytes(chunkIndex, in, localLength);
+            if (localReadBytes == 0) {
+                break;
+            }
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+            index += localReadBytes;
+            length -= localReadBytes;
+            readBytes += localReadBytes;
+            if (localReadBytes < localLength) {
+                break;
+            }
+        }
+        return readBytes;
+    }
+
+    @Override
+    public void writeByte(int value) {
+        ensureWritableBytes(1);
+        super.writeByte(value);
+    }
+
+    @Override
+    public void writeShort(int value) {
+        ensureWritableBytes(2);
+        super.writeShort(value);
+    }
+
+    @Override
+    public void writeMedium(int value) {
+        ensureWritableBytes(3);
+        super.writeMedium(value);
+    }
+
+    @Override
+    public void writeInt(int value) {
+        ensureWritableBytes(4);
+        super.writeInt(value);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        ensureWritableBytes(8);
+        super.writeLong(value);
+    }
+
+    @Override
+    public void writeBytes(byte[] src, int srcIndex, int length) {
+        ensureWritableBytes(length);
+        super.writeBytes(src, srcIndex, length);
+    }
+
+    @Override
+    public void writeBytes(ChannelBuffer src, int srcIndex, int length) {
+        ensureWritableBytes(length);
+        super.writeBytes(src, srcIndex, length);
+    }
+
+    @Override
+    public void writeBytes(ByteBuffer src) {
+        ensureWritableBytes(src.remaining());
+        super.writeBytes(src);
+    }
+
+    @Override
+    public int writeBytes(InputStream in, int length) throws IOException {
+        ensureWritableBytes(length);
+        return super.writeBytes(in, length);
+    }
+
+    @Override
+    public int writeBytes(ScatteringByteChannel in, int length)
+            throws IOException {
+        ensureWritableBytes(length);
+        return super.writeBytes(in, length);
+    }
+
+    @Override
+    public void writeZero(int length) {
+        ensureWritableBytes(length);
+        super.writeZero(length);
+    }
+
+    public ChannelBuffer duplicate() {
+        return new DuplicatedChannelBuffer(this);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        ChunkedDynamicChannelBuffer copiedBuffer =
+            new ChunkedDynamicChannelBuffer(order(), length, chunkMask + 1, factory());
+        copiedBuffer.writeBytes(this, index, length);
+        return copiedBuffer;
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        if (index == 0) {
+            if (length == 0) {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+            return new TruncatedChannelBuffer(this, length);
+        } else {
+            if (length == 0) {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+            return new SlicedChannelBuffer(this, index, length);
+        }
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return ByteBuffer.allocate(0).order(order());
+        }
+        int chunkId = chunkId(index);
+        int chunkIndex = chunkIndex(chunkId, index);
+        if (chunkIndex + length <= chunks[chunkId].capacity()) {
+            return chunks[chunkId].toByteBuffer(chunkIndex, length);
+        }
+
+        ByteBuffer merged = isDirect() ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        merged.order(order());
+        getBytes(index, merged);
+        merged.flip();
+        return merged;
+    }
+
+    @Override
+    public ByteBuffer[] toByteBuffers(int index, int length) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return new ByteBuffer[0];
+        }
+
+        int firstChunkId = chunkId(index);
+        int lastChunkId = chunkId(index + length - 1);
+        ByteBuffer[] buffers = new ByteBuffer[lastChunkId - firstChunkId + 1];
+        for (int i = 0; i < buffers.length; i ++) {
+            int chunkId = firstChunkId + i;
+            int chunkIndex = chunkIndex(chunkId, index);
+            int localLength = Math.min(length, chunks[chunkId].capacity() - chunkIndex);
+            buffers[i] = chunks[chunkId].toByteBuffer(chunkIndex, localLength);
+            index += localLength;
+            length -= localLength;
+        }
+        return buffers;
+    }
+
+    private int chunkId(int index) {
+        if (index < firstChunkSize) {
+            return 0;
+        }
+        return 1 + (index - firstChunkSize >>> chunkShift);
+    }
+
+    private int chunkIndex(int chunkId, int index) {
+        if (chunkId == 0) {
+            return index;
+        }
+        return index - firstChunkSize & chunkMask;
+    }
+
+    private long getAcrossChunks(int index, int length) {
+        long value = 0;
+        if (order() == ByteOrder.BIG_ENDIAN) {
+            for (int i = 0; i < length; i ++) {
+                value = value << 8 | getByte(index + i) & 0xff;
+            }
+        } else {
+            for (int i = length - 1; i >= 0; i --) {
+                value = value << 8 | getByte(index + i) & 0xff;
+            }
+        }
+        return value;
+    }
+
+    private void setAcrossChunks(int index, long value, int length) {
+        if (order() == ByteOrder.BIG_ENDIAN) {
+            for (int i = length - 1; i >= 0; i --) {
+                setByte(index + i, (byte) value);
+                value >>>= 8;
+            }
+        } else {
+            for (int i = 0; i < length; i ++) {
+                setByte(index + i, (byte) value);
+                value >>>= 8;
+            }
+        }
+    }
+
+    private void checkIndex(int index, int length) {
+        if ((index | length | index + length | capacity - (index + length)) < 0) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", length: " + length + ", maximum is " + capacity);
+        }
+    }
+}
@@ -318,7 +318,17 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         // XXX Gathering write is not supported because of a known issue.
         //     See http://bugs.sun.com/view_bug.do?bug_id=6210541
         //     This issue appeared in 2004 and is still unresolved!?
-        return out.write(toByteBuffer(index, length));
+        //     Write the components one by one instead of merging them.
+        int writtenBytes = 0;
+        for (ByteBuffer b: toByteBuffers(index, length)) {
+            int expectedBytes = b.remaining();
+            int localWrittenBytes = out.write(b);
+            writtenBytes += localWrittenBytes;
+            if (localWrittenBytes < expectedBytes) {
+                break;
+            }
+        }
+        return writtenBytes;
     }
 
     public void getBytes(int index, OutputStream out, int length)
@@ -644,6 +654,13 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         if (components.length == 1) {
             return components[0].toByteBuffer(index, length);
         }
+        if (length > 0 && index >= 0 && index <= capacity() - length) {
+            int componentId = componentId(index);
+            if (index + length <= indices[componentId + 1]) {
+                // No need to merge if the range is covered by a single component.
+                return components[componentId].toByteBuffer(index - indices[componentId], length);
+            }
+        }
 
         ByteBuffer[] buffers = toByteBuffers(index, length);
         ByteBuffer merged = ByteBuffer.allocate(length).order(order());
@@ -674,7 +691,12 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
             ChannelBuffer s = components[i];
             int adjustment = indices[i];
             int localLength = Math.min(length, s.capacity() - (index - adjustment));
-            buffers.add(s.toByteBuffer(index - adjustment, localLength));
+            if (s instanceof CompositeChannelBuffer) {
+                // Do not merge the components of a nested composite buffer.
+                Collections.addAll(buffers, s.toByteBuffers(index - adjustment, localLength));
+            } else {
+                buffers.add(s.toByteBuffer(index - adjustment, localLength));
+            }
             index += localLength;
             length -= localLength;
             i ++;
@@ -690,24 +712,33 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
                 return lastComponentId;
             }
 
-            // Search right
-            for (int i = lastComponentId + 1; i < components.length; i ++) {
-                if (index < indices[i + 1]) {
-                    lastAccessedComponentId = i;
-                    return i;
-                }
+            // Sequential access usually continues with the next component.
+            int nextComponentId = lastComponentId + 1;
+            if (nextComponentId < components.length && index < indices[nextComponentId + 1]) {
+                lastAccessedComponentId = nextComponentId;
+                return nextComponentId;
             }
-        } else {
-            // Search left
-            for (int i = lastComponentId - 1; i >= 0; i --) {
-                if (index >= indices[i]) {
-                    lastAccessedComponentId = i;
-                    return i;
-                }
+        }
+
+        if (index < 0 || index >= capacity()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index + ", maximum: " + indices.length);
+        }
+
+        // Binary search for the last component which starts at or before the
+        // index; empty components share their start index with the next one.
+        int low = 0;
+        int high = components.length - 1;
+        while (low < high) {
+            int mid = low + high + 1 >>> 1;
+            if (indices[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
             }
         }
 
-        throw new IndexOutOfBoundsException("Invalid index: " + index + ", maximum: " + indices.length);
+        lastAccessedComponentId = low;
+        return low;
     }
 
     @Override
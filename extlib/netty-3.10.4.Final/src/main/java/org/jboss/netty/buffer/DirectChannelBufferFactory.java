@@ -19,6 +19,8 @@ import java.lang.ref.ReferenceQueue;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
 /**
  * A {@link ChannelBufferFactory} which pre-allocates a large chunk of direct
  * buffer and returns its slice on demand.  Direct buffers are reclaimed via
@@ -29,6 +31,13 @@ import java.nio.ByteOrder;
  * is much lower than the GC throughput of heap buffers.  This factory avoids
  * this problem by allocating a large chunk of pre-allocated direct buffer and
  * reducing the number of the garbage collected internal direct buffer objects.
+ * <p>
+ * If {@code preferUnsafe} is {@code true}, the factory returns
+ * {@link UnsafeDirectChannelBuffer}s, which access their memory by address, as
+ * long as {@code sun.misc.Unsafe} is available.  Otherwise it falls back to
+ * {@link ByteBufferBackedChannelBuffer}s.  The default is taken from the System
+ * property <strong>org.jboss.netty.buffer.direct.preferUnsafe</strong>, which
+ * is {@code false} unless specified.
  */
 public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
 
@@ -54,9 +63,13 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
         }
     }
 
+    private static final boolean DEFAULT_PREFER_UNSAFE =
+        SystemPropertyUtil.getBoolean("org.jboss.netty.buffer.direct.preferUnsafe", false);
+
     private final Object bigEndianLock = new Object();
     private final Object littleEndianLock = new Object();
     private final int preallocatedBufCapacity;
+    private final boolean unsafe;
     private ChannelBuffer preallocatedBEBuf;
     private int preallocatedBEBufPos;
     private ChannelBuffer preallocatedLEBuf;
@@ -93,6 +106,19 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
      * @param defaultOrder the default {@link ByteOrder} of this factory
      */
     public DirectChannelBufferFactory(ByteOrder defaultOrder, int preallocatedBufferCapacity) {
+        this(defaultOrder, preallocatedBufferCapacity, DEFAULT_PREFER_UNSAFE);
+    }
+
+    /**
+     * Creates a new factory with the specified default {@link ByteOrder}.
+     *
+     * @param defaultOrder the default {@link ByteOrder} of this factory
+     * @param preferUnsafe {@code true} if the factory should return
+     *                     {@link UnsafeDirectChannelBuffer}s when
+     *                     {@code sun.misc.Unsafe} is available
+     */
+    public DirectChannelBufferFactory(
+            ByteOrder defaultOrder, int preallocatedBufferCapacity, boolean preferUnsafe) {
         super(defaultOrder);
         if (preallocatedBufferCapacity <= 0) {
             throw new IllegalArgumentException(
@@ -100,6 +126,15 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
         }
 
         preallocatedBufCapacity = preallocatedBufferCapacity;
+        unsafe = preferUnsafe && UnsafeDirectChannelBuffer.isAvailable();
+    }
+
+    /**
+     * Returns {@code true} if and only if this factory returns
+     * {@link UnsafeDirectChannelBuffer}s.
+     */
+    public boolean isUnsafe() {
+        return unsafe;
     }
 
     public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
@@ -113,7 +148,7 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
             return ChannelBuffers.EMPTY_BUFFER;
         }
         if (capacity >= preallocatedBufCapacity) {
-            return ChannelBuffers.directBuffer(order, capacity);
+            return newDirectBuffer(order, capacity);
         }
 
         ChannelBuffer slice;
@@ -147,6 +182,9 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
 
     public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
         if (!nioBuffer.isReadOnly() && nioBuffer.isDirect()) {
+            if (unsafe && nioBuffer.hasRemaining()) {
+                return new UnsafeDirectChannelBuffer(nioBuffer);
+            }
             return ChannelBuffers.wrappedBuffer(nioBuffer);
         }
 
@@ -157,18 +195,25 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
         return buf;
     }
 
+    private ChannelBuffer newDirectBuffer(ByteOrder order, int capacity) {
+        if (unsafe) {
+            return new UnsafeDirectChannelBuffer(order, capacity);
+        }
+        return ChannelBuffers.directBuffer(order, capacity);
+    }
+
     private ChannelBuffer allocateBigEndianBuffer(int capacity) {
         ChannelBuffer slice;
         synchronized (bigEndianLock) {
             if (preallocatedBEBuf == null) {
-                preallocatedBEBuf = ChannelBuffers.directBuffer(ByteOrder.BIG_ENDIAN, preallocatedBufCapacity);
+                preallocatedBEBuf = newDirectBuffer(ByteOrder.BIG_ENDIAN, preallocatedBufCapacity);
                 slice = preallocatedBEBuf.slice(0, capacity);
                 preallocatedBEBufPos = capacity;
             } else if (preallocatedBEBuf.capacity() - preallocatedBEBufPos >= capacity) {
                 slice = preallocatedBEBuf.slice(preallocatedBEBufPos, capacity);
                 preallocatedBEBufPos += capacity;
             } else {
-                preallocatedBEBuf = ChannelBuffers.directBuffer(ByteOrder.BIG_ENDIAN, preallocatedBufCapacity);
+                preallocatedBEBuf = newDirectBuffer(ByteOrder.BIG_ENDIAN, preallocatedBufCapacity);
                 slice = preallocatedBEBuf.slice(0, capacity);
                 preallocatedBEBufPos = capacity;
             }
@@ -180,14 +225,14 @@ public class DirectChannelBufferFactory extends AbstractChannelBufferFactory {
         ChannelBuffer slice;
         synchronized (littleEndianLock) {
             if (preallocatedLEBuf == null) {
-                preallocatedLEBuf = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, preallocatedBufCapacity);
+                preallocatedLEBuf = newDirectBuffer(ByteOrder.LITTLE_ENDIAN, preallocatedBufCapacity);
                 slice = preallocatedLEBuf.slice(0, capacity);
                 preallocatedLEBufPos = capacity;
             } else if (preallocatedLEBuf.capacity() - preallocatedLEBufPos >= capacity) {
                 slice = preallocatedLEBuf.slice(preallocatedLEBufPos, capacity);
                 preallocatedLEBufPos += capacity;
             } else {
-                preallocatedLEBuf = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, preallocatedBufCapacity);
+                preallocatedLEBuf = newDirectBuffer(ByteOrder.LITTLE_ENDIAN, preallocatedBufCapacity);
                 slice = preallocatedLEBuf.slice(0, capacity);
                 preallocatedLEBufPos = capacity;
             }
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * A read-only big-endian buffer whose content is a region of a file mapped
+ * into memory.  The region is mapped as a series of
+ * {@link java.nio.MappedByteBuffer}s, so it may start at any position of a
+ * file larger than 2 GiB.  Slicing and duplicating this buffer never copies
+ * the content, and {@link #toByteBuffers(int, int)} returns views of the
+ * mapped regions, which lets the NIO transport write them to a socket
+ * directly.  It is recommended to use
+ * {@link ChannelBuffers#wrappedMappedFile(FileChannel, long, long)} instead
+ * of calling the constructor explicitly.
+ * <p>
+ * Please note that the mapping stays valid until the buffer and all its
+ * derived buffers are garbage collected, even if the {@link FileChannel} is
+ * closed in the meantime.
+ */
+public class MappedFileChannelBuffer extends AbstractChannelBuffer {
+
+    private static final int DEFAULT_REGION_SHIFT = 30;
+
+    private final ByteBuffer[] regions;
+    private final int regionShift;
+    private final int regionMask;
+    private final int offset;
+    private final int capacity;
+
+    /**
+     * Creates a new buffer which maps {@code length} bytes of the specified
+     * file starting at {@code position}.
+     *
+     * @throws IllegalArgumentException if {@code length} is greater than
+     *                                  {@link Integer#MAX_VALUE}
+     * @throws IOException if failed to map the file
+     */
+    public MappedFileChannelBuffer(FileChannel channel, long position, long length) throws IOException {
+        this(channel, position, length, DEFAULT_REGION_SHIFT);
+    }
+
+    MappedFileChannelBuffer(FileChannel channel, long position, long length, int regionShift)
+            throws IOException {
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("position: " + position + " (expected: 0+)");
+        }
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "length: " + length + " (expected: 0-" + Integer.MAX_VALUE + ')');
+        }
+
+        long regionSize = 1L << regionShift;
+        regions = new ByteBuffer[(int) (length + regionSize - 1 >>> regionShift)];
+        for (int i = 0; i < regions.length; i ++) {
+            long start = i * regionSize;
+            regions[i] = channel.map(MapMode.READ_ONLY, position + start, Math.min(regionSize, length - start));
+        }
+
+        this.regionShift = regionShift;
+        regionMask = (int) regionSize - 1;
+        offset = 0;
+        capacity = (int) length;
+        writerIndex(capacity);
+    }
+
+    private MappedFileChannelBuffer(ByteBuffer[] regions, int regionShift, int offset, int capacity) {
+        this.regions = regions;
+        this.regionShift = regionShift;
+        regionMask = (1 << regionShift) - 1;
+        this.offset = offset;
+        this.capacity = capacity;
+        writerIndex(capacity);
+    }
+
+    public ChannelBufferFactory factory() {
+        return DirectChannelBufferFactory.getInstance(order());
+    }
+
+    public ByteOrder order() {
+        return ByteOrder.BIG_ENDIAN;
+    }
+
+    public boolean isDirect() {
+        return true;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean hasArray() {
+        return false;
+    }
+
+    public byte[] array() {
+        throw new ReadOnlyBufferException();
+    }
+
+    public int arrayOffset() {
+        throw new ReadOnlyBufferException();
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        int i = offset + index;
+        return region(i).get(i & regionMask);
+    }
+
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        int i = offset + index;
+        ByteBuffer region = region(i);
+        int pos = i & regionMask;
+        if (pos + 2 <= region.limit()) {
+            return region.getShort(pos);
+        }
+        return (short) ((getByte(index) & 0xff) << 8 | getByte(index + 1) & 0xff);
+    }
+
+    public int getUnsignedMedium(int index) {
+        checkIndex(index, 3);
+        return (getByte(index)     & 0xff) << 16 |
+               (getByte(index + 1) & 0xff) <<  8 |
+                getByte(index + 2) & 0xff;
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        int i = offset + index;
+        ByteBuffer region = region(i);
+        int pos = i & regionMask;
+        if (pos + 4 <= region.limit()) {
+            return region.getInt(pos);
+        }
+        return (getShort(index) & 0xffff) << 16 | getShort(index + 2) & 0xffff;
+    }
+
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        int i = offset + index;
+        ByteBuffer region = region(i);
+        int pos = i & regionMask;
+        if (pos + 8 <= region.limit()) {
+            return region.getLong(pos);
+        }
+        return (getInt(index) & 0xffffffffL) << 32 | getInt(index + 4) & 0xffffffffL;
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dstIndex < 0 || dstIndex > dst.capacity() - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to be read - Needs "
+                    + (dstIndex + length) + ", maximum is " + dst.capacity());
+        }
+        while (length > 0) {
+            ByteBuffer src = regionSlice(index, length);
+            int localLength = src.remaining();
+            dst.setBytes(dstIndex, src);
+            index += localLength;
+            dstIndex += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dstIndex < 0 || dstIndex > dst.length - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to be read - Needs "
+                    + (dstIndex + length) + ", maximum is " + dst.length);
+        }
+        while (length > 0) {
+            ByteBuffer src = regionSlice(index, length);
+            int localLength = src.remaining();
+            src.get(dst, dstIndex, localLength);
+            index += localLength;
+            dstIndex += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        int length = Math.min(capacity - index, dst.remaining());
+        checkIndex(index, length);
+        while (length > 0) {
+            ByteBuffer src = regionSlice(index, length);
+            int localLength = src.remaining();
+            dst.put(src);
+            index += localLength;
+            length -= localLength;
+        }
+    }
+
+    public void getBytes(int index, OutputStream out, int length) throws IOException {
+        checkIndex(index, length);
+        byte[] tmp = new byte[Math.min(length, 8192)];
+        while (length > 0) {
+            int localLength = Math.min(length, tmp.length);
+            getBytes(index, tmp, 0, localLength);
+            out.write(tmp, 0, localLength);
+            index += localLength;
+            length -= localLength;
+        }
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        checkIndex(index, length);
+        int writtenBytes = 0;
+        while (length > 0) {
+            ByteBuffer src = regionSlice(index, length);
+            int localLength = src.remaining();
+            int localWrittenBytes = out.write(src);
+            writtenBytes += localWrittenBytes;
+            if (localWrittenBytes < localLength) {
+                break;
+            }
+            index += localLength;
+            length -= localLength;
+        }
+        return writtenBytes;
+    }
+
+    @Override
+    public void discardReadBytes() {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setByte(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setShort(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setMedium(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setInt(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setLong(int index, long value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public int setBytes(int index, InputStream in, int length) throws IOException {
+        throw new ReadOnlyBufferException();
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+        throw new ReadOnlyBufferException();
+    }
+
+    public ChannelBuffer duplicate() {
+        ChannelBuffer duplicate = new MappedFileChannelBuffer(regions, regionShift, offset, capacity);
+        duplicate.setIndex(readerIndex(), writerIndex());
+        return duplicate;
+    }
+
+    /**
+     * Copies the specified region of this buffer into a new heap buffer.
+     */
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        ChannelBuffer copy = ChannelBuffers.buffer(order(), length);
+        copy.writeBytes(this, index, length);
+        return copy;
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+
+        // Keep only the regions which are covered by the slice.
+        int start = offset + index;
+        int firstRegion = start >>> regionShift;
+        int lastRegion = start + length - 1 >>> regionShift;
+        ByteBuffer[] sliceRegions = new ByteBuffer[lastRegion - firstRegion + 1];
+        System.arraycopy(regions, firstRegion, sliceRegions, 0, sliceRegions.length);
+        return new MappedFileChannelBuffer(sliceRegions, regionShift, start & regionMask, length);
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        ByteBuffer first = regionSlice(index, length);
+        if (first.remaining() == length) {
+            return first;
+        }
+
+        // The range spans more than one region.
+        ByteBuffer merged = ByteBuffer.allocate(length);
+        getBytes(index, merged);
+        merged.flip();
+        return merged;
+    }
+
+    @Override
+    public ByteBuffer[] toByteBuffers(int index, int length) {
+        checkIndex(index, length);
+        int start = offset + index;
+        int count = length == 0 ? 0 : (start + length - 1 >>> regionShift) - (start >>> regionShift) + 1;
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i ++) {
+            ByteBuffer src = regionSlice(index, length);
+            int localLength = src.remaining();
+            buffers[i] = src;
+            index += localLength;
+            length -= localLength;
+        }
+        return buffers;
+    }
+
+    private ByteBuffer region(int i) {
+        return regions[i >>> regionShift];
+    }
+
+    /**
+     * Returns a read-only view of the bytes starting at {@code index} up to
+     * {@code length} bytes or the end of the region which contains
+     * {@code index}, whichever comes first.
+     */
+    private ByteBuffer regionSlice(int index, int length) {
+        int i = offset + index;
+        ByteBuffer region = region(i);
+        int pos = i & regionMask;
+        int localLength = Math.min(length, region.limit() - pos);
+        ByteBuffer slice = region.duplicate();
+        slice.limit(pos + localLength).position(pos);
+        return slice.slice();
+    }
+
+    private void checkIndex(int index, int length) {
+        if ((index | length | index + length | capacity - (index + length)) < 0) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", length: " + length + ", maximum is " + capacity);
+        }
+    }
+}
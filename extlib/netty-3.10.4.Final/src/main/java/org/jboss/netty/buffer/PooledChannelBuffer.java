@@ -0,0 +1,306 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A {@link ReleasableChannelBuffer} which exposes the first {@code capacity}
+ * bytes of a chunk borrowed from a {@link PooledChannelBufferFactory}.  The
+ * chunk is handed back to the factory when the reference count drops to
+ * {@code 0}.  Use {@link PooledChannelBufferFactory#getBuffer(int)} instead of
+ * calling the constructor explicitly.
+ */
+final class PooledChannelBuffer extends AbstractChannelBuffer
+        implements WrappedChannelBuffer, ReleasableChannelBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledChannelBuffer> refCntUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(PooledChannelBuffer.class, "refCnt");
+
+    private final PooledChannelBufferFactory factory;
+    private final PooledChannelBufferFactory.ThreadCache cache;
+    private final int sizeClass;
+    private final int capacity;
+    private ChannelBuffer chunk;
+    private volatile int refCnt = 1;
+
+    PooledChannelBuffer(
+            PooledChannelBufferFactory factory, PooledChannelBufferFactory.ThreadCache cache,
+            int sizeClass, ChannelBuffer chunk, int capacity) {
+        this.factory = factory;
+        this.cache = cache;
+        this.sizeClass = sizeClass;
+        this.chunk = chunk;
+        this.capacity = capacity;
+    }
+
+    public int refCnt() {
+        return refCnt;
+    }
+
+    public ReleasableChannelBuffer retain() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalStateException("buffer released already");
+            }
+            if (refCnt == Integer.MAX_VALUE) {
+                throw new IllegalStateException("reference count overflow");
+            }
+            if (refCntUpdater.compareAndSet(this, refCnt, refCnt + 1)) {
+                return this;
+            }
+        }
+    }
+
+    public boolean release() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalStateException("buffer released already");
+            }
+            if (refCntUpdater.compareAndSet(this, refCnt, refCnt - 1)) {
+                if (refCnt == 1) {
+                    ChannelBuffer chunk = this.chunk;
+                    this.chunk = null;
+                    factory.free(cache, sizeClass, chunk);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    public ChannelBuffer unwrap() {
+        return chunk();
+    }
+
+    public ChannelBufferFactory factory() {
+        return factory;
+    }
+
+    public ByteOrder order() {
+        return factory.getDefaultOrder();
+    }
+
+    public boolean isDirect() {
+        return factory.isDirect();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean hasArray() {
+        return chunk().hasArray();
+    }
+
+    public byte[] array() {
+        return chunk().array();
+    }
+
+    public int arrayOffset() {
+        return chunk().arrayOffset();
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index);
+        return chunk().getByte(index);
+    }
+
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        return chunk().getShort(index);
+    }
+
+    public int getUnsignedMedium(int index) {
+        checkIndex(index, 3);
+        return chunk().getUnsignedMedium(index);
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        return chunk().getInt(index);
+    }
+
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        return chunk().getLong(index);
+    }
+
+    public ChannelBuffer duplicate() {
+        chunk();
+        return new DuplicatedChannelBuffer(this);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        ChannelBuffer copy = factory.getBuffer(order(), length);
+        copy.writeBytes(this, index, length);
+        return copy;
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        checkIndex(index, length);
+        chunk();
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        return new SlicedChannelBuffer(this, index, length);
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        chunk().getBytes(index, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        chunk().getBytes(index, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        int length = Math.min(capacity - index, dst.remaining());
+        checkIndex(index, length);
+        if (length == dst.remaining()) {
+            chunk().getBytes(index, dst);
+        } else {
+            // The chunk is larger than this buffer - do not copy past the capacity.
+            int limit = dst.limit();
+            dst.limit(dst.position() + length);
+            try {
+                chunk().getBytes(index, dst);
+            } finally {
+                dst.limit(limit);
+            }
+        }
+    }
+
+    public void setByte(int index, int value) {
+        checkIndex(index);
+        chunk().setByte(index, value);
+    }
+
+    public void setShort(int index, int value) {
+        checkIndex(index, 2);
+        chunk().setShort(index, value);
+    }
+
+    public void setMedium(int index, int value) {
+        checkIndex(index, 3);
+        chunk().setMedium(index, value);
+    }
+
+    public void setInt(int index, int value) {
+        checkIndex(index, 4);
+        chunk().setInt(index, value);
+    }
+
+    public void setLong(int index, long value) {
+        checkIndex(index, 8);
+        chunk().setLong(index, value);
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkIndex(index, length);
+        chunk().setBytes(index, src, srcIndex, length);
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        checkIndex(index, length);
+        chunk().setBytes(index, src, srcIndex, length);
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        checkIndex(index, src.remaining());
+        chunk().setBytes(index, src);
+    }
+
+    public void getBytes(int index, OutputStream out, int length)
+            throws IOException {
+        checkIndex(index, length);
+        chunk().getBytes(index, out, length);
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length)
+            throws IOException {
+        checkIndex(index, length);
+        return chunk().getBytes(index, out, length);
+    }
+
+    public int setBytes(int index, InputStream in, int length)
+            throws IOException {
+        checkIndex(index, length);
+        return chunk().setBytes(index, in, length);
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length)
+            throws IOException {
+        checkIndex(index, length);
+        return chunk().setBytes(index, in, length);
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        return chunk().toByteBuffer(index, length);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' +
+               "ridx=" + readerIndex() + ", " +
+               "widx=" + writerIndex() + ", " +
+               "cap=" + capacity + ", " +
+               "refCnt=" + refCnt +
+               ')';
+    }
+
+    private ChannelBuffer chunk() {
+        ChannelBuffer chunk = this.chunk;
+        if (chunk == null) {
+            throw new IllegalStateException("buffer released already");
+        }
+        return chunk;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", maximum is " + capacity);
+        }
+    }
+
+    private void checkIndex(int startIndex, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException(
+                    "length is negative: " + length);
+        }
+        if (startIndex < 0) {
+            throw new IndexOutOfBoundsException("startIndex cannot be negative");
+        }
+        if (startIndex + length > capacity) {
+            throw new IndexOutOfBoundsException("Index too big - Bytes needed: "
+                    + (startIndex + length) + ", maximum is " + capacity);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ChannelBufferFactory} which recycles the memory of the buffers it
+ * returns.  Every buffer whose capacity does not exceed
+ * {@link #getMaxPooledCapacity()} is a {@link ReleasableChannelBuffer}, backed
+ * by a chunk whose size is the capacity rounded up to the next power of two.
+ * When such a buffer is {@linkplain ReleasableChannelBuffer#release() released}
+ * by the thread which allocated it, its chunk goes back to a small cache of
+ * that thread.  Otherwise, or if the thread cache is full, the chunk goes back
+ * to the arena it was allocated from.  Each thread is bound to one of several arenas in a round-robin
+ * fashion so that the threads of a busy application rarely contend for the same
+ * arena lock.
+ * <p>
+ * Larger buffers and buffers whose byte order differs from the
+ * {@linkplain #getDefaultOrder() default order} are allocated as usual and
+ * are not pooled.
+ * <p>
+ * Unlike {@link HeapChannelBufferFactory}, the content of a newly returned
+ * buffer is not guaranteed to be zero-filled because its chunk may have been
+ * used before.
+ *
+ * <h3>Configuration</h3>
+ *
+ * A factory can be set per channel via
+ * {@link org.jboss.netty.channel.ChannelConfig#setBufferFactory(ChannelBufferFactory)}
+ * or the {@code "bufferFactory"} bootstrap option.  The defaults of the no-arg
+ * constructors can be changed with the following system properties:
+ * <ul>
+ * <li>{@code org.jboss.netty.buffer.pooled.maxCapacity} - the largest capacity
+ *     which is pooled (default: {@code 65536})</li>
+ * <li>{@code org.jboss.netty.buffer.pooled.arenas} - the number of arenas
+ *     (default: twice the number of available processors)</li>
+ * <li>{@code org.jboss.netty.buffer.pooled.threadCacheSize} - the maximum number
+ *     of bytes cached per size class and thread (default: {@code 262144})</li>
+ * <li>{@code org.jboss.netty.buffer.pooled.arenaSize} - the maximum number of
+ *     bytes retained per size class and arena (default: {@code 4194304})</li>
+ * </ul>
+ *
+ * @apiviz.has org.jboss.netty.buffer.ReleasableChannelBuffer oneway - - creates
+ */
+public class PooledChannelBufferFactory extends AbstractChannelBufferFactory {
+
+    private static final int MIN_CHUNK_SHIFT = 6;
+    private static final int MIN_CHUNK_SIZE = 1 << MIN_CHUNK_SHIFT;
+    private static final int MAX_CACHED_CHUNKS = 1024;
+
+    private static final int DEFAULT_MAX_POOLED_CAPACITY =
+            SystemPropertyUtil.getInt("org.jboss.netty.buffer.pooled.maxCapacity", 65536);
+    private static final int DEFAULT_ARENAS =
+            SystemPropertyUtil.getInt("org.jboss.netty.buffer.pooled.arenas",
+                    Runtime.getRuntime().availableProcessors() * 2);
+    private static final int DEFAULT_THREAD_CACHE_SIZE =
+            SystemPropertyUtil.getInt("org.jboss.netty.buffer.pooled.threadCacheSize", 262144);
+    private static final int DEFAULT_ARENA_SIZE =
+            SystemPropertyUtil.getInt("org.jboss.netty.buffer.pooled.arenaSize", 4194304);
+
+    private static final PooledChannelBufferFactory INSTANCE_BE =
+        new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN);
+
+    private static final PooledChannelBufferFactory INSTANCE_LE =
+        new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Returns the shared heap buffer factory whose default {@link ByteOrder}
+     * is {@link ByteOrder#BIG_ENDIAN}.
+     */
+    public static ChannelBufferFactory getInstance() {
+        return INSTANCE_BE;
+    }
+
+    /**
+     * Returns the shared heap buffer factory with the specified default
+     * {@link ByteOrder}.
+     */
+    public static ChannelBufferFactory getInstance(ByteOrder endianness) {
+        if (endianness == ByteOrder.BIG_ENDIAN) {
+            return INSTANCE_BE;
+        } else if (endianness == ByteOrder.LITTLE_ENDIAN) {
+            return INSTANCE_LE;
+        } else if (endianness == null) {
+            throw new NullPointerException("endianness");
+        } else {
+            throw new IllegalStateException("Should not reach here");
+        }
+    }
+
+    private final boolean direct;
+    private final int maxPooledCapacity;
+    private final int threadCacheSize;
+    private final int arenaSize;
+    private final Arena[] arenas;
+    private final AtomicInteger nextArena = new AtomicInteger();
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(arenas[Math.abs(nextArena.getAndIncrement() % arenas.length)]);
+        }
+    };
+
+    /**
+     * Creates a new heap buffer factory whose default {@link ByteOrder} is
+     * {@link ByteOrder#BIG_ENDIAN}.
+     */
+    public PooledChannelBufferFactory() {
+        this(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Creates a new heap buffer factory with the specified default
+     * {@link ByteOrder}.
+     *
+     * @param defaultOrder the default {@link ByteOrder} of this factory
+     */
+    public PooledChannelBufferFactory(ByteOrder defaultOrder) {
+        this(defaultOrder, false);
+    }
+
+    /**
+     * Creates a new factory with the specified default {@link ByteOrder}.
+     *
+     * @param defaultOrder the default {@link ByteOrder} of this factory
+     * @param direct       {@code true} to pool direct buffers,
+     *                     {@code false} to pool heap buffers
+     */
+    public PooledChannelBufferFactory(ByteOrder defaultOrder, boolean direct) {
+        this(defaultOrder, direct, DEFAULT_MAX_POOLED_CAPACITY, DEFAULT_ARENAS,
+             DEFAULT_THREAD_CACHE_SIZE, DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * Creates a new factory.
+     *
+     * @param defaultOrder      the default {@link ByteOrder} of this factory
+     * @param direct            {@code true} to pool direct buffers,
+     *                          {@code false} to pool heap buffers
+     * @param maxPooledCapacity the largest capacity which is pooled; rounded up
+     *                          to the next power of two
+     * @param arenas            the number of arenas shared by all threads
+     * @param threadCacheSize   the maximum number of bytes each thread caches
+     *                          per size class ({@code 0} disables thread caches)
+     * @param arenaSize         the maximum number of bytes each arena retains
+     *                          per size class
+     */
+    public PooledChannelBufferFactory(
+            ByteOrder defaultOrder, boolean direct,
+            int maxPooledCapacity, int arenas, int threadCacheSize, int arenaSize) {
+        super(defaultOrder);
+        if (maxPooledCapacity < MIN_CHUNK_SIZE || maxPooledCapacity > 1 << 30) {
+            throw new IllegalArgumentException(
+                    "maxPooledCapacity: " + maxPooledCapacity +
+                    " (expected: " + MIN_CHUNK_SIZE + "-" + (1 << 30) + ')');
+        }
+        if (arenas <= 0) {
+            throw new IllegalArgumentException(
+                    "arenas: " + arenas + " (expected: > 0)");
+        }
+        if (threadCacheSize < 0) {
+            throw new IllegalArgumentException(
+                    "threadCacheSize: " + threadCacheSize + " (expected: >= 0)");
+        }
+        if (arenaSize < 0) {
+            throw new IllegalArgumentException(
+                    "arenaSize: " + arenaSize + " (expected: >= 0)");
+        }
+
+        this.direct = direct;
+        this.maxPooledCapacity = chunkSize(sizeClass(maxPooledCapacity));
+        this.threadCacheSize = threadCacheSize;
+        this.arenaSize = arenaSize;
+
+        int sizeClasses = sizeClass(this.maxPooledCapacity) + 1;
+        this.arenas = new Arena[arenas];
+        for (int i = 0; i < arenas; i ++) {
+            this.arenas[i] = new Arena(sizeClasses);
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if this factory pools direct buffers.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Returns the largest capacity of a buffer which is pooled by this factory.
+     */
+    public int getMaxPooledCapacity() {
+        return maxPooledCapacity;
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+        if (order == null) {
+            throw new NullPointerException("order");
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (capacity == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (capacity > maxPooledCapacity || order != getDefaultOrder()) {
+            return newChunk(order, capacity);
+        }
+
+        int sizeClass = sizeClass(capacity);
+        ThreadCache cache = threadCache.get();
+        Arena arena = cache.arena;
+        ChannelBuffer chunk = cache.poll(sizeClass);
+        if (chunk == null) {
+            chunk = arena.poll(sizeClass);
+            if (chunk == null) {
+                chunk = newChunk(order, chunkSize(sizeClass));
+            }
+        }
+        return new PooledChannelBuffer(this, cache, sizeClass, chunk, capacity);
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+        if (array == null) {
+            throw new NullPointerException("array");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException("offset: " + offset);
+        }
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (offset + length > array.length) {
+            throw new IndexOutOfBoundsException("length: " + length);
+        }
+        if (!direct) {
+            return ChannelBuffers.wrappedBuffer(order, array, offset, length);
+        }
+
+        ChannelBuffer buf = getBuffer(order, length);
+        buf.writeBytes(array, offset, length);
+        return buf;
+    }
+
+    public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+        if (direct ? !nioBuffer.isReadOnly() && nioBuffer.isDirect() : nioBuffer.hasArray()) {
+            return ChannelBuffers.wrappedBuffer(nioBuffer);
+        }
+
+        ChannelBuffer buf = getBuffer(nioBuffer.order(), nioBuffer.remaining());
+        int pos = nioBuffer.position();
+        buf.writeBytes(nioBuffer);
+        nioBuffer.position(pos);
+        return buf;
+    }
+
+    /**
+     * Gives the chunk of a released {@link PooledChannelBuffer} back to the
+     * specified cache if it belongs to the current thread, or to the arena
+     * of the cache otherwise.
+     */
+    void free(ThreadCache cache, int sizeClass, ChannelBuffer chunk) {
+        if (threadCache.get() == cache && cache.offer(sizeClass, chunk)) {
+            return;
+        }
+        cache.arena.offer(sizeClass, chunk);
+    }
+
+    private ChannelBuffer newChunk(ByteOrder order, int capacity) {
+        if (direct) {
+            return ChannelBuffers.directBuffer(order, capacity);
+        } else {
+            return ChannelBuffers.buffer(order, capacity);
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= MIN_CHUNK_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_CHUNK_SHIFT;
+    }
+
+    private static int chunkSize(int sizeClass) {
+        return MIN_CHUNK_SIZE << sizeClass;
+    }
+
+    private static int maxChunks(int bytes, int sizeClass) {
+        return Math.min(MAX_CACHED_CHUNKS, bytes >>> (sizeClass + MIN_CHUNK_SHIFT));
+    }
+
+    /**
+     * A bounded stack of free chunks per size class.  The arrays are created
+     * on the first release of a chunk of the size class.
+     */
+    private static class ChunkStack {
+        final ChannelBuffer[][] chunks;
+        final int[] sizes;
+
+        ChunkStack(int sizeClasses) {
+            chunks = new ChannelBuffer[sizeClasses][];
+            sizes = new int[sizeClasses];
+        }
+
+        final ChannelBuffer pop(int sizeClass) {
+            int size = sizes[sizeClass];
+            if (size == 0) {
+                return null;
+            }
+            ChannelBuffer[] stack = chunks[sizeClass];
+            ChannelBuffer chunk = stack[-- size];
+            stack[size] = null;
+            sizes[sizeClass] = size;
+            return chunk;
+        }
+
+        final boolean push(int sizeClass, ChannelBuffer chunk, int maxChunks) {
+            ChannelBuffer[] stack = chunks[sizeClass];
+            if (stack == null) {
+                if (maxChunks == 0) {
+                    return false;
+                }
+                chunks[sizeClass] = stack = new ChannelBuffer[maxChunks];
+            }
+            int size = sizes[sizeClass];
+            if (size == stack.length) {
+                return false;
+            }
+            stack[size] = chunk;
+            sizes[sizeClass] = size + 1;
+            return true;
+        }
+    }
+
+    /**
+     * A pool of free chunks which is shared by all threads bound to it.
+     */
+    private final class Arena extends ChunkStack {
+
+        Arena(int sizeClasses) {
+            super(sizeClasses);
+        }
+
+        synchronized ChannelBuffer poll(int sizeClass) {
+            return pop(sizeClass);
+        }
+
+        synchronized void offer(int sizeClass, ChannelBuffer chunk) {
+            // Discard the chunk if the arena is full; it will be garbage-collected.
+            push(sizeClass, chunk, maxChunks(arenaSize, sizeClass));
+        }
+    }
+
+    /**
+     * A pool of free chunks which is accessed only by its owner thread.
+     */
+    final class ThreadCache extends ChunkStack {
+
+        final Arena arena;
+
+        ThreadCache(Arena arena) {
+            super(arena.chunks.length);
+            this.arena = arena;
+        }
+
+        ChannelBuffer poll(int sizeClass) {
+            return pop(sizeClass);
+        }
+
+        boolean offer(int sizeClass, ChannelBuffer chunk) {
+            return push(sizeClass, chunk, maxChunks(threadCacheSize, sizeClass));
+        }
+    }
+}
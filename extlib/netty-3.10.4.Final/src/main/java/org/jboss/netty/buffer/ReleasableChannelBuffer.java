@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+/**
+ * A reference-counted {@link ChannelBuffer} whose memory is returned to the
+ * {@link ChannelBufferFactory} it came from when it is released.
+ *
+ * <h3>Reference counting</h3>
+ *
+ * A newly allocated buffer has a reference count of {@code 1}.
+ * {@link #retain()} increases the count and {@link #release()} decreases it.
+ * When the count reaches {@code 0}, the memory of the buffer is handed back to
+ * its factory and any further access to the buffer, or to a buffer derived from
+ * it via {@link #slice()} or {@link #duplicate()}, raises an
+ * {@link IllegalStateException}.
+ *
+ * <h3>Ownership</h3>
+ *
+ * A releasable buffer which is written to a channel is released by the
+ * transport once it has been written or the write has failed.  A releasable
+ * buffer received by a {@link org.jboss.netty.handler.codec.frame.FrameDecoder}
+ * is released by the decoder once it has been consumed.  Anyone else who
+ * allocates a releasable buffer should call {@link #release()} when done.
+ * Forgetting to release a buffer does not leak memory; the buffer is garbage
+ * collected as usual and simply does not go back to its pool.
+ */
+public interface ReleasableChannelBuffer extends ChannelBuffer {
+
+    /**
+     * Returns the current reference count of this buffer.  {@code 0} means
+     * the buffer has been released already.
+     */
+    int refCnt();
+
+    /**
+     * Increases the reference count of this buffer by {@code 1}.
+     *
+     * @return this buffer
+     *
+     * @throws IllegalStateException if this buffer has been released already
+     */
+    ReleasableChannelBuffer retain();
+
+    /**
+     * Decreases the reference count of this buffer by {@code 1} and returns
+     * its memory to the factory if the reference count reaches {@code 0}.
+     *
+     * @return {@code true} if and only if this call released the buffer
+     *
+     * @throws IllegalStateException if this buffer has been released already
+     */
+    boolean release();
+}
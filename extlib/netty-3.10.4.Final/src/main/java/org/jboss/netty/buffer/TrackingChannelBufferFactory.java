@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link ChannelBufferFactory} which hands the buffers of another factory to
+ * a {@link ChannelBufferTracker}.
+ */
+final class TrackingChannelBufferFactory implements ChannelBufferFactory {
+
+    final ChannelBufferTracker tracker;
+    final ChannelBufferFactory delegate;
+    final ChannelBufferTracker.Owner owner;
+
+    TrackingChannelBufferFactory(
+            ChannelBufferTracker tracker, ChannelBufferFactory delegate, ChannelBufferTracker.Owner owner) {
+        this.tracker = tracker;
+        this.delegate = delegate;
+        this.owner = owner;
+    }
+
+    public ChannelBuffer getBuffer(int capacity) {
+        return tracker.allocated(delegate.getBuffer(capacity), owner);
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder endianness, int capacity) {
+        return tracker.allocated(delegate.getBuffer(endianness, capacity), owner);
+    }
+
+    public ChannelBuffer getBuffer(byte[] array, int offset, int length) {
+        return tracker.allocated(delegate.getBuffer(array, offset, length), owner);
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder endianness, byte[] array, int offset, int length) {
+        return tracker.allocated(delegate.getBuffer(endianness, array, offset, length), owner);
+    }
+
+    public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+        return tracker.allocated(delegate.getBuffer(nioBuffer), owner);
+    }
+
+    public ByteOrder getDefaultOrder() {
+        return delegate.getDefaultOrder();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + delegate + ')';
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+import org.jboss.netty.util.internal.UnsafeUtil;
+
+/**
+ * A direct buffer which accesses its memory by address via
+ * {@code sun.misc.Unsafe} instead of going through the accessors of
+ * {@link ByteBuffer}.  Every access performs a single range check against the
+ * capacity of the buffer and swaps the byte order only when the buffer order
+ * differs from the native order.  A slice of this buffer is again an
+ * {@link UnsafeDirectChannelBuffer} which points into the same memory.
+ * <p>
+ * This buffer can be used only if {@link #isAvailable()} returns {@code true}.
+ * It is recommended to use a {@link DirectChannelBufferFactory} which prefers
+ * {@code sun.misc.Unsafe} instead of calling the constructor explicitly.  The
+ * factory falls back to {@link ByteBufferBackedChannelBuffer} automatically.
+ */
+public class UnsafeDirectChannelBuffer extends AbstractChannelBuffer {
+
+    /**
+     * Returns {@code true} if and only if {@code sun.misc.Unsafe} is available
+     * and therefore a new {@link UnsafeDirectChannelBuffer} can be created.
+     */
+    public static boolean isAvailable() {
+        return UnsafeUtil.isAvailable();
+    }
+
+    private final ByteBuffer buffer;
+    private final long address;
+    private final ByteOrder order;
+    private final boolean swap;
+    private final int capacity;
+
+    /**
+     * Creates a new buffer with the specified {@code order} and
+     * {@code capacity}.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0}.
+     */
+    public UnsafeDirectChannelBuffer(ByteOrder order, int capacity) {
+        this(ByteBuffer.allocateDirect(capacity).order(order));
+        clear();
+    }
+
+    /**
+     * Creates a new buffer which wraps the specified direct buffer's slice.
+     */
+    public UnsafeDirectChannelBuffer(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer");
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is not a direct buffer");
+        }
+        if (!isAvailable()) {
+            throw new IllegalStateException("sun.misc.Unsafe is not available");
+        }
+
+        order = buffer.order();
+        swap = (order == ByteOrder.BIG_ENDIAN) != UnsafeUtil.BIG_ENDIAN_NATIVE_ORDER;
+        this.buffer = buffer.slice().order(order);
+        address = UnsafeUtil.directBufferAddress(this.buffer);
+        capacity = buffer.remaining();
+        writerIndex(capacity);
+    }
+
+    private UnsafeDirectChannelBuffer(UnsafeDirectChannelBuffer buffer) {
+        this.buffer = buffer.buffer;
+        address = buffer.address;
+        order = buffer.order;
+        swap = buffer.swap;
+        capacity = buffer.capacity;
+        setIndex(buffer.readerIndex(), buffer.writerIndex());
+    }
+
+    /**
+     * Returns the memory address of the first byte of this buffer.
+     */
+    long memoryAddress() {
+        return address;
+    }
+
+    public ChannelBufferFactory factory() {
+        return DirectChannelBufferFactory.getInstance(order);
+    }
+
+    public boolean isDirect() {
+        return true;
+    }
+
+    public ByteOrder order() {
+        return order;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean hasArray() {
+        return false;
+    }
+
+    public byte[] array() {
+        throw new UnsupportedOperationException();
+    }
+
+    public int arrayOffset() {
+        throw new UnsupportedOperationException();
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        return UnsafeUtil.getByte(address + index);
+    }
+
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        short value = UnsafeUtil.getShort(address + index);
+        return swap ? Short.reverseBytes(value) : value;
+    }
+
+    public int getUnsignedMedium(int index) {
+        checkIndex(index, 3);
+        long addr = address + index;
+        if (order == ByteOrder.BIG_ENDIAN) {
+            return (UnsafeUtil.getByte(addr)     & 0xff) << 16 |
+                   (UnsafeUtil.getByte(addr + 1) & 0xff) <<  8 |
+                    UnsafeUtil.getByte(addr + 2) & 0xff;
+        } else {
+            return  UnsafeUtil.getByte(addr)     & 0xff        |
+                   (UnsafeUtil.getByte(addr + 1) & 0xff) <<  8 |
+                   (UnsafeUtil.getByte(addr + 2) & 0xff) << 16;
+        }
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        int value = UnsafeUtil.getInt(address + index);
+        return swap ? Integer.reverseBytes(value) : value;
+    }
+
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        long value = UnsafeUtil.getLong(address + index);
+        return swap ? Long.reverseBytes(value) : value;
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dst instanceof UnsafeDirectChannelBuffer) {
+            UnsafeDirectChannelBuffer udst = (UnsafeDirectChannelBuffer) dst;
+            udst.checkIndex(dstIndex, length);
+            UnsafeUtil.copyMemory(address + index, udst.address + dstIndex, length);
+        } else if (dst.hasArray()) {
+            getBytes(index, dst.array(), dst.arrayOffset() + dstIndex, length);
+        } else {
+            dst.setBytes(dstIndex, internalNioBuffer(index, length));
+        }
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dstIndex < 0 || dstIndex > dst.length - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to write - Need "
+                    + (dstIndex + length) + ", maximum is " + dst.length);
+        }
+        UnsafeUtil.copyMemory(address + index, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        int bytesToCopy = Math.min(capacity - index, dst.remaining());
+        checkIndex(index, bytesToCopy);
+        dst.put(internalNioBuffer(index, bytesToCopy));
+    }
+
+    public void setByte(int index, int value) {
+        checkIndex(index, 1);
+        UnsafeUtil.putByte(address + index, (byte) value);
+    }
+
+    public void setShort(int index, int value) {
+        checkIndex(index, 2);
+        short v = (short) value;
+        UnsafeUtil.putShort(address + index, swap ? Short.reverseBytes(v) : v);
+    }
+
+    public void setMedium(int index, int value) {
+        checkIndex(index, 3);
+        long addr = address + index;
+        if (order == ByteOrder.BIG_ENDIAN) {
+            UnsafeUtil.putByte(addr,     (byte) (value >>> 16));
+            UnsafeUtil.putByte(addr + 1, (byte) (value >>>  8));
+            UnsafeUtil.putByte(addr + 2, (byte) value);
+        } else {
+            UnsafeUtil.putByte(addr,     (byte) value);
+            UnsafeUtil.putByte(addr + 1, (byte) (value >>>  8));
+            UnsafeUtil.putByte(addr + 2, (byte) (value >>> 16));
+        }
+    }
+
+    public void setInt(int index, int value) {
+        checkIndex(index, 4);
+        UnsafeUtil.putInt(address + index, swap ? Integer.reverseBytes(value) : value);
+    }
+
+    public void setLong(int index, long value) {
+        checkIndex(index, 8);
+        UnsafeUtil.putLong(address + index, swap ? Long.reverseBytes(value) : value);
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        checkIndex(index, length);
+        if (src instanceof UnsafeDirectChannelBuffer) {
+            UnsafeDirectChannelBuffer usrc = (UnsafeDirectChannelBuffer) src;
+            usrc.checkIndex(srcIndex, length);
+            UnsafeUtil.copyMemory(usrc.address + srcIndex, address + index, length);
+        } else if (src.hasArray()) {
+            setBytes(index, src.array(), src.arrayOffset() + srcIndex, length);
+        } else {
+            src.getBytes(srcIndex, internalNioBuffer(index, length));
+        }
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkIndex(index, length);
+        if (srcIndex < 0 || srcIndex > src.length - length) {
+            throw new IndexOutOfBoundsException("Too many bytes to read - Need "
+                    + (srcIndex + length) + ", maximum is " + src.length);
+        }
+        UnsafeUtil.copyMemory(src, srcIndex, address + index, length);
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        checkIndex(index, src.remaining());
+        internalNioBuffer(index, src.remaining()).put(src);
+    }
+
+    public void getBytes(int index, OutputStream out, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return;
+        }
+
+        byte[] tmp = new byte[length];
+        UnsafeUtil.copyMemory(address + index, tmp, 0, length);
+        out.write(tmp);
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return 0;
+        }
+
+        return out.write(internalNioBuffer(index, length));
+    }
+
+    public int setBytes(int index, InputStream in, int length)
+            throws IOException {
+        checkIndex(index, length);
+
+        byte[] tmp = new byte[length];
+        int readBytes = 0;
+        do {
+            int localReadBytes = in.read(tmp, readBytes, length - readBytes);
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+            readBytes += localReadBytes;
+        } while (readBytes < length);
+
+        UnsafeUtil.copyMemory(tmp, 0, address + index, readBytes);
+        return readBytes;
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length)
+            throws IOException {
+        checkIndex(index, length);
+
+        ByteBuffer slice = internalNioBuffer(index, length);
+        int readBytes = 0;
+
+        while (readBytes < length) {
+            int localReadBytes;
+            try {
+                localReadBytes = in.read(slice);
+            } catch (ClosedChannelException e) {
+                localReadBytes = -1;
+            }
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    return readBytes;
+                }
+            }
+            if (localReadBytes == 0) {
+                break;
+            }
+            readBytes += localReadBytes;
+        }
+
+        return readBytes;
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        if (index == 0 && length == capacity) {
+            return buffer.duplicate().order(order);
+        } else {
+            return internalNioBuffer(index, length).slice().order(order);
+        }
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        checkIndex(index, length);
+        if (index == 0 && length == capacity) {
+            ChannelBuffer slice = duplicate();
+            slice.setIndex(0, length);
+            return slice;
+        }
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        return new UnsafeDirectChannelBuffer(internalNioBuffer(index, length).order(order));
+    }
+
+    public ChannelBuffer duplicate() {
+        return new UnsafeDirectChannelBuffer(this);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        UnsafeDirectChannelBuffer copy = new UnsafeDirectChannelBuffer(
+                ByteBuffer.allocateDirect(length).order(order));
+        UnsafeUtil.copyMemory(address + index, copy.address, length);
+        return copy;
+    }
+
+    private ByteBuffer internalNioBuffer(int index, int length) {
+        return (ByteBuffer) buffer.duplicate().limit(index + length).position(index);
+    }
+
+    private void checkIndex(int index, int length) {
+        // A single check which also rejects a negative index or length.
+        if ((index | length | index + length | capacity - (index + length)) < 0) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", length: " + length + ", maximum is " + capacity);
+        }
+    }
+}
@@ -15,42 +15,28 @@
  */
 package org.jboss.netty.channel;
 
-import org.jboss.netty.util.internal.ConcurrentHashMap;
+import org.jboss.netty.buffer.ChannelBufferTracker;
 
 import java.net.SocketAddress;
-import java.util.Random;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * A skeletal {@link Channel} implementation.
  */
 public abstract class AbstractChannel implements Channel {
 
-    static final ConcurrentMap<Integer, Channel> allChannels = new ConcurrentHashMap<Integer, Channel>();
-
-    private static final Random random = new Random();
-
-    private static Integer allocateId(Channel channel) {
-        Integer id = random.nextInt();
-        for (;;) {
-            // Loop until a unique ID is acquired.
-            // It should be found in one loop practically.
-            if (allChannels.putIfAbsent(id, channel) == null) {
-                // Successfully acquired.
-                return id;
-            } else {
-                // Taken by other channel at almost the same moment.
-                id = id.intValue() + 1;
-            }
-        }
-    }
-
     private final Integer id;
+    /**
+     * {@code true} if {@link #id} was allocated by {@link ChannelIdBlock},
+     * which then keeps track of this channel while it is open.
+     */
+    final boolean idAllocated;
     private final Channel parent;
     private final ChannelFactory factory;
     private final ChannelPipeline pipeline;
     private final ChannelFuture succeededFuture = new SucceededChannelFuture(this);
+    private final ChannelFuture voidFuture = new VoidChannelFuture(this);
     private final ChannelCloseFuture closeFuture = new ChannelCloseFuture();
     private volatile int interestOps = OP_READ;
 
@@ -63,8 +49,18 @@ public abstract class AbstractChannel implements Channel {
     @SuppressWarnings("UnusedDeclaration")
     private volatile int unwritable;
 
+    private static final AtomicReferenceFieldUpdater<AbstractChannel, Object[]> ATTRIBUTES_UPDATER;
+    /**
+     * The attribute values indexed by {@link ChannelAttributeKey#index}.  The
+     * array is never modified once published; it is replaced with a modified
+     * copy instead.  {@code null} until an attribute is set.
+     */
+    private volatile Object[] attributes;
+
     static {
         UNWRITABLE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(AbstractChannel.class, "unwritable");
+        ATTRIBUTES_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+                AbstractChannel.class, Object[].class, "attributes");
     }
 
     /**
@@ -88,7 +84,8 @@ public abstract class AbstractChannel implements Channel {
         this.factory = factory;
         this.pipeline = pipeline;
 
-        id = allocateId(this);
+        id = ChannelIdBlock.allocate(this);
+        idAllocated = true;
 
         pipeline.attach(this, sink);
     }
@@ -113,6 +110,7 @@ public abstract class AbstractChannel implements Channel {
             ChannelPipeline pipeline, ChannelSink sink) {
 
         this.id = id;
+        idAllocated = false;
         this.parent = parent;
         this.factory = factory;
         this.pipeline = pipeline;
@@ -142,6 +140,13 @@ public abstract class AbstractChannel implements Channel {
         return succeededFuture;
     }
 
+    /**
+     * Returns the cached {@link VoidChannelFuture} instance.
+     */
+    protected ChannelFuture getVoidFuture() {
+        return voidFuture;
+    }
+
     /**
      * Returns the {@link FailedChannelFuture} whose cause is an
      * {@link UnsupportedOperationException}.
@@ -187,9 +192,14 @@ public abstract class AbstractChannel implements Channel {
      *                      closed yet
      */
     protected boolean setClosed() {
-        // Deallocate the current channel's ID from allChannels so that other
-        // new channels can use it.
-        allChannels.remove(id);
+        // Deallocate the current channel's ID so that other new channels can
+        // use it.
+        ChannelIdBlock.deallocate(id, this);
+
+        ChannelBufferTracker tracker = ChannelBufferTracker.getInstance();
+        if (tracker.isEnabled()) {
+            tracker.closed(getConfig().getBufferFactory(), this);
+        }
 
         return closeFuture.setClosed();
     }
@@ -359,6 +369,87 @@ public abstract class AbstractChannel implements Channel {
     public void setAttachment(Object attachment) {
         this.attachment = attachment;
     }
+
+    /**
+     * Returns the value of the specified attribute, or {@code null} if it
+     * is not set.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(ChannelAttributeKey<T> key) {
+        Object[] attributes = this.attributes;
+        int index = key.index;
+        if (attributes == null || index >= attributes.length) {
+            return null;
+        }
+        return (T) attributes[index];
+    }
+
+    /**
+     * Sets the value of the specified attribute.
+     *
+     * @param value the new value.  {@code null} to remove the attribute.
+     *
+     * @return the old value. {@code null} if the attribute was not set.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T setAttribute(ChannelAttributeKey<T> key, T value) {
+        int index = key.index;
+        for (;;) {
+            Object[] attributes = this.attributes;
+            Object oldValue = attributes == null || index >= attributes.length ? null : attributes[index];
+            if (oldValue == value) {
+                return value;
+            }
+            if (ATTRIBUTES_UPDATER.compareAndSet(this, attributes, newAttributes(attributes, index, value))) {
+                return (T) oldValue;
+            }
+        }
+    }
+
+    /**
+     * Sets the value of the specified attribute only when it is not set.
+     *
+     * @return {@code null} if the specified value was set.
+     *         The current value if the attribute was set already.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T setAttributeIfAbsent(ChannelAttributeKey<T> key, T value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+
+        int index = key.index;
+        for (;;) {
+            Object[] attributes = this.attributes;
+            if (attributes != null && index < attributes.length && attributes[index] != null) {
+                return (T) attributes[index];
+            }
+            if (ATTRIBUTES_UPDATER.compareAndSet(this, attributes, newAttributes(attributes, index, value))) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Removes the specified attribute.
+     *
+     * @return the removed value. {@code null} if the attribute was not set.
+     */
+    public <T> T removeAttribute(ChannelAttributeKey<T> key) {
+        return setAttribute(key, null);
+    }
+
+    private static Object[] newAttributes(Object[] attributes, int index, Object value) {
+        Object[] newAttributes;
+        if (attributes == null) {
+            newAttributes = new Object[index + 1];
+        } else {
+            newAttributes = new Object[Math.max(attributes.length, index + 1)];
+            System.arraycopy(attributes, 0, newAttributes, 0, attributes.length);
+        }
+        newAttributes[index] = value;
+        return newAttributes;
+    }
     /**
      * Returns the {@link String} representation of this channel.  The returned
      * string contains the {@linkplain #getId() ID}, {@linkplain #getLocalAddress() local address},
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The key of an attribute stored in an {@link AbstractChannel}.  Every key
+ * is assigned an index into the attribute array of the channels, so an
+ * attribute is accessed without any hash lookup.  As the arrays are as long
+ * as the highest index in use, keys are meant to be created once and kept
+ * in a constant:
+ * <pre>
+ * public static final {@link ChannelAttributeKey}&lt;Boolean&gt; LOGGED_IN =
+ *         new {@link ChannelAttributeKey}&lt;Boolean&gt;("loggedIn");
+ * ...
+ * channel.setAttribute(LOGGED_IN, true);
+ * </pre>
+ *
+ * @param <T> the type of the attribute value
+ */
+public final class ChannelAttributeKey<T> {
+
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
+    private final String name;
+    final int index;
+
+    /**
+     * Creates a new key.
+     *
+     * @param name the name of the attribute, used only for debugging
+     */
+    public ChannelAttributeKey(String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        this.name = name;
+        index = nextIndex.getAndIncrement();
+        if (index < 0) {
+            throw new IllegalStateException("too many attribute keys");
+        }
+    }
+
+    /**
+     * Returns the name of the attribute.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import org.jboss.netty.util.internal.ConcurrentHashMap;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A block of consecutive {@link Channel} IDs.  Every thread which creates
+ * channels takes the IDs from a block of its own, so that the global state
+ * is touched only once per {@value #SIZE} channels.  A block is not handed
+ * out again while any of its channels is open, which keeps the IDs of the
+ * open channels unique even after the ID space wrapped around.
+ * <p>
+ * The block of a thread which dies before using it up is released once the
+ * garbage collector has noticed the death; see {@link AllocatorRef}.
+ */
+final class ChannelIdBlock {
+
+    private static final int SHIFT = 6;
+    private static final int SIZE = 1 << SHIFT;
+    private static final int OFFSET_MASK = SIZE - 1;
+    private static final int INDEX_MASK = -1 >>> SHIFT;
+
+    /**
+     * The blocks which have open channels or are still being handed out,
+     * keyed by their index.
+     */
+    private static final ConcurrentMap<Integer, ChannelIdBlock> blocks =
+        new ConcurrentHashMap<Integer, ChannelIdBlock>();
+
+    private static final AtomicInteger nextIndex = new AtomicInteger(new Random().nextInt());
+
+    private static final ThreadLocal<Allocator> allocators = new ThreadLocal<Allocator>();
+
+    /**
+     * Receives the {@link AllocatorRef}s of the threads which have died.
+     */
+    private static final ReferenceQueue<Allocator> deadAllocators = new ReferenceQueue<Allocator>();
+
+    /**
+     * Keeps the {@link AllocatorRef}s reachable until they are enqueued.
+     */
+    private static final ConcurrentMap<AllocatorRef, Boolean> allocatorRefs =
+        new ConcurrentHashMap<AllocatorRef, Boolean>();
+
+    /**
+     * Allocates an ID for the specified channel.
+     */
+    static int allocate(Channel channel) {
+        Allocator allocator = allocators.get();
+        if (allocator == null) {
+            allocator = new Allocator();
+            allocators.set(allocator);
+        }
+        return allocator.allocate(channel);
+    }
+
+    /**
+     * Deallocates the ID of the specified channel.  Does nothing if it has
+     * been deallocated already or was not allocated by {@link #allocate(Channel)}.
+     */
+    static void deallocate(int id, Channel channel) {
+        ChannelIdBlock block = blocks.get(id >>> SHIFT);
+        if (block != null && block.channels.compareAndSet(id & OFFSET_MASK, channel, null)) {
+            block.release();
+        }
+    }
+
+    private static ChannelIdBlock newBlock() {
+        releaseBlocksOfDeadThreads();
+        for (;;) {
+            int index = nextIndex.getAndIncrement() & INDEX_MASK;
+            ChannelIdBlock block = new ChannelIdBlock(index);
+            if (blocks.putIfAbsent(index, block) == null) {
+                return block;
+            }
+            // Some channels with the IDs of the block are still open - skip it.
+        }
+    }
+
+    private static void releaseBlocksOfDeadThreads() {
+        for (;;) {
+            AllocatorRef ref = (AllocatorRef) deadAllocators.poll();
+            if (ref == null) {
+                break;
+            }
+            allocatorRefs.remove(ref);
+            ChannelIdBlock block = ref.block;
+            if (block != null) {
+                ref.block = null;
+                block.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the open channel with the specified ID, or {@code null}.
+     */
+    static Channel find(int id) {
+        ChannelIdBlock block = blocks.get(id >>> SHIFT);
+        if (block == null) {
+            return null;
+        }
+        return block.channels.get(id & OFFSET_MASK);
+    }
+
+    /**
+     * Returns a snapshot of the open channels whose IDs were allocated by
+     * {@link #allocate(Channel)}.  It scans all blocks, so it is expensive.
+     */
+    static List<Channel> openChannels() {
+        List<Channel> openChannels = new ArrayList<Channel>();
+        for (ChannelIdBlock block: blocks.values()) {
+            for (int i = 0; i < SIZE; i ++) {
+                Channel channel = block.channels.get(i);
+                if (channel != null) {
+                    openChannels.add(channel);
+                }
+            }
+        }
+        return openChannels;
+    }
+
+    private final int index;
+    private final AtomicReferenceArray<Channel> channels = new AtomicReferenceArray<Channel>(SIZE);
+    /**
+     * The number of open channels, plus one while the block is handed out.
+     */
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+    /**
+     * The offset of the next ID.  Accessed only by the thread which hands
+     * out the block.
+     */
+    private int next;
+
+    private ChannelIdBlock(int index) {
+        this.index = index;
+    }
+
+    private int add(Channel channel) {
+        int offset = next ++;
+        refCnt.incrementAndGet();
+        channels.set(offset, channel);
+        return index << SHIFT | offset;
+    }
+
+    private void release() {
+        if (refCnt.decrementAndGet() == 0) {
+            blocks.remove(index, this);
+        }
+    }
+
+    /**
+     * Hands out the IDs of a block to a single thread.  It is referenced
+     * only by the {@link ThreadLocal} of its thread, so it becomes
+     * unreachable when the thread dies.
+     */
+    private static final class Allocator {
+        private final AllocatorRef ref = new AllocatorRef(this);
+        private ChannelIdBlock block;
+
+        Allocator() {
+        }
+
+        int allocate(Channel channel) {
+            ChannelIdBlock block = this.block;
+            if (block == null) {
+                this.block = ref.block = block = newBlock();
+            }
+
+            int id = block.add(channel);
+            if (block.next == SIZE) {
+                // Exhausted - the block is released once all its channels are closed.
+                this.block = ref.block = null;
+                block.release();
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Remembers the block of an {@link Allocator}, so that the block can be
+     * released once the {@link Allocator} has been garbage-collected.
+     */
+    private static final class AllocatorRef extends WeakReference<Allocator> {
+        volatile ChannelIdBlock block;
+
+        AllocatorRef(Allocator allocator) {
+            super(allocator, deadAllocators);
+            allocatorRefs.put(this, Boolean.TRUE);
+        }
+    }
+}
@@ -17,8 +17,10 @@ package org.jboss.netty.channel;
 
 import org.jboss.netty.util.internal.ConcurrentIdentityWeakKeyHashMap;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
 
@@ -28,6 +30,12 @@ import java.util.concurrent.ConcurrentMap;
  * a {@link Thread#currentThread()}.  One difference is that you always have to
  * specify the {@link Channel} to access the variable.
  * <p>
+ * The value is stored in the {@linkplain AbstractChannel#getAttribute(ChannelAttributeKey)
+ * attributes} of the {@link Channel}, so that getting it is as cheap as an
+ * array access.  Only the channels which do not extend {@link AbstractChannel}
+ * fall back to a global map.  Like {@link ChannelAttributeKey}s, the instances
+ * are meant to be kept in constants.
+ * <p>
  * Alternatively, you might want to use the
  * {@link ChannelHandlerContext#setAttachment(Object) ChannelHandlerContext.attachment}
  * property, which performs better.
@@ -35,9 +43,22 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class ChannelLocal<T> implements Iterable<Entry<Channel, T>> {
 
+    private final ChannelAttributeKey<T> key = new ChannelAttributeKey<T>(getClass().getName());
+
+    /**
+     * The values of the channels which are not {@link AbstractChannel}s.
+     */
     private final ConcurrentMap<Channel, T> map =
         new ConcurrentIdentityWeakKeyHashMap<Channel, T>();
 
+    /**
+     * The {@link AbstractChannel}s created with an explicit ID which may have
+     * a value, so that {@link #iterator()} finds them although
+     * {@link ChannelIdBlock} does not keep track of them.
+     */
+    private final ConcurrentMap<Channel, Boolean> explicitIdChannels =
+        new ConcurrentIdentityWeakKeyHashMap<Channel, Boolean>();
+
     private final ChannelFutureListener remover = new ChannelFutureListener() {
         public void operationComplete(ChannelFuture future) throws Exception {
             remove(future.getChannel());
@@ -81,7 +102,12 @@ public class ChannelLocal<T> implements Iterable<Entry<Channel, T>> {
             throw new NullPointerException("channel");
         }
 
-        T value = map.get(channel);
+        T value;
+        if (channel instanceof AbstractChannel) {
+            value = ((AbstractChannel) channel).getAttribute(key);
+        } else {
+            value = map.get(channel);
+        }
         if (value == null) {
             value = initialValue(channel);
             if (value != null) {
@@ -106,8 +132,16 @@ public class ChannelLocal<T> implements Iterable<Entry<Channel, T>> {
             if (channel == null) {
                 throw new NullPointerException("channel");
             }
-            T old = map.put(channel, value);
-            if (removeOnClose) {
+            T old;
+            if (channel instanceof AbstractChannel) {
+                old = ((AbstractChannel) channel).setAttribute(key, value);
+                if (old == null) {
+                    registerExplicitId((AbstractChannel) channel);
+                }
+            } else {
+                old = map.put(channel, value);
+            }
+            if (old == null && removeOnClose) {
                 channel.getCloseFuture().addListener(remover);
             }
             return old;
@@ -127,9 +161,17 @@ public class ChannelLocal<T> implements Iterable<Entry<Channel, T>> {
             if (channel == null) {
                 throw new NullPointerException("channel");
             }
-            T mapping = map.putIfAbsent(channel, value);
+            T mapping;
+            if (channel instanceof AbstractChannel) {
+                mapping = ((AbstractChannel) channel).setAttributeIfAbsent(key, value);
+                if (mapping == null) {
+                    registerExplicitId((AbstractChannel) channel);
+                }
+            } else {
+                mapping = map.putIfAbsent(channel, value);
+            }
 
-            if (removeOnClose && mapping == null) {
+            if (mapping == null && removeOnClose) {
                 channel.getCloseFuture().addListener(remover);
             }
             return mapping;
@@ -149,11 +191,21 @@ public class ChannelLocal<T> implements Iterable<Entry<Channel, T>> {
         if (channel == null) {
             throw new NullPointerException("channel");
         }
-        T removed = map.remove(channel);
+        T removed;
+        if (channel instanceof AbstractChannel) {
+            removed = ((AbstractChannel) channel).removeAttribute(key);
+            if (removed != null) {
+                unregisterExplicitId((AbstractChannel) channel);
+            }
+        } else {
+            removed = map.remove(channel);
+        }
         if (removed == null) {
             return initialValue(channel);
         } else {
             if (removeOnClose) {
+                // If this races with a set(), the listener may be left behind or
+                // added twice, which only means that the value is removed on close.
                 channel.getCloseFuture().removeListener(remover);
             }
             return removed;
@@ -161,9 +213,68 @@ public class ChannelLocal<T> implements Iterable<Entry<Channel, T>> {
     }
 
     /**
-     * Returns a <strong>read-only</strong> {@link Iterator} that holds all {@link Entry}'s of this ChannelLocal
+     * Returns a <strong>read-only</strong> {@link Iterator} that holds all {@link Entry}'s of this ChannelLocal.
+     * <p>
+     * The values of the {@link AbstractChannel}s are found by scanning all
+     * open channels, so this method is expensive.  The values of the closed
+     * {@link AbstractChannel}s are not included.
      */
     public Iterator<Entry<Channel, T>> iterator() {
-        return Collections.unmodifiableSet(map.entrySet()).iterator();
+        List<Entry<Channel, T>> entries = new ArrayList<Entry<Channel, T>>();
+        for (Channel channel: ChannelIdBlock.openChannels()) {
+            addEntry(entries, channel);
+        }
+        for (Channel channel: explicitIdChannels.keySet()) {
+            if (channel.isOpen()) {
+                addEntry(entries, channel);
+            }
+        }
+        entries.addAll(map.entrySet());
+        return Collections.unmodifiableList(entries).iterator();
+    }
+
+    private void addEntry(List<Entry<Channel, T>> entries, Channel channel) {
+        T value = ((AbstractChannel) channel).getAttribute(key);
+        if (value != null) {
+            entries.add(new LocalEntry<T>(channel, value));
+        }
+    }
+
+    private void registerExplicitId(AbstractChannel channel) {
+        if (!channel.idAllocated) {
+            explicitIdChannels.put(channel, Boolean.TRUE);
+        }
+    }
+
+    private void unregisterExplicitId(AbstractChannel channel) {
+        if (!channel.idAllocated) {
+            explicitIdChannels.remove(channel);
+            if (channel.getAttribute(key) != null) {
+                // A value was set meanwhile.
+                explicitIdChannels.put(channel, Boolean.TRUE);
+            }
+        }
+    }
+
+    private static final class LocalEntry<T> implements Entry<Channel, T> {
+        private final Channel channel;
+        private final T value;
+
+        LocalEntry(Channel channel, T value) {
+            this.channel = channel;
+            this.value = value;
+        }
+
+        public Channel getKey() {
+            return channel;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public T setValue(T value) {
+            throw new UnsupportedOperationException("read-only");
+        }
     }
 }
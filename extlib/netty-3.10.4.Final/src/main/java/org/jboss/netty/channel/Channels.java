@@ -36,6 +36,7 @@ import org.jboss.netty.util.internal.ConversionUtil;
  * <li>{@link #pipelineFactory(ChannelPipeline)}</li>
  * <li>{@link #succeededFuture(Channel)}</li>
  * <li>{@link #failedFuture(Channel, Throwable)}</li>
+ * <li>{@link #voidFuture(Channel)}</li>
  * </ul>
  *
  * <h3>Upstream and downstream event generation</h3>
@@ -153,6 +154,34 @@ public final class Channels {
         return new FailedChannelFuture(channel, cause);
     }
 
+    /**
+     * Returns a {@link VoidChannelFuture} for the specified {@link Channel}.
+     * Pass it to {@link #write(Channel, ChannelFuture, Object)} to write a
+     * message without allocating and notifying a future.
+     */
+    public static ChannelFuture voidFuture(Channel channel) {
+        if (channel instanceof AbstractChannel) {
+            return ((AbstractChannel) channel).getVoidFuture();
+        } else {
+            return new VoidChannelFuture(channel);
+        }
+    }
+
+    // channel lookup methods
+
+    /**
+     * Returns the open {@link Channel} with the specified ID, or {@code null}
+     * if there is no such channel.  Only the channels which extend
+     * {@link AbstractChannel} and whose ID was allocated by its constructor
+     * are found.
+     */
+    public static Channel findChannel(Integer id) {
+        if (id == null) {
+            throw new NullPointerException("id");
+        }
+        return ChannelIdBlock.find(id);
+    }
+
     // event emission methods
 
     /**
@@ -265,8 +294,12 @@ public final class Channels {
      *                       came from
      */
     public static void fireMessageReceived(Channel channel, Object message, SocketAddress remoteAddress) {
-        channel.getPipeline().sendUpstream(
-                new UpstreamMessageEvent(channel, message, remoteAddress));
+        UpstreamMessageEvent e = UpstreamMessageEvent.newInstance(channel, message, remoteAddress);
+        try {
+            channel.getPipeline().sendUpstream(e);
+        } finally {
+            e.recycle();
+        }
     }
 
     /**
@@ -278,7 +311,7 @@ public final class Channels {
      * @param message  the received message
      */
     public static void fireMessageReceived(ChannelHandlerContext ctx, Object message) {
-        ctx.sendUpstream(new UpstreamMessageEvent(ctx.getChannel(), message, null));
+        fireMessageReceived(ctx, message, null);
     }
 
     /**
@@ -293,8 +326,13 @@ public final class Channels {
      */
     public static void fireMessageReceived(
             ChannelHandlerContext ctx, Object message, SocketAddress remoteAddress) {
-        ctx.sendUpstream(new UpstreamMessageEvent(
-                ctx.getChannel(), message, remoteAddress));
+        UpstreamMessageEvent e = UpstreamMessageEvent.newInstance(
+                ctx.getChannel(), message, remoteAddress);
+        try {
+            ctx.sendUpstream(e);
+        } finally {
+            e.recycle();
+        }
     }
 
     /**
@@ -321,8 +359,12 @@ public final class Channels {
             return;
         }
 
-        channel.getPipeline().sendUpstream(
-                new DefaultWriteCompletionEvent(channel, amount));
+        DefaultWriteCompletionEvent e = DefaultWriteCompletionEvent.newInstance(channel, amount);
+        try {
+            channel.getPipeline().sendUpstream(e);
+        } finally {
+            e.recycle();
+        }
     }
 
     /**
@@ -332,7 +374,12 @@ public final class Channels {
      * {@link ChannelHandlerContext}.
      */
     public static void fireWriteComplete(ChannelHandlerContext ctx, long amount) {
-        ctx.sendUpstream(new DefaultWriteCompletionEvent(ctx.getChannel(), amount));
+        DefaultWriteCompletionEvent e = DefaultWriteCompletionEvent.newInstance(ctx.getChannel(), amount);
+        try {
+            ctx.sendUpstream(e);
+        } finally {
+            e.recycle();
+        }
     }
 
     /**
@@ -702,10 +749,44 @@ public final class Channels {
     public static ChannelFuture write(Channel channel, Object message, SocketAddress remoteAddress) {
         ChannelFuture future = future(channel);
         channel.getPipeline().sendDownstream(
-                new DownstreamMessageEvent(channel, future, message, remoteAddress));
+                DownstreamMessageEvent.newInstance(channel, future, message, remoteAddress));
         return future;
     }
 
+    /**
+     * Sends a {@code "write"} request with the specified future to the last
+     * {@link ChannelDownstreamHandler} in the {@link ChannelPipeline} of
+     * the specified {@link Channel}.  Use the future returned by
+     * {@link #voidFuture(Channel)} to avoid the cost of a future for a write
+     * whose completion is of no interest.
+     *
+     * @param channel  the channel to write a message
+     * @param future   the future which will be notified when the write
+     *                 operation is done
+     * @param message  the message to write to the channel
+     */
+    public static void write(Channel channel, ChannelFuture future, Object message) {
+        write(channel, future, message, null);
+    }
+
+    /**
+     * Sends a {@code "write"} request with the specified future to the last
+     * {@link ChannelDownstreamHandler} in the {@link ChannelPipeline} of
+     * the specified {@link Channel}.
+     *
+     * @param channel  the channel to write a message
+     * @param future   the future which will be notified when the write
+     *                 operation is done
+     * @param message  the message to write to the channel
+     * @param remoteAddress  the destination of the message.
+     *                       {@code null} to use the default remote address
+     */
+    public static void write(
+            Channel channel, ChannelFuture future, Object message, SocketAddress remoteAddress) {
+        channel.getPipeline().sendDownstream(
+                DownstreamMessageEvent.newInstance(channel, future, message, remoteAddress));
+    }
+
     /**
      * Sends a {@code "write"} request to the
      * {@link ChannelDownstreamHandler} which is placed in the closest
@@ -723,7 +804,7 @@ public final class Channels {
             ChannelHandlerContext ctx, ChannelFuture future,
             Object message, SocketAddress remoteAddress) {
         ctx.sendDownstream(
-                new DownstreamMessageEvent(ctx.getChannel(), future, message, remoteAddress));
+                DownstreamMessageEvent.newInstance(ctx.getChannel(), future, message, remoteAddress));
     }
 
     /**
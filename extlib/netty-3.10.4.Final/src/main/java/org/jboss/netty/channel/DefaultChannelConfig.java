@@ -16,6 +16,7 @@
 package org.jboss.netty.channel;
 
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBufferTracker;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.socket.SocketChannelConfig;
 import org.jboss.netty.util.internal.ConversionUtil;
@@ -28,7 +29,8 @@ import java.util.Map.Entry;
  */
 public class DefaultChannelConfig implements ChannelConfig {
 
-    private volatile ChannelBufferFactory bufferFactory = HeapChannelBufferFactory.getInstance();
+    private volatile ChannelBufferFactory bufferFactory =
+        ChannelBufferTracker.getInstance().track(HeapChannelBufferFactory.getInstance());
     private volatile int connectTimeoutMillis = 10000; // 10 seconds
 
     public void setOptions(Map<String, Object> options) {
@@ -66,7 +68,7 @@ public class DefaultChannelConfig implements ChannelConfig {
         if (bufferFactory == null) {
             throw new NullPointerException("bufferFactory");
         }
-        this.bufferFactory = bufferFactory;
+        this.bufferFactory = ChannelBufferTracker.getInstance().track(bufferFactory, this.bufferFactory);
     }
 
     public ChannelPipelineFactory getPipelineFactory() {
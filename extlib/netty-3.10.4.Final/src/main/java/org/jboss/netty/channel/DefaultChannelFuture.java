@@ -19,10 +19,8 @@ import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.internal.DeadLockProofWorker;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import static java.util.concurrent.TimeUnit.*;
 
@@ -31,6 +29,11 @@ import static java.util.concurrent.TimeUnit.*;
  * use {@link Channels#future(Channel)} and {@link Channels#future(Channel, boolean)}
  * to create a new {@link ChannelFuture} rather than calling the constructor
  * explicitly.
+ * <p>
+ * The result is set with a compare-and-set and the listeners are kept in a
+ * lock-free stack, so that completing a future and adding a listener never
+ * acquire a lock.  Only the threads which wait for the completion in
+ * {@code await*()} use the monitor of the future.
  */
 public class DefaultChannelFuture implements ChannelFuture {
 
@@ -38,6 +41,17 @@ public class DefaultChannelFuture implements ChannelFuture {
         InternalLoggerFactory.getInstance(DefaultChannelFuture.class);
 
     private static final Throwable CANCELLED = new Throwable();
+    private static final Object SUCCESS = new Object();
+
+    /**
+     * Replaces the listener stack once the listeners have been notified.
+     */
+    private static final ListenerNode NOTIFIED = new ListenerNode(null, null);
+
+    private static final AtomicReferenceFieldUpdater<DefaultChannelFuture, Object> RESULT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultChannelFuture.class, Object.class, "result");
+    private static final AtomicReferenceFieldUpdater<DefaultChannelFuture, ListenerNode> LISTENERS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultChannelFuture.class, ListenerNode.class, "listeners");
 
     private static volatile boolean useDeadLockChecker = true;
     private static boolean disabledDeadLockCheckerOnce;
@@ -69,12 +83,22 @@ public class DefaultChannelFuture implements ChannelFuture {
     private final Channel channel;
     private final boolean cancellable;
 
-    private ChannelFutureListener firstListener;
-    private List<ChannelFutureListener> otherListeners;
-    private List<ChannelFutureProgressListener> progressListeners;
-    private boolean done;
-    private Throwable cause;
-    private int waiters;
+    /**
+     * {@code null} until done, then {@link #SUCCESS}, {@link #CANCELLED} or
+     * the cause of the failure.
+     */
+    private volatile Object result;
+
+    /**
+     * The listeners in reverse order of addition, or {@link #NOTIFIED}.
+     */
+    private volatile ListenerNode listeners;
+
+    /**
+     * The number of threads in {@code await*()}.  Modified only while
+     * holding the monitor of this future.
+     */
+    private volatile int waiters;
 
     /**
      * Creates a new instance.
@@ -93,24 +117,25 @@ public class DefaultChannelFuture implements ChannelFuture {
         return channel;
     }
 
-    public synchronized boolean isDone() {
-        return done;
+    public boolean isDone() {
+        return result != null;
     }
 
-    public synchronized boolean isSuccess() {
-        return done && cause == null;
+    public boolean isSuccess() {
+        return result == SUCCESS;
     }
 
-    public synchronized Throwable getCause() {
-        if (cause != CANCELLED) {
-            return cause;
+    public Throwable getCause() {
+        Object result = this.result;
+        if (result instanceof Throwable && result != CANCELLED) {
+            return (Throwable) result;
         } else {
             return null;
         }
     }
 
-    public synchronized boolean isCancelled() {
-        return cause == CANCELLED;
+    public boolean isCancelled() {
+        return result == CANCELLED;
     }
 
     public void addListener(ChannelFutureListener listener) {
@@ -118,31 +143,15 @@ public class DefaultChannelFuture implements ChannelFuture {
             throw new NullPointerException("listener");
         }
 
-        boolean notifyNow = false;
-        synchronized (this) {
-            if (done) {
-                notifyNow = true;
-            } else {
-                if (firstListener == null) {
-                    firstListener = listener;
-                } else {
-                    if (otherListeners == null) {
-                        otherListeners = new ArrayList<ChannelFutureListener>(1);
-                    }
-                    otherListeners.add(listener);
-                }
-
-                if (listener instanceof ChannelFutureProgressListener) {
-                    if (progressListeners == null) {
-                        progressListeners = new ArrayList<ChannelFutureProgressListener>(1);
-                    }
-                    progressListeners.add((ChannelFutureProgressListener) listener);
-                }
+        for (;;) {
+            ListenerNode head = listeners;
+            if (head == NOTIFIED) {
+                notifyListener(listener);
+                return;
+            }
+            if (LISTENERS_UPDATER.compareAndSet(this, head, new ListenerNode(listener, head))) {
+                return;
             }
-        }
-
-        if (notifyNow) {
-            notifyListener(listener);
         }
     }
 
@@ -151,23 +160,46 @@ public class DefaultChannelFuture implements ChannelFuture {
             throw new NullPointerException("listener");
         }
 
-        synchronized (this) {
-            if (!done) {
-                if (listener == firstListener) {
-                    if (otherListeners != null && !otherListeners.isEmpty()) {
-                        firstListener = otherListeners.remove(0);
-                    } else {
-                        firstListener = null;
-                    }
-                } else if (otherListeners != null) {
-                    otherListeners.remove(listener);
-                }
+        for (;;) {
+            ListenerNode head = listeners;
+            if (head == null || head == NOTIFIED) {
+                return;
+            }
 
-                if (listener instanceof ChannelFutureProgressListener) {
-                    progressListeners.remove(listener);
+            // Find the listener which was added first, i.e. the last one in the stack.
+            ListenerNode removed = null;
+            for (ListenerNode n = head; n != null; n = n.next) {
+                if (n.listener == listener) {
+                    removed = n;
                 }
             }
+            if (removed == null) {
+                return;
+            }
+
+            // The nodes are immutable - copy the ones in front of the removed one.
+            ListenerNode newHead = removed.next;
+            ListenerNode[] front = new ListenerNode[count(head, removed)];
+            int i = 0;
+            for (ListenerNode n = head; n != removed; n = n.next) {
+                front[i ++] = n;
+            }
+            while (i > 0) {
+                newHead = new ListenerNode(front[-- i].listener, newHead);
+            }
+
+            if (LISTENERS_UPDATER.compareAndSet(this, head, newHead)) {
+                return;
+            }
+        }
+    }
+
+    private static int count(ListenerNode from, ListenerNode to) {
+        int count = 0;
+        for (ListenerNode n = from; n != to; n = n.next) {
+            count ++;
         }
+        return count;
     }
 
     public ChannelFuture sync() throws InterruptedException {
@@ -204,12 +236,20 @@ public class DefaultChannelFuture implements ChannelFuture {
             throw new InterruptedException();
         }
 
+        if (isDone()) {
+            return this;
+        }
+
         synchronized (this) {
-            while (!done) {
+            while (!isDone()) {
                 checkDeadLock();
                 waiters++;
                 try {
-                    wait();
+                    // Check again now that the completing thread is
+                    // guaranteed to see the incremented waiters.
+                    if (!isDone()) {
+                        wait();
+                    }
                 } finally {
                     waiters--;
                 }
@@ -228,13 +268,19 @@ public class DefaultChannelFuture implements ChannelFuture {
     }
 
     public ChannelFuture awaitUninterruptibly() {
+        if (isDone()) {
+            return this;
+        }
+
         boolean interrupted = false;
         synchronized (this) {
-            while (!done) {
+            while (!isDone()) {
                 checkDeadLock();
                 waiters++;
                 try {
-                    wait();
+                    if (!isDone()) {
+                        wait();
+                    }
                 } catch (InterruptedException e) {
                     interrupted = true;
                 } finally {
@@ -271,20 +317,28 @@ public class DefaultChannelFuture implements ChannelFuture {
             throw new InterruptedException();
         }
 
-        long startTime = timeoutNanos <= 0 ? 0 : System.nanoTime();
+        if (isDone() || timeoutNanos <= 0) {
+            return isDone();
+        }
+
+        long startTime = System.nanoTime();
         long waitTime = timeoutNanos;
         boolean interrupted = false;
 
         try {
             synchronized (this) {
-                if (done || waitTime <= 0) {
-                    return done;
+                if (isDone()) {
+                    return true;
                 }
 
                 checkDeadLock();
                 waiters++;
                 try {
                     for (;;) {
+                        if (isDone()) {
+                            return true;
+                        }
+
                         try {
                             wait(waitTime / 1000000, (int) (waitTime % 1000000));
                         } catch (InterruptedException e) {
@@ -295,12 +349,12 @@ public class DefaultChannelFuture implements ChannelFuture {
                             }
                         }
 
-                        if (done) {
+                        if (isDone()) {
                             return true;
                         } else {
                             waitTime = timeoutNanos - (System.nanoTime() - startTime);
                             if (waitTime <= 0) {
-                                return done;
+                                return isDone();
                             }
                         }
                     }
@@ -325,20 +379,7 @@ public class DefaultChannelFuture implements ChannelFuture {
     }
 
     public boolean setSuccess() {
-        synchronized (this) {
-            // Allow only once.
-            if (done) {
-                return false;
-            }
-
-            done = true;
-            if (waiters > 0) {
-                notifyAll();
-            }
-        }
-
-        notifyListeners();
-        return true;
+        return complete(SUCCESS);
     }
 
     public boolean setFailure(Throwable cause) {
@@ -346,21 +387,7 @@ public class DefaultChannelFuture implements ChannelFuture {
             throw new NullPointerException("cause");
         }
 
-        synchronized (this) {
-            // Allow only once.
-            if (done) {
-                return false;
-            }
-
-            this.cause = cause;
-            done = true;
-            if (waiters > 0) {
-                notifyAll();
-            }
-        }
-
-        notifyListeners();
-        return true;
+        return complete(cause);
     }
 
     public boolean cancel() {
@@ -368,15 +395,19 @@ public class DefaultChannelFuture implements ChannelFuture {
             return false;
         }
 
-        synchronized (this) {
-            // Allow only once.
-            if (done) {
-                return false;
-            }
+        return complete(CANCELLED);
+    }
 
-            cause = CANCELLED;
-            done = true;
-            if (waiters > 0) {
+    private boolean complete(Object result) {
+        // Allow only once.
+        if (!RESULT_UPDATER.compareAndSet(this, null, result)) {
+            return false;
+        }
+
+        // A waiter increments 'waiters' before it checks 'result' for the
+        // last time, so it is either seen here or sees the result itself.
+        if (waiters > 0) {
+            synchronized (this) {
                 notifyAll();
             }
         }
@@ -386,21 +417,24 @@ public class DefaultChannelFuture implements ChannelFuture {
     }
 
     private void notifyListeners() {
-        // This method doesn't need synchronization because:
-        // 1) This method is always called after synchronized (this) block.
-        //    Hence any listener list modification happens-before this method.
-        // 2) This method is called only when 'done' is true.  Once 'done'
-        //    becomes true, the listener list is never modified - see add/removeListener()
-        if (firstListener != null) {
-            notifyListener(firstListener);
-            firstListener = null;
-
-            if (otherListeners != null) {
-                for (ChannelFutureListener l: otherListeners) {
-                    notifyListener(l);
-                }
-                otherListeners = null;
-            }
+        // Any listener added from now on is notified by addListener().
+        ListenerNode head = LISTENERS_UPDATER.getAndSet(this, NOTIFIED);
+        if (head == null) {
+            return;
+        }
+
+        if (head.next == null) {
+            notifyListener(head.listener);
+            return;
+        }
+
+        // Notify in the order of addition.
+        ListenerNode reversed = null;
+        for (ListenerNode n = head; n != null; n = n.next) {
+            reversed = new ListenerNode(n.listener, reversed);
+        }
+        for (ListenerNode n = reversed; n != null; n = n.next) {
+            notifyListener(n.listener);
         }
     }
 
@@ -417,22 +451,33 @@ public class DefaultChannelFuture implements ChannelFuture {
     }
 
     public boolean setProgress(long amount, long current, long total) {
-        ChannelFutureProgressListener[] plisteners;
-        synchronized (this) {
-            // Do not generate progress event after completion.
-            if (done) {
-                return false;
-            }
+        // Do not generate progress event after completion.
+        if (isDone()) {
+            return false;
+        }
+
+        ListenerNode head = listeners;
+        if (head == NOTIFIED) {
+            return false;
+        }
 
-            Collection<ChannelFutureProgressListener> progressListeners =
-                this.progressListeners;
-            if (progressListeners == null || progressListeners.isEmpty()) {
-                // Nothing to notify - no need to create an empty array.
-                return true;
+        int count = 0;
+        for (ListenerNode n = head; n != null; n = n.next) {
+            if (n.listener instanceof ChannelFutureProgressListener) {
+                count ++;
             }
+        }
+        if (count == 0) {
+            // Nothing to notify - no need to create an empty array.
+            return true;
+        }
 
-            plisteners = progressListeners.toArray(
-                    new ChannelFutureProgressListener[progressListeners.size()]);
+        // Notify in the order of addition.
+        ChannelFutureProgressListener[] plisteners = new ChannelFutureProgressListener[count];
+        for (ListenerNode n = head; n != null; n = n.next) {
+            if (n.listener instanceof ChannelFutureProgressListener) {
+                plisteners[-- count] = (ChannelFutureProgressListener) n.listener;
+            }
         }
 
         for (ChannelFutureProgressListener pl: plisteners) {
@@ -456,4 +501,14 @@ public class DefaultChannelFuture implements ChannelFuture {
             }
         }
     }
+
+    private static final class ListenerNode {
+        final ChannelFutureListener listener;
+        final ListenerNode next;
+
+        ListenerNode(ChannelFutureListener listener, ListenerNode next) {
+            this.listener = listener;
+            this.next = next;
+        }
+    }
 }
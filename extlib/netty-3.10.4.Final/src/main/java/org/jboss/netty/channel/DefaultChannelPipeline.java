@@ -36,12 +36,17 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     static final InternalLogger logger = InternalLoggerFactory.getInstance(DefaultChannelPipeline.class);
     static final ChannelSink discardingSink = new DiscardingChannelSink();
 
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(new DefaultChannelHandlerContext[0]);
+
     private volatile Channel channel;
     private volatile ChannelSink sink;
-    private volatile DefaultChannelHandlerContext head;
-    private volatile DefaultChannelHandlerContext tail;
-    private final Map<String, DefaultChannelHandlerContext> name2ctx =
-        new HashMap<String, DefaultChannelHandlerContext>(4);
+
+    /**
+     * The handler chain, which is replaced as a whole on every modification so
+     * that lookups and event dispatch never need to acquire the pipeline lock.
+     * Modifications are still serialized by {@code synchronized} methods.
+     */
+    private volatile Snapshot snapshot = EMPTY_SNAPSHOT;
 
     public Channel getChannel() {
         return channel;
@@ -74,75 +79,49 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     public synchronized void addFirst(String name, ChannelHandler handler) {
-        if (name2ctx.isEmpty()) {
-            init(name, handler);
-        } else {
-            checkDuplicateName(name);
-            DefaultChannelHandlerContext oldHead = head;
-            DefaultChannelHandlerContext newHead = new DefaultChannelHandlerContext(null, oldHead, name, handler);
+        checkDuplicateName(name);
+        DefaultChannelHandlerContext newHead = new DefaultChannelHandlerContext(name, handler);
 
-            callBeforeAdd(newHead);
+        callBeforeAdd(newHead);
 
-            oldHead.prev = newHead;
-            head = newHead;
-            name2ctx.put(name, newHead);
+        insert(0, newHead);
 
-            callAfterAdd(newHead);
-        }
+        callAfterAdd(newHead);
     }
 
     public synchronized void addLast(String name, ChannelHandler handler) {
-        if (name2ctx.isEmpty()) {
-            init(name, handler);
-        } else {
-            checkDuplicateName(name);
-            DefaultChannelHandlerContext oldTail = tail;
-            DefaultChannelHandlerContext newTail = new DefaultChannelHandlerContext(oldTail, null, name, handler);
+        checkDuplicateName(name);
+        DefaultChannelHandlerContext newTail = new DefaultChannelHandlerContext(name, handler);
 
-            callBeforeAdd(newTail);
+        callBeforeAdd(newTail);
 
-            oldTail.next = newTail;
-            tail = newTail;
-            name2ctx.put(name, newTail);
+        insert(snapshot.contexts.length, newTail);
 
-            callAfterAdd(newTail);
-        }
+        callAfterAdd(newTail);
     }
 
     public synchronized void addBefore(String baseName, String name, ChannelHandler handler) {
         DefaultChannelHandlerContext ctx = getContextOrDie(baseName);
-        if (ctx == head) {
-            addFirst(name, handler);
-        } else {
-            checkDuplicateName(name);
-            DefaultChannelHandlerContext newCtx = new DefaultChannelHandlerContext(ctx.prev, ctx, name, handler);
+        checkDuplicateName(name);
+        DefaultChannelHandlerContext newCtx = new DefaultChannelHandlerContext(name, handler);
 
-            callBeforeAdd(newCtx);
+        callBeforeAdd(newCtx);
 
-            ctx.prev.next = newCtx;
-            ctx.prev = newCtx;
-            name2ctx.put(name, newCtx);
+        insert(indexOf(ctx), newCtx);
 
-            callAfterAdd(newCtx);
-        }
+        callAfterAdd(newCtx);
     }
 
     public synchronized void addAfter(String baseName, String name, ChannelHandler handler) {
         DefaultChannelHandlerContext ctx = getContextOrDie(baseName);
-        if (ctx == tail) {
-            addLast(name, handler);
-        } else {
-            checkDuplicateName(name);
-            DefaultChannelHandlerContext newCtx = new DefaultChannelHandlerContext(ctx, ctx.next, name, handler);
+        checkDuplicateName(name);
+        DefaultChannelHandlerContext newCtx = new DefaultChannelHandlerContext(name, handler);
 
-            callBeforeAdd(newCtx);
+        callBeforeAdd(newCtx);
 
-            ctx.next.prev = newCtx;
-            ctx.next = newCtx;
-            name2ctx.put(name, newCtx);
+        insert(indexOf(ctx) + 1, newCtx);
 
-            callAfterAdd(newCtx);
-        }
+        callAfterAdd(newCtx);
     }
 
     public synchronized void remove(ChannelHandler handler) {
@@ -159,81 +138,30 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     private DefaultChannelHandlerContext remove(DefaultChannelHandlerContext ctx) {
-        if (head == tail) {
-            callBeforeRemove(ctx);
-
-            head = tail = null;
-            name2ctx.clear();
-
-            callAfterRemove(ctx);
-        } else if (ctx == head) {
-            removeFirst();
-        } else if (ctx == tail) {
-            removeLast();
-        } else {
-            callBeforeRemove(ctx);
+        callBeforeRemove(ctx);
 
-            DefaultChannelHandlerContext prev = ctx.prev;
-            DefaultChannelHandlerContext next = ctx.next;
-            prev.next = next;
-            next.prev = prev;
-            name2ctx.remove(ctx.getName());
+        delete(indexOf(ctx));
 
-            callAfterRemove(ctx);
-        }
+        callAfterRemove(ctx);
         return ctx;
     }
 
     public synchronized ChannelHandler removeFirst() {
-        if (name2ctx.isEmpty()) {
-            throw new NoSuchElementException();
-        }
-
-        DefaultChannelHandlerContext oldHead = head;
-        if (oldHead == null) {
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        if (contexts.length == 0) {
             throw new NoSuchElementException();
         }
 
-        callBeforeRemove(oldHead);
-
-        if (oldHead.next == null) {
-            head = tail = null;
-            name2ctx.clear();
-        } else {
-            oldHead.next.prev = null;
-            head = oldHead.next;
-            name2ctx.remove(oldHead.getName());
-        }
-
-        callAfterRemove(oldHead);
-
-        return oldHead.getHandler();
+        return remove(contexts[0]).getHandler();
     }
 
     public synchronized ChannelHandler removeLast() {
-        if (name2ctx.isEmpty()) {
-            throw new NoSuchElementException();
-        }
-
-        DefaultChannelHandlerContext oldTail = tail;
-        if (oldTail == null) {
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        if (contexts.length == 0) {
             throw new NoSuchElementException();
         }
 
-        callBeforeRemove(oldTail);
-
-        if (oldTail.prev == null) {
-            head = tail = null;
-            name2ctx.clear();
-        } else {
-            oldTail.prev.next = null;
-            tail = oldTail.prev;
-            name2ctx.remove(oldTail.getName());
-        }
-
-        callAfterRemove(oldTail);
-
-        return oldTail.getHandler();
+        return remove(contexts[contexts.length - 1]).getHandler();
     }
 
     public synchronized void replace(ChannelHandler oldHandler, String newName, ChannelHandler newHandler) {
@@ -251,10 +179,11 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     private ChannelHandler replace(DefaultChannelHandlerContext ctx, String newName, ChannelHandler newHandler) {
-        if (ctx == head) {
+        int index = indexOf(ctx);
+        if (index == 0) {
             removeFirst();
             addFirst(newName, newHandler);
-        } else if (ctx == tail) {
+        } else if (index == snapshot.contexts.length - 1) {
             removeLast();
             addLast(newName, newHandler);
         } else {
@@ -263,20 +192,14 @@ public class DefaultChannelPipeline implements ChannelPipeline {
                 checkDuplicateName(newName);
             }
 
-            DefaultChannelHandlerContext prev = ctx.prev;
-            DefaultChannelHandlerContext next = ctx.next;
-            DefaultChannelHandlerContext newCtx = new DefaultChannelHandlerContext(prev, next, newName, newHandler);
+            DefaultChannelHandlerContext newCtx = new DefaultChannelHandlerContext(newName, newHandler);
 
             callBeforeRemove(ctx);
             callBeforeAdd(newCtx);
 
-            prev.next = newCtx;
-            next.prev = newCtx;
-
-            if (!sameName) {
-                name2ctx.remove(ctx.getName());
-            }
-            name2ctx.put(newName, newCtx);
+            DefaultChannelHandlerContext[] contexts = snapshot.contexts.clone();
+            contexts[index] = newCtx;
+            publish(contexts);
 
             ChannelHandlerLifeCycleException removeException = null;
             ChannelHandlerLifeCycleException addException = null;
@@ -397,24 +320,24 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
-    public synchronized ChannelHandler getFirst() {
-        DefaultChannelHandlerContext head = this.head;
-        if (head == null) {
+    public ChannelHandler getFirst() {
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        if (contexts.length == 0) {
             return null;
         }
-        return head.getHandler();
+        return contexts[0].getHandler();
     }
 
-    public synchronized ChannelHandler getLast() {
-        DefaultChannelHandlerContext tail = this.tail;
-        if (tail == null) {
+    public ChannelHandler getLast() {
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        if (contexts.length == 0) {
             return null;
         }
-        return tail.getHandler();
+        return contexts[contexts.length - 1].getHandler();
     }
 
-    public synchronized ChannelHandler get(String name) {
-        DefaultChannelHandlerContext ctx = name2ctx.get(name);
+    public ChannelHandler get(String name) {
+        DefaultChannelHandlerContext ctx = snapshot.name2ctx.get(name);
         if (ctx == null) {
             return null;
         } else {
@@ -422,7 +345,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
-    public synchronized <T extends ChannelHandler> T get(Class<T> handlerType) {
+    public <T extends ChannelHandler> T get(Class<T> handlerType) {
         ChannelHandlerContext ctx = getContext(handlerType);
         if (ctx == null) {
             return null;
@@ -433,87 +356,52 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
-    public synchronized ChannelHandlerContext getContext(String name) {
+    public ChannelHandlerContext getContext(String name) {
         if (name == null) {
             throw new NullPointerException("name");
         }
-        return name2ctx.get(name);
+        return snapshot.name2ctx.get(name);
     }
 
-    public synchronized ChannelHandlerContext getContext(ChannelHandler handler) {
+    public ChannelHandlerContext getContext(ChannelHandler handler) {
         if (handler == null) {
             throw new NullPointerException("handler");
         }
-        if (name2ctx.isEmpty()) {
-            return null;
-        }
-        DefaultChannelHandlerContext ctx = head;
-        for (;;) {
+        for (DefaultChannelHandlerContext ctx: snapshot.contexts) {
             if (ctx.getHandler() == handler) {
                 return ctx;
             }
-
-            ctx = ctx.next;
-            if (ctx == null) {
-                break;
-            }
         }
         return null;
     }
 
-    public synchronized ChannelHandlerContext getContext(
+    public ChannelHandlerContext getContext(
             Class<? extends ChannelHandler> handlerType) {
         if (handlerType == null) {
             throw new NullPointerException("handlerType");
         }
 
-        if (name2ctx.isEmpty()) {
-            return null;
-        }
-        DefaultChannelHandlerContext ctx = head;
-        for (;;) {
+        for (DefaultChannelHandlerContext ctx: snapshot.contexts) {
             if (handlerType.isAssignableFrom(ctx.getHandler().getClass())) {
                 return ctx;
             }
-
-            ctx = ctx.next;
-            if (ctx == null) {
-                break;
-            }
         }
         return null;
     }
 
     public List<String> getNames() {
-        List<String> list = new ArrayList<String>();
-        if (name2ctx.isEmpty()) {
-            return list;
-        }
-
-        DefaultChannelHandlerContext ctx = head;
-        for (;;) {
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        List<String> list = new ArrayList<String>(contexts.length);
+        for (DefaultChannelHandlerContext ctx: contexts) {
             list.add(ctx.getName());
-            ctx = ctx.next;
-            if (ctx == null) {
-                break;
-            }
         }
         return list;
     }
 
     public Map<String, ChannelHandler> toMap() {
         Map<String, ChannelHandler> map = new LinkedHashMap<String, ChannelHandler>();
-        if (name2ctx.isEmpty()) {
-            return map;
-        }
-
-        DefaultChannelHandlerContext ctx = head;
-        for (;;) {
+        for (DefaultChannelHandlerContext ctx: snapshot.contexts) {
             map.put(ctx.getName(), ctx.getHandler());
-            ctx = ctx.next;
-            if (ctx == null) {
-                break;
-            }
         }
         return map;
     }
@@ -526,27 +414,24 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         StringBuilder buf = new StringBuilder();
         buf.append(getClass().getSimpleName());
         buf.append('{');
-        DefaultChannelHandlerContext ctx = head;
-        if (ctx != null) {
-            for (;;) {
-                buf.append('(');
-                buf.append(ctx.getName());
-                buf.append(" = ");
-                buf.append(ctx.getHandler().getClass().getName());
-                buf.append(')');
-                ctx = ctx.next;
-                if (ctx == null) {
-                    break;
-                }
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        for (int i = 0; i < contexts.length; i ++) {
+            if (i != 0) {
                 buf.append(", ");
             }
+            DefaultChannelHandlerContext ctx = contexts[i];
+            buf.append('(');
+            buf.append(ctx.getName());
+            buf.append(" = ");
+            buf.append(ctx.getHandler().getClass().getName());
+            buf.append(')');
         }
         buf.append('}');
         return buf.toString();
     }
 
     public void sendUpstream(ChannelEvent e) {
-        DefaultChannelHandlerContext head = getActualUpstreamContext(this.head);
+        DefaultChannelHandlerContext head = snapshot.firstUpstream;
         if (head == null) {
             if (logger.isWarnEnabled()) {
                 logger.warn(
@@ -568,7 +453,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     public void sendDownstream(ChannelEvent e) {
-        DefaultChannelHandlerContext tail = getActualDownstreamContext(this.tail);
+        DefaultChannelHandlerContext tail = snapshot.lastDownstream;
         if (tail == null) {
             try {
                 getSink().eventSunk(this, e);
@@ -600,38 +485,6 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
-    private DefaultChannelHandlerContext getActualUpstreamContext(DefaultChannelHandlerContext ctx) {
-        if (ctx == null) {
-            return null;
-        }
-
-        DefaultChannelHandlerContext realCtx = ctx;
-        while (!realCtx.canHandleUpstream()) {
-            realCtx = realCtx.next;
-            if (realCtx == null) {
-                return null;
-            }
-        }
-
-        return realCtx;
-    }
-
-    private DefaultChannelHandlerContext getActualDownstreamContext(DefaultChannelHandlerContext ctx) {
-        if (ctx == null) {
-            return null;
-        }
-
-        DefaultChannelHandlerContext realCtx = ctx;
-        while (!realCtx.canHandleDownstream()) {
-            realCtx = realCtx.prev;
-            if (realCtx == null) {
-                return null;
-            }
-        }
-
-        return realCtx;
-    }
-
     public ChannelFuture execute(Runnable task) {
         return getSink().execute(this, task);
     }
@@ -663,17 +516,62 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
-    private void init(String name, ChannelHandler handler) {
-        DefaultChannelHandlerContext ctx = new DefaultChannelHandlerContext(null, null, name, handler);
-        callBeforeAdd(ctx);
-        head = tail = ctx;
-        name2ctx.clear();
-        name2ctx.put(name, ctx);
-        callAfterAdd(ctx);
+    private void insert(int index, DefaultChannelHandlerContext ctx) {
+        DefaultChannelHandlerContext[] oldContexts = snapshot.contexts;
+        DefaultChannelHandlerContext[] contexts = new DefaultChannelHandlerContext[oldContexts.length + 1];
+        System.arraycopy(oldContexts, 0, contexts, 0, index);
+        contexts[index] = ctx;
+        System.arraycopy(oldContexts, index, contexts, index + 1, oldContexts.length - index);
+        publish(contexts);
+    }
+
+    private void delete(int index) {
+        DefaultChannelHandlerContext[] oldContexts = snapshot.contexts;
+        DefaultChannelHandlerContext[] contexts = new DefaultChannelHandlerContext[oldContexts.length - 1];
+        System.arraycopy(oldContexts, 0, contexts, 0, index);
+        System.arraycopy(oldContexts, index + 1, contexts, index, contexts.length - index);
+        publish(contexts);
+    }
+
+    /**
+     * Links the specified contexts to their next upstream and downstream
+     * contexts and makes them the current handler chain.  A removed context
+     * keeps its links, so that an event which is passing it still reaches the
+     * rest of the pipeline.
+     */
+    private void publish(DefaultChannelHandlerContext[] contexts) {
+        // Link from the far end first, so that a context is linked before the
+        // others link to it.
+        DefaultChannelHandlerContext nextUpstream = null;
+        for (int i = contexts.length - 1; i >= 0; i --) {
+            DefaultChannelHandlerContext ctx = contexts[i];
+            ctx.nextUpstream = nextUpstream;
+            if (ctx.canHandleUpstream()) {
+                nextUpstream = ctx;
+            }
+        }
+        DefaultChannelHandlerContext nextDownstream = null;
+        for (DefaultChannelHandlerContext ctx: contexts) {
+            ctx.nextDownstream = nextDownstream;
+            if (ctx.canHandleDownstream()) {
+                nextDownstream = ctx;
+            }
+        }
+        snapshot = new Snapshot(contexts);
+    }
+
+    private int indexOf(DefaultChannelHandlerContext ctx) {
+        DefaultChannelHandlerContext[] contexts = snapshot.contexts;
+        for (int i = 0; i < contexts.length; i ++) {
+            if (contexts[i] == ctx) {
+                return i;
+            }
+        }
+        throw new NoSuchElementException(ctx.getName());
     }
 
     private void checkDuplicateName(String name) {
-        if (name2ctx.containsKey(name)) {
+        if (snapshot.name2ctx.containsKey(name)) {
             throw new IllegalArgumentException("Duplicate handler name: " + name);
         }
     }
@@ -705,18 +603,53 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
+    /**
+     * A handler chain which is never modified once published.
+     */
+    private static final class Snapshot {
+        final DefaultChannelHandlerContext[] contexts;
+        final Map<String, DefaultChannelHandlerContext> name2ctx;
+        final DefaultChannelHandlerContext firstUpstream;
+        final DefaultChannelHandlerContext lastDownstream;
+
+        Snapshot(DefaultChannelHandlerContext[] contexts) {
+            this.contexts = contexts;
+
+            Map<String, DefaultChannelHandlerContext> name2ctx =
+                new HashMap<String, DefaultChannelHandlerContext>(contexts.length << 1);
+            DefaultChannelHandlerContext firstUpstream = null;
+            DefaultChannelHandlerContext lastDownstream = null;
+            for (DefaultChannelHandlerContext ctx: contexts) {
+                name2ctx.put(ctx.getName(), ctx);
+                if (firstUpstream == null && ctx.canHandleUpstream()) {
+                    firstUpstream = ctx;
+                }
+                if (ctx.canHandleDownstream()) {
+                    lastDownstream = ctx;
+                }
+            }
+            this.name2ctx = name2ctx;
+            this.firstUpstream = firstUpstream;
+            this.lastDownstream = lastDownstream;
+        }
+    }
+
     private final class DefaultChannelHandlerContext implements ChannelHandlerContext {
-        volatile DefaultChannelHandlerContext next;
-        volatile DefaultChannelHandlerContext prev;
+        /**
+         * The nearest context towards the tail which handles upstream events.
+         */
+        volatile DefaultChannelHandlerContext nextUpstream;
+        /**
+         * The nearest context towards the head which handles downstream events.
+         */
+        volatile DefaultChannelHandlerContext nextDownstream;
         private final String name;
         private final ChannelHandler handler;
         private final boolean canHandleUpstream;
         private final boolean canHandleDownstream;
         private volatile Object attachment;
 
-        DefaultChannelHandlerContext(
-                DefaultChannelHandlerContext prev, DefaultChannelHandlerContext next,
-                String name, ChannelHandler handler) {
+        DefaultChannelHandlerContext(String name, ChannelHandler handler) {
 
             if (name == null) {
                 throw new NullPointerException("name");
@@ -734,8 +667,6 @@ public class DefaultChannelPipeline implements ChannelPipeline {
                         ChannelDownstreamHandler.class.getName() + '.');
             }
 
-            this.prev = prev;
-            this.next = next;
             this.name = name;
             this.handler = handler;
         }
@@ -773,7 +704,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
 
         public void sendDownstream(ChannelEvent e) {
-            DefaultChannelHandlerContext prev = getActualDownstreamContext(this.prev);
+            DefaultChannelHandlerContext prev = nextDownstream;
             if (prev == null) {
                 try {
                     getSink().eventSunk(DefaultChannelPipeline.this, e);
@@ -786,7 +717,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
 
         public void sendUpstream(ChannelEvent e) {
-            DefaultChannelHandlerContext next = getActualUpstreamContext(this.next);
+            DefaultChannelHandlerContext next = nextUpstream;
             if (next != null) {
                 DefaultChannelPipeline.this.sendUpstream(next, e);
             }
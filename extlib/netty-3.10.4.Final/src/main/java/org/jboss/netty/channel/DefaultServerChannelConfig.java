@@ -16,6 +16,7 @@
 package org.jboss.netty.channel;
 
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBufferTracker;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
 
@@ -28,7 +29,8 @@ import java.util.Map.Entry;
 public class DefaultServerChannelConfig implements ChannelConfig {
 
     private volatile ChannelPipelineFactory pipelineFactory;
-    private volatile ChannelBufferFactory bufferFactory = HeapChannelBufferFactory.getInstance();
+    private volatile ChannelBufferFactory bufferFactory =
+        ChannelBufferTracker.getInstance().track(HeapChannelBufferFactory.getInstance());
 
     public void setOptions(Map<String, Object> options) {
         for (Entry<String, Object> e: options.entrySet()) {
@@ -74,7 +76,7 @@ public class DefaultServerChannelConfig implements ChannelConfig {
             throw new NullPointerException("bufferFactory");
         }
 
-        this.bufferFactory = bufferFactory;
+        this.bufferFactory = ChannelBufferTracker.getInstance().track(bufferFactory, this.bufferFactory);
     }
 
     public int getConnectTimeoutMillis() {
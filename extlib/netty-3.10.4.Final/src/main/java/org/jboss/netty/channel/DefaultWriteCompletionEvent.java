@@ -15,20 +15,59 @@
  */
 package org.jboss.netty.channel;
 
+import org.jboss.netty.util.internal.Recycler;
+
 import static org.jboss.netty.channel.Channels.*;
 
 /**
  * The default {@link WriteCompletionEvent} implementation.
+ * <p>
+ * The instances created by {@link Channels#fireWriteComplete(Channel, long)}
+ * and its variants are reused once they have been handled if the
+ * {@code org.jboss.netty.recycleEvents} system property is {@code true}.
  */
 public class DefaultWriteCompletionEvent implements WriteCompletionEvent {
 
-    private final Channel channel;
-    private final long writtenAmount;
+    private static final Recycler<DefaultWriteCompletionEvent> RECYCLER =
+        new Recycler<DefaultWriteCompletionEvent>(EventRecycling.MAX_CAPACITY) {
+            @Override
+            protected DefaultWriteCompletionEvent newObject() {
+                return new DefaultWriteCompletionEvent();
+            }
+        };
+
+    private Channel channel;
+    private long writtenAmount;
+    private final boolean pooled;
+    private boolean recycled;
+
+    /**
+     * Returns an instance from the pool of the current thread if recycling is
+     * enabled, or a new instance otherwise.
+     */
+    static DefaultWriteCompletionEvent newInstance(Channel channel, long writtenAmount) {
+        if (!EventRecycling.ENABLED) {
+            return new DefaultWriteCompletionEvent(channel, writtenAmount);
+        }
+
+        DefaultWriteCompletionEvent e = RECYCLER.get();
+        e.init(channel, writtenAmount);
+        return e;
+    }
+
+    private DefaultWriteCompletionEvent() {
+        pooled = true;
+    }
 
     /**
      * Creates a new instance.
      */
     public DefaultWriteCompletionEvent(Channel channel, long writtenAmount) {
+        pooled = false;
+        init(channel, writtenAmount);
+    }
+
+    private void init(Channel channel, long writtenAmount) {
         if (channel == null) {
             throw new NullPointerException("channel");
         }
@@ -41,7 +80,28 @@ public class DefaultWriteCompletionEvent implements WriteCompletionEvent {
         this.writtenAmount = writtenAmount;
     }
 
+    /**
+     * Returns this event to the pool if it was taken from it.
+     */
+    void recycle() {
+        if (!pooled) {
+            return;
+        }
+
+        channel = null;
+        writtenAmount = 0;
+        if (EventRecycling.DEBUG) {
+            // Never reused, so that any later access is detected.
+            recycled = true;
+        } else {
+            RECYCLER.recycle(this);
+        }
+    }
+
     public Channel getChannel() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return channel;
     }
 
@@ -50,6 +110,9 @@ public class DefaultWriteCompletionEvent implements WriteCompletionEvent {
     }
 
     public long getWrittenAmount() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return writtenAmount;
     }
 
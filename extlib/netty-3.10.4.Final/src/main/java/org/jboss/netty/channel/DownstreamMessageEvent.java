@@ -17,17 +17,52 @@ package org.jboss.netty.channel;
 
 import java.net.SocketAddress;
 
+import org.jboss.netty.util.internal.Recycler;
 import org.jboss.netty.util.internal.StringUtil;
 
 /**
  * The default downstream {@link MessageEvent} implementation.
+ * <p>
+ * The instances created by {@link Channels#write(Channel, Object, SocketAddress)}
+ * and its variants are reused once the write has completed if the
+ * {@code org.jboss.netty.recycleEvents} system property is {@code true}.
  */
 public class DownstreamMessageEvent implements MessageEvent {
 
-    private final Channel channel;
-    private final ChannelFuture future;
-    private final Object message;
-    private final SocketAddress remoteAddress;
+    private static final Recycler<DownstreamMessageEvent> RECYCLER =
+        new Recycler<DownstreamMessageEvent>(EventRecycling.MAX_CAPACITY) {
+            @Override
+            protected DownstreamMessageEvent newObject() {
+                return new DownstreamMessageEvent();
+            }
+        };
+
+    private Channel channel;
+    private ChannelFuture future;
+    private Object message;
+    private SocketAddress remoteAddress;
+    private final boolean pooled;
+    private boolean recycled;
+
+    /**
+     * Returns an instance from the pool of the current thread if recycling is
+     * enabled, or a new instance otherwise.
+     */
+    static DownstreamMessageEvent newInstance(
+            Channel channel, ChannelFuture future,
+            Object message, SocketAddress remoteAddress) {
+        if (!EventRecycling.ENABLED) {
+            return new DownstreamMessageEvent(channel, future, message, remoteAddress);
+        }
+
+        DownstreamMessageEvent e = RECYCLER.get();
+        e.init(channel, future, message, remoteAddress);
+        return e;
+    }
+
+    private DownstreamMessageEvent() {
+        pooled = true;
+    }
 
     /**
      * Creates a new instance.
@@ -35,6 +70,13 @@ public class DownstreamMessageEvent implements MessageEvent {
     public DownstreamMessageEvent(
             Channel channel, ChannelFuture future,
             Object message, SocketAddress remoteAddress) {
+        pooled = false;
+        init(channel, future, message, remoteAddress);
+    }
+
+    private void init(
+            Channel channel, ChannelFuture future,
+            Object message, SocketAddress remoteAddress) {
 
         if (channel == null) {
             throw new NullPointerException("channel");
@@ -55,19 +97,53 @@ public class DownstreamMessageEvent implements MessageEvent {
         }
     }
 
+    /**
+     * Returns this event to the pool of the current thread if it was taken
+     * from a pool.  Called by the transport once the write has completed;
+     * the event must not be accessed anymore afterwards.
+     */
+    public void recycle() {
+        if (!pooled) {
+            return;
+        }
+
+        channel = null;
+        future = null;
+        message = null;
+        remoteAddress = null;
+        if (EventRecycling.DEBUG) {
+            // Never reused, so that any later access is detected.
+            recycled = true;
+        } else {
+            RECYCLER.recycle(this);
+        }
+    }
+
     public Channel getChannel() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return channel;
     }
 
     public ChannelFuture getFuture() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return future;
     }
 
     public Object getMessage() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return message;
     }
 
     public SocketAddress getRemoteAddress() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return remoteAddress;
     }
 
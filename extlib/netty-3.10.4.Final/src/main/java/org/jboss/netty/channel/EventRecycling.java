@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+/**
+ * Configures the recycling of the {@link UpstreamMessageEvent}s,
+ * {@link DownstreamMessageEvent}s and {@link DefaultWriteCompletionEvent}s
+ * which are created by {@link Channels}.  Recycling is disabled unless the
+ * following system properties are set:
+ * <ul>
+ * <li>{@code org.jboss.netty.recycleEvents} - {@code true} to reuse the
+ *     events once they have been handled, from a pool per thread.  Enable it
+ *     only if no handler keeps a reference to an event after its
+ *     {@code handleUpstream()} or {@code handleDownstream()} method returned
+ *     (or after the write completed, for a write request), which rules out
+ *     an {@code ExecutionHandler} in the pipeline.</li>
+ * <li>{@code org.jboss.netty.recycleEvents.debug} - {@code true} to never
+ *     reuse a recycled event, but make it raise an
+ *     {@link IllegalStateException} when it is accessed, so that handlers
+ *     which break the rule above can be found.</li>
+ * <li>{@code org.jboss.netty.recycleEvents.maxCapacity} - the maximum number
+ *     of free events of each type pooled per thread (default: {@code 256})</li>
+ * </ul>
+ */
+final class EventRecycling {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(EventRecycling.class);
+
+    static final boolean ENABLED =
+            SystemPropertyUtil.getBoolean("org.jboss.netty.recycleEvents", false);
+    static final boolean DEBUG = ENABLED &&
+            SystemPropertyUtil.getBoolean("org.jboss.netty.recycleEvents.debug", false);
+    static final int MAX_CAPACITY =
+            SystemPropertyUtil.getInt("org.jboss.netty.recycleEvents.maxCapacity", 256);
+
+    static {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Event recycling enabled = " + ENABLED);
+            logger.debug("Event recycling debug mode enabled = " + DEBUG);
+        }
+    }
+
+    static IllegalStateException recycled(Object event) {
+        return new IllegalStateException(
+                event.getClass().getSimpleName() + " used after having been recycled");
+    }
+
+    private EventRecycling() {
+        // Unused
+    }
+}
@@ -19,23 +19,61 @@ import static org.jboss.netty.channel.Channels.*;
 
 import java.net.SocketAddress;
 
+import org.jboss.netty.util.internal.Recycler;
 import org.jboss.netty.util.internal.StringUtil;
 
 /**
  * The default upstream {@link MessageEvent} implementation.
+ * <p>
+ * The instances created by {@link Channels#fireMessageReceived(Channel, Object, SocketAddress)}
+ * and its variants are reused once they have been handled if the
+ * {@code org.jboss.netty.recycleEvents} system property is {@code true}.
  */
 public class UpstreamMessageEvent implements MessageEvent {
 
-    private final Channel channel;
-    private final Object message;
-    private final SocketAddress remoteAddress;
+    private static final Recycler<UpstreamMessageEvent> RECYCLER =
+        new Recycler<UpstreamMessageEvent>(EventRecycling.MAX_CAPACITY) {
+            @Override
+            protected UpstreamMessageEvent newObject() {
+                return new UpstreamMessageEvent();
+            }
+        };
+
+    private Channel channel;
+    private Object message;
+    private SocketAddress remoteAddress;
+    private final boolean pooled;
+    private boolean recycled;
+
+    /**
+     * Returns an instance from the pool of the current thread if recycling is
+     * enabled, or a new instance otherwise.
+     */
+    static UpstreamMessageEvent newInstance(
+            Channel channel, Object message, SocketAddress remoteAddress) {
+        if (!EventRecycling.ENABLED) {
+            return new UpstreamMessageEvent(channel, message, remoteAddress);
+        }
+
+        UpstreamMessageEvent e = RECYCLER.get();
+        e.init(channel, message, remoteAddress);
+        return e;
+    }
+
+    private UpstreamMessageEvent() {
+        pooled = true;
+    }
 
     /**
      * Creates a new instance.
      */
     public UpstreamMessageEvent(
             Channel channel, Object message, SocketAddress remoteAddress) {
+        pooled = false;
+        init(channel, message, remoteAddress);
+    }
 
+    private void init(Channel channel, Object message, SocketAddress remoteAddress) {
         if (channel == null) {
             throw new NullPointerException("channel");
         }
@@ -51,7 +89,29 @@ public class UpstreamMessageEvent implements MessageEvent {
         }
     }
 
+    /**
+     * Returns this event to the pool if it was taken from it.
+     */
+    void recycle() {
+        if (!pooled) {
+            return;
+        }
+
+        channel = null;
+        message = null;
+        remoteAddress = null;
+        if (EventRecycling.DEBUG) {
+            // Never reused, so that any later access is detected.
+            recycled = true;
+        } else {
+            RECYCLER.recycle(this);
+        }
+    }
+
     public Channel getChannel() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return channel;
     }
 
@@ -60,10 +120,16 @@ public class UpstreamMessageEvent implements MessageEvent {
     }
 
     public Object getMessage() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return message;
     }
 
     public SocketAddress getRemoteAddress() {
+        if (EventRecycling.DEBUG && recycled) {
+            throw EventRecycling.recycled(this);
+        }
         return remoteAddress;
     }
 
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.jboss.netty.channel.Channels.*;
+
+/**
+ * A {@link ChannelFuture} for the operations whose result nobody is
+ * interested in, such as fire-and-forget writes.  The future is never done
+ * and its completion costs nothing: no future is allocated per operation and
+ * no listener is notified.  A failure is reported as an
+ * {@code "exceptionCaught"} event instead.
+ * <p>
+ * Since it cannot be waited for nor listened to, {@link #addListener(ChannelFutureListener)}
+ * and the {@code await*()} and {@code sync*()} methods throw an
+ * {@link IllegalStateException}.  Do not pass it to a handler which adds a
+ * listener to the future of a write request, such as a
+ * {@code ChunkedWriteHandler} or a {@code WriteTimeoutHandler}.
+ * <p>
+ * It is recommended to use {@link Channels#voidFuture(Channel)} instead of
+ * calling the constructor of this future.
+ */
+public class VoidChannelFuture implements ChannelFuture {
+
+    private final Channel channel;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param channel the {@link Channel} associated with this future
+     */
+    public VoidChannelFuture(Channel channel) {
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+        this.channel = channel;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public boolean isDone() {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isSuccess() {
+        return false;
+    }
+
+    public Throwable getCause() {
+        return null;
+    }
+
+    public boolean cancel() {
+        return false;
+    }
+
+    public boolean setSuccess() {
+        return true;
+    }
+
+    public boolean setFailure(Throwable cause) {
+        if (cause == null) {
+            throw new NullPointerException("cause");
+        }
+        // May be called by any thread - let the I/O thread fire the event.
+        fireExceptionCaughtLater(channel, cause);
+        return true;
+    }
+
+    public boolean setProgress(long amount, long current, long total) {
+        return false;
+    }
+
+    public void addListener(ChannelFutureListener listener) {
+        throw reject();
+    }
+
+    public void removeListener(ChannelFutureListener listener) {
+        // NOOP
+    }
+
+    public ChannelFuture sync() throws InterruptedException {
+        throw reject();
+    }
+
+    public ChannelFuture syncUninterruptibly() {
+        throw reject();
+    }
+
+    public ChannelFuture await() throws InterruptedException {
+        throw reject();
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        throw reject();
+    }
+
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        throw reject();
+    }
+
+    public ChannelFuture awaitUninterruptibly() {
+        throw reject();
+    }
+
+    public boolean awaitUninterruptibly(long timeout, TimeUnit unit) {
+        throw reject();
+    }
+
+    public boolean awaitUninterruptibly(long timeoutMillis) {
+        throw reject();
+    }
+
+    private static IllegalStateException reject() {
+        return new IllegalStateException("void future");
+    }
+}
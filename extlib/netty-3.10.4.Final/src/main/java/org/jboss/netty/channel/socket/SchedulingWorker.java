@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Worker} which can also run tasks in its IO-Thread after a delay,
+ * so that a timeout never has to hop from a {@link Timer} thread to the
+ * IO-Thread.
+ */
+public interface SchedulingWorker extends Worker {
+
+    /**
+     * Executes the given {@link Runnable} in the IO-Thread once the given
+     * delay has elapsed.
+     *
+     * @return a handle which can be used to cancel the task
+     *
+     * @throws RejectedExecutionException if the worker has been shut down
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Returns a {@link Timer} whose tasks are executed in the IO-Thread.
+     * The returned {@link Timer} cannot be {@linkplain Timer#stop() stopped};
+     * its tasks are discarded when the worker shuts down.
+     */
+    Timer getTimer();
+}
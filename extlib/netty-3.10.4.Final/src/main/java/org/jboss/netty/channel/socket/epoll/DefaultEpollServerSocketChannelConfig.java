@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.io.IOException;
+
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.DefaultServerChannelConfig;
+import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
+import org.jboss.netty.util.internal.ConversionUtil;
+
+/**
+ * The {@link ServerSocketChannelConfig} of an epoll server socket.
+ */
+class DefaultEpollServerSocketChannelConfig extends DefaultServerChannelConfig
+                                            implements ServerSocketChannelConfig {
+
+    private final int fd;
+    private volatile int backlog;
+
+    DefaultEpollServerSocketChannelConfig(int fd) {
+        this.fd = fd;
+    }
+
+    @Override
+    public boolean setOption(String key, Object value) {
+        if (super.setOption(key, value)) {
+            return true;
+        }
+
+        if ("receiveBufferSize".equals(key)) {
+            setReceiveBufferSize(ConversionUtil.toInt(value));
+        } else if ("reuseAddress".equals(key)) {
+            setReuseAddress(ConversionUtil.toBoolean(value));
+        } else if ("backlog".equals(key)) {
+            setBacklog(ConversionUtil.toInt(value));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isReuseAddress() {
+        try {
+            return Native.getReuseAddress(fd) != 0;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setReuseAddress(boolean reuseAddress) {
+        try {
+            Native.setReuseAddress(fd, reuseAddress ? 1 : 0);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public int getReceiveBufferSize() {
+        try {
+            return Native.getReceiveBufferSize(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        try {
+            Native.setReceiveBufferSize(fd, receiveBufferSize);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setPerformancePreferences(int connectionTime, int latency, int bandwidth) {
+        // Not supported by the Linux socket API.
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("backlog: " + backlog);
+        }
+        this.backlog = backlog;
+    }
+}
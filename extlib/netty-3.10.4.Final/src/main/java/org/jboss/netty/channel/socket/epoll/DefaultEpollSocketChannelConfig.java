@@ -0,0 +1,311 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.ReceiveBufferSizePredictor;
+import org.jboss.netty.channel.ReceiveBufferSizePredictorFactory;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.ConversionUtil;
+
+/**
+ * The default {@link EpollSocketChannelConfig} implementation.
+ */
+class DefaultEpollSocketChannelConfig extends DefaultChannelConfig
+        implements EpollSocketChannelConfig {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(DefaultEpollSocketChannelConfig.class);
+
+    private static final ReceiveBufferSizePredictorFactory DEFAULT_PREDICTOR_FACTORY =
+        new AdaptiveReceiveBufferSizePredictorFactory();
+
+    private final int fd;
+    private volatile int writeBufferHighWaterMark = 64 * 1024;
+    private volatile int writeBufferLowWaterMark  = 32 * 1024;
+    private volatile int maxBytesPerRead = 262144;
+    private volatile ReceiveBufferSizePredictor predictor;
+    private volatile ReceiveBufferSizePredictorFactory predictorFactory = DEFAULT_PREDICTOR_FACTORY;
+
+    DefaultEpollSocketChannelConfig(int fd) {
+        this.fd = fd;
+    }
+
+    @Override
+    public void setOptions(Map<String, Object> options) {
+        super.setOptions(options);
+        if (getWriteBufferHighWaterMark() < getWriteBufferLowWaterMark()) {
+            // Recover the integrity of the configuration with a sensible value.
+            setWriteBufferLowWaterMark0(getWriteBufferHighWaterMark() >>> 1);
+            if (logger.isWarnEnabled()) {
+                // Notify the user about misconfiguration.
+                logger.warn(
+                        "writeBufferLowWaterMark cannot be greater than " +
+                        "writeBufferHighWaterMark; setting to the half of the " +
+                        "writeBufferHighWaterMark.");
+            }
+        }
+    }
+
+    @Override
+    public boolean setOption(String key, Object value) {
+        if (super.setOption(key, value)) {
+            return true;
+        }
+
+        if ("receiveBufferSize".equals(key)) {
+            setReceiveBufferSize(ConversionUtil.toInt(value));
+        } else if ("sendBufferSize".equals(key)) {
+            setSendBufferSize(ConversionUtil.toInt(value));
+        } else if ("tcpNoDelay".equals(key)) {
+            setTcpNoDelay(ConversionUtil.toBoolean(value));
+        } else if ("keepAlive".equals(key)) {
+            setKeepAlive(ConversionUtil.toBoolean(value));
+        } else if ("reuseAddress".equals(key)) {
+            setReuseAddress(ConversionUtil.toBoolean(value));
+        } else if ("soLinger".equals(key)) {
+            setSoLinger(ConversionUtil.toInt(value));
+        } else if ("trafficClass".equals(key)) {
+            setTrafficClass(ConversionUtil.toInt(value));
+        } else if ("writeBufferHighWaterMark".equals(key)) {
+            setWriteBufferHighWaterMark0(ConversionUtil.toInt(value));
+        } else if ("writeBufferLowWaterMark".equals(key)) {
+            setWriteBufferLowWaterMark0(ConversionUtil.toInt(value));
+        } else if ("maxBytesPerRead".equals(key)) {
+            setMaxBytesPerRead(ConversionUtil.toInt(value));
+        } else if ("receiveBufferSizePredictorFactory".equals(key)) {
+            setReceiveBufferSizePredictorFactory((ReceiveBufferSizePredictorFactory) value);
+        } else if ("receiveBufferSizePredictor".equals(key)) {
+            setReceiveBufferSizePredictor((ReceiveBufferSizePredictor) value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    public int getReceiveBufferSize() {
+        try {
+            return Native.getReceiveBufferSize(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public int getSendBufferSize() {
+        try {
+            return Native.getSendBufferSize(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public int getSoLinger() {
+        try {
+            return Native.getSoLinger(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public int getTrafficClass() {
+        try {
+            return Native.getTrafficClass(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public boolean isKeepAlive() {
+        try {
+            return Native.getKeepAlive(fd) != 0;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public boolean isReuseAddress() {
+        try {
+            return Native.getReuseAddress(fd) != 0;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public boolean isTcpNoDelay() {
+        try {
+            return Native.getTcpNoDelay(fd) != 0;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        try {
+            Native.setKeepAlive(fd, keepAlive ? 1 : 0);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setPerformancePreferences(
+            int connectionTime, int latency, int bandwidth) {
+        // Not supported by the Linux socket API.
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        try {
+            Native.setReceiveBufferSize(fd, receiveBufferSize);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setReuseAddress(boolean reuseAddress) {
+        try {
+            Native.setReuseAddress(fd, reuseAddress ? 1 : 0);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        try {
+            Native.setSendBufferSize(fd, sendBufferSize);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setSoLinger(int soLinger) {
+        try {
+            Native.setSoLinger(fd, soLinger);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        try {
+            Native.setTcpNoDelay(fd, tcpNoDelay ? 1 : 0);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setTrafficClass(int trafficClass) {
+        try {
+            Native.setTrafficClass(fd, trafficClass);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        if (writeBufferHighWaterMark < getWriteBufferLowWaterMark()) {
+            throw new IllegalArgumentException(
+                    "writeBufferHighWaterMark cannot be less than " +
+                    "writeBufferLowWaterMark (" + getWriteBufferLowWaterMark() + "): " +
+                    writeBufferHighWaterMark);
+        }
+        setWriteBufferHighWaterMark0(writeBufferHighWaterMark);
+    }
+
+    private void setWriteBufferHighWaterMark0(int writeBufferHighWaterMark) {
+        if (writeBufferHighWaterMark < 0) {
+            throw new IllegalArgumentException(
+                    "writeBufferHighWaterMark: " + writeBufferHighWaterMark);
+        }
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        if (writeBufferLowWaterMark > getWriteBufferHighWaterMark()) {
+            throw new IllegalArgumentException(
+                    "writeBufferLowWaterMark cannot be greater than " +
+                    "writeBufferHighWaterMark (" + getWriteBufferHighWaterMark() + "): " +
+                    writeBufferLowWaterMark);
+        }
+        setWriteBufferLowWaterMark0(writeBufferLowWaterMark);
+    }
+
+    private void setWriteBufferLowWaterMark0(int writeBufferLowWaterMark) {
+        if (writeBufferLowWaterMark < 0) {
+            throw new IllegalArgumentException(
+                    "writeBufferLowWaterMark: " + writeBufferLowWaterMark);
+        }
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getMaxBytesPerRead() {
+        return maxBytesPerRead;
+    }
+
+    public void setMaxBytesPerRead(int maxBytesPerRead) {
+        if (maxBytesPerRead <= 0) {
+            throw new IllegalArgumentException(
+                    "maxBytesPerRead must be a positive integer.");
+        }
+        this.maxBytesPerRead = maxBytesPerRead;
+    }
+
+    public ReceiveBufferSizePredictor getReceiveBufferSizePredictor() {
+        ReceiveBufferSizePredictor predictor = this.predictor;
+        if (predictor == null) {
+            try {
+                this.predictor = predictor = getReceiveBufferSizePredictorFactory().getPredictor();
+            } catch (Exception e) {
+                throw new ChannelException(
+                        "Failed to create a new " +
+                        ReceiveBufferSizePredictor.class.getSimpleName() + '.',
+                        e);
+            }
+        }
+        return predictor;
+    }
+
+    public void setReceiveBufferSizePredictor(
+            ReceiveBufferSizePredictor predictor) {
+        if (predictor == null) {
+            throw new NullPointerException("predictor");
+        }
+        this.predictor = predictor;
+    }
+
+    public ReceiveBufferSizePredictorFactory getReceiveBufferSizePredictorFactory() {
+        return predictorFactory;
+    }
+
+    public void setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory predictorFactory) {
+        if (predictorFactory == null) {
+            throw new NullPointerException("predictorFactory");
+        }
+        this.predictorFactory = predictorFactory;
+    }
+}
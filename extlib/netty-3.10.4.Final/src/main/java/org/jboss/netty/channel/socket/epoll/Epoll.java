@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.util.Locale;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.NativeLibraryLoader;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+/**
+ * Tells if the native library of the epoll transport
+ * ({@code netty-transport-native-epoll}) is available.  It is available only
+ * on Linux, and it is not used when the {@code org.jboss.netty.epoll.disabled}
+ * system property is {@code true}.
+ */
+public final class Epoll {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(Epoll.class);
+    private static final Throwable UNAVAILABILITY_CAUSE;
+
+    static {
+        Throwable cause = null;
+        String os = SystemPropertyUtil.get("os.name", "").toLowerCase(Locale.US);
+        if (!os.startsWith("linux")) {
+            cause = new UnsupportedOperationException("epoll is available only on Linux: " + os);
+        } else if (SystemPropertyUtil.getBoolean("org.jboss.netty.epoll.disabled", false)) {
+            cause = new UnsupportedOperationException("disabled by -Dorg.jboss.netty.epoll.disabled");
+        } else {
+            try {
+                NativeLibraryLoader.load("netty-transport-native-epoll", Native.class.getClassLoader());
+
+                // Make sure the library is the one this version expects.
+                int efd = Native.epollCreate();
+                Native.close(efd);
+            } catch (Throwable t) {
+                cause = t;
+            }
+        }
+        if (cause != null) {
+            logger.debug("Failed to load netty-transport-native-epoll; the NIO transport will be used instead.",
+                    cause);
+        }
+        UNAVAILABILITY_CAUSE = cause;
+    }
+
+    /**
+     * Returns {@code true} if and only if the native library of the epoll
+     * transport is available.
+     */
+    public static boolean isAvailable() {
+        return UNAVAILABILITY_CAUSE == null;
+    }
+
+    /**
+     * Ensure that the native library of the epoll transport is available.
+     *
+     * @throws UnsatisfiedLinkError if unavailable
+     */
+    public static void ensureAvailability() {
+        if (UNAVAILABILITY_CAUSE != null) {
+            throw (Error) new UnsatisfiedLinkError(
+                    "failed to load the required native library").initCause(UNAVAILABILITY_CAUSE);
+        }
+    }
+
+    /**
+     * Returns the cause of unavailability of the native library of the epoll
+     * transport.
+     *
+     * @return the cause if unavailable. {@code null} if available.
+     */
+    public static Throwable unavailabilityCause() {
+        return UNAVAILABILITY_CAUSE;
+    }
+
+    private Epoll() { }
+}
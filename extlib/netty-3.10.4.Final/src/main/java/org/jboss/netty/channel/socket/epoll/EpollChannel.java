@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import org.jboss.netty.channel.Channel;
+
+/**
+ * A {@link Channel} whose file descriptor is registered to an {@link EpollEventLoop}.
+ */
+interface EpollChannel extends Channel {
+
+    /**
+     * Returns the file descriptor of the socket.
+     */
+    int fd();
+
+    /**
+     * Returns the {@link EpollEventLoop} which performs the I/O of this channel.
+     */
+    EpollEventLoop eventLoop();
+
+    /**
+     * Called by the event loop when the socket became readable.  As the
+     * notification is edge-triggered, the socket must be read until it would
+     * block, or the read must be continued with
+     * {@link EpollEventLoop#scheduleRead(EpollChannel)}.
+     */
+    void epollInReady();
+
+    /**
+     * Called by the event loop when the socket became writable.
+     */
+    void epollOutReady();
+
+    /**
+     * Closes the channel because its event loop is being shut down.
+     */
+    void closeOnShutdown();
+}
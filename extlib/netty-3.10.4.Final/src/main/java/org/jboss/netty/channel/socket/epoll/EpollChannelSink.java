@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.net.SocketAddress;
+
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.socket.ChannelRunnableWrapper;
+
+/**
+ * The {@link org.jboss.netty.channel.ChannelSink} of the epoll channels.  Write
+ * requests are queued by the calling thread; every other operation is handed
+ * to the {@link EpollEventLoop} of the channel.
+ */
+final class EpollChannelSink extends AbstractChannelSink {
+
+    public void eventSunk(ChannelPipeline pipeline, final ChannelEvent e) throws Exception {
+        Channel channel = e.getChannel();
+        if (e instanceof MessageEvent) {
+            ((EpollSocketChannel) channel).write((MessageEvent) e);
+        } else if (e instanceof ChannelStateEvent) {
+            ((EpollChannel) channel).eventLoop().executeInIoThread(new Runnable() {
+                public void run() {
+                    handleStateEvent((ChannelStateEvent) e);
+                }
+            });
+        }
+    }
+
+    private static void handleStateEvent(ChannelStateEvent e) {
+        Channel ch = e.getChannel();
+        ChannelFuture future = e.getFuture();
+        ChannelState state = e.getState();
+        Object value = e.getValue();
+
+        if (ch instanceof EpollServerSocketChannel) {
+            EpollServerSocketChannel channel = (EpollServerSocketChannel) ch;
+            switch (state) {
+            case OPEN:
+                if (Boolean.FALSE.equals(value)) {
+                    channel.close(future);
+                }
+                break;
+            case BOUND:
+                if (value != null) {
+                    channel.bind(future, (SocketAddress) value);
+                } else {
+                    channel.close(future);
+                }
+                break;
+            default:
+                break;
+            }
+            return;
+        }
+
+        EpollSocketChannel channel = (EpollSocketChannel) ch;
+        switch (state) {
+        case OPEN:
+            if (Boolean.FALSE.equals(value)) {
+                channel.close(future);
+            }
+            break;
+        case BOUND:
+            if (value != null) {
+                channel.bind(future, (SocketAddress) value);
+            } else {
+                channel.close(future);
+            }
+            break;
+        case CONNECTED:
+            if (value != null) {
+                channel.connect(future, (SocketAddress) value);
+            } else {
+                channel.close(future);
+            }
+            break;
+        case INTEREST_OPS:
+            channel.setInterestOps(future, ((Integer) value).intValue());
+            break;
+        }
+    }
+
+    @Override
+    public ChannelFuture execute(ChannelPipeline pipeline, Runnable task) {
+        Channel ch = pipeline.getChannel();
+        if (ch instanceof EpollChannel) {
+            ChannelRunnableWrapper wrapper = new ChannelRunnableWrapper(ch, task);
+            ((EpollChannel) ch).eventLoop().executeInIoThread(wrapper);
+            return wrapper;
+        }
+        return super.execute(pipeline, task);
+    }
+
+    @Override
+    protected boolean isFireExceptionCaughtLater(ChannelEvent event, Throwable actualCause) {
+        Channel channel = event.getChannel();
+        return channel instanceof EpollChannel && !((EpollChannel) channel).eventLoop().isIoThread();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+/**
+ * A {@link ClientSocketChannelFactory} which creates a client-side
+ * {@link SocketChannel} based on edge-triggered
+ * <a href="http://man7.org/linux/man-pages/man7/epoll.7.html">epoll</a>.
+ * <p>
+ * The transport requires Linux and the {@code netty-transport-native-epoll}
+ * library (see {@link Epoll}).  If the library is not available, this factory
+ * creates the channels of a {@link NioClientSocketChannelFactory} instead,
+ * whose boss thread is acquired from the {@code workerExecutor}.
+ *
+ * <h3>How threads work</h3>
+ * <p>
+ * There is no boss thread.  A connection attempt is made by the worker thread
+ * which the new {@link Channel} is assigned to, and that thread performs all
+ * the I/O of the channel afterwards.  It also expires the connect timeout, so
+ * no timer thread is needed.  The worker threads are acquired from
+ * the {@code workerExecutor} when the factory is created and are stopped by
+ * {@link #shutdown()} or {@link #releaseExternalResources()}.
+ *
+ * @apiviz.landmark
+ */
+public class EpollClientSocketChannelFactory implements ClientSocketChannelFactory {
+
+    private final Executor workerExecutor;
+    private final EpollEventLoopPool workerPool;
+    private final EpollChannelSink sink;
+    private final ClientSocketChannelFactory fallback;
+    private boolean releasePools;
+
+    /**
+     * Create a new {@link EpollClientSocketChannelFactory} using {@link Executors#newCachedThreadPool()}
+     * for the workers.
+     *
+     * See {@link #EpollClientSocketChannelFactory(Executor)}
+     */
+    public EpollClientSocketChannelFactory() {
+        this(Executors.newCachedThreadPool());
+        releasePools = true;
+    }
+
+    /**
+     * Creates a new instance with twice as many worker threads as the number
+     * of available processors.
+     *
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     */
+    public EpollClientSocketChannelFactory(Executor workerExecutor) {
+        this(workerExecutor, EpollEventLoopPool.DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     * @param workerCount
+     *        the maximum number of I/O worker threads
+     */
+    public EpollClientSocketChannelFactory(Executor workerExecutor, int workerCount) {
+        if (workerExecutor == null) {
+            throw new NullPointerException("workerExecutor");
+        }
+        this.workerExecutor = workerExecutor;
+
+        if (!Epoll.isAvailable()) {
+            fallback = new NioClientSocketChannelFactory(
+                    workerExecutor, 1, new NioWorkerPool(workerExecutor, workerCount));
+            workerPool = null;
+            sink = null;
+            return;
+        }
+
+        fallback = null;
+        workerPool = new EpollEventLoopPool(workerExecutor, workerCount, "New I/O epoll client worker #", null);
+        sink = new EpollChannelSink();
+    }
+
+    public SocketChannel newChannel(ChannelPipeline pipeline) {
+        if (fallback != null) {
+            return fallback.newChannel(pipeline);
+        }
+        return new EpollSocketChannel(this, pipeline, sink, workerPool.nextLoop());
+    }
+
+    public void shutdown() {
+        if (fallback != null) {
+            fallback.shutdown();
+        } else {
+            workerPool.shutdown();
+        }
+        if (releasePools) {
+            releasePools();
+        }
+    }
+
+    public void releaseExternalResources() {
+        if (fallback != null) {
+            fallback.releaseExternalResources();
+        } else {
+            workerPool.shutdown();
+        }
+        releasePools();
+    }
+
+    private void releasePools() {
+        ExecutorUtil.shutdownNow(workerExecutor);
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.socket.SchedulingWorker;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.ThreadRenamingRunnable;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.internal.DeadLockProofWorker;
+import org.jboss.netty.util.internal.IoThreadTimer;
+import org.jboss.netty.util.internal.MpscLinkedQueue;
+
+/**
+ * An I/O thread which waits for edge-triggered epoll notifications of the
+ * {@link EpollChannel}s registered to it.  Every operation of a registered
+ * channel is performed by this thread.
+ */
+final class EpollEventLoop implements SchedulingWorker {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(EpollEventLoop.class);
+
+    private static final int MAX_EVENTS = 512;
+
+    /**
+     * The size of the direct buffer shared by the channels of the loop.  Reads
+     * and writes of heap buffers go through it.
+     */
+    private static final int DIRECT_BUFFER_SIZE = 65536;
+
+    private final int epollFd;
+    private final int eventFd;
+    private final long[] events = new long[MAX_EVENTS];
+
+    /**
+     * The registered channels indexed by their file descriptor.  Accessed by the I/O thread only.
+     */
+    private EpollChannel[] channels = new EpollChannel[64];
+
+    /**
+     * The channels which stopped reading before their socket was drained.
+     * Accessed by the I/O thread only.
+     */
+    private List<EpollChannel> pendingReads = new ArrayList<EpollChannel>();
+    private List<EpollChannel> processingReads = new ArrayList<EpollChannel>();
+
+    private final Queue<Runnable> taskQueue = new MpscLinkedQueue<Runnable>();
+
+    /**
+     * Runs the tasks scheduled with {@link #schedule(Runnable, long, TimeUnit)}.
+     */
+    private final IoThreadTimer timer = new IoThreadTimer(new Executor() {
+        public void execute(Runnable task) {
+            if (isIoThread()) {
+                task.run();
+            } else if (shutdown) {
+                // The task would never run.
+                throw new RejectedExecutionException("Event loop has already been shut down");
+            } else {
+                registerTask(task);
+            }
+        }
+    });
+
+    /**
+     * {@code true} if the I/O thread was or is about to be woken up by the event fd.
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+    private volatile boolean shutdown;
+    private volatile Thread thread;
+
+    /**
+     * {@code true} once the epoll and event fds were closed.  Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    /**
+     * A direct buffer for the reads and writes of the I/O thread.
+     */
+    final ByteBuffer directBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+
+    EpollEventLoop(Executor executor, String threadName, ThreadNameDeterminer determiner) {
+        Epoll.ensureAvailability();
+        int epollFd = -1;
+        int eventFd = -1;
+        boolean success = false;
+        try {
+            epollFd = Native.epollCreate();
+            eventFd = Native.eventFd();
+            Native.epollCtlAdd(epollFd, eventFd, Native.EPOLLIN);
+            success = true;
+        } catch (IOException e) {
+            throw new ChannelException("Failed to create an epoll event loop.", e);
+        } finally {
+            if (!success) {
+                closeQuietly(eventFd);
+                closeQuietly(epollFd);
+            }
+        }
+        this.epollFd = epollFd;
+        this.eventFd = eventFd;
+
+        DeadLockProofWorker.start(executor, new ThreadRenamingRunnable(this, threadName, determiner));
+    }
+
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (!shutdown) {
+                wakenUp.set(false);
+                int timeout = taskQueue.isEmpty() && pendingReads.isEmpty() ? nextTimeoutMillis() : 0;
+                int ready;
+                try {
+                    ready = Native.epollWait(epollFd, events, timeout);
+                } catch (IOException e) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn("Unexpected exception in the epoll loop.", e);
+                    }
+                    // Prevent possible consecutive immediate failures that lead to
+                    // excessive CPU consumption.
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ignored) {
+                        // Ignore.
+                    }
+                    continue;
+                }
+
+                processReady(ready);
+                processPendingReads();
+                processTaskQueue();
+                timer.runExpiredTasks();
+            }
+        } finally {
+            timer.clear();
+            closeAll();
+            synchronized (this) {
+                // Make sure no other thread writes to the event fd once it is closed.
+                closed = true;
+                closeQuietly(eventFd);
+                closeQuietly(epollFd);
+            }
+            shutdownLatch.countDown();
+            processTaskQueueAfterTermination();
+        }
+    }
+
+    /**
+     * Returns the timeout of the next {@link Native#epollWait(int, long[], int)}
+     * call, which is the delay of the nearest scheduled task rounded up to
+     * milliseconds, or {@code -1} if no task has been scheduled.
+     */
+    private int nextTimeoutMillis() {
+        long delayNanos = timer.nextDelayNanos();
+        if (delayNanos < 0) {
+            return -1;
+        }
+        // Round up so that the task is never run before its deadline.
+        return (int) Math.min((delayNanos + 999999) / 1000000, Integer.MAX_VALUE);
+    }
+
+    private void processReady(int ready) {
+        for (int i = 0; i < ready; i ++) {
+            long event = events[i];
+            int fd = (int) (event >>> 32);
+            int flags = (int) event;
+
+            if (fd == eventFd) {
+                try {
+                    Native.eventFdRead(eventFd);
+                } catch (IOException e) {
+                    // Harmless - the next write still wakes up the loop.
+                }
+                continue;
+            }
+
+            EpollChannel channel = channel(fd);
+            if (channel == null) {
+                // Closed by an event processed earlier in this iteration.
+                continue;
+            }
+            if ((flags & (Native.EPOLLOUT | Native.EPOLLERR)) != 0) {
+                channel.epollOutReady();
+            }
+            if ((flags & (Native.EPOLLIN | Native.EPOLLERR)) != 0 && channel(fd) == channel) {
+                channel.epollInReady();
+            }
+        }
+    }
+
+    private void processPendingReads() {
+        if (pendingReads.isEmpty()) {
+            return;
+        }
+
+        // Swap the lists so that the channels can schedule another read.
+        List<EpollChannel> reads = pendingReads;
+        pendingReads = processingReads;
+        processingReads = reads;
+        for (EpollChannel channel: reads) {
+            if (channel(channel.fd()) == channel) {
+                channel.epollInReady();
+            }
+        }
+        reads.clear();
+    }
+
+    private void processTaskQueue() {
+        for (;;) {
+            final Runnable task = taskQueue.poll();
+            if (task == null) {
+                break;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Unexpected exception raised by a task of the epoll loop.", t);
+                }
+            }
+        }
+    }
+
+    private void processTaskQueueAfterTermination() {
+        // Any thread may get here once the loop terminated.
+        synchronized (taskQueue) {
+            processTaskQueue();
+        }
+    }
+
+    private void closeAll() {
+        EpollChannel[] channels = this.channels;
+        for (EpollChannel channel: channels) {
+            if (channel != null) {
+                channel.closeOnShutdown();
+            }
+        }
+    }
+
+    private EpollChannel channel(int fd) {
+        EpollChannel[] channels = this.channels;
+        return fd < channels.length ? channels[fd] : null;
+    }
+
+    /**
+     * Registers the channel for the specified {@link Native#EPOLLIN} and
+     * {@link Native#EPOLLOUT} flags.  Must be called by the I/O thread.
+     */
+    void add(EpollChannel channel, int flags) throws IOException {
+        int fd = channel.fd();
+        if (fd >= channels.length) {
+            EpollChannel[] newChannels = new EpollChannel[Math.max(channels.length << 1, fd + 1)];
+            System.arraycopy(channels, 0, newChannels, 0, channels.length);
+            channels = newChannels;
+        }
+        Native.epollCtlAdd(epollFd, fd, flags);
+        channels[fd] = channel;
+    }
+
+    /**
+     * Changes the flags of a registered channel.  Must be called by the I/O thread.
+     */
+    void modify(EpollChannel channel, int flags) throws IOException {
+        Native.epollCtlMod(epollFd, channel.fd(), flags);
+    }
+
+    /**
+     * Deregisters the channel.  Must be called by the I/O thread before the
+     * file descriptor is closed.
+     */
+    void remove(EpollChannel channel) {
+        int fd = channel.fd();
+        if (channel(fd) != channel) {
+            return;
+        }
+        channels[fd] = null;
+        if (isTerminated()) {
+            return;
+        }
+        try {
+            Native.epollCtlDel(epollFd, fd);
+        } catch (IOException e) {
+            // Closing the file descriptor deregisters it anyway.
+        }
+    }
+
+    /**
+     * Lets the I/O thread continue reading the channel after the events of the
+     * current iteration were processed.  Must be called by the I/O thread.
+     */
+    void scheduleRead(EpollChannel channel) {
+        pendingReads.add(channel);
+    }
+
+    boolean isIoThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Returns {@code true} once the I/O thread has exited; tasks are then
+     * executed by the caller.
+     */
+    boolean isTerminated() {
+        return shutdownLatch.getCount() == 0;
+    }
+
+    public void executeInIoThread(Runnable task) {
+        if (isIoThread() || isTerminated()) {
+            task.run();
+        } else {
+            registerTask(task);
+        }
+    }
+
+    /**
+     * Executes the given {@link Runnable} in the I/O thread once the given
+     * delay has elapsed.  Scheduled tasks are discarded when the loop is
+     * shut down.
+     *
+     * @return a handle which can be used to cancel the task
+     *
+     * @throws RejectedExecutionException if this loop has been shut down
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return timer.schedule(task, delay, unit);
+    }
+
+    /**
+     * Returns a {@link Timer} whose tasks are executed in the I/O thread.
+     * The returned {@link Timer} cannot be stopped; its tasks are discarded
+     * when the loop is shut down, and it rejects new tasks with a
+     * {@link RejectedExecutionException} afterwards.
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Adds the task to the task queue even if the caller is the I/O thread.
+     */
+    void registerTask(Runnable task) {
+        taskQueue.offer(task);
+        if (isTerminated()) {
+            // The loop exited meanwhile; nobody else would run the task.
+            processTaskQueueAfterTermination();
+        } else if (wakenUp.compareAndSet(false, true)) {
+            wakeup();
+        }
+    }
+
+    private synchronized void wakeup() {
+        if (closed) {
+            return;
+        }
+        try {
+            Native.eventFdWrite(eventFd, 1L);
+        } catch (IOException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to wake up the epoll loop.", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the I/O thread after closing all registered channels and waits
+     * for it to exit.
+     */
+    void shutdown() {
+        if (isTerminated()) {
+            return;
+        }
+        shutdown = true;
+        wakeup();
+        if (isIoThread()) {
+            return;
+        }
+
+        boolean interrupted = false;
+        while (!isTerminated()) {
+            try {
+                shutdownLatch.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(int fd) {
+        if (fd < 0) {
+            return;
+        }
+        try {
+            Native.close(fd);
+        } catch (IOException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to close a file descriptor.", e);
+            }
+        }
+    }
+}
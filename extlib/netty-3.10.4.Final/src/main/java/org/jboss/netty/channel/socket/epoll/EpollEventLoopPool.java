@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.util.ThreadNameDeterminer;
+
+/**
+ * A fixed set of {@link EpollEventLoop}s which are assigned to new channels in
+ * a round-robin fashion.
+ */
+final class EpollEventLoopPool {
+
+    static final int DEFAULT_IO_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final EpollEventLoop[] loops;
+    private final AtomicInteger loopIndex = new AtomicInteger();
+
+    EpollEventLoopPool(Executor executor, int loopCount, String threadNamePrefix,
+                       ThreadNameDeterminer determiner) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if (loopCount <= 0) {
+            throw new IllegalArgumentException(
+                    "loopCount (" + loopCount + ") must be a positive integer.");
+        }
+        loops = new EpollEventLoop[loopCount];
+        boolean success = false;
+        try {
+            for (int i = 0; i < loopCount; i ++) {
+                loops[i] = new EpollEventLoop(
+                        executor, threadNamePrefix + nextId.incrementAndGet(), determiner);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                shutdown();
+            }
+        }
+    }
+
+    EpollEventLoop nextLoop() {
+        return loops[Math.abs(loopIndex.getAndIncrement() % loops.length)];
+    }
+
+    void shutdown() {
+        for (EpollEventLoop loop: loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+
+import org.jboss.netty.channel.AbstractServerChannel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.socket.ServerSocketChannel;
+import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+/**
+ * A {@link ServerSocketChannel} which accepts connections on the boss
+ * {@link EpollEventLoop} and hands them to the worker loops.
+ */
+final class EpollServerSocketChannel extends AbstractServerChannel
+                                     implements ServerSocketChannel, EpollChannel {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(EpollServerSocketChannel.class);
+
+    /**
+     * The backlog used when none is configured, as {@link java.net.ServerSocket} does.
+     */
+    private static final int DEFAULT_BACKLOG = 50;
+
+    final int fd;
+    final EpollEventLoop loop;
+    private final EpollEventLoopPool workerPool;
+    private final DefaultEpollServerSocketChannelConfig config;
+    private volatile boolean bound;
+    private volatile InetSocketAddress localAddress;
+
+    // Accessed by the I/O thread only.
+    private boolean registered;
+
+    EpollServerSocketChannel(
+            ChannelFactory factory, ChannelPipeline pipeline, ChannelSink sink,
+            EpollEventLoop loop, EpollEventLoopPool workerPool) {
+
+        super(factory, pipeline, sink);
+        this.loop = loop;
+        this.workerPool = workerPool;
+
+        try {
+            fd = Native.socketStream();
+        } catch (IOException e) {
+            throw new ChannelException("Failed to open a server socket.", e);
+        }
+
+        config = new DefaultEpollServerSocketChannelConfig(fd);
+        try {
+            // Same default as java.net.ServerSocket on Linux.
+            config.setReuseAddress(true);
+        } catch (ChannelException e) {
+            try {
+                Native.close(fd);
+            } catch (IOException e2) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(
+                            "Failed to close a partially initialized socket.", e2);
+                }
+            }
+            throw e;
+        }
+
+        fireChannelOpen(this);
+    }
+
+    public int fd() {
+        return fd;
+    }
+
+    public EpollEventLoop eventLoop() {
+        return loop;
+    }
+
+    public ServerSocketChannelConfig getConfig() {
+        return config;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        InetSocketAddress localAddress = this.localAddress;
+        if (localAddress == null && bound) {
+            this.localAddress = localAddress = Native.address(Native.localAddress(fd));
+        }
+        return localAddress;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    public boolean isBound() {
+        return isOpen() && bound;
+    }
+
+    @Override
+    protected boolean setClosed() {
+        return super.setClosed();
+    }
+
+    void bind(ChannelFuture future, SocketAddress localAddress) {
+        if (!isOpen()) {
+            future.setFailure(new ClosedChannelException());
+            return;
+        }
+
+        try {
+            int backlog = config.getBacklog();
+            Native.bind(fd, (InetSocketAddress) localAddress);
+            Native.listen(fd, backlog < 1 ? DEFAULT_BACKLOG : backlog);
+            loop.add(this, Native.EPOLLIN);
+            registered = true;
+            bound = true;
+
+            future.setSuccess();
+            fireChannelBound(this, getLocalAddress());
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(this, t);
+        }
+    }
+
+    public void epollInReady() {
+        // Accept until the backlog is empty; no new edge is raised for the pending connections.
+        while (isBound()) {
+            int childFd;
+            try {
+                childFd = Native.accept(fd);
+            } catch (IOException e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Failed to accept a connection.", e);
+                }
+                break;
+            }
+            if (childFd < 0) {
+                break;
+            }
+            registerAcceptedChannel(childFd);
+        }
+    }
+
+    private void registerAcceptedChannel(int childFd) {
+        try {
+            ChannelPipeline pipeline = config.getPipelineFactory().getPipeline();
+            EpollEventLoop worker = workerPool.nextLoop();
+            final EpollSocketChannel channel = new EpollSocketChannel(
+                    this, getFactory(), pipeline, getPipeline().getSink(), worker, childFd);
+            worker.executeInIoThread(new Runnable() {
+                public void run() {
+                    channel.register();
+                }
+            });
+        } catch (Exception e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn(
+                        "Failed to initialize an accepted socket.", e);
+            }
+            try {
+                Native.close(childFd);
+            } catch (IOException e2) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(
+                            "Failed to close a partially accepted socket.",
+                            e2);
+                }
+            }
+        }
+    }
+
+    public void epollOutReady() {
+        // Not registered for EPOLLOUT.
+    }
+
+    void close(ChannelFuture future) {
+        boolean bound = isBound();
+        if (!setClosed()) {
+            future.setSuccess();
+            return;
+        }
+
+        if (registered) {
+            loop.remove(this);
+            registered = false;
+        }
+        try {
+            Native.close(fd);
+            future.setSuccess();
+        } catch (IOException e) {
+            future.setFailure(e);
+        }
+
+        if (bound) {
+            fireChannelUnbound(this);
+        }
+        fireChannelClosed(this);
+    }
+
+    public void closeOnShutdown() {
+        close(succeededFuture(this));
+    }
+}
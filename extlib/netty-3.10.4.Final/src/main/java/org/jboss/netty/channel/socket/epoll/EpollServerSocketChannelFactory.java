@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.socket.ServerSocketChannel;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+/**
+ * A {@link ServerSocketChannelFactory} which creates a server-side
+ * {@link ServerSocketChannel} based on edge-triggered
+ * <a href="http://man7.org/linux/man-pages/man7/epoll.7.html">epoll</a>.
+ * It avoids the overhead of the JDK {@link java.nio.channels.Selector}: a
+ * socket is reported only when its state changes, and only the sockets which
+ * could not be written at once are registered for {@code EPOLLOUT}.
+ * <p>
+ * The transport requires Linux and the {@code netty-transport-native-epoll}
+ * library (see {@link Epoll}).  If the library is not available, this factory
+ * creates the channels of a {@link NioServerSocketChannelFactory} which was
+ * created with the same arguments instead, so it can always be used in place
+ * of a {@link NioServerSocketChannelFactory}.
+ *
+ * <h3>How threads work</h3>
+ * <p>
+ * One boss thread, acquired from the {@code bossExecutor}, accepts the
+ * connections of all bound channels and passes every accepted {@link Channel}
+ * to one of the worker threads, which are acquired from the
+ * {@code workerExecutor}.  A worker thread performs all the I/O of its
+ * channels.  All threads are started when the factory is created and are
+ * stopped by {@link #shutdown()} or {@link #releaseExternalResources()}.
+ *
+ * @apiviz.landmark
+ */
+public class EpollServerSocketChannelFactory implements ServerSocketChannelFactory {
+
+    private final Executor bossExecutor;
+    private final Executor workerExecutor;
+    private final EpollEventLoopPool bossPool;
+    private final EpollEventLoopPool workerPool;
+    private final EpollChannelSink sink;
+    private final ServerSocketChannelFactory fallback;
+    private boolean releasePools;
+
+    /**
+     * Create a new {@link EpollServerSocketChannelFactory} using {@link Executors#newCachedThreadPool()}
+     * for the boss and worker.
+     *
+     * See {@link #EpollServerSocketChannelFactory(Executor, Executor)}
+     */
+    public EpollServerSocketChannelFactory() {
+        this(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+        releasePools = true;
+    }
+
+    /**
+     * Creates a new instance with twice as many worker threads as the number
+     * of available processors.
+     *
+     * @param bossExecutor
+     *        the {@link Executor} which will execute the boss thread
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     */
+    public EpollServerSocketChannelFactory(
+            Executor bossExecutor, Executor workerExecutor) {
+        this(bossExecutor, workerExecutor, EpollEventLoopPool.DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bossExecutor
+     *        the {@link Executor} which will execute the boss thread
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     * @param workerCount
+     *        the maximum number of I/O worker threads
+     */
+    public EpollServerSocketChannelFactory(
+            Executor bossExecutor, Executor workerExecutor,
+            int workerCount) {
+        if (bossExecutor == null) {
+            throw new NullPointerException("bossExecutor");
+        }
+        if (workerExecutor == null) {
+            throw new NullPointerException("workerExecutor");
+        }
+        this.bossExecutor = bossExecutor;
+        this.workerExecutor = workerExecutor;
+
+        if (!Epoll.isAvailable()) {
+            fallback = new NioServerSocketChannelFactory(bossExecutor, workerExecutor, workerCount);
+            bossPool = null;
+            workerPool = null;
+            sink = null;
+            return;
+        }
+
+        fallback = null;
+        workerPool = new EpollEventLoopPool(workerExecutor, workerCount, "New I/O epoll worker #", null);
+        boolean success = false;
+        try {
+            bossPool = new EpollEventLoopPool(bossExecutor, 1, "New I/O epoll server boss #", null);
+            success = true;
+        } finally {
+            if (!success) {
+                workerPool.shutdown();
+            }
+        }
+        sink = new EpollChannelSink();
+    }
+
+    public ServerSocketChannel newChannel(ChannelPipeline pipeline) {
+        if (fallback != null) {
+            return fallback.newChannel(pipeline);
+        }
+        return new EpollServerSocketChannel(this, pipeline, sink, bossPool.nextLoop(), workerPool);
+    }
+
+    public void shutdown() {
+        if (fallback != null) {
+            fallback.shutdown();
+        } else {
+            bossPool.shutdown();
+            workerPool.shutdown();
+        }
+        if (releasePools) {
+            releasePools();
+        }
+    }
+
+    public void releaseExternalResources() {
+        if (fallback != null) {
+            fallback.releaseExternalResources();
+        } else {
+            bossPool.shutdown();
+            workerPool.shutdown();
+        }
+        releasePools();
+    }
+
+    private void releasePools() {
+        ExecutorUtil.shutdownNow(bossExecutor);
+        ExecutorUtil.shutdownNow(workerExecutor);
+    }
+}
@@ -0,0 +1,696 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.ConnectTimeoutException;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.ReceiveBufferSizePredictor;
+import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.channel.socket.WorkerChannel;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.internal.MpscLinkedQueue;
+
+/**
+ * A TCP/IP {@link SocketChannel} whose I/O is performed by an
+ * {@link EpollEventLoop}.  Except {@link #write(MessageEvent)}, every method
+ * which changes the state of the socket must be called by the I/O thread.
+ */
+final class EpollSocketChannel extends AbstractChannel implements SocketChannel, EpollChannel, WorkerChannel {
+
+    private static final int ST_OPEN = 0;
+    private static final int ST_BOUND = 1;
+    private static final int ST_CONNECTED = 2;
+    private static final int ST_CLOSED = -1;
+
+    final int fd;
+    final EpollEventLoop loop;
+    private final DefaultEpollSocketChannelConfig config;
+    private volatile int state;
+
+    private volatile InetSocketAddress localAddress;
+    private volatile InetSocketAddress remoteAddress;
+
+    /**
+     * Queue of write {@link MessageEvent}s.  Any thread may offer to it, but
+     * only the I/O thread polls it.
+     */
+    private final Queue<MessageEvent> writeBufferQueue = new MpscLinkedQueue<MessageEvent>();
+
+    /**
+     * The number of bytes which were requested to be written but have not
+     * been written yet.
+     */
+    private final AtomicInteger writeBufferSize = new AtomicInteger();
+
+    private final AtomicBoolean writeTaskInTaskQueue = new AtomicBoolean();
+    private final Runnable writeTask = new Runnable() {
+        public void run() {
+            writeTaskInTaskQueue.set(false);
+            flush(false);
+        }
+    };
+
+    // The fields below are accessed by the I/O thread only.
+
+    /**
+     * The flags the socket is registered for once {@link #registered}.
+     */
+    private int flags;
+    private boolean registered;
+    private MessageEvent currentWriteEvent;
+    private int currentWriteOffset;
+    private boolean inFlush;
+
+    private ChannelFuture connectFuture;
+    private Timeout connectTimeout;
+    private InetSocketAddress requestedRemoteAddress;
+
+    /**
+     * Creates a client-side channel.
+     */
+    EpollSocketChannel(
+            ChannelFactory factory, ChannelPipeline pipeline, ChannelSink sink,
+            EpollEventLoop loop) {
+        this(null, factory, pipeline, sink, loop, newSocket(), ST_OPEN);
+    }
+
+    /**
+     * Creates a channel for a socket accepted by the specified server channel.
+     */
+    EpollSocketChannel(
+            Channel parent, ChannelFactory factory, ChannelPipeline pipeline, ChannelSink sink,
+            EpollEventLoop loop, int fd) {
+        this(parent, factory, pipeline, sink, loop, fd, ST_CONNECTED);
+    }
+
+    private EpollSocketChannel(
+            Channel parent, ChannelFactory factory, ChannelPipeline pipeline, ChannelSink sink,
+            EpollEventLoop loop, int fd, int state) {
+        super(parent, factory, pipeline, sink);
+        this.loop = loop;
+        this.fd = fd;
+        this.state = state;
+        config = new DefaultEpollSocketChannelConfig(fd);
+        fireChannelOpen(this);
+    }
+
+    private static int newSocket() {
+        try {
+            return Native.socketStream();
+        } catch (IOException e) {
+            throw new ChannelException("Failed to open a socket.", e);
+        }
+    }
+
+    public int fd() {
+        return fd;
+    }
+
+    public EpollEventLoop eventLoop() {
+        return loop;
+    }
+
+    public Worker getWorker() {
+        return loop;
+    }
+
+    public EpollSocketChannelConfig getConfig() {
+        return config;
+    }
+
+    public boolean isBound() {
+        return state >= ST_BOUND;
+    }
+
+    public boolean isConnected() {
+        return state == ST_CONNECTED;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        InetSocketAddress localAddress = this.localAddress;
+        if (localAddress == null && isOpen()) {
+            localAddress = Native.address(Native.localAddress(fd));
+            if (localAddress == null || localAddress.getAddress().isAnyLocalAddress()) {
+                // Don't cache on a wildcard address so the correct one
+                // will be cached once the channel is connected/bound
+                return localAddress;
+            }
+            this.localAddress = localAddress;
+        }
+        return localAddress;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        InetSocketAddress remoteAddress = this.remoteAddress;
+        if (remoteAddress == null && isOpen()) {
+            this.remoteAddress = remoteAddress = Native.address(Native.remoteAddress(fd));
+        }
+        return remoteAddress;
+    }
+
+    @Override
+    protected boolean setClosed() {
+        return super.setClosed();
+    }
+
+    /**
+     * Registers an accepted socket to the event loop.
+     */
+    void register() {
+        if (!isOpen()) {
+            return;
+        }
+        try {
+            flags |= readFlag();
+            loop.add(this, flags);
+            registered = true;
+            fireChannelBound(this, getLocalAddress());
+            fireChannelConnected(this, getRemoteAddress());
+
+            // Data may have arrived before the registration.
+            epollInReady();
+        } catch (Throwable t) {
+            fireExceptionCaught(this, t);
+            close(succeededFuture(this));
+        }
+    }
+
+    void bind(ChannelFuture future, SocketAddress localAddress) {
+        if (!isOpen()) {
+            // Never touch the file descriptor of a closed channel; it may have been reused.
+            future.setFailure(new ClosedChannelException());
+            return;
+        }
+        try {
+            Native.bind(fd, (InetSocketAddress) localAddress);
+            if (state == ST_OPEN) {
+                state = ST_BOUND;
+            }
+            future.setSuccess();
+            fireChannelBound(this, getLocalAddress());
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(this, t);
+        }
+    }
+
+    void connect(final ChannelFuture future, SocketAddress remoteAddress) {
+        if (!isOpen()) {
+            future.setFailure(new ClosedChannelException());
+            return;
+        }
+        if (connectFuture != null || state == ST_CONNECTED) {
+            future.setFailure(new IllegalStateException("connection attempt already made"));
+            return;
+        }
+
+        requestedRemoteAddress = (InetSocketAddress) remoteAddress;
+        try {
+            // Wait for EPOLLOUT if the connection is in progress.
+            flags = readFlag() | Native.EPOLLOUT;
+            loop.add(this, flags);
+            registered = true;
+            if (Native.connect(fd, requestedRemoteAddress)) {
+                connectSuccess(future);
+                return;
+            }
+
+            connectFuture = future;
+            future.addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture f) {
+                    if (f.isCancelled()) {
+                        f.getChannel().close();
+                    }
+                }
+            });
+
+            int connectTimeoutMillis = config.getConnectTimeoutMillis();
+            if (connectTimeoutMillis > 0) {
+                // Expires in the I/O thread, which performs the rest of the connection attempt too.
+                connectTimeout = loop.schedule(new Runnable() {
+                    public void run() {
+                        if (connectFuture == future) {
+                            // Create a new ConnectException everytime and not cache it as otherwise we
+                            // end up with using the wrong remoteaddress in the ConnectException message.
+                            connectFailure(new ConnectTimeoutException(
+                                    "connection timed out: " + requestedRemoteAddress));
+                        }
+                    }
+                }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (Throwable t) {
+            connectFuture = future;
+            connectFailure(t);
+        }
+    }
+
+    private void finishConnect() {
+        try {
+            if (Native.finishConnect(fd)) {
+                ChannelFuture future = connectFuture;
+                connectFuture = null;
+                if (connectTimeout != null) {
+                    connectTimeout.cancel();
+                    connectTimeout = null;
+                }
+                connectSuccess(future);
+            }
+        } catch (Throwable t) {
+            connectFailure(t);
+        }
+    }
+
+    private void connectSuccess(ChannelFuture future) throws IOException {
+        boolean bound = isBound();
+        state = ST_CONNECTED;
+        setFlags(flags & ~Native.EPOLLOUT);
+
+        future.setSuccess();
+        if (!bound) {
+            fireChannelBound(this, getLocalAddress());
+        }
+        fireChannelConnected(this, getRemoteAddress());
+
+        // Write the messages requested while connecting.
+        flush(false);
+        if (isOpen()) {
+            epollInReady();
+        }
+    }
+
+    private void connectFailure(Throwable t) {
+        if (t instanceof ConnectException && !(t instanceof ConnectTimeoutException)) {
+            Throwable newT = new ConnectException(t.getMessage() + ": " + requestedRemoteAddress);
+            newT.setStackTrace(t.getStackTrace());
+            t = newT;
+        }
+        ChannelFuture future = connectFuture;
+        connectFuture = null;
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+            connectTimeout = null;
+        }
+        future.setFailure(t);
+        fireExceptionCaught(this, t);
+        close(succeededFuture(this));
+    }
+
+    void setInterestOps(ChannelFuture future, int interestOps) {
+        if (!isOpen()) {
+            ClosedChannelException cause = new ClosedChannelException();
+            future.setFailure(cause);
+            fireExceptionCaught(this, cause);
+            return;
+        }
+
+        // Override OP_WRITE flag - a user cannot change this flag.
+        interestOps = interestOps & ~Channel.OP_WRITE | getInternalInterestOps() & Channel.OP_WRITE;
+
+        boolean changed = false;
+        try {
+            if (getInternalInterestOps() != interestOps) {
+                changed = true;
+                setInternalInterestOps(interestOps);
+                // Re-adding EPOLLIN reports the data which arrived meanwhile.
+                setFlags(flags & ~Native.EPOLLIN | readFlag());
+            }
+            future.setSuccess();
+            if (changed) {
+                fireChannelInterestChanged(this);
+            }
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(this, t);
+        }
+    }
+
+    private int readFlag() {
+        return (getInternalInterestOps() & Channel.OP_READ) != 0 ? Native.EPOLLIN : 0;
+    }
+
+    private void setFlags(int flags) throws IOException {
+        if (this.flags != flags) {
+            if (registered) {
+                loop.modify(this, flags);
+            }
+            this.flags = flags;
+        }
+    }
+
+    public void epollInReady() {
+        if (state != ST_CONNECTED || (getInternalInterestOps() & Channel.OP_READ) == 0) {
+            return;
+        }
+
+        final ReceiveBufferSizePredictor predictor = config.getReceiveBufferSizePredictor();
+        final ChannelBufferFactory bufferFactory = config.getBufferFactory();
+        final int maxBytesPerRead = config.getMaxBytesPerRead();
+        final ByteBuffer directBuffer = loop.directBuffer;
+
+        int readBytes = 0;
+        boolean eof = false;
+        try {
+            for (;;) {
+                int size = Math.min(predictor.nextReceiveBufferSize(), directBuffer.capacity());
+                int ret = Native.read(fd, directBuffer, 0, size);
+                if (ret == 0) {
+                    break;
+                }
+                if (ret < 0) {
+                    eof = true;
+                    break;
+                }
+
+                predictor.previousReceiveBufferSize(ret);
+                readBytes += ret;
+
+                directBuffer.clear();
+                directBuffer.limit(ret);
+                ChannelBuffer buffer = bufferFactory.getBuffer(ret);
+                buffer.writeBytes(directBuffer);
+                fireMessageReceived(this, buffer);
+
+                if (ret < size || !isConnected() || (getInternalInterestOps() & Channel.OP_READ) == 0) {
+                    // Drained, or the handler does not want more.  New data raises a new edge.
+                    break;
+                }
+                if (readBytes >= maxBytesPerRead) {
+                    // Let the other channels of the loop proceed; no new edge
+                    // will be raised for the data left in the socket.
+                    loop.scheduleRead(this);
+                    break;
+                }
+            }
+        } catch (Throwable t) {
+            fireExceptionCaught(this, t);
+            eof = true;
+        }
+
+        if (eof) {
+            close(succeededFuture(this));
+        }
+    }
+
+    public void epollOutReady() {
+        if (connectFuture != null) {
+            finishConnect();
+        } else if (state == ST_CONNECTED) {
+            flush(true);
+        }
+    }
+
+    /**
+     * Requests a write.  May be called by any thread.
+     */
+    void write(MessageEvent e) {
+        writeBufferQueue.offer(e);
+        incrementWriteBufferSize(messageSize(e));
+
+        if (loop.isIoThread()) {
+            flush(false);
+        } else if (writeTaskInTaskQueue.compareAndSet(false, true)) {
+            loop.executeInIoThread(writeTask);
+        }
+    }
+
+    private void flush(boolean epollOut) {
+        if (inFlush) {
+            // Called by a handler notified by the outer flush(), which will pick up the new message.
+            return;
+        }
+        if (state != ST_CONNECTED) {
+            if (connectFuture == null) {
+                cleanUpWriteBuffer();
+            }
+            return;
+        }
+        if (!epollOut && (flags & Native.EPOLLOUT) != 0) {
+            // The socket buffer is full; wait for EPOLLOUT.
+            return;
+        }
+
+        long writtenBytes = 0;
+        boolean blocked = false;
+        inFlush = true;
+        try {
+            while (isConnected()) {
+                MessageEvent evt = currentWriteEvent;
+                if (evt == null) {
+                    evt = writeBufferQueue.poll();
+                    if (evt == null) {
+                        break;
+                    }
+                    if (!(evt.getMessage() instanceof ChannelBuffer)) {
+                        Exception cause = new IllegalArgumentException(
+                                "unsupported message type: " + evt.getMessage().getClass());
+                        evt.getFuture().setFailure(cause);
+                        fireExceptionCaught(this, cause);
+                        continue;
+                    }
+                    currentWriteEvent = evt;
+                    currentWriteOffset = 0;
+                }
+
+                ChannelBuffer buffer = (ChannelBuffer) evt.getMessage();
+                writtenBytes += writeBuffer(buffer);
+                if (currentWriteOffset < buffer.readableBytes()) {
+                    blocked = true;
+                    break;
+                }
+
+                currentWriteEvent = null;
+                decrementWriteBufferSize(buffer.readableBytes());
+                ChannelBuffers.release(buffer);
+                evt.getFuture().setSuccess();
+                recycle(evt);
+            }
+        } catch (Throwable t) {
+            inFlush = false;
+            MessageEvent evt = currentWriteEvent;
+            if (evt != null) {
+                currentWriteEvent = null;
+                int size = messageSize(evt);
+                decrementWriteBufferSize(size);
+                ChannelBuffers.release((ChannelBuffer) evt.getMessage());
+                evt.getFuture().setFailure(t);
+                recycle(evt);
+            }
+            fireExceptionCaught(this, t);
+            if (t instanceof IOException) {
+                close(succeededFuture(this));
+            }
+            return;
+        } finally {
+            inFlush = false;
+        }
+
+        if (writtenBytes > 0) {
+            fireWriteComplete(this, writtenBytes);
+        }
+
+        try {
+            setFlags(blocked ? flags | Native.EPOLLOUT : flags & ~Native.EPOLLOUT);
+        } catch (IOException e) {
+            fireExceptionCaught(this, e);
+            close(succeededFuture(this));
+        }
+    }
+
+    /**
+     * Writes the current message until the socket buffer becomes full.
+     */
+    private int writeBuffer(ChannelBuffer buffer) throws IOException {
+        final int total = buffer.readableBytes();
+        int written = 0;
+        while (currentWriteOffset < total) {
+            int index = buffer.readerIndex() + currentWriteOffset;
+            int length = total - currentWriteOffset;
+            int localWrittenBytes;
+
+            ByteBuffer nioBuffer = buffer.isDirect() ? buffer.toByteBuffer(index, length) : null;
+            if (nioBuffer != null && nioBuffer.isDirect()) {
+                localWrittenBytes = Native.write(fd, nioBuffer, nioBuffer.position(), nioBuffer.limit());
+            } else {
+                // Copy to the direct buffer of the loop so the kernel can read it.
+                ByteBuffer directBuffer = loop.directBuffer;
+                length = Math.min(length, directBuffer.capacity());
+                directBuffer.clear();
+                directBuffer.limit(length);
+                buffer.getBytes(index, directBuffer);
+                localWrittenBytes = Native.write(fd, directBuffer, 0, length);
+            }
+
+            if (localWrittenBytes == 0) {
+                break;
+            }
+            currentWriteOffset += localWrittenBytes;
+            written += localWrittenBytes;
+        }
+        return written;
+    }
+
+    private void cleanUpWriteBuffer() {
+        Exception cause = null;
+
+        MessageEvent evt = currentWriteEvent;
+        if (evt != null) {
+            currentWriteEvent = null;
+            cause = isOpen() ? new NotYetConnectedException() : new ClosedChannelException();
+            failWrite(evt, cause);
+        }
+
+        for (;;) {
+            evt = writeBufferQueue.poll();
+            if (evt == null) {
+                break;
+            }
+            // Create the exception only once to avoid the excessive overhead
+            // caused by fillStackTrace.
+            if (cause == null) {
+                cause = isOpen() ? new NotYetConnectedException() : new ClosedChannelException();
+            }
+            failWrite(evt, cause);
+        }
+
+        if (cause != null) {
+            fireExceptionCaught(this, cause);
+        }
+    }
+
+    private void failWrite(MessageEvent evt, Throwable cause) {
+        Object m = evt.getMessage();
+        if (m instanceof ChannelBuffer) {
+            decrementWriteBufferSize(((ChannelBuffer) m).readableBytes());
+            ChannelBuffers.release((ChannelBuffer) m);
+        }
+        evt.getFuture().setFailure(cause);
+        recycle(evt);
+    }
+
+    private static void recycle(MessageEvent evt) {
+        if (evt instanceof DownstreamMessageEvent) {
+            ((DownstreamMessageEvent) evt).recycle();
+        }
+    }
+
+    private static int messageSize(MessageEvent e) {
+        Object m = e.getMessage();
+        if (m instanceof ChannelBuffer) {
+            return ((ChannelBuffer) m).readableBytes();
+        }
+        return 0;
+    }
+
+    private void incrementWriteBufferSize(int size) {
+        int newWriteBufferSize = writeBufferSize.addAndGet(size);
+        int highWaterMark = config.getWriteBufferHighWaterMark();
+        if (newWriteBufferSize >= highWaterMark && newWriteBufferSize - size < highWaterMark) {
+            if (setUnwritable()) {
+                fireInterestChanged();
+            }
+        }
+    }
+
+    private void decrementWriteBufferSize(int size) {
+        int newWriteBufferSize = writeBufferSize.addAndGet(-size);
+        int lowWaterMark = config.getWriteBufferLowWaterMark();
+        if (newWriteBufferSize < lowWaterMark || newWriteBufferSize == 0) {
+            if (isConnected() && setWritable()) {
+                fireInterestChanged();
+            }
+        }
+    }
+
+    private void fireInterestChanged() {
+        if (loop.isIoThread()) {
+            fireChannelInterestChanged(this);
+        } else {
+            fireChannelInterestChangedLater(this);
+        }
+    }
+
+    void close(ChannelFuture future) {
+        boolean connected = isConnected();
+        boolean bound = isBound();
+        if (!setClosed()) {
+            future.setSuccess();
+            return;
+        }
+
+        state = ST_CLOSED;
+        if (registered) {
+            loop.remove(this);
+            registered = false;
+        }
+        try {
+            Native.close(fd);
+            future.setSuccess();
+        } catch (IOException e) {
+            // The file descriptor is released even if close() failed.
+            future.setFailure(e);
+        }
+
+        if (connectFuture != null) {
+            ChannelFuture connectFuture = this.connectFuture;
+            this.connectFuture = null;
+            if (connectTimeout != null) {
+                connectTimeout.cancel();
+                connectTimeout = null;
+            }
+            connectFuture.setFailure(new ClosedChannelException());
+        }
+
+        if (connected) {
+            fireChannelDisconnected(this);
+        }
+        if (bound) {
+            fireChannelUnbound(this);
+        }
+        cleanUpWriteBuffer();
+        fireChannelClosed(this);
+    }
+
+    public void closeOnShutdown() {
+        close(succeededFuture(this));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictor;
+import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ReceiveBufferSizePredictor;
+import org.jboss.netty.channel.ReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.channel.socket.SocketChannelConfig;
+
+/**
+ * A {@link SocketChannelConfig} for an epoll TCP/IP {@link SocketChannel}.
+ *
+ * <h3>Available options</h3>
+ *
+ * In addition to the options provided by {@link ChannelConfig} and
+ * {@link SocketChannelConfig}, {@link EpollSocketChannelConfig} allows the
+ * following options in the option map:
+ *
+ * <table border="1" cellspacing="0" cellpadding="6">
+ * <tr>
+ * <th>Name</th><th>Associated setter method</th>
+ * </tr><tr>
+ * <td>{@code "writeBufferHighWaterMark"}</td><td>{@link #setWriteBufferHighWaterMark(int)}</td>
+ * </tr><tr>
+ * <td>{@code "writeBufferLowWaterMark"}</td><td>{@link #setWriteBufferLowWaterMark(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxBytesPerRead"}</td><td>{@link #setMaxBytesPerRead(int)}</td>
+ * </tr><tr>
+ * <td>{@code "receiveBufferSizePredictor"}</td>
+ * <td>{@link #setReceiveBufferSizePredictor(ReceiveBufferSizePredictor)}</td>
+ * </tr><tr>
+ * <td>{@code "receiveBufferSizePredictorFactory"}</td>
+ * <td>{@link #setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory)}</td>
+ * </tr>
+ * </table>
+ */
+public interface EpollSocketChannelConfig extends SocketChannelConfig {
+
+    /**
+     * Returns the high water mark of the write buffer.  If the number of bytes
+     * queued in the write buffer exceeds this value, {@link Channel#isWritable()}
+     * will start to return {@code false}.
+     */
+    int getWriteBufferHighWaterMark();
+
+    /**
+     * Sets the high water mark of the write buffer.  If the number of bytes
+     * queued in the write buffer exceeds this value, {@link Channel#isWritable()}
+     * will start to return {@code false}.
+     */
+    void setWriteBufferHighWaterMark(int writeBufferHighWaterMark);
+
+    /**
+     * Returns the low water mark of the write buffer.  Once the number of bytes
+     * queued in the write buffer exceeded the
+     * {@linkplain #setWriteBufferHighWaterMark(int) high water mark} and then
+     * dropped down below this value, {@link Channel#isWritable()} will start to return
+     * {@code true} again.
+     */
+    int getWriteBufferLowWaterMark();
+
+    /**
+     * Sets the low water mark of the write buffer.  Once the number of bytes
+     * queued in the write buffer exceeded the
+     * {@linkplain #setWriteBufferHighWaterMark(int) high water mark} and then
+     * dropped down below this value, {@link Channel#isWritable()} will start to return
+     * {@code true} again.
+     */
+    void setWriteBufferLowWaterMark(int writeBufferLowWaterMark);
+
+    /**
+     * Returns the maximum number of bytes read from the socket for a single
+     * readiness notification.  Edge-triggered epoll does not report a socket
+     * again until it has been drained, so the remaining bytes are read on the
+     * next iteration of the event loop.  The default value is {@code 262144}.
+     */
+    int getMaxBytesPerRead();
+
+    /**
+     * Sets the maximum number of bytes read from the socket for a single
+     * readiness notification.
+     */
+    void setMaxBytesPerRead(int maxBytesPerRead);
+
+    /**
+     * Returns the {@link ReceiveBufferSizePredictor} which predicts the
+     * number of readable bytes in the socket receive buffer.  The default
+     * predictor is <tt>{@link AdaptiveReceiveBufferSizePredictor}(64, 1024, 65536)</tt>.
+     */
+    ReceiveBufferSizePredictor getReceiveBufferSizePredictor();
+
+    /**
+     * Sets the {@link ReceiveBufferSizePredictor} which predicts the
+     * number of readable bytes in the socket receive buffer.
+     */
+    void setReceiveBufferSizePredictor(ReceiveBufferSizePredictor predictor);
+
+    /**
+     * Returns the {@link ReceiveBufferSizePredictorFactory} which creates a new
+     * {@link ReceiveBufferSizePredictor} when a new channel is created and
+     * no {@link ReceiveBufferSizePredictor} was set.  The default factory is
+     * <tt>{@link AdaptiveReceiveBufferSizePredictorFactory}(64, 1024, 65536)</tt>.
+     */
+    ReceiveBufferSizePredictorFactory getReceiveBufferSizePredictorFactory();
+
+    /**
+     * Sets the {@link ReceiveBufferSizePredictorFactory} which creates a new
+     * {@link ReceiveBufferSizePredictor} when a new channel is created and
+     * no {@link ReceiveBufferSizePredictor} was set.
+     */
+    void setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory predictorFactory);
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Inet6Address;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+/**
+ * The JNI methods of the epoll transport.  Use only after
+ * {@link Epoll#ensureAvailability()} succeeded.
+ */
+final class Native {
+
+    static final int EPOLLIN = 0x01;
+    static final int EPOLLOUT = 0x02;
+    static final int EPOLLERR = 0x04;
+
+    private static final int ADDRESS_LENGTH = 24;
+
+    // epoll
+    static native int epollCreate() throws IOException;
+    static native int epollWait(int efd, long[] events, int timeout) throws IOException;
+    static native void epollCtlAdd(int efd, int fd, int flags) throws IOException;
+    static native void epollCtlMod(int efd, int fd, int flags) throws IOException;
+    static native void epollCtlDel(int efd, int fd) throws IOException;
+
+    // eventfd
+    static native int eventFd() throws IOException;
+    static native void eventFdWrite(int fd, long value) throws IOException;
+    static native void eventFdRead(int fd) throws IOException;
+
+    // sockets
+    static native int socketStream() throws IOException;
+    static native void bind(int fd, byte[] address, int scopeId, int port) throws IOException;
+    static native void listen(int fd, int backlog) throws IOException;
+
+    /**
+     * Returns the accepted file descriptor, or {@code -1} if there is no pending connection.
+     */
+    static native int accept(int fd) throws IOException;
+
+    /**
+     * Returns {@code true} if connected immediately, {@code false} if the connection is in progress.
+     */
+    static native boolean connect(int fd, byte[] address, int scopeId, int port) throws IOException;
+    static native boolean finishConnect(int fd) throws IOException;
+
+    /**
+     * Reads into the region {@code [pos, limit)} of the direct buffer.
+     *
+     * @return the number of bytes read, {@code 0} if nothing can be read
+     *         without blocking, or {@code -1} on the end of the stream
+     */
+    static native int read(int fd, ByteBuffer buf, int pos, int limit) throws IOException;
+
+    /**
+     * Writes the region {@code [pos, limit)} of the direct buffer.
+     *
+     * @return the number of bytes written, {@code 0} if the socket buffer is full
+     */
+    static native int write(int fd, ByteBuffer buf, int pos, int limit) throws IOException;
+    static native void shutdown(int fd, boolean read, boolean write) throws IOException;
+    static native void close(int fd) throws IOException;
+
+    static native byte[] localAddress(int fd);
+    static native byte[] remoteAddress(int fd);
+
+    // socket options
+    static native void setTcpNoDelay(int fd, int tcpNoDelay) throws IOException;
+    static native int getTcpNoDelay(int fd) throws IOException;
+    static native void setKeepAlive(int fd, int keepAlive) throws IOException;
+    static native int getKeepAlive(int fd) throws IOException;
+    static native void setReuseAddress(int fd, int reuseAddress) throws IOException;
+    static native int getReuseAddress(int fd) throws IOException;
+    static native void setReceiveBufferSize(int fd, int receiveBufferSize) throws IOException;
+    static native int getReceiveBufferSize(int fd) throws IOException;
+    static native void setSendBufferSize(int fd, int sendBufferSize) throws IOException;
+    static native int getSendBufferSize(int fd) throws IOException;
+    static native void setSoLinger(int fd, int soLinger) throws IOException;
+    static native int getSoLinger(int fd) throws IOException;
+    static native void setTrafficClass(int fd, int trafficClass) throws IOException;
+    static native int getTrafficClass(int fd) throws IOException;
+
+    static void bind(int fd, InetSocketAddress localAddress) throws IOException {
+        InetAddress addr = localAddress.getAddress();
+        Native.bind(fd, addr.getAddress(), scopeId(addr), localAddress.getPort());
+    }
+
+    static boolean connect(int fd, InetSocketAddress remoteAddress) throws IOException {
+        InetAddress addr = remoteAddress.getAddress();
+        return Native.connect(fd, addr.getAddress(), scopeId(addr), remoteAddress.getPort());
+    }
+
+    private static int scopeId(InetAddress addr) {
+        return addr instanceof Inet6Address ? ((Inet6Address) addr).getScopeId() : 0;
+    }
+
+    /**
+     * Decodes the address returned by {@link #localAddress(int)} and
+     * {@link #remoteAddress(int)}: 16 bytes of (IPv4-mapped) IPv6 address,
+     * followed by the scope ID and the port in network byte order.
+     */
+    static InetSocketAddress address(byte[] raw) {
+        if (raw == null || raw.length != ADDRESS_LENGTH) {
+            return null;
+        }
+        int scopeId = toInt(raw, 16);
+        int port = toInt(raw, 20);
+        try {
+            InetAddress addr;
+            if (isIpv4Mapped(raw)) {
+                byte[] ipv4 = new byte[4];
+                System.arraycopy(raw, 12, ipv4, 0, 4);
+                addr = InetAddress.getByAddress(ipv4);
+            } else {
+                byte[] ipv6 = new byte[16];
+                System.arraycopy(raw, 0, ipv6, 0, 16);
+                addr = Inet6Address.getByAddress(null, ipv6, scopeId);
+            }
+            return new InetSocketAddress(addr, port);
+        } catch (UnknownHostException e) {
+            // Never happens with an address of a valid length.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isIpv4Mapped(byte[] raw) {
+        for (int i = 0; i < 10; i ++) {
+            if (raw[i] != 0) {
+                return false;
+            }
+        }
+        return raw[10] == (byte) 0xff && raw[11] == (byte) 0xff;
+    }
+
+    private static int toInt(byte[] raw, int index) {
+        return (raw[index] & 0xff) << 24 | (raw[index + 1] & 0xff) << 16 |
+               (raw[index + 2] & 0xff) << 8 | raw[index + 3] & 0xff;
+    }
+
+    private Native() {
+        // Unused
+    }
+}
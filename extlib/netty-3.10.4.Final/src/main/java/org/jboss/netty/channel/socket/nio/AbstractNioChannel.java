@@ -22,7 +22,9 @@ import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelSink;
 import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.socket.WorkerChannel;
 import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.SendBuffer;
+import org.jboss.netty.util.internal.MpscLinkedQueue;
 import org.jboss.netty.util.internal.ThreadLocalBoolean;
 
 import java.net.InetSocketAddress;
@@ -31,24 +33,22 @@ import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.jboss.netty.channel.Channels.*;
 import static org.jboss.netty.channel.socket.nio.AbstractNioWorker.isIoThread;
 
-abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChannel> extends AbstractChannel {
+abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChannel> extends AbstractChannel
+        implements WorkerChannel {
 
     /**
-     * The {@link AbstractNioWorker}.
+     * The {@link AbstractNioWorker}.  It changes only when the channel is
+     * migrated to another worker, which is done by the I/O thread of the
+     * current worker.
      */
-    final AbstractNioWorker worker;
-
-    /**
-     * Monitor object for synchronizing access to the {@link WriteRequestQueue}.
-     */
-    final Object writeLock = new Object();
+    volatile AbstractNioWorker worker;
 
     /**
      * WriteTask that performs write operations.
@@ -61,7 +61,8 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
     final AtomicBoolean writeTaskInTaskQueue = new AtomicBoolean();
 
     /**
-     * Queue of write {@link MessageEvent}s.
+     * Queue of write {@link MessageEvent}s.  Any thread may offer to it, but
+     * only the I/O thread of the {@link #worker} polls it.
      */
     final Queue<MessageEvent> writeBufferQueue = new WriteRequestQueue();
 
@@ -72,22 +73,46 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
     final AtomicInteger writeBufferSize = new AtomicInteger();
 
     /**
-     * Keeps track of the highWaterMark.
+     * {@code 1} while the channel is unwritable because its write buffer
+     * exceeded the high water mark, {@code 0} otherwise.  It follows the
+     * writability changes rather than the water mark crossings, because the
+     * write buffer can cross the high water mark again before it fell below
+     * the low water mark.
      */
     final AtomicInteger highWaterMarkCounter = new AtomicInteger();
 
+    /**
+     * The bytes of {@link #writeBufferQueue} which are accounted to the
+     * {@link AbstractNioWorker#pendingWriteBytes} of a worker.  Replaced when
+     * the channel is migrated to another worker.
+     */
+    private volatile PendingWriteGauge pendingWriteGauge;
+
     /**
      * The current write {@link MessageEvent}
      */
     MessageEvent currentWriteEvent;
     SendBuffer currentWriteBuffer;
 
+    /**
+     * The write {@link MessageEvent}s which have been taken from
+     * {@link #writeBufferQueue} to be written together with
+     * {@link #currentWriteEvent}
+     */
+    final GatheringWriteQueue gatheringWriteQueue = new GatheringWriteQueue();
+
     /**
      * Boolean that indicates that write operation is in progress.
      */
     boolean inWriteNowLoop;
     boolean writeSuspended;
 
+    /**
+     * The number of bytes read from and written to the channel by the I/O
+     * thread.
+     */
+    long ioBytes;
+
     private volatile InetSocketAddress localAddress;
     volatile InetSocketAddress remoteAddress;
 
@@ -98,7 +123,9 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
             ChannelSink sink, AbstractNioWorker worker, C ch) {
         super(id, parent, factory, pipeline, sink);
         this.worker = worker;
+        pendingWriteGauge = new PendingWriteGauge(worker);
         channel = ch;
+        worker.channelCount.incrementAndGet();
     }
 
     protected AbstractNioChannel(
@@ -106,7 +133,9 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
             ChannelPipeline pipeline, ChannelSink sink, AbstractNioWorker worker, C ch)  {
         super(parent, factory, pipeline, sink);
         this.worker = worker;
+        pendingWriteGauge = new PendingWriteGauge(worker);
         channel = ch;
+        worker.channelCount.incrementAndGet();
     }
 
     /**
@@ -166,7 +195,60 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
 
     @Override
     protected boolean setClosed() {
-        return super.setClosed();
+        if (super.setClosed()) {
+            synchronized (this) {
+                worker.channelCount.decrementAndGet();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Assigns the channel to the specified worker and moves its load gauges
+     * along.  Must be called by the I/O thread of the current worker.
+     *
+     * @return {@code false} if the channel has been closed already
+     */
+    synchronized boolean setWorker(AbstractNioWorker worker) {
+        if (!super.isOpen()) {
+            // Closed - setClosed() has decremented the channel count of the current worker.
+            return false;
+        }
+
+        AbstractNioWorker oldWorker = this.worker;
+        this.worker = worker;
+        oldWorker.channelCount.decrementAndGet();
+        worker.channelCount.incrementAndGet();
+
+        // New writes are accounted to the new worker from now on.  The writes
+        // which are still being accounted to the old gauge retry with the new
+        // one once it has been closed.
+        PendingWriteGauge oldGauge = pendingWriteGauge;
+        PendingWriteGauge newGauge = new PendingWriteGauge(worker);
+        pendingWriteGauge = newGauge;
+        long pendingWriteBytes = oldGauge.close();
+        if (pendingWriteBytes != 0) {
+            newGauge.bytes.addAndGet(pendingWriteBytes);
+            oldWorker.pendingWriteBytes.addAndGet(-pendingWriteBytes);
+            worker.pendingWriteBytes.addAndGet(pendingWriteBytes);
+        }
+        return true;
+    }
+
+    /**
+     * Accounts the specified number of bytes, which is negative when bytes
+     * are taken from {@link #writeBufferQueue}, to the current worker.
+     */
+    private void addPendingWriteBytes(int delta) {
+        for (;;) {
+            PendingWriteGauge gauge = pendingWriteGauge;
+            if (gauge.add(delta)) {
+                gauge.worker.pendingWriteBytes.addAndGet(delta);
+                return;
+            }
+            // The channel has just been migrated - use the new gauge.
+        }
     }
 
     abstract InetSocketAddress getLocalSocketAddress() throws Exception;
@@ -179,7 +261,7 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
         private final Queue<MessageEvent> queue;
 
         public WriteRequestQueue() {
-            queue = new ConcurrentLinkedQueue<MessageEvent>();
+            queue = new MpscLinkedQueue<MessageEvent>();
         }
 
         public MessageEvent remove() {
@@ -252,19 +334,18 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
 
             int messageSize = getMessageSize(e);
             int newWriteBufferSize = writeBufferSize.addAndGet(messageSize);
+            if (messageSize != 0) {
+                addPendingWriteBytes(messageSize);
+            }
             int highWaterMark =  getConfig().getWriteBufferHighWaterMark();
 
             if (newWriteBufferSize >= highWaterMark) {
-                if (newWriteBufferSize - messageSize < highWaterMark) {
-                    highWaterMarkCounter.incrementAndGet();
-                    if (setUnwritable()) {
-                        if (!isIoThread(AbstractNioChannel.this)) {
-                            fireChannelInterestChangedLater(AbstractNioChannel.this);
-                        } else if (!notifying.get()) {
-                            notifying.set(Boolean.TRUE);
-                            fireChannelInterestChanged(AbstractNioChannel.this);
-                            notifying.set(Boolean.FALSE);
-                        }
+                if (newWriteBufferSize - messageSize < highWaterMark && becameUnwritable()) {
+                    // A concurrent poll() may have drained the buffer before
+                    // the channel became unwritable.
+                    int size = writeBufferSize.get();
+                    if (size == 0 || size < getConfig().getWriteBufferLowWaterMark()) {
+                        becameWritable();
                     }
                 }
             }
@@ -276,19 +357,17 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
             if (e != null) {
                 int messageSize = getMessageSize(e);
                 int newWriteBufferSize = writeBufferSize.addAndGet(-messageSize);
+                if (messageSize != 0) {
+                    addPendingWriteBytes(-messageSize);
+                }
                 int lowWaterMark = getConfig().getWriteBufferLowWaterMark();
 
                 if (newWriteBufferSize == 0 || newWriteBufferSize < lowWaterMark) {
-                    if (newWriteBufferSize + messageSize >= lowWaterMark) {
-                        highWaterMarkCounter.decrementAndGet();
-                        if (isConnected() && setWritable()) {
-                            if (!isIoThread(AbstractNioChannel.this)) {
-                               fireChannelInterestChangedLater(AbstractNioChannel.this);
-                            } else if (!notifying.get()) {
-                                notifying.set(Boolean.TRUE);
-                                fireChannelInterestChanged(AbstractNioChannel.this);
-                                notifying.set(Boolean.FALSE);
-                            }
+                    if (newWriteBufferSize + messageSize >= lowWaterMark && becameWritable()) {
+                        // A concurrent offer() may have filled the buffer again
+                        // before the channel became writable.
+                        if (writeBufferSize.get() >= getConfig().getWriteBufferHighWaterMark()) {
+                            becameUnwritable();
                         }
                     }
                 }
@@ -296,6 +375,34 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
             return e;
         }
 
+        private boolean becameUnwritable() {
+            if (!setUnwritable()) {
+                return false;
+            }
+            highWaterMarkCounter.incrementAndGet();
+            notifyInterestChanged();
+            return true;
+        }
+
+        private boolean becameWritable() {
+            if (!isConnected() || !setWritable()) {
+                return false;
+            }
+            highWaterMarkCounter.decrementAndGet();
+            notifyInterestChanged();
+            return true;
+        }
+
+        private void notifyInterestChanged() {
+            if (!isIoThread(AbstractNioChannel.this)) {
+                fireChannelInterestChangedLater(AbstractNioChannel.this);
+            } else if (!notifying.get()) {
+                notifying.set(Boolean.TRUE);
+                fireChannelInterestChanged(AbstractNioChannel.this);
+                notifying.set(Boolean.FALSE);
+            }
+        }
+
         private int getMessageSize(MessageEvent e) {
             Object m = e.getMessage();
             if (m instanceof ChannelBuffer) {
@@ -305,6 +412,46 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
         }
     }
 
+    /**
+     * The bytes accounted to a worker by a channel.  Once closed, no more
+     * bytes can be added, so that the bytes can be moved to another worker
+     * without losing the concurrent additions.
+     */
+    private static final class PendingWriteGauge {
+        private static final long CLOSED = Long.MIN_VALUE;
+
+        final AbstractNioWorker worker;
+        final AtomicLong bytes = new AtomicLong();
+
+        PendingWriteGauge(AbstractNioWorker worker) {
+            this.worker = worker;
+        }
+
+        /**
+         * Adds the specified number of bytes.
+         *
+         * @return {@code false} if this gauge has been closed
+         */
+        boolean add(int delta) {
+            for (;;) {
+                long bytes = this.bytes.get();
+                if (bytes == CLOSED) {
+                    return false;
+                }
+                if (this.bytes.compareAndSet(bytes, bytes + delta)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Closes this gauge and returns the bytes added so far.
+         */
+        long close() {
+            return bytes.getAndSet(CLOSED);
+        }
+    }
+
     private final class WriteTask implements Runnable {
 
         WriteTask() {
@@ -312,7 +459,12 @@ abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChan
 
         public void run() {
             writeTaskInTaskQueue.set(false);
-            worker.writeFromTaskLoop(AbstractNioChannel.this);
+            if (isIoThread(AbstractNioChannel.this)) {
+                worker.writeFromTaskLoop(AbstractNioChannel.this);
+            } else {
+                // Migrated to another worker - let its I/O thread write.
+                worker.writeFromUserCode(AbstractNioChannel.this);
+            }
         }
     }
 
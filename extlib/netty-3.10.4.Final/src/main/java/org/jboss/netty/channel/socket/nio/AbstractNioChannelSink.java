@@ -31,7 +31,7 @@ public abstract class AbstractNioChannelSink extends AbstractChannelSink {
         if (ch instanceof AbstractNioChannel<?>) {
             AbstractNioChannel<?> channel = (AbstractNioChannel<?>) ch;
             ChannelRunnableWrapper wrapper = new ChannelRunnableWrapper(pipeline.getChannel(), task);
-            channel.worker.executeInIoThread(wrapper);
+            AbstractNioWorker.executeInIoThread(channel, wrapper);
             return wrapper;
         }
         return super.execute(pipeline, task);
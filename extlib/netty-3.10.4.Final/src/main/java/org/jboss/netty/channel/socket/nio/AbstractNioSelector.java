@@ -22,7 +22,10 @@ import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
 import org.jboss.netty.util.internal.DeadLockProofWorker;
+import org.jboss.netty.util.internal.IoThreadTimer;
 
 import java.io.IOException;
 import java.nio.channels.CancelledKeyException;
@@ -37,6 +40,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -76,6 +80,14 @@ abstract class AbstractNioSelector implements NioSelector {
      */
     protected volatile Selector selector;
 
+    /**
+     * The selected-key set of {@link #selector} if it has been replaced with
+     * a {@link SelectedSelectionKeySet}, or {@code null} if the keys have to
+     * be taken from {@link Selector#selectedKeys()}.  Only accessed by the
+     * I/O thread once it has been started.
+     */
+    protected SelectedSelectionKeySet selectedKeys;
+
     /**
      * Boolean that controls determines if a blocked Selector.select should
      * break out of its selection process. In our case we use a timeone for
@@ -86,8 +98,33 @@ abstract class AbstractNioSelector implements NioSelector {
 
     private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
 
+    /**
+     * Runs the tasks scheduled with {@link #schedule(Runnable, long, TimeUnit)}.
+     */
+    private final IoThreadTimer timer = new IoThreadTimer(new Executor() {
+        public void execute(Runnable task) {
+            if (isIoThread()) {
+                task.run();
+            } else {
+                registerTask(task);
+            }
+        }
+    });
+
+    /**
+     * The timeout of the last {@link #select(Selector)} call, in nanoseconds.
+     * Only accessed by the I/O thread.
+     */
+    private long selectTimeoutNanos = SelectorUtil.SELECT_TIMEOUT_NANOS;
+
     private volatile int cancelledKeys; // should use AtomicInteger but we just need approximation
 
+    /**
+     * The time spent outside {@link Selector#select()}, in nanoseconds.  Only
+     * updated by the I/O thread.
+     */
+    private volatile long ioTime;
+
     private final CountDownLatch shutdownLatch = new CountDownLatch(1);
     private volatile boolean shutdown;
 
@@ -126,6 +163,36 @@ abstract class AbstractNioSelector implements NioSelector {
         return Thread.currentThread() == thread;
     }
 
+    /**
+     * Executes the given {@link Runnable} in the I/O thread once the given
+     * delay has elapsed.  The {@link Selector} is never blocked for longer
+     * than the delay of the nearest scheduled task.
+     *
+     * @return a handle which can be used to cancel the task
+     *
+     * @throws RejectedExecutionException if this selector has been shut down
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return timer.schedule(task, delay, unit);
+    }
+
+    /**
+     * Returns a {@link Timer} whose tasks are executed in the I/O thread.
+     * The returned {@link Timer} cannot be stopped; its tasks are discarded
+     * when this selector shuts down.
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Returns the time left until the nearest scheduled task is due, in
+     * nanoseconds, or {@code -1} if no task has been scheduled.
+     */
+    protected final long nextScheduledTaskDelayNanos() {
+        return timer.nextDelayNanos();
+    }
+
     public void rebuildSelector() {
         if (!isIoThread()) {
             taskQueue.add(new Runnable() {
@@ -138,6 +205,7 @@ abstract class AbstractNioSelector implements NioSelector {
 
         final Selector oldSelector = selector;
         final Selector newSelector;
+        final SelectedSelectionKeySet newSelectedKeys;
 
         if (oldSelector == null) {
             return;
@@ -145,6 +213,7 @@ abstract class AbstractNioSelector implements NioSelector {
 
         try {
             newSelector = SelectorUtil.open();
+            newSelectedKeys = SelectorUtil.optimize(newSelector);
         } catch (Exception e) {
             logger.warn("Failed to create a new Selector.", e);
             return;
@@ -178,6 +247,7 @@ abstract class AbstractNioSelector implements NioSelector {
         }
 
         selector = newSelector;
+        selectedKeys = newSelectedKeys;
 
         try {
             // time to close the old selector as everything else is registered to the new one
@@ -201,8 +271,6 @@ abstract class AbstractNioSelector implements NioSelector {
         if (selector == null) {
             return;
         }
-        // use 80% of the timeout for measure
-        final long minSelectTimeout = SelectorUtil.SELECT_TIMEOUT_NANOS * 80 / 100;
         boolean wakenupFromLoop = false;
         for (;;) {
             wakenUp.set(false);
@@ -210,9 +278,11 @@ abstract class AbstractNioSelector implements NioSelector {
             try {
                 long beforeSelect = System.nanoTime();
                 int selected = select(selector);
+                long afterSelect = System.nanoTime();
                 if (selected == 0 && !wakenupFromLoop && !wakenUp.get()) {
-                    long timeBlocked = System.nanoTime() - beforeSelect;
-                    if (timeBlocked < minSelectTimeout) {
+                    long timeBlocked = afterSelect - beforeSelect;
+                    // use 80% of the timeout for measure
+                    if (timeBlocked < selectTimeoutNanos * 80 / 100) {
                         boolean notConnected = false;
                         // loop over all keys as the selector may was unblocked because of a closed channel
                         for (SelectionKey key: selector.keys()) {
@@ -319,7 +389,8 @@ abstract class AbstractNioSelector implements NioSelector {
                     this.selector = null;
 
                     // process one time again
-                    processTaskQueue();
+                    processRemainingTasks();
+                    timer.clear();
 
                     for (SelectionKey k: selector.keys()) {
                         close(k);
@@ -334,8 +405,10 @@ abstract class AbstractNioSelector implements NioSelector {
                     shutdownLatch.countDown();
                     break;
                 } else {
+                    timer.runExpiredTasks();
                     process(selector);
                 }
+                ioTime += System.nanoTime() - afterSelect;
             } catch (Throwable t) {
                 logger.warn(
                         "Unexpected exception in the selector loop.", t);
@@ -358,6 +431,7 @@ abstract class AbstractNioSelector implements NioSelector {
     private void openSelector(ThreadNameDeterminer determiner) {
         try {
             selector = SelectorUtil.open();
+            selectedKeys = SelectorUtil.optimize(selector);
         } catch (Throwable t) {
             throw new ChannelException("Failed to create a selector.", t);
         }
@@ -382,6 +456,22 @@ abstract class AbstractNioSelector implements NioSelector {
         assert selector != null && selector.isOpen();
     }
 
+    /**
+     * Runs the tasks which are left when this selector shuts down.  Unlike
+     * {@link #processTaskQueue()}, a failing task does not prevent the others
+     * from running, because nobody runs them afterwards.
+     */
+    private void processRemainingTasks() {
+        for (;;) {
+            try {
+                processTaskQueue();
+                break;
+            } catch (Throwable t) {
+                logger.warn("Unexpected exception while running a task on shutdown.", t);
+            }
+        }
+    }
+
     private void processTaskQueue() {
         for (;;) {
             final Runnable task = taskQueue.poll();
@@ -403,13 +493,33 @@ abstract class AbstractNioSelector implements NioSelector {
 
     protected final boolean cleanUpCancelledKeys() throws IOException {
         if (cancelledKeys >= CLEANUP_INTERVAL) {
-            cancelledKeys = 0;
-            selector.selectNow();
+            flushCancelledKeys();
             return true;
         }
         return false;
     }
 
+    /**
+     * Deregisters the cancelled keys from the {@link Selector} right away.
+     */
+    protected final void flushCancelledKeys() throws IOException {
+        cancelledKeys = 0;
+        SelectedSelectionKeySet selectedKeys = this.selectedKeys;
+        if (selectedKeys != null) {
+            // The keys which are still ready are added again by selectNow().
+            selectedKeys.reset();
+        }
+        selector.selectNow();
+    }
+
+    /**
+     * Returns the time this selector has spent processing I/O and tasks
+     * rather than waiting in {@link Selector#select()}, in nanoseconds.
+     */
+    public long getIoTime() {
+        return ioTime;
+    }
+
     public void shutdown() {
         if (isIoThread()) {
             throw new IllegalStateException("Must not be called from a I/O-Thread to prevent deadlocks!");
@@ -430,8 +540,20 @@ abstract class AbstractNioSelector implements NioSelector {
 
     protected abstract void process(Selector selector) throws IOException;
 
+    /**
+     * Waits for the {@link Selector} until a channel is selected, the
+     * selector is waken up, or the nearest scheduled task is due.
+     */
     protected int select(Selector selector) throws IOException {
-        return SelectorUtil.select(selector);
+        long delayNanos = nextScheduledTaskDelayNanos();
+        if (delayNanos < 0 || delayNanos >= SelectorUtil.SELECT_TIMEOUT_NANOS) {
+            selectTimeoutNanos = SelectorUtil.SELECT_TIMEOUT_NANOS;
+            return SelectorUtil.select(selector);
+        }
+
+        selectTimeoutNanos = delayNanos;
+        // Round up so that the task is never run before its deadline.
+        return SelectorUtil.select(selector, (delayNanos + 999999) / 1000000);
     }
 
     protected abstract void close(SelectionKey k);
@@ -15,18 +15,23 @@
  */
 package org.jboss.netty.channel.socket.nio;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.DownstreamMessageEvent;
 import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.channel.socket.SchedulingWorker;
 import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.SendBuffer;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -37,13 +42,27 @@ import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.jboss.netty.channel.Channels.*;
 
-abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
+abstract class AbstractNioWorker extends AbstractNioSelector implements SchedulingWorker {
 
     protected final SocketSendBufferPool sendBufferPool = new SocketSendBufferPool();
 
+    /**
+     * The number of open channels assigned to this worker.
+     */
+    final AtomicInteger channelCount = new AtomicInteger();
+
+    /**
+     * The number of bytes in the write request queues of the channels of
+     * this worker.
+     */
+    final AtomicLong pendingWriteBytes = new AtomicLong();
+
     AbstractNioWorker(Executor executor) {
         super(executor);
     }
@@ -52,6 +71,22 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
         super(executor, determiner);
     }
 
+    /**
+     * Returns the number of open channels assigned to this worker.
+     */
+    public int getChannelCount() {
+        return channelCount.get();
+    }
+
+    /**
+     * Returns the number of bytes which were requested to be written to the
+     * channels of this worker but have not been taken from their write
+     * request queues yet.
+     */
+    public long getPendingWriteBytes() {
+        return pendingWriteBytes.get();
+    }
+
     public void executeInIoThread(Runnable task) {
         executeInIoThread(task, false);
     }
@@ -73,9 +108,30 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
         }
     }
 
+    /**
+     * Execute the {@link Runnable} in the IO-Thread of the worker of the
+     * {@link AbstractNioChannel}.  If the channel is migrated to another
+     * worker before the task is run, the task follows the channel.
+     */
+    static void executeInIoThread(final AbstractNioChannel<?> channel, final Runnable task) {
+        if (isIoThread(channel)) {
+            task.run();
+        } else {
+            channel.worker.executeInIoThread(new Runnable() {
+                public void run() {
+                    executeInIoThread(channel, task);
+                }
+            }, true);
+        }
+    }
+
     @Override
     protected void close(SelectionKey k) {
         AbstractNioChannel<?> ch = (AbstractNioChannel<?>) k.attachment();
+        if (ch.worker != this) {
+            // The key has been cancelled because the channel was migrated to another worker.
+            return;
+        }
         close(ch, succeededFuture(ch));
     }
 
@@ -92,30 +148,30 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
 
     @Override
     protected void process(Selector selector) throws IOException {
-        Set<SelectionKey> selectedKeys = selector.selectedKeys();
+        SelectedSelectionKeySet selectedKeys = this.selectedKeys;
+        if (selectedKeys != null) {
+            for (int i = 0; i < selectedKeys.size(); i ++) {
+                processSelectedKey(selectedKeys.get(i));
+                if (cleanUpCancelledKeys()) {
+                    // The keys have been selected again - start over.
+                    i = -1;
+                }
+            }
+            selectedKeys.reset();
+            return;
+        }
+
+        Set<SelectionKey> keys = selector.selectedKeys();
         // check if the set is empty and if so just return to not create garbage by
         // creating a new Iterator every time even if there is nothing to process.
         // See https://github.com/netty/netty/issues/597
-        if (selectedKeys.isEmpty()) {
+        if (keys.isEmpty()) {
             return;
         }
-        for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext();) {
+        for (Iterator<SelectionKey> i = keys.iterator(); i.hasNext();) {
             SelectionKey k = i.next();
             i.remove();
-            try {
-                int readyOps = k.readyOps();
-                if ((readyOps & SelectionKey.OP_READ) != 0 || readyOps == 0) {
-                    if (!read(k)) {
-                        // Connection already closed - no need to handle write.
-                        continue;
-                    }
-                }
-                if ((readyOps & SelectionKey.OP_WRITE) != 0) {
-                    writeFromSelectorLoop(k);
-                }
-            } catch (CancelledKeyException e) {
-                close(k);
-            }
+            processSelectedKey(k);
 
             if (cleanUpCancelledKeys()) {
                 break; // break the loop to avoid ConcurrentModificationException
@@ -123,6 +179,23 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
         }
     }
 
+    private void processSelectedKey(SelectionKey k) {
+        try {
+            int readyOps = k.readyOps();
+            if ((readyOps & SelectionKey.OP_READ) != 0 || readyOps == 0) {
+                if (!read(k)) {
+                    // Connection already closed - no need to handle write.
+                    return;
+                }
+            }
+            if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                writeFromSelectorLoop(k);
+            }
+        } catch (CancelledKeyException e) {
+            close(k);
+        }
+    }
+
     void writeFromUserCode(final AbstractNioChannel<?> channel) {
         if (!channel.isConnected()) {
             cleanUpWriteBuffer(channel);
@@ -171,18 +244,35 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
         final SocketSendBufferPool sendBufferPool = this.sendBufferPool;
         final WritableByteChannel ch = channel.channel;
         final Queue<MessageEvent> writeBuffer = channel.writeBufferQueue;
-        final int writeSpinCount = channel.getConfig().getWriteSpinCount();
+        final GatheringWriteQueue gatheringWriteQueue = channel.gatheringWriteQueue;
+        final NioChannelConfig config = channel.getConfig();
+        final int writeSpinCount = config.getWriteSpinCount();
+        final int maxGatheringWriteMessages;
+        final int maxGatheringWriteBytes;
+        if (config instanceof NioSocketChannelConfig && ch instanceof GatheringByteChannel) {
+            maxGatheringWriteMessages = ((NioSocketChannelConfig) config).getMaxGatheringWriteMessages();
+            maxGatheringWriteBytes = ((NioSocketChannelConfig) config).getMaxGatheringWriteBytes();
+        } else {
+            maxGatheringWriteMessages = 1;
+            maxGatheringWriteBytes = 0;
+        }
         List<Throwable> causes = null;
 
-        synchronized (channel.writeLock) {
-            channel.inWriteNowLoop = true;
-            for (;;) {
+        channel.inWriteNowLoop = true;
+        for (;;) {
 
-                MessageEvent evt = channel.currentWriteEvent;
-                SendBuffer buf = null;
-                ChannelFuture future = null;
-                try {
-                    if (evt == null) {
+            MessageEvent evt = channel.currentWriteEvent;
+            SendBuffer buf = null;
+            ChannelFuture future = null;
+            try {
+                if (evt == null) {
+                    if (!gatheringWriteQueue.isEmpty()) {
+                        // Gathered by the previous gathering write.
+                        channel.currentWriteEvent = evt = gatheringWriteQueue.firstEvent();
+                        channel.currentWriteBuffer = buf = gatheringWriteQueue.firstBuffer();
+                        gatheringWriteQueue.removeFirst();
+                        future = evt.getFuture();
+                    } else {
                         if ((channel.currentWriteEvent = evt = writeBuffer.poll()) == null) {
                             removeOpWrite = true;
                             channel.writeSuspended = false;
@@ -191,100 +281,137 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
                         future = evt.getFuture();
 
                         channel.currentWriteBuffer = buf = sendBufferPool.acquire(evt.getMessage());
-                    } else {
-                        future = evt.getFuture();
-                        buf = channel.currentWriteBuffer;
                     }
+                } else {
+                    future = evt.getFuture();
+                    buf = channel.currentWriteBuffer;
+                }
 
-                    long localWrittenBytes = 0;
+                long localWrittenBytes = 0;
+                if (!buf.finished() && gatheringWriteQueue.gather(
+                        buf, writeBuffer, sendBufferPool, maxGatheringWriteMessages, maxGatheringWriteBytes)) {
+                    // Write the current message and the ones behind it with a single system call.
+                    GatheringByteChannel gch = (GatheringByteChannel) ch;
+                    ByteBuffer[] nioBuffers = gatheringWriteQueue.nioBuffers();
+                    int nioBufferCount = gatheringWriteQueue.nioBufferCount();
+                    long headRemainingBytes = gatheringWriteQueue.headRemainingBytes();
                     for (int i = writeSpinCount; i > 0; i --) {
-                        localWrittenBytes = buf.transferTo(ch);
+                        localWrittenBytes = gch.write(nioBuffers, 0, nioBufferCount);
                         if (localWrittenBytes != 0) {
                             writtenBytes += localWrittenBytes;
                             break;
                         }
-                        if (buf.finished()) {
-                            break;
-                        }
                     }
 
                     if (buf.finished()) {
-                        // Successful write - proceed to the next message.
                         buf.release();
                         channel.currentWriteEvent = null;
                         channel.currentWriteBuffer = null;
-                        // Mark the event object for garbage collection.
+                        recycle(evt);
                         //noinspection UnusedAssignment
                         evt = null;
                         buf = null;
                         future.setSuccess();
+                        gatheringWriteQueue.complete(localWrittenBytes - headRemainingBytes);
                     } else {
+                        gatheringWriteQueue.clearNioBuffers();
+                        localWrittenBytes = Math.min(localWrittenBytes, headRemainingBytes);
+                    }
+
+                    if (localWrittenBytes >= gatheringWriteQueue.totalRemainingBytes()) {
+                        // Everything gathered has been written - proceed to the next message.
+                        continue;
+                    }
+                    if (evt == null) {
                         // Not written fully - perhaps the kernel buffer is full.
                         addOpWrite = true;
                         channel.writeSuspended = true;
-
-                        if (writtenBytes > 0) {
-                            // Notify progress listeners if necessary.
-                            future.setProgress(
-                                    localWrittenBytes,
-                                    buf.writtenBytes(), buf.totalBytes());
-                        }
                         break;
                     }
-                } catch (AsynchronousCloseException e) {
-                    // Doesn't need a user attention - ignore.
-                } catch (Throwable t) {
-                    if (buf != null) {
-                        buf.release();
+                } else {
+                    for (int i = writeSpinCount; i > 0; i --) {
+                        localWrittenBytes = buf.transferTo(ch);
+                        if (localWrittenBytes != 0) {
+                            writtenBytes += localWrittenBytes;
+                            break;
+                        }
+                        if (buf.finished()) {
+                            break;
+                        }
                     }
+                }
+
+                if (buf.finished()) {
+                    // Successful write - proceed to the next message.
+                    buf.release();
                     channel.currentWriteEvent = null;
                     channel.currentWriteBuffer = null;
+                    recycle(evt);
                     // Mark the event object for garbage collection.
                     //noinspection UnusedAssignment
-                    buf = null;
-                    //noinspection UnusedAssignment
                     evt = null;
-                    if (future != null) {
-                        future.setFailure(t);
-                    }
-                    if (iothread) {
-                        // An exception was thrown from within a write in the iothread. We store a reference to it
-                        // in a list for now and notify the handlers in the chain after the writeLock was released
-                        // to prevent possible deadlock.
-                        // See #1310
-                        if (causes == null) {
-                            causes = new ArrayList<Throwable>(1);
-                        }
-                        causes.add(t);
-                    } else {
-                        fireExceptionCaughtLater(channel, t);
+                    buf = null;
+                    future.setSuccess();
+                } else {
+                    // Not written fully - perhaps the kernel buffer is full.
+                    addOpWrite = true;
+                    channel.writeSuspended = true;
+
+                    if (writtenBytes > 0) {
+                        // Notify progress listeners if necessary.
+                        future.setProgress(
+                                localWrittenBytes,
+                                buf.writtenBytes(), buf.totalBytes());
                     }
-                    if (t instanceof IOException) {
-                        // close must be handled from outside the write lock to fix a possible deadlock
-                        // which can happen when MemoryAwareThreadPoolExecutor is used and the limit is exceed
-                        // and a close is triggered while the lock is hold. This is because the close(..)
-                        // may try to submit a task to handle it via the ExecutorHandler which then deadlocks.
-                        // See #1310
-                        open = false;
+                    break;
+                }
+            } catch (AsynchronousCloseException e) {
+                // Doesn't need a user attention - ignore.
+            } catch (Throwable t) {
+                if (buf != null) {
+                    buf.release();
+                }
+                channel.currentWriteEvent = null;
+                channel.currentWriteBuffer = null;
+                // Mark the event object for garbage collection.
+                //noinspection UnusedAssignment
+                buf = null;
+                recycle(evt);
+                //noinspection UnusedAssignment
+                evt = null;
+                if (future != null) {
+                    future.setFailure(t);
+                }
+                if (iothread) {
+                    // An exception was thrown from within a write in the iothread. We store a reference to it
+                    // in a list for now and notify the handlers in the chain after the write loop has finished,
+                    // so that a handler which closes the channel does not clean up the write queue under our feet.
+                    // See #1310
+                    if (causes == null) {
+                        causes = new ArrayList<Throwable>(1);
                     }
+                    causes.add(t);
+                } else {
+                    fireExceptionCaughtLater(channel, t);
                 }
-            }
-            channel.inWriteNowLoop = false;
-
-            // Initially, the following block was executed after releasing
-            // the writeLock, but there was a race condition, and it has to be
-            // executed before releasing the writeLock:
-            //
-            //     https://issues.jboss.org/browse/NETTY-410
-            //
-            if (open) {
-                if (addOpWrite) {
-                    setOpWrite(channel);
-                } else if (removeOpWrite) {
-                    clearOpWrite(channel);
+                if (t instanceof IOException) {
+                    // close must be handled after the write loop has finished because it cleans up
+                    // the write queue.
+                    // See #1310
+                    open = false;
                 }
             }
         }
+        channel.inWriteNowLoop = false;
+        channel.ioBytes += writtenBytes;
+
+        if (open) {
+            if (addOpWrite) {
+                setOpWrite(channel);
+            } else if (removeOpWrite) {
+                clearOpWrite(channel);
+            }
+        }
         if (causes != null) {
             for (Throwable cause: causes) {
                 // notify about cause now as it was triggered in the write loop
@@ -306,6 +433,17 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
         return Thread.currentThread() == channel.worker.thread;
     }
 
+    /**
+     * Returns the specified write request to its pool once it has been
+     * completed.  Does nothing unless the event is a recycled
+     * {@link DownstreamMessageEvent}.
+     */
+    static void recycle(MessageEvent evt) {
+        if (evt instanceof DownstreamMessageEvent) {
+            ((DownstreamMessageEvent) evt).recycle();
+        }
+    }
+
     protected void setOpWrite(AbstractNioChannel<?> channel) {
         Selector selector = this.selector;
         SelectionKey key = channel.channel.keyFor(selector);
@@ -389,53 +527,93 @@ abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
         }
     }
 
-    protected static void cleanUpWriteBuffer(AbstractNioChannel<?> channel) {
+    /**
+     * Fails all pending writes of the specified channel.  Only the I/O thread
+     * consumes the write queue, so when called from another thread, the
+     * writes are failed later by the I/O thread.  For example, the futures of
+     * the pending writes may still be incomplete when
+     * {@link Channel#close()} returns and its future has been notified.  If
+     * the worker has been shut down, the writes are failed immediately.
+     */
+    protected static void cleanUpWriteBuffer(final AbstractNioChannel<?> channel) {
+        if (!isIoThread(channel)) {
+            // Only the I/O thread consumes the write queue.
+            try {
+                channel.worker.executeInIoThread(new Runnable() {
+                    public void run() {
+                        cleanUpWriteBuffer(channel);
+                    }
+                }, true);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The worker has been shut down, so nobody else consumes the write queue anymore.
+            }
+        }
+
         Exception cause = null;
         boolean fireExceptionCaught = false;
 
         // Clean up the stale messages in the write buffer.
-        synchronized (channel.writeLock) {
-            MessageEvent evt = channel.currentWriteEvent;
-            if (evt != null) {
-                // Create the exception only once to avoid the excessive overhead
-                // caused by fillStackTrace.
+        MessageEvent evt = channel.currentWriteEvent;
+        if (evt != null) {
+            // Create the exception only once to avoid the excessive overhead
+            // caused by fillStackTrace.
+            if (channel.isOpen()) {
+                cause = new NotYetConnectedException();
+            } else {
+                cause = new ClosedChannelException();
+            }
+
+            ChannelFuture future = evt.getFuture();
+            if (channel.currentWriteBuffer != null) {
+                channel.currentWriteBuffer.release();
+                channel.currentWriteBuffer = null;
+            }
+            channel.currentWriteEvent = null;
+            recycle(evt);
+            // Mark the event object for garbage collection.
+            //noinspection UnusedAssignment
+            evt = null;
+            future.setFailure(cause);
+            fireExceptionCaught = true;
+        }
+
+        GatheringWriteQueue gatheringWriteQueue = channel.gatheringWriteQueue;
+        if (!gatheringWriteQueue.isEmpty()) {
+            if (cause == null) {
                 if (channel.isOpen()) {
                     cause = new NotYetConnectedException();
                 } else {
                     cause = new ClosedChannelException();
                 }
-
-                ChannelFuture future = evt.getFuture();
-                if (channel.currentWriteBuffer != null) {
-                    channel.currentWriteBuffer.release();
-                    channel.currentWriteBuffer = null;
-                }
-                channel.currentWriteEvent = null;
-                // Mark the event object for garbage collection.
-                //noinspection UnusedAssignment
-                evt = null;
-                future.setFailure(cause);
                 fireExceptionCaught = true;
             }
+            gatheringWriteQueue.fail(cause);
+        }
 
-            Queue<MessageEvent> writeBuffer = channel.writeBufferQueue;
-            for (;;) {
-                evt = writeBuffer.poll();
-                if (evt == null) {
-                    break;
-                }
-                // Create the exception only once to avoid the excessive overhead
-                // caused by fillStackTrace.
-                if (cause == null) {
-                    if (channel.isOpen()) {
-                        cause = new NotYetConnectedException();
-                    } else {
-                        cause = new ClosedChannelException();
-                    }
-                    fireExceptionCaught = true;
+        Queue<MessageEvent> writeBuffer = channel.writeBufferQueue;
+        for (;;) {
+            evt = writeBuffer.poll();
+            if (evt == null) {
+                break;
+            }
+            // Create the exception only once to avoid the excessive overhead
+            // caused by fillStackTrace.
+            if (cause == null) {
+                if (channel.isOpen()) {
+                    cause = new NotYetConnectedException();
+                } else {
+                    cause = new ClosedChannelException();
                 }
-                evt.getFuture().setFailure(cause);
+                fireExceptionCaught = true;
+            }
+            Object m = evt.getMessage();
+            if (m instanceof ChannelBuffer) {
+                // Never handed to the send buffer pool - give a pooled buffer back here.
+                ChannelBuffers.release((ChannelBuffer) m);
             }
+            evt.getFuture().setFailure(cause);
+            recycle(evt);
         }
 
         if (fireExceptionCaught) {
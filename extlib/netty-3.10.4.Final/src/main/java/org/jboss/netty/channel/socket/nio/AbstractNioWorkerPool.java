@@ -22,6 +22,9 @@ import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.ExternalResourceReleasable;
 import org.jboss.netty.util.internal.ExecutorUtil;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -29,7 +32,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Abstract base class for {@link WorkerPool} implementations that create the {@link Worker}'s
- * up-front and return them in a "fair" fashion when calling {@link #nextWorker()}
+ * up-front and return them in a "fair" fashion when calling {@link #nextWorker()}.  What is fair
+ * is decided by the {@link WorkerSelectionStrategy}, which is {@link WorkerSelectionStrategy#ROUND_ROBIN}
+ * unless {@link #setWorkerSelectionStrategy(WorkerSelectionStrategy)} is called.
  */
 public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
         implements WorkerPool<E>, ExternalResourceReleasable {
@@ -42,7 +47,9 @@ public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractNioWorkerPool.class);
 
     private final AbstractNioWorker[] workers;
+    private final List<E> workerList;
     private final AtomicInteger workerIndex = new AtomicInteger();
+    private volatile WorkerSelectionStrategy workerSelectionStrategy = WorkerSelectionStrategy.ROUND_ROBIN;
     private final Executor workerExecutor;
     private final AtomicBoolean initialized = new AtomicBoolean(false);
 
@@ -56,6 +63,7 @@ public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
         this(workerExecutor, workerCount, true);
     }
 
+    @SuppressWarnings("unchecked")
     AbstractNioWorkerPool(Executor workerExecutor, int workerCount, boolean autoInit) {
         if (workerExecutor == null) {
             throw new NullPointerException("workerExecutor");
@@ -65,6 +73,7 @@ public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
                     "workerCount (" + workerCount + ") " + "must be a positive integer.");
         }
         workers = new AbstractNioWorker[workerCount];
+        workerList = Collections.unmodifiableList((List<E>) Arrays.asList(workers));
         this.workerExecutor = workerExecutor;
         if (autoInit) {
             init();
@@ -121,9 +130,50 @@ public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
      */
     protected abstract E newWorker(Executor executor);
 
-    @SuppressWarnings("unchecked")
     public E nextWorker() {
-        return (E) workers[Math.abs(workerIndex.getAndIncrement() % workers.length)];
+        return workerSelectionStrategy.select(workerList, workerIndex.getAndIncrement());
+    }
+
+    /**
+     * Returns the {@link WorkerSelectionStrategy} which chooses the worker returned by
+     * {@link #nextWorker()}.
+     */
+    public WorkerSelectionStrategy getWorkerSelectionStrategy() {
+        return workerSelectionStrategy;
+    }
+
+    /**
+     * Sets the {@link WorkerSelectionStrategy} which chooses the worker returned by
+     * {@link #nextWorker()}.  It affects only the channels registered afterwards.
+     */
+    public void setWorkerSelectionStrategy(WorkerSelectionStrategy workerSelectionStrategy) {
+        if (workerSelectionStrategy == null) {
+            throw new NullPointerException("workerSelectionStrategy");
+        }
+        this.workerSelectionStrategy = workerSelectionStrategy;
+    }
+
+    /**
+     * Returns the workers of this pool, so that their load gauges such as
+     * {@link AbstractNioWorker#getChannelCount()} can be inspected.
+     */
+    public List<E> getWorkers() {
+        return workerList;
+    }
+
+    /**
+     * Returns the number of workers in this pool.
+     */
+    int workerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the worker at the specified index.
+     */
+    @SuppressWarnings("unchecked")
+    E worker(int index) {
+        return (E) workers[index];
     }
 
     public void rebuildSelectors() {
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.net.SocketAddress;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.MessageEvent;
+
+/**
+ * The datagrams which a {@link NioDatagramChannel} has received in one go.
+ * It is the message of a {@link MessageEvent} if
+ * {@link NioDatagramChannelConfig#isBatchReceive()} is enabled.
+ * <p>
+ * The contents of the datagrams are slices of one buffer, which has been
+ * allocated by the {@link ChannelBufferFactory} of the channel.  Call
+ * {@link #release()} once the datagrams have been processed so that a
+ * pooled buffer can be reused.
+ */
+public final class DatagramBatch {
+
+    private final ChannelBuffer buffer;
+    private final ChannelBuffer[] contents;
+    private final SocketAddress[] remoteAddresses;
+
+    DatagramBatch(ChannelBuffer buffer, ChannelBuffer[] contents, SocketAddress[] remoteAddresses) {
+        this.buffer = buffer;
+        this.contents = contents;
+        this.remoteAddresses = remoteAddresses;
+    }
+
+    /**
+     * Returns the number of datagrams in this batch.
+     */
+    public int size() {
+        return contents.length;
+    }
+
+    /**
+     * Returns the content of the datagram at the specified index.
+     */
+    public ChannelBuffer getContent(int index) {
+        return contents[index];
+    }
+
+    /**
+     * Returns the address the datagram at the specified index was sent from.
+     */
+    public SocketAddress getRemoteAddress(int index) {
+        return remoteAddresses[index];
+    }
+
+    /**
+     * Releases the buffer which holds the contents of the datagrams.
+     *
+     * @return {@code true} if and only if the buffer has been returned to
+     *         its factory
+     */
+    public boolean release() {
+        return ChannelBuffers.release(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(size: " + contents.length + ", bytes: " + buffer.readableBytes() + ')';
+    }
+}
@@ -44,6 +44,8 @@ class DefaultNioDatagramChannelConfig extends DefaultDatagramChannelConfig
     private volatile int writeBufferHighWaterMark = 64 * 1024;
     private volatile int writeBufferLowWaterMark = 32 * 1024;
     private volatile int writeSpinCount = 16;
+    private volatile int maxMessagesPerRead = 16;
+    private volatile boolean batchReceive;
     private final DatagramChannel channel;
 
     DefaultNioDatagramChannelConfig(DatagramChannel channel) {
@@ -78,6 +80,10 @@ class DefaultNioDatagramChannelConfig extends DefaultDatagramChannelConfig
             setWriteBufferLowWaterMark0(ConversionUtil.toInt(value));
         } else if ("writeSpinCount".equals(key)) {
             setWriteSpinCount(ConversionUtil.toInt(value));
+        } else if ("maxMessagesPerRead".equals(key)) {
+            setMaxMessagesPerRead(ConversionUtil.toInt(value));
+        } else if ("batchReceive".equals(key)) {
+            setBatchReceive(ConversionUtil.toBoolean(value));
         } else {
             return false;
         }
@@ -142,6 +148,26 @@ class DefaultNioDatagramChannelConfig extends DefaultDatagramChannelConfig
         this.writeSpinCount = writeSpinCount;
     }
 
+    public int getMaxMessagesPerRead() {
+        return maxMessagesPerRead;
+    }
+
+    public void setMaxMessagesPerRead(int maxMessagesPerRead) {
+        if (maxMessagesPerRead <= 0) {
+            throw new IllegalArgumentException(
+                    "maxMessagesPerRead must be a positive integer.");
+        }
+        this.maxMessagesPerRead = maxMessagesPerRead;
+    }
+
+    public boolean isBatchReceive() {
+        return batchReceive;
+    }
+
+    public void setBatchReceive(boolean batchReceive) {
+        this.batchReceive = batchReceive;
+    }
+
     @Override
     public void setNetworkInterface(NetworkInterface networkInterface) {
         if (DetectionUtil.javaVersion() < 7) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.net.ServerSocket;
+
+import org.jboss.netty.channel.socket.DefaultServerSocketChannelConfig;
+import org.jboss.netty.util.internal.ConversionUtil;
+
+/**
+ * The default {@link NioServerSocketChannelConfig} implementation.
+ */
+class DefaultNioServerSocketChannelConfig extends DefaultServerSocketChannelConfig
+        implements NioServerSocketChannelConfig {
+
+    private volatile boolean reusePort;
+    private volatile int acceptors = 1;
+
+    DefaultNioServerSocketChannelConfig(ServerSocket socket) {
+        super(socket);
+    }
+
+    @Override
+    public boolean setOption(String key, Object value) {
+        if (super.setOption(key, value)) {
+            return true;
+        }
+
+        if ("reusePort".equals(key)) {
+            setReusePort(ConversionUtil.toBoolean(value));
+        } else if ("acceptors".equals(key)) {
+            setAcceptors(ConversionUtil.toInt(value));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(int acceptors) {
+        if (acceptors <= 0) {
+            throw new IllegalArgumentException(
+                    "acceptors must be a positive integer.");
+        }
+        this.acceptors = acceptors;
+    }
+}
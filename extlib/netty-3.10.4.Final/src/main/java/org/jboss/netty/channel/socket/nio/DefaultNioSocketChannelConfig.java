@@ -44,6 +44,11 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
     private volatile ReceiveBufferSizePredictor predictor;
     private volatile ReceiveBufferSizePredictorFactory predictorFactory = DEFAULT_PREDICTOR_FACTORY;
     private volatile int writeSpinCount = 16;
+    private volatile int maxGatheringWriteMessages = 64;
+    private volatile int maxGatheringWriteBytes = 65536;
+    private volatile int maxMessagesPerRead = 16;
+    private volatile int maxBytesPerRead = 262144;
+    private volatile boolean readWithoutCopy;
 
     DefaultNioSocketChannelConfig(Socket socket) {
         super(socket);
@@ -77,6 +82,16 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
             setWriteBufferLowWaterMark0(ConversionUtil.toInt(value));
         } else if ("writeSpinCount".equals(key)) {
             setWriteSpinCount(ConversionUtil.toInt(value));
+        } else if ("maxGatheringWriteMessages".equals(key)) {
+            setMaxGatheringWriteMessages(ConversionUtil.toInt(value));
+        } else if ("maxGatheringWriteBytes".equals(key)) {
+            setMaxGatheringWriteBytes(ConversionUtil.toInt(value));
+        } else if ("maxMessagesPerRead".equals(key)) {
+            setMaxMessagesPerRead(ConversionUtil.toInt(value));
+        } else if ("maxBytesPerRead".equals(key)) {
+            setMaxBytesPerRead(ConversionUtil.toInt(value));
+        } else if ("readWithoutCopy".equals(key)) {
+            setReadWithoutCopy(ConversionUtil.toBoolean(value));
         } else if ("receiveBufferSizePredictorFactory".equals(key)) {
             setReceiveBufferSizePredictorFactory((ReceiveBufferSizePredictorFactory) value);
         } else if ("receiveBufferSizePredictor".equals(key)) {
@@ -143,6 +158,62 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
         this.writeSpinCount = writeSpinCount;
     }
 
+    public int getMaxGatheringWriteMessages() {
+        return maxGatheringWriteMessages;
+    }
+
+    public void setMaxGatheringWriteMessages(int maxGatheringWriteMessages) {
+        if (maxGatheringWriteMessages <= 0) {
+            throw new IllegalArgumentException(
+                    "maxGatheringWriteMessages must be a positive integer.");
+        }
+        this.maxGatheringWriteMessages = maxGatheringWriteMessages;
+    }
+
+    public int getMaxGatheringWriteBytes() {
+        return maxGatheringWriteBytes;
+    }
+
+    public void setMaxGatheringWriteBytes(int maxGatheringWriteBytes) {
+        if (maxGatheringWriteBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "maxGatheringWriteBytes must be a positive integer.");
+        }
+        this.maxGatheringWriteBytes = maxGatheringWriteBytes;
+    }
+
+    public int getMaxMessagesPerRead() {
+        return maxMessagesPerRead;
+    }
+
+    public void setMaxMessagesPerRead(int maxMessagesPerRead) {
+        if (maxMessagesPerRead <= 0) {
+            throw new IllegalArgumentException(
+                    "maxMessagesPerRead must be a positive integer.");
+        }
+        this.maxMessagesPerRead = maxMessagesPerRead;
+    }
+
+    public int getMaxBytesPerRead() {
+        return maxBytesPerRead;
+    }
+
+    public void setMaxBytesPerRead(int maxBytesPerRead) {
+        if (maxBytesPerRead <= 0) {
+            throw new IllegalArgumentException(
+                    "maxBytesPerRead must be a positive integer.");
+        }
+        this.maxBytesPerRead = maxBytesPerRead;
+    }
+
+    public boolean isReadWithoutCopy() {
+        return readWithoutCopy;
+    }
+
+    public void setReadWithoutCopy(boolean readWithoutCopy) {
+        this.readWithoutCopy = readWithoutCopy;
+    }
+
     public ReceiveBufferSizePredictor getReceiveBufferSizePredictor() {
         ReceiveBufferSizePredictor predictor = this.predictor;
         if (predictor == null) {
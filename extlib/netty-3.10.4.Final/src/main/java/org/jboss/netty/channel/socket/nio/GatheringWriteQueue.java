@@ -0,0 +1,266 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.EmptySendBuffer;
+import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.GatheringSendBuffer;
+import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.SendBuffer;
+import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.UnpooledSendBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * The write requests which have been taken from the write queue of a channel
+ * behind its current write request, so that they are written to the socket
+ * together with it by a single gathering write.  Only accessed by the I/O
+ * thread of the channel.
+ */
+final class GatheringWriteQueue {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private MessageEvent[] events;
+    private SendBuffer[] buffers;
+    private long[] remainingBytes;
+    private int first;
+    private int last;
+
+    private ByteBuffer[] nioBuffers;
+    private int nioBufferCount;
+    private long headRemainingBytes;
+    private long totalRemainingBytes;
+
+    boolean isEmpty() {
+        return first == last;
+    }
+
+    MessageEvent firstEvent() {
+        return events[first];
+    }
+
+    SendBuffer firstBuffer() {
+        return buffers[first];
+    }
+
+    void removeFirst() {
+        events[first] = null;
+        buffers[first] = null;
+        if (++ first == last) {
+            first = last = 0;
+        }
+    }
+
+    /**
+     * Takes the {@link ChannelBuffer} messages at the head of {@code queue}
+     * which fit into the specified limits and prepares the NIO buffers of a
+     * gathering write of {@code head} and all gathered messages.
+     *
+     * @return {@code false} if there is nothing to write together with
+     *         {@code head}
+     */
+    boolean gather(SendBuffer head, Queue<MessageEvent> queue, SocketSendBufferPool sendBufferPool,
+                   int maxMessages, int maxBytes) {
+        if (maxMessages <= 1 || !isGatherable(head)) {
+            return false;
+        }
+
+        headRemainingBytes = remainingBytes(head);
+        long bytes = headRemainingBytes;
+        for (int i = first; i < last; i ++) {
+            remainingBytes[i] = remainingBytes(buffers[i]);
+            bytes += remainingBytes[i];
+        }
+
+        while (last - first < maxMessages - 1) {
+            MessageEvent evt = queue.peek();
+            if (evt == null || !(evt.getMessage() instanceof ChannelBuffer)) {
+                break;
+            }
+            int size = ((ChannelBuffer) evt.getMessage()).readableBytes();
+            if (bytes + size > maxBytes) {
+                break;
+            }
+
+            // Only the I/O thread polls the queue, so this is the event we peeked.
+            SendBuffer buf = sendBufferPool.acquire(evt.getMessage());
+            queue.poll();
+            add(evt, buf);
+            bytes += size;
+        }
+
+        if (isEmpty()) {
+            return false;
+        }
+
+        nioBufferCount = 0;
+        addNioBuffers(head);
+        totalRemainingBytes = headRemainingBytes;
+        for (int i = first; i < last && isGatherable(buffers[i]); i ++) {
+            addNioBuffers(buffers[i]);
+            totalRemainingBytes += remainingBytes[i];
+        }
+        return true;
+    }
+
+    ByteBuffer[] nioBuffers() {
+        return nioBuffers;
+    }
+
+    int nioBufferCount() {
+        return nioBufferCount;
+    }
+
+    /**
+     * Returns the number of bytes the head of the last
+     * {@linkplain #gather(SendBuffer, Queue, SocketSendBufferPool, int, int) gathering}
+     * had to write.
+     */
+    long headRemainingBytes() {
+        return headRemainingBytes;
+    }
+
+    /**
+     * Returns the number of bytes the head and all gathered messages of the
+     * last {@linkplain #gather(SendBuffer, Queue, SocketSendBufferPool, int, int) gathering}
+     * had to write.
+     */
+    long totalRemainingBytes() {
+        return totalRemainingBytes;
+    }
+
+    /**
+     * Forgets the NIO buffers of the last gathering write so that they do not
+     * stay reachable.
+     */
+    void clearNioBuffers() {
+        Arrays.fill(nioBuffers, 0, nioBufferCount, null);
+        nioBufferCount = 0;
+    }
+
+    /**
+     * Notifies the futures of the gathered messages which have been written
+     * completely, and the progress of the first one which has been written
+     * partially.  Must be called only if the head of the last gathering write
+     * has been written completely.
+     *
+     * @param writtenBytes the number of bytes written after the head
+     */
+    void complete(long writtenBytes) {
+        clearNioBuffers();
+
+        while (first < last && writtenBytes > 0) {
+            MessageEvent evt = events[first];
+            SendBuffer buf = buffers[first];
+            if (!buf.finished()) {
+                evt.getFuture().setProgress(writtenBytes, buf.writtenBytes(), buf.totalBytes());
+                break;
+            }
+
+            writtenBytes -= remainingBytes[first];
+            removeFirst();
+            buf.release();
+            evt.getFuture().setSuccess();
+            AbstractNioWorker.recycle(evt);
+        }
+
+        // Gathered empty messages are complete even if nothing was written after them.
+        while (first < last && remainingBytes[first] == 0 && buffers[first].finished()) {
+            MessageEvent evt = events[first];
+            SendBuffer buf = buffers[first];
+            removeFirst();
+            buf.release();
+            evt.getFuture().setSuccess();
+            AbstractNioWorker.recycle(evt);
+        }
+    }
+
+    /**
+     * Releases the send buffers of all gathered messages and fails their
+     * futures.
+     */
+    void fail(Throwable cause) {
+        while (!isEmpty()) {
+            MessageEvent evt = events[first];
+            SendBuffer buf = buffers[first];
+            removeFirst();
+            buf.release();
+            evt.getFuture().setFailure(cause);
+            AbstractNioWorker.recycle(evt);
+        }
+    }
+
+    private void add(MessageEvent evt, SendBuffer buf) {
+        if (events == null) {
+            events = new MessageEvent[INITIAL_CAPACITY];
+            buffers = new SendBuffer[INITIAL_CAPACITY];
+            remainingBytes = new long[INITIAL_CAPACITY];
+        } else if (last == events.length) {
+            int size = last - first;
+            int newCapacity = first == 0? events.length << 1 : events.length;
+            MessageEvent[] newEvents = new MessageEvent[newCapacity];
+            SendBuffer[] newBuffers = new SendBuffer[newCapacity];
+            long[] newRemainingBytes = new long[newCapacity];
+            System.arraycopy(events, first, newEvents, 0, size);
+            System.arraycopy(buffers, first, newBuffers, 0, size);
+            System.arraycopy(remainingBytes, first, newRemainingBytes, 0, size);
+            events = newEvents;
+            buffers = newBuffers;
+            remainingBytes = newRemainingBytes;
+            first = 0;
+            last = size;
+        }
+
+        events[last] = evt;
+        buffers[last] = buf;
+        remainingBytes[last] = remainingBytes(buf);
+        last ++;
+    }
+
+    private void addNioBuffers(SendBuffer buf) {
+        if (buf instanceof UnpooledSendBuffer) {
+            addNioBuffer(((UnpooledSendBuffer) buf).buffer);
+        } else if (buf instanceof GatheringSendBuffer) {
+            for (ByteBuffer b: ((GatheringSendBuffer) buf).buffers) {
+                addNioBuffer(b);
+            }
+        }
+    }
+
+    private void addNioBuffer(ByteBuffer buf) {
+        if (nioBuffers == null) {
+            nioBuffers = new ByteBuffer[INITIAL_CAPACITY];
+        } else if (nioBufferCount == nioBuffers.length) {
+            ByteBuffer[] newNioBuffers = new ByteBuffer[nioBufferCount << 1];
+            System.arraycopy(nioBuffers, 0, newNioBuffers, 0, nioBufferCount);
+            nioBuffers = newNioBuffers;
+        }
+        nioBuffers[nioBufferCount ++] = buf;
+    }
+
+    private static boolean isGatherable(SendBuffer buf) {
+        return buf instanceof UnpooledSendBuffer ||
+               buf instanceof GatheringSendBuffer ||
+               buf instanceof EmptySendBuffer;
+    }
+
+    private static long remainingBytes(SendBuffer buf) {
+        return buf.totalBytes() - buf.writtenBytes();
+    }
+}
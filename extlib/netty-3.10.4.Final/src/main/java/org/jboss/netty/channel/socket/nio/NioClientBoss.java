@@ -76,7 +76,15 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
 
     @Override
     protected void process(Selector selector) {
-        processSelectedKeys(selector.selectedKeys());
+        SelectedSelectionKeySet selectedKeys = this.selectedKeys;
+        if (selectedKeys != null) {
+            for (int i = 0; i < selectedKeys.size(); i ++) {
+                processSelectedKey(selectedKeys.get(i));
+            }
+            selectedKeys.reset();
+        } else {
+            processSelectedKeys(selector.selectedKeys());
+        }
 
         // Handle connection timeout every 10 milliseconds approximately.
         long currentTimeNanos = System.nanoTime();
@@ -94,23 +102,26 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
         for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext();) {
             SelectionKey k = i.next();
             i.remove();
+            processSelectedKey(k);
+        }
+    }
 
-            if (!k.isValid()) {
-                close(k);
-                continue;
-            }
+    private void processSelectedKey(SelectionKey k) {
+        if (!k.isValid()) {
+            close(k);
+            return;
+        }
 
-            try {
-                if (k.isConnectable()) {
-                    connect(k);
-                }
-            } catch (Throwable t) {
-                NioClientSocketChannel ch = (NioClientSocketChannel) k.attachment();
-                ch.connectFuture.setFailure(t);
-                fireExceptionCaught(ch, t);
-                k.cancel(); // Some JDK implementations run into an infinite loop without this.
-                ch.worker.close(ch, succeededFuture(ch));
+        try {
+            if (k.isConnectable()) {
+                connect(k);
             }
+        } catch (Throwable t) {
+            NioClientSocketChannel ch = (NioClientSocketChannel) k.attachment();
+            ch.connectFuture.setFailure(t);
+            fireExceptionCaught(ch, t);
+            k.cancel(); // Some JDK implementations run into an infinite loop without this.
+            ch.worker.close(ch, succeededFuture(ch));
         }
     }
 
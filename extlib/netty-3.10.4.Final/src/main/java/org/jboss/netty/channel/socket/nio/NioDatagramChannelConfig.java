@@ -38,8 +38,41 @@ import org.jboss.netty.channel.socket.DatagramChannelConfig;
  * </tr><tr>
  * <td>{@code "writeSpinCount"}</td><td>{@link #setWriteSpinCount(int)}</td>
  * </tr><tr>
+ * <td>{@code "maxMessagesPerRead"}</td><td>{@link #setMaxMessagesPerRead(int)}</td>
+ * </tr><tr>
+ * <td>{@code "batchReceive"}</td><td>{@link #setBatchReceive(boolean)}</td>
+ * </tr>
  * </table>
  */
 public interface NioDatagramChannelConfig extends DatagramChannelConfig, NioChannelConfig {
-    // Tag interface
+
+    /**
+     * Returns the maximum number of datagrams which are received from the
+     * socket when it becomes readable.  The default value is {@code 16}.
+     */
+    int getMaxMessagesPerRead();
+
+    /**
+     * Sets the maximum number of datagrams which are received from the
+     * socket when it becomes readable.  {@code 1} receives one datagram per
+     * readiness event.
+     */
+    void setMaxMessagesPerRead(int maxMessagesPerRead);
+
+    /**
+     * Returns {@code true} if and only if the datagrams received when the
+     * socket becomes readable are passed to the pipeline as a single
+     * {@link DatagramBatch}.  The default value is {@code false}.
+     */
+    boolean isBatchReceive();
+
+    /**
+     * Sets whether the datagrams received when the socket becomes readable
+     * are passed to the pipeline as a single {@link DatagramBatch} rather
+     * than as one {@link org.jboss.netty.buffer.ChannelBuffer} each.  The
+     * datagrams of a batch share one buffer allocated by the
+     * {@linkplain #getBufferFactory() buffer factory}, which saves an
+     * allocation per datagram.
+     */
+    void setBatchReceive(boolean batchReceive);
 }
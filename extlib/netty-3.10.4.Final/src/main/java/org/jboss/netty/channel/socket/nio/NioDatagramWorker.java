@@ -42,8 +42,20 @@ import static org.jboss.netty.channel.Channels.*;
  */
 public class NioDatagramWorker extends AbstractNioWorker {
 
+    /**
+     * The maximum size of the buffer the datagrams of a batch are received into.
+     */
+    private static final int MAX_BATCH_SIZE = 1048576;
+
     private final SocketReceiveBufferAllocator bufferAllocator = new SocketReceiveBufferAllocator();
 
+    /**
+     * The lengths and the senders of the datagrams received by the current
+     * {@link #read(SelectionKey)} call in the batch mode.
+     */
+    private int[] batchLengths = new int[16];
+    private SocketAddress[] batchRemoteAddresses = new SocketAddress[16];
+
     /**
      * Sole constructor.
      *
@@ -57,20 +69,63 @@ public class NioDatagramWorker extends AbstractNioWorker {
     @Override
     protected boolean read(final SelectionKey key) {
         final NioDatagramChannel channel = (NioDatagramChannel) key.attachment();
-        ReceiveBufferSizePredictor predictor =
-            channel.getConfig().getReceiveBufferSizePredictor();
-        final ChannelBufferFactory bufferFactory = channel.getConfig().getBufferFactory();
+        final NioDatagramChannelConfig config = channel.getConfig();
+        ReceiveBufferSizePredictor predictor = config.getReceiveBufferSizePredictor();
+        final ChannelBufferFactory bufferFactory = config.getBufferFactory();
         final DatagramChannel nioChannel = (DatagramChannel) key.channel();
         final int predictedRecvBufSize = predictor.nextReceiveBufferSize();
+        final int maxMessagesPerRead = config.getMaxMessagesPerRead();
+        final boolean batchReceive = config.isBatchReceive();
 
-        final ByteBuffer byteBuffer = bufferAllocator.get(predictedRecvBufSize).order(bufferFactory.getDefaultOrder());
+        // In the batch mode, the datagrams are received one after another into the same buffer.
+        final ByteBuffer byteBuffer = bufferAllocator.get(
+                batchReceive? (int) Math.min((long) predictedRecvBufSize * maxMessagesPerRead, MAX_BATCH_SIZE)
+                            : predictedRecvBufSize).order(bufferFactory.getDefaultOrder());
 
+        int received = 0;
         boolean failure = true;
-        SocketAddress remoteAddress = null;
         try {
-            // Receive from the channel in a non blocking mode. We have already been notified that
-            // the channel is ready to receive.
-            remoteAddress = nioChannel.receive(byteBuffer);
+            for (int i = 0; i < maxMessagesPerRead; i ++) {
+                if (batchReceive && received > 0 && byteBuffer.remaining() < predictedRecvBufSize) {
+                    // No room for another datagram of the predicted size.
+                    break;
+                }
+
+                // Receive from the channel in a non blocking mode. We have already been notified that
+                // the channel is ready to receive.
+                int start = byteBuffer.position();
+                SocketAddress remoteAddress = nioChannel.receive(byteBuffer);
+                if (remoteAddress == null) {
+                    break;
+                }
+
+                int readBytes = byteBuffer.position() - start;
+                if (readBytes > 0) {
+                    // Update the predictor.
+                    predictor.previousReceiveBufferSize(readBytes);
+
+                    if (batchReceive) {
+                        if (received == batchLengths.length) {
+                            growBatch();
+                        }
+                        batchLengths[received] = readBytes;
+                        batchRemoteAddresses[received] = remoteAddress;
+                    } else {
+                        // Flip the buffer so that we can wrap it.
+                        byteBuffer.flip();
+
+                        final ChannelBuffer buffer = bufferFactory.getBuffer(readBytes);
+                        buffer.setBytes(0, byteBuffer);
+                        buffer.writerIndex(readBytes);
+                        byteBuffer.clear();
+
+                        // Notify the interested parties about the newly arrived message.
+                        fireMessageReceived(
+                                channel, buffer, remoteAddress);
+                    }
+                    received ++;
+                }
+            }
             failure = false;
         } catch (ClosedChannelException e) {
             // Can happen, and does not need a user attention.
@@ -78,26 +133,8 @@ public class NioDatagramWorker extends AbstractNioWorker {
             fireExceptionCaught(channel, t);
         }
 
-        if (remoteAddress != null) {
-            // Flip the buffer so that we can wrap it.
-            byteBuffer.flip();
-
-            int readBytes = byteBuffer.remaining();
-            if (readBytes > 0) {
-                // Update the predictor.
-                predictor.previousReceiveBufferSize(readBytes);
-
-                final ChannelBuffer buffer = bufferFactory.getBuffer(readBytes);
-                buffer.setBytes(0, byteBuffer);
-                buffer.writerIndex(readBytes);
-
-                // Update the predictor.
-                predictor.previousReceiveBufferSize(readBytes);
-
-                // Notify the interested parties about the newly arrived message.
-                fireMessageReceived(
-                        channel, buffer, remoteAddress);
-            }
+        if (batchReceive && received > 0) {
+            fireMessageReceived(channel, newBatch(byteBuffer, received, bufferFactory));
         }
 
         if (failure) {
@@ -109,6 +146,40 @@ public class NioDatagramWorker extends AbstractNioWorker {
         return true;
     }
 
+    private void growBatch() {
+        int newLength = batchLengths.length << 1;
+        int[] newLengths = new int[newLength];
+        System.arraycopy(batchLengths, 0, newLengths, 0, batchLengths.length);
+        batchLengths = newLengths;
+        SocketAddress[] newRemoteAddresses = new SocketAddress[newLength];
+        System.arraycopy(batchRemoteAddresses, 0, newRemoteAddresses, 0, batchRemoteAddresses.length);
+        batchRemoteAddresses = newRemoteAddresses;
+    }
+
+    /**
+     * Copies the specified number of datagrams received into {@code byteBuffer}
+     * into a single buffer and creates a {@link DatagramBatch} of its slices.
+     */
+    private DatagramBatch newBatch(ByteBuffer byteBuffer, int received, ChannelBufferFactory bufferFactory) {
+        byteBuffer.flip();
+        int readBytes = byteBuffer.remaining();
+        ChannelBuffer buffer = bufferFactory.getBuffer(readBytes);
+        buffer.setBytes(0, byteBuffer);
+        buffer.writerIndex(readBytes);
+
+        ChannelBuffer[] contents = new ChannelBuffer[received];
+        SocketAddress[] remoteAddresses = new SocketAddress[received];
+        int offset = 0;
+        for (int i = 0; i < received; i ++) {
+            int length = batchLengths[i];
+            contents[i] = buffer.slice(offset, length);
+            remoteAddresses[i] = batchRemoteAddresses[i];
+            batchRemoteAddresses[i] = null;
+            offset += length;
+        }
+        return new DatagramBatch(buffer, contents, remoteAddresses);
+    }
+
     @Override
     protected boolean scheduleWriteIfNecessary(final AbstractNioChannel<?> channel) {
         final Thread workerThread = thread;
@@ -242,97 +313,91 @@ public class NioDatagramWorker extends AbstractNioWorker {
         final DatagramChannel ch = ((NioDatagramChannel) channel).getDatagramChannel();
         final Queue<MessageEvent> writeBuffer = channel.writeBufferQueue;
         final int writeSpinCount = channel.getConfig().getWriteSpinCount();
-        synchronized (channel.writeLock) {
-            // inform the channel that write is in-progress
-            channel.inWriteNowLoop = true;
-
-            // loop forever...
-            for (;;) {
-                MessageEvent evt = channel.currentWriteEvent;
-                SocketSendBufferPool.SendBuffer buf;
-                if (evt == null) {
-                    if ((channel.currentWriteEvent = evt = writeBuffer.poll()) == null) {
-                        removeOpWrite = true;
-                        channel.writeSuspended = false;
-                        break;
-                    }
-
-                    channel.currentWriteBuffer = buf = sendBufferPool.acquire(evt.getMessage());
-                } else {
-                    buf = channel.currentWriteBuffer;
+        // inform the channel that write is in-progress
+        channel.inWriteNowLoop = true;
+
+        // loop forever...
+        for (;;) {
+            MessageEvent evt = channel.currentWriteEvent;
+            SocketSendBufferPool.SendBuffer buf;
+            if (evt == null) {
+                if ((channel.currentWriteEvent = evt = writeBuffer.poll()) == null) {
+                    removeOpWrite = true;
+                    channel.writeSuspended = false;
+                    break;
                 }
 
-                try {
-                    long localWrittenBytes = 0;
-                    SocketAddress raddr = evt.getRemoteAddress();
-                    if (raddr == null) {
-                        for (int i = writeSpinCount; i > 0; i --) {
-                            localWrittenBytes = buf.transferTo(ch);
-                            if (localWrittenBytes != 0) {
-                                writtenBytes += localWrittenBytes;
-                                break;
-                            }
-                            if (buf.finished()) {
-                                break;
-                            }
+                channel.currentWriteBuffer = buf = sendBufferPool.acquire(evt.getMessage());
+            } else {
+                buf = channel.currentWriteBuffer;
+            }
+
+            try {
+                long localWrittenBytes = 0;
+                SocketAddress raddr = evt.getRemoteAddress();
+                if (raddr == null) {
+                    for (int i = writeSpinCount; i > 0; i --) {
+                        localWrittenBytes = buf.transferTo(ch);
+                        if (localWrittenBytes != 0) {
+                            writtenBytes += localWrittenBytes;
+                            break;
                         }
-                    } else {
-                        for (int i = writeSpinCount; i > 0; i --) {
-                            localWrittenBytes = buf.transferTo(ch, raddr);
-                            if (localWrittenBytes != 0) {
-                                writtenBytes += localWrittenBytes;
-                                break;
-                            }
-                            if (buf.finished()) {
-                                break;
-                            }
+                        if (buf.finished()) {
+                            break;
                         }
                     }
-
-                    if (localWrittenBytes > 0 || buf.finished()) {
-                        // Successful write - proceed to the next message.
-                        buf.release();
-                        ChannelFuture future = evt.getFuture();
-                        channel.currentWriteEvent = null;
-                        channel.currentWriteBuffer = null;
-                        evt = null;
-                        buf = null;
-                        future.setSuccess();
-                    } else {
-                        // Not written at all - perhaps the kernel buffer is full.
-                        addOpWrite = true;
-                        channel.writeSuspended = true;
-                        break;
+                } else {
+                    for (int i = writeSpinCount; i > 0; i --) {
+                        localWrittenBytes = buf.transferTo(ch, raddr);
+                        if (localWrittenBytes != 0) {
+                            writtenBytes += localWrittenBytes;
+                            break;
+                        }
+                        if (buf.finished()) {
+                            break;
+                        }
                     }
-                } catch (final AsynchronousCloseException e) {
-                    // Doesn't need a user attention - ignore.
-                } catch (final Throwable t) {
+                }
+
+                if (localWrittenBytes > 0 || buf.finished()) {
+                    // Successful write - proceed to the next message.
                     buf.release();
                     ChannelFuture future = evt.getFuture();
                     channel.currentWriteEvent = null;
                     channel.currentWriteBuffer = null;
-                    // Mark the event object for garbage collection.
-                    //noinspection UnusedAssignment
-                    buf = null;
-                    //noinspection UnusedAssignment
+                    recycle(evt);
                     evt = null;
-                    future.setFailure(t);
-                    fireExceptionCaught(channel, t);
+                    buf = null;
+                    future.setSuccess();
+                } else {
+                    // Not written at all - perhaps the kernel buffer is full.
+                    addOpWrite = true;
+                    channel.writeSuspended = true;
+                    break;
                 }
+            } catch (final AsynchronousCloseException e) {
+                // Doesn't need a user attention - ignore.
+            } catch (final Throwable t) {
+                buf.release();
+                ChannelFuture future = evt.getFuture();
+                channel.currentWriteEvent = null;
+                channel.currentWriteBuffer = null;
+                // Mark the event object for garbage collection.
+                //noinspection UnusedAssignment
+                buf = null;
+                recycle(evt);
+                //noinspection UnusedAssignment
+                evt = null;
+                future.setFailure(t);
+                fireExceptionCaught(channel, t);
             }
-            channel.inWriteNowLoop = false;
-
-            // Initially, the following block was executed after releasing
-            // the writeLock, but there was a race condition, and it has to be
-            // executed before releasing the writeLock:
-            //
-            // https://issues.jboss.org/browse/NETTY-410
-            //
-            if (addOpWrite) {
-                setOpWrite(channel);
-            } else if (removeOpWrite) {
-                clearOpWrite(channel);
-            }
+        }
+        channel.inWriteNowLoop = false;
+
+        if (addOpWrite) {
+            setOpWrite(channel);
+        } else if (removeOpWrite) {
+            clearOpWrite(channel);
         }
 
         fireWriteComplete(channel, writtenBytes);
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+/**
+ * One of the listening sockets of a {@link NioServerSocketChannel} and the
+ * {@link NioServerBoss} which accepts its connections.  It is the attachment
+ * of the {@link java.nio.channels.SelectionKey} of the socket.
+ */
+final class NioServerAcceptor {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(NioServerAcceptor.class);
+
+    private static final Method SET_OPTION;
+    private static final Object SO_REUSEPORT;
+
+    static {
+        Method setOption = null;
+        Object reusePort = null;
+        try {
+            // Available since Java 9 - look it up reflectively to stay compatible with Java 5.
+            reusePort = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+            setOption = ServerSocketChannel.class.getMethod(
+                    "setOption", Class.forName("java.net.SocketOption"), Object.class);
+        } catch (Throwable t) {
+            // Not supported.
+            reusePort = null;
+        }
+        SET_OPTION = setOption;
+        SO_REUSEPORT = reusePort;
+    }
+
+    final NioServerSocketChannel channel;
+    final ServerSocketChannel socket;
+    final NioServerBoss boss;
+    private final int index;
+    private final int count;
+
+    /**
+     * The workers of this acceptor and the sequence number passed to the
+     * {@link WorkerSelectionStrategy}.  Only accessed by the I/O thread of
+     * {@link #boss}.
+     */
+    private List<NioWorker> workers;
+    private int sequence;
+
+    NioServerAcceptor(NioServerSocketChannel channel, ServerSocketChannel socket, NioServerBoss boss,
+                      int index, int count) {
+        this.channel = channel;
+        this.socket = socket;
+        this.boss = boss;
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Returns the worker a newly accepted connection is registered to.  If the
+     * channel has more than one acceptor, the workers of an
+     * {@link AbstractNioWorkerPool} are split among the acceptors, and the
+     * {@link WorkerSelectionStrategy} of the pool chooses among the workers
+     * of this acceptor.
+     */
+    NioWorker nextWorker() {
+        WorkerPool<NioWorker> workerPool = channel.workerPool;
+        if (count > 1 && workerPool instanceof AbstractNioWorkerPool<?>) {
+            AbstractNioWorkerPool<NioWorker> pool = (AbstractNioWorkerPool<NioWorker>) workerPool;
+            int workerCount = pool.workerCount();
+            if (workerCount >= count) {
+                List<NioWorker> workers = this.workers;
+                if (workers == null) {
+                    // The subset consists of the workers whose index modulo count is the index of this acceptor.
+                    workers = new ArrayList<NioWorker>();
+                    for (int i = index; i < workerCount; i += count) {
+                        workers.add(pool.worker(i));
+                    }
+                    this.workers = workers;
+                }
+                return pool.getWorkerSelectionStrategy().select(workers, sequence ++);
+            }
+        }
+        return workerPool.nextWorker();
+    }
+
+    /**
+     * Enables {@code SO_REUSEPORT} on the specified socket if possible.
+     *
+     * @return {@code true} if and only if the option has been enabled
+     */
+    static boolean setReusePort(ServerSocketChannel socket) throws IOException {
+        if (SET_OPTION == null) {
+            return false;
+        }
+
+        try {
+            SET_OPTION.invoke(socket, SO_REUSEPORT, Boolean.TRUE);
+            return true;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("SO_REUSEPORT is not supported.", cause);
+            }
+            return false;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+}
@@ -23,12 +23,14 @@ import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 
 import java.io.IOException;
+import java.net.ServerSocket;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Set;
@@ -54,9 +56,29 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
         registerTask(new RegisterTask(channel, future, localAddress));
     }
 
+    /**
+     * Starts to accept the connections of an additional listening socket of a
+     * channel which has been bound already.
+     */
+    void register(final NioServerAcceptor acceptor) {
+        registerTask(new Runnable() {
+            public void run() {
+                try {
+                    acceptor.socket.register(selector, SelectionKey.OP_ACCEPT, acceptor);
+                } catch (ClosedChannelException e) {
+                    // The channel has been closed in the meantime.
+                } catch (Throwable t) {
+                    NioServerSocketChannel channel = acceptor.channel;
+                    fireExceptionCaught(channel, t);
+                    close(channel, succeededFuture(channel));
+                }
+            }
+        });
+    }
+
     @Override
     protected void close(SelectionKey k) {
-        NioServerSocketChannel ch = (NioServerSocketChannel) k.attachment();
+        NioServerSocketChannel ch = ((NioServerAcceptor) k.attachment()).channel;
         close(ch, succeededFuture(ch));
     }
 
@@ -67,6 +89,15 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
             channel.socket.close();
             increaseCancelledKeys();
 
+            NioServerAcceptor[] acceptors = channel.acceptors;
+            if (acceptors != null) {
+                for (int i = 1; i < acceptors.length; i ++) {
+                    if (acceptors[i] != null) {
+                        acceptors[i].socket.close();
+                    }
+                }
+            }
+
             if (channel.setClosed()) {
                 future.setSuccess();
 
@@ -85,55 +116,70 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
 
     @Override
     protected void process(Selector selector) {
-        Set<SelectionKey> selectedKeys = selector.selectedKeys();
-        if (selectedKeys.isEmpty()) {
+        SelectedSelectionKeySet selectedKeys = this.selectedKeys;
+        if (selectedKeys != null) {
+            for (int i = 0; i < selectedKeys.size(); i ++) {
+                processSelectedKey(selectedKeys.get(i));
+            }
+            selectedKeys.reset();
             return;
         }
-        for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext();) {
+
+        Set<SelectionKey> keys = selector.selectedKeys();
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (Iterator<SelectionKey> i = keys.iterator(); i.hasNext();) {
             SelectionKey k = i.next();
             i.remove();
-            NioServerSocketChannel channel = (NioServerSocketChannel) k.attachment();
+            processSelectedKey(k);
+        }
+    }
 
-            try {
-                // accept connections in a for loop until no new connection is ready
-                for (;;) {
-                    SocketChannel acceptedSocket = channel.socket.accept();
-                    if (acceptedSocket == null) {
-                        break;
-                    }
-                    registerAcceptedChannel(channel, acceptedSocket, thread);
-                }
-            } catch (CancelledKeyException e) {
-                // Raised by accept() when the server socket was closed.
-                k.cancel();
-                channel.close();
-            } catch (SocketTimeoutException e) {
-                // Thrown every second to get ClosedChannelException
-                // raised.
-            } catch (ClosedChannelException e) {
-                // Closed as requested.
-            } catch (Throwable t) {
-                if (logger.isWarnEnabled()) {
-                    logger.warn(
-                            "Failed to accept a connection.", t);
-                }
+    private void processSelectedKey(SelectionKey k) {
+        NioServerAcceptor acceptor = (NioServerAcceptor) k.attachment();
+        NioServerSocketChannel channel = acceptor.channel;
 
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e1) {
-                    // Ignore
+        try {
+            // accept connections in a for loop until no new connection is ready
+            for (;;) {
+                SocketChannel acceptedSocket = acceptor.socket.accept();
+                if (acceptedSocket == null) {
+                    break;
                 }
+                registerAcceptedChannel(acceptor, acceptedSocket, thread);
+            }
+        } catch (CancelledKeyException e) {
+            // Raised by accept() when the server socket was closed.
+            k.cancel();
+            channel.close();
+        } catch (SocketTimeoutException e) {
+            // Thrown every second to get ClosedChannelException
+            // raised.
+        } catch (ClosedChannelException e) {
+            // Closed as requested.
+        } catch (Throwable t) {
+            if (logger.isWarnEnabled()) {
+                logger.warn(
+                        "Failed to accept a connection.", t);
+            }
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e1) {
+                // Ignore
             }
         }
     }
 
-    private static void registerAcceptedChannel(NioServerSocketChannel parent, SocketChannel acceptedSocket,
+    private static void registerAcceptedChannel(NioServerAcceptor acceptor, SocketChannel acceptedSocket,
                                          Thread currentThread) {
         try {
+            NioServerSocketChannel parent = acceptor.channel;
             ChannelSink sink = parent.getPipeline().getSink();
             ChannelPipeline pipeline =
                     parent.getConfig().getPipelineFactory().getPipeline();
-            NioWorker worker = parent.workerPool.nextWorker();
+            NioWorker worker = acceptor.nextWorker();
             worker.register(new NioAcceptedSocketChannel(
                     parent.getFactory(), pipeline, parent, sink
                     , acceptedSocket,
@@ -158,6 +204,9 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
 
     @Override
     protected int select(Selector selector) throws IOException {
+        if (nextScheduledTaskDelayNanos() >= 0) {
+            return super.select(selector);
+        }
         // Just do a blocking select without any timeout
         // as this thread does not execute anything else.
         return selector.select();
@@ -190,12 +239,33 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
             boolean bound = false;
             boolean registered = false;
             try {
-                channel.socket.socket().bind(localAddress, channel.getConfig().getBacklog());
+                NioServerSocketChannelConfig config = channel.getConfig();
+                int count = config.getAcceptors();
+                if (config.isReusePort() || count > 1) {
+                    if (!NioServerAcceptor.setReusePort(channel.socket)) {
+                        if (logger.isWarnEnabled()) {
+                            logger.warn("SO_REUSEPORT is not supported; binding a single listening socket.");
+                        }
+                        count = 1;
+                    }
+                }
+
+                channel.socket.socket().bind(localAddress, config.getBacklog());
                 bound = true;
 
+                NioServerAcceptor[] acceptors = new NioServerAcceptor[count];
+                acceptors[0] = new NioServerAcceptor(channel, channel.socket, NioServerBoss.this, 0, count);
+                channel.acceptors = acceptors;
+                for (int i = 1; i < count; i ++) {
+                    acceptors[i] = newAcceptor(acceptors.length, i);
+                }
+
                 future.setSuccess();
                 fireChannelBound(channel, channel.getLocalAddress());
-                channel.socket.register(selector, SelectionKey.OP_ACCEPT, channel);
+                channel.socket.register(selector, SelectionKey.OP_ACCEPT, acceptors[0]);
+                for (int i = 1; i < count; i ++) {
+                    acceptors[i].boss.register(acceptors[i]);
+                }
 
                 registered = true;
             } catch (Throwable t) {
@@ -207,5 +277,29 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
                 }
             }
         }
+
+        /**
+         * Binds another listening socket to the local address of the channel.
+         */
+        private NioServerAcceptor newAcceptor(int count, int index) throws IOException {
+            ServerSocketChannel socket = ServerSocketChannel.open();
+            boolean success = false;
+            try {
+                socket.configureBlocking(false);
+                NioServerAcceptor.setReusePort(socket);
+                ServerSocket primary = channel.socket.socket();
+                socket.socket().setReuseAddress(primary.getReuseAddress());
+                socket.socket().setReceiveBufferSize(primary.getReceiveBufferSize());
+                socket.socket().bind(channel.getLocalAddress(), channel.getConfig().getBacklog());
+                success = true;
+            } finally {
+                if (!success) {
+                    socket.close();
+                }
+            }
+
+            NioServerBoss boss = channel.bossPool.nextBoss();
+            return new NioServerAcceptor(channel, socket, boss, index, count);
+        }
     }
 }
@@ -26,8 +26,6 @@ import org.jboss.netty.channel.ChannelException;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelSink;
-import org.jboss.netty.channel.socket.DefaultServerSocketChannelConfig;
-import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
 import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
 
@@ -39,17 +37,25 @@ class NioServerSocketChannel extends AbstractServerChannel
 
     final ServerSocketChannel socket;
     final Boss boss;
+    final BossPool<NioServerBoss> bossPool;
     final WorkerPool<NioWorker> workerPool;
 
-    private final ServerSocketChannelConfig config;
+    /**
+     * The listening sockets of this channel, starting with {@link #socket}, or
+     * {@code null} if the channel has not been bound yet.
+     */
+    volatile NioServerAcceptor[] acceptors;
+
+    private final NioServerSocketChannelConfig config;
 
     NioServerSocketChannel(
             ChannelFactory factory,
             ChannelPipeline pipeline,
-            ChannelSink sink, Boss boss, WorkerPool<NioWorker> workerPool) {
+            ChannelSink sink, Boss boss, BossPool<NioServerBoss> bossPool, WorkerPool<NioWorker> workerPool) {
 
         super(factory, pipeline, sink);
         this.boss = boss;
+        this.bossPool = bossPool;
         this.workerPool = workerPool;
         try {
             socket = ServerSocketChannel.open();
@@ -73,12 +79,12 @@ class NioServerSocketChannel extends AbstractServerChannel
             throw new ChannelException("Failed to enter non-blocking mode.", e);
         }
 
-        config = new DefaultServerSocketChannelConfig(socket.socket());
+        config = new DefaultNioServerSocketChannelConfig(socket.socket());
 
         fireChannelOpen(this);
     }
 
-    public ServerSocketChannelConfig getConfig() {
+    public NioServerSocketChannelConfig getConfig() {
         return config;
     }
 
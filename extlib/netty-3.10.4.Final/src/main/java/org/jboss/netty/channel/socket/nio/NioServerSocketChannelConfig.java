@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
+
+/**
+ * A {@link ServerSocketChannelConfig} for a NIO TCP/IP {@link org.jboss.netty.channel.socket.ServerSocketChannel}.
+ *
+ * <h3>Available options</h3>
+ *
+ * In addition to the options provided by {@link ServerSocketChannelConfig},
+ * {@link NioServerSocketChannelConfig} allows the following options in the
+ * option map:
+ *
+ * <table border="1" cellspacing="0" cellpadding="6">
+ * <tr>
+ * <th>Name</th><th>Associated setter method</th>
+ * </tr><tr>
+ * <td>{@code "reusePort"}</td><td>{@link #setReusePort(boolean)}</td>
+ * </tr><tr>
+ * <td>{@code "acceptors"}</td><td>{@link #setAcceptors(int)}</td>
+ * </tr>
+ * </table>
+ */
+public interface NioServerSocketChannelConfig extends ServerSocketChannelConfig {
+
+    /**
+     * Returns {@code true} if and only if the listening sockets of the channel
+     * are bound with the {@code SO_REUSEPORT} socket option.  The default
+     * value is {@code false}.
+     */
+    boolean isReusePort();
+
+    /**
+     * Sets whether the listening sockets of the channel are bound with the
+     * {@code SO_REUSEPORT} socket option, so that other sockets may be bound
+     * to the same port.  This requires Java 9 or above, which provides
+     * {@code java.net.StandardSocketOptions.SO_REUSEPORT}, on an operating
+     * system which supports the option, such as Linux 3.9 or above.  On older
+     * JDKs or operating systems, a warning is logged and a single listening
+     * socket is bound without the option.  Must be set before the channel is
+     * bound.
+     */
+    void setReusePort(boolean reusePort);
+
+    /**
+     * Returns the number of listening sockets the channel binds to its local
+     * address.  The default value is {@code 1}.
+     */
+    int getAcceptors();
+
+    /**
+     * Sets the number of listening sockets the channel binds to its local
+     * address with {@code SO_REUSEPORT}.  The operating system distributes the
+     * incoming connections among them.  Every socket is assigned to the next
+     * {@link Boss} of the {@link NioServerSocketChannelFactory}, so the
+     * factory should have at least as many bosses as acceptors.  If the worker
+     * pool is an {@link AbstractNioWorkerPool} with at least as many workers,
+     * every socket also hands its connections to its own subset of the workers.
+     * If {@code SO_REUSEPORT} is not supported, which is the case before
+     * Java 9, a warning is logged and only one socket is bound.  Must be set
+     * before the channel is bound.
+     */
+    void setAcceptors(int acceptors);
+}
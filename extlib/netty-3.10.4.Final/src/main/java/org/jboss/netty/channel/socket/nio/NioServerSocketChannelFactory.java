@@ -47,6 +47,13 @@ import org.jboss.netty.util.ExternalResourceReleasable;
  * the port is unbound.  Once a connection is accepted successfully, the boss
  * thread passes the accepted {@link Channel} to one of the worker
  * threads that the {@link NioServerSocketChannelFactory} manages.
+ * <p>
+ * If the {@code "acceptors"} option of a channel is greater than {@code 1},
+ * the channel binds that many listening sockets to its port with
+ * {@code SO_REUSEPORT}, each of which is assigned to the next boss thread.
+ * The operating system then distributes the incoming connections among them,
+ * which helps to keep up with a connection storm.  See
+ * {@link NioServerSocketChannelConfig#setAcceptors(int)} for details.
  *
  * <h4>Worker threads</h4>
  * <p>
@@ -202,7 +209,7 @@ public class NioServerSocketChannelFactory implements ServerSocketChannelFactory
     }
 
     public ServerSocketChannel newChannel(ChannelPipeline pipeline) {
-        return new NioServerSocketChannel(this, pipeline, sink, bossPool.nextBoss(), workerPool);
+        return new NioServerSocketChannel(this, pipeline, sink, bossPool.nextBoss(), bossPool, workerPool);
     }
 
     public void shutdown() {
@@ -23,8 +23,12 @@ import org.jboss.netty.channel.ChannelSink;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SocketChannel;
 
+import static org.jboss.netty.channel.Channels.*;
+
 public class NioSocketChannel extends AbstractNioChannel<SocketChannel>
                                 implements org.jboss.netty.channel.socket.SocketChannel {
 
@@ -37,6 +41,12 @@ public class NioSocketChannel extends AbstractNioChannel<SocketChannel>
 
     private final NioSocketChannelConfig config;
 
+    /**
+     * The value of {@link #ioBytes} when the {@link NioWorkerBalancer} has
+     * looked at the channel last time.  Only accessed by the I/O thread.
+     */
+    long balancedIoBytes;
+
     public NioSocketChannel(
             Channel parent, ChannelFactory factory,
             ChannelPipeline pipeline, ChannelSink sink,
@@ -50,6 +60,30 @@ public class NioSocketChannel extends AbstractNioChannel<SocketChannel>
         return (NioWorker) super.getWorker();
     }
 
+    /**
+     * Moves this channel to the specified {@link NioWorker}, which is usually
+     * a sibling of the current one in the same {@link NioWorkerPool}.  Nothing
+     * is lost on the way: the writes requested before and during the
+     * migration are performed by the new worker in the order they were
+     * requested, and the data received meanwhile is read by the new worker.
+     * Only a connected channel can be migrated.
+     *
+     * @return the {@link ChannelFuture} which is notified once the channel
+     *         has been registered to the new worker
+     */
+    public ChannelFuture migrate(NioWorker worker) {
+        if (worker == null) {
+            throw new NullPointerException("worker");
+        }
+        ChannelFuture future = future(this);
+        if (!isConnected()) {
+            future.setFailure(isOpen()? new NotYetConnectedException() : new ClosedChannelException());
+            return future;
+        }
+        getWorker().migrate(this, worker, future);
+        return future;
+    }
+
     @Override
     public NioSocketChannelConfig getConfig() {
         return config;
@@ -42,6 +42,16 @@ import org.jboss.netty.channel.socket.SocketChannelConfig;
  * </tr><tr>
  * <td>{@code "writeSpinCount"}</td><td>{@link #setWriteSpinCount(int)}</td>
  * </tr><tr>
+ * <td>{@code "maxGatheringWriteMessages"}</td><td>{@link #setMaxGatheringWriteMessages(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxGatheringWriteBytes"}</td><td>{@link #setMaxGatheringWriteBytes(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxMessagesPerRead"}</td><td>{@link #setMaxMessagesPerRead(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxBytesPerRead"}</td><td>{@link #setMaxBytesPerRead(int)}</td>
+ * </tr><tr>
+ * <td>{@code "readWithoutCopy"}</td><td>{@link #setReadWithoutCopy(boolean)}</td>
+ * </tr><tr>
  * <td>{@code "receiveBufferSizePredictor"}</td>
  * <td>{@link #setReceiveBufferSizePredictor(ReceiveBufferSizePredictor)}</td>
  * </tr><tr>
@@ -85,4 +95,81 @@ public interface NioSocketChannelConfig extends SocketChannelConfig, NioChannelC
      * <tt>{@link AdaptiveReceiveBufferSizePredictorFactory}(64, 1024, 65536)</tt>.
      */
     void setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory predictorFactory);
+
+    /**
+     * Returns the maximum number of queued messages which are written to the
+     * socket by a single gathering write.  The default value is {@code 64}.
+     */
+    int getMaxGatheringWriteMessages();
+
+    /**
+     * Sets the maximum number of queued messages which are written to the
+     * socket by a single gathering write.  {@code 1} writes every message on
+     * its own.
+     */
+    void setMaxGatheringWriteMessages(int maxGatheringWriteMessages);
+
+    /**
+     * Returns the maximum number of bytes which are written to the socket by a
+     * single gathering write.  The default value is {@code 65536}.  A single
+     * message larger than this is still written, but on its own.
+     */
+    int getMaxGatheringWriteBytes();
+
+    /**
+     * Sets the maximum number of bytes which are written to the socket by a
+     * single gathering write.
+     */
+    void setMaxGatheringWriteBytes(int maxGatheringWriteBytes);
+
+    /**
+     * Returns the maximum number of receive buffers which are filled from the
+     * socket when it becomes readable.  The received bytes are passed to the
+     * pipeline as a single {@link org.jboss.netty.channel.MessageEvent}.  The
+     * default value is {@code 16}.
+     */
+    int getMaxMessagesPerRead();
+
+    /**
+     * Sets the maximum number of receive buffers which are filled from the
+     * socket when it becomes readable.  {@code 1} reads only as many bytes as
+     * the {@link ReceiveBufferSizePredictor} predicted.
+     */
+    void setMaxMessagesPerRead(int maxMessagesPerRead);
+
+    /**
+     * Returns the number of bytes after which no more receive buffers are
+     * filled from the socket when it becomes readable.  The default value is
+     * {@code 262144}.
+     */
+    int getMaxBytesPerRead();
+
+    /**
+     * Sets the number of bytes after which no more receive buffers are filled
+     * from the socket when it becomes readable.
+     */
+    void setMaxBytesPerRead(int maxBytesPerRead);
+
+    /**
+     * Returns {@code true} if and only if the received bytes are read straight
+     * into buffers which are allocated from the
+     * {@linkplain #getBufferFactory() buffer factory} with the predicted size.
+     * Otherwise, they are read into a direct buffer cached by the I/O thread
+     * and then copied into a buffer of the exact size.  The default value is
+     * {@code false}.
+     */
+    boolean isReadWithoutCopy();
+
+    /**
+     * Sets whether the received bytes are read straight into buffers which are
+     * allocated from the {@linkplain #getBufferFactory() buffer factory} with
+     * the predicted size.  This saves a copy, but a buffer may be larger than
+     * the bytes it holds, so it is recommended only with a factory which
+     * recycles its buffers such as
+     * {@link org.jboss.netty.buffer.PooledChannelBufferFactory}.  Every filled
+     * buffer is passed to the pipeline as a separate
+     * {@link org.jboss.netty.channel.MessageEvent}, so that it can be
+     * released on its own.
+     */
+    void setReadWithoutCopy(boolean readWithoutCopy);
 }
@@ -17,6 +17,7 @@ package org.jboss.netty.channel.socket.nio;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelException;
 import org.jboss.netty.channel.ChannelFuture;
@@ -26,10 +27,14 @@ import org.jboss.netty.util.ThreadNameDeterminer;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.jboss.netty.channel.Channels.*;
 
@@ -37,6 +42,11 @@ public class NioWorker extends AbstractNioWorker {
 
     private final SocketReceiveBufferAllocator recvBufferPool = new SocketReceiveBufferAllocator();
 
+    /**
+     * The buffers filled by the current {@link #read(SelectionKey)} call.
+     */
+    private final List<ChannelBuffer> receivedBuffers = new ArrayList<ChannelBuffer>();
+
     public NioWorker(Executor executor) {
         super(executor);
     }
@@ -49,21 +59,53 @@ public class NioWorker extends AbstractNioWorker {
     protected boolean read(SelectionKey k) {
         final SocketChannel ch = (SocketChannel) k.channel();
         final NioSocketChannel channel = (NioSocketChannel) k.attachment();
+        final NioSocketChannelConfig config = channel.getConfig();
 
-        final ReceiveBufferSizePredictor predictor =
-            channel.getConfig().getReceiveBufferSizePredictor();
+        final ReceiveBufferSizePredictor predictor = config.getReceiveBufferSizePredictor();
         final int predictedRecvBufSize = predictor.nextReceiveBufferSize();
-        final ChannelBufferFactory bufferFactory = channel.getConfig().getBufferFactory();
+        final ChannelBufferFactory bufferFactory = config.getBufferFactory();
+        final int maxMessagesPerRead = config.getMaxMessagesPerRead();
+        final int maxBytesPerRead = config.getMaxBytesPerRead();
+        final boolean readWithoutCopy = config.isReadWithoutCopy();
+        final List<ChannelBuffer> buffers = receivedBuffers;
 
         int ret = 0;
         int readBytes = 0;
+        // The bytes read in the current iteration which have not been counted yet.
+        int localReadBytes = 0;
         boolean failure = true;
 
-        ByteBuffer bb = recvBufferPool.get(predictedRecvBufSize).order(bufferFactory.getDefaultOrder());
+        ByteBuffer bb = null;
+        if (!readWithoutCopy) {
+            bb = recvBufferPool.get(predictedRecvBufSize).order(bufferFactory.getDefaultOrder());
+        }
         try {
-            while ((ret = ch.read(bb)) > 0) {
-                readBytes += ret;
-                if (!bb.hasRemaining()) {
+            int messages = 0;
+            for (;;) {
+                if (readWithoutCopy) {
+                    ChannelBuffer buffer = bufferFactory.getBuffer(predictedRecvBufSize);
+                    buffers.add(buffer);
+                    while ((ret = buffer.writeBytes(ch, buffer.writableBytes())) > 0) {
+                        localReadBytes += ret;
+                        if (!buffer.writable()) {
+                            break;
+                        }
+                    }
+                } else {
+                    while ((ret = ch.read(bb)) > 0) {
+                        localReadBytes += ret;
+                        if (!bb.hasRemaining()) {
+                            break;
+                        }
+                    }
+                    copyReceivedBytes(bb, localReadBytes, bufferFactory, buffers);
+                }
+                readBytes += localReadBytes;
+                channel.ioBytes += localReadBytes;
+                localReadBytes = 0;
+
+                // Stop if the socket has been drained or the limits have been reached.
+                if (ret <= 0 || ++ messages >= maxMessagesPerRead || readBytes >= maxBytesPerRead) {
                     break;
                 }
             }
@@ -74,18 +116,58 @@ public class NioWorker extends AbstractNioWorker {
             fireExceptionCaught(channel, t);
         }
 
-        if (readBytes > 0) {
-            bb.flip();
+        if (localReadBytes > 0) {
+            // A read failed after the earlier reads of the same iteration
+            // received some bytes - pass them on before closing the channel.
+            if (!readWithoutCopy) {
+                copyReceivedBytes(bb, localReadBytes, bufferFactory, buffers);
+            }
+            channel.ioBytes += localReadBytes;
+        }
 
-            final ChannelBuffer buffer = bufferFactory.getBuffer(readBytes);
-            buffer.setBytes(0, bb);
-            buffer.writerIndex(readBytes);
+        if (!buffers.isEmpty()) {
+            // Only the last buffer may have received nothing.
+            int last = buffers.size() - 1;
+            if (!buffers.get(last).readable()) {
+                ChannelBuffers.release(buffers.remove(last));
+            }
+        }
+
+        if (!buffers.isEmpty()) {
+            if (readWithoutCopy) {
+                // Every buffer is passed on its own so that it can be released.
+                try {
+                    int receivedBytes = 0;
+                    for (ChannelBuffer buffer: buffers) {
+                        receivedBytes += buffer.readableBytes();
+                    }
+
+                    // Update the predictor with the size of the whole burst.
+                    predictor.previousReceiveBufferSize(receivedBytes);
+
+                    // Fire the events.
+                    for (ChannelBuffer buffer: buffers) {
+                        fireMessageReceived(channel, buffer);
+                    }
+                } finally {
+                    buffers.clear();
+                }
+            } else {
+                // Pass all received bytes as a single message.
+                final ChannelBuffer buffer;
+                if (buffers.size() == 1) {
+                    buffer = buffers.get(0);
+                } else {
+                    buffer = ChannelBuffers.wrappedBuffer(buffers.toArray(new ChannelBuffer[buffers.size()]));
+                }
+                buffers.clear();
 
-            // Update the predictor.
-            predictor.previousReceiveBufferSize(readBytes);
+                // Update the predictor with the size of the whole burst.
+                predictor.previousReceiveBufferSize(buffer.readableBytes());
 
-            // Fire the event.
-            fireMessageReceived(channel, buffer);
+                // Fire the event.
+                fireMessageReceived(channel, buffer);
+            }
         }
 
         if (ret < 0 || failure) {
@@ -97,6 +179,98 @@ public class NioWorker extends AbstractNioWorker {
         return true;
     }
 
+    private static void copyReceivedBytes(
+            ByteBuffer bb, int length, ChannelBufferFactory bufferFactory, List<ChannelBuffer> buffers) {
+        if (length > 0) {
+            bb.flip();
+            ChannelBuffer buffer = bufferFactory.getBuffer(length);
+            buffer.setBytes(0, bb);
+            buffer.writerIndex(length);
+            buffers.add(buffer);
+            bb.clear();
+        }
+    }
+
+    /**
+     * Returns the number of reads which were served by a receive buffer
+     * cached by this worker.
+     */
+    public long getReceiveBufferCacheHits() {
+        return recvBufferPool.hits();
+    }
+
+    /**
+     * Returns the number of reads for which this worker had to allocate a new
+     * receive buffer.
+     */
+    public long getReceiveBufferCacheMisses() {
+        return recvBufferPool.misses();
+    }
+
+    /**
+     * Moves the specified channel from this worker to the specified one.  The
+     * channel is deregistered from the selector of this worker and registered
+     * to the selector of the target once the I/O thread of this worker has
+     * finished its pending reads and writes.  The writes requested meanwhile
+     * are queued and written by the target in the order they were requested.
+     */
+    void migrate(final NioSocketChannel channel, final NioWorker target, final ChannelFuture future) {
+        try {
+            // Always deferred so that a read or write loop in progress is not interrupted.
+            registerTask(new Runnable() {
+                public void run() {
+                    NioWorker worker = channel.getWorker();
+                    if (worker != NioWorker.this) {
+                        // Migrated by someone else in the meantime.
+                        worker.migrate(channel, target, future);
+                    } else {
+                        migrate0(channel, target, future);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.setFailure(e);
+        }
+    }
+
+    private void migrate0(NioSocketChannel channel, NioWorker target, ChannelFuture future) {
+        if (target == this) {
+            future.setSuccess();
+            return;
+        }
+
+        SelectionKey key = channel.channel.keyFor(selector);
+        if (key == null || !key.isValid()) {
+            if (channel.isOpen()) {
+                future.setFailure(new IllegalStateException("not registered to a worker yet"));
+            } else {
+                future.setFailure(new ClosedChannelException());
+            }
+            return;
+        }
+
+        if (!channel.setWorker(target)) {
+            future.setFailure(new ClosedChannelException());
+            return;
+        }
+        key.cancel();
+        increaseCancelledKeys();
+
+        try {
+            target.registerTask(target.new MigrateTask(channel, future));
+        } catch (RejectedExecutionException e) {
+            // The target has been shut down - stay with this worker.
+            channel.setWorker(this);
+            try {
+                flushCancelledKeys();
+                channel.channel.register(selector, channel.getInternalInterestOps(), channel);
+            } catch (IOException ioe) {
+                close(channel, succeededFuture(channel));
+            }
+            future.setFailure(e);
+        }
+    }
+
     @Override
     protected boolean scheduleWriteIfNecessary(final AbstractNioChannel<?> channel) {
         final Thread currentThread = Thread.currentThread();
@@ -173,6 +347,45 @@ public class NioWorker extends AbstractNioWorker {
         }
     }
 
+    private final class MigrateTask implements Runnable {
+        private final NioSocketChannel channel;
+        private final ChannelFuture future;
+
+        MigrateTask(NioSocketChannel channel, ChannelFuture future) {
+            this.channel = channel;
+            this.future = future;
+        }
+
+        public void run() {
+            if (!channel.isOpen()) {
+                // Closed while on the way - the write queue has been cleaned up by this thread.
+                future.setFailure(new ClosedChannelException());
+                return;
+            }
+
+            try {
+                try {
+                    channel.channel.register(selector, channel.getInternalInterestOps(), channel);
+                } catch (CancelledKeyException e) {
+                    // Migrated back before the selector has deregistered the channel.
+                    flushCancelledKeys();
+                    channel.channel.register(selector, channel.getInternalInterestOps(), channel);
+                }
+                channel.balancedIoBytes = channel.ioBytes;
+                future.setSuccess();
+
+                if (!channel.writeSuspended &&
+                    (channel.currentWriteEvent != null || !channel.writeBufferQueue.isEmpty())) {
+                    // Write what has been requested while the channel was on the way.
+                    writeFromTaskLoop(channel);
+                }
+            } catch (IOException e) {
+                future.setFailure(e);
+                close(channel, succeededFuture(channel));
+            }
+        }
+    }
+
     @Override
     public void run() {
         super.run();
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+/**
+ * Migrates the channels of an {@link AbstractNioWorkerPool} from busy
+ * {@link NioWorker}s to idle ones.  At every interval, the balancer compares
+ * how long each worker has spent on I/O ({@link NioWorker#getIoTime()})
+ * during the interval.  If the busiest worker has spent more than
+ * {@code threshold} of the interval longer than the least busy one, one of
+ * its channels is {@linkplain NioSocketChannel#migrate(NioWorker) migrated}
+ * to the least busy worker.  The channel is chosen by the number of bytes
+ * it has transferred, so that the load of the two workers becomes as even
+ * as possible; a channel which would just move the hot spot stays.
+ * <p>
+ * At most one channel is migrated per interval.
+ */
+public class NioWorkerBalancer {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(NioWorkerBalancer.class);
+
+    private final AbstractNioWorkerPool<NioWorker> workerPool;
+    private final Timer timer;
+    private final long intervalNanos;
+    private final double threshold;
+    private final BalanceTask balanceTask = new BalanceTask();
+
+    private volatile Timeout timeout;
+    private volatile boolean stopped = true;
+
+    /**
+     * The I/O time of the workers at the previous interval.  Only accessed by
+     * the {@link Timer}.
+     */
+    private long[] lastIoTimes;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param workerPool  the pool whose workers are balanced
+     * @param timer       the {@link Timer} which triggers the balancing
+     * @param interval    the interval between two balancing attempts
+     * @param unit        the {@link TimeUnit} of {@code interval}
+     * @param threshold   the difference of the I/O time of the busiest and
+     *                    the least busy worker, as a fraction of
+     *                    {@code interval}, which triggers a migration
+     */
+    public NioWorkerBalancer(
+            AbstractNioWorkerPool<NioWorker> workerPool, Timer timer,
+            long interval, TimeUnit unit, double threshold) {
+        if (workerPool == null) {
+            throw new NullPointerException("workerPool");
+        }
+        if (timer == null) {
+            throw new NullPointerException("timer");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be a positive integer: " + interval);
+        }
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("threshold must be in the range (0, 1]: " + threshold);
+        }
+        this.workerPool = workerPool;
+        this.timer = timer;
+        intervalNanos = unit.toNanos(interval);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Starts balancing the workers.
+     */
+    public synchronized void start() {
+        if (!stopped) {
+            return;
+        }
+        stopped = false;
+        lastIoTimes = null;
+        timeout = timer.newTimeout(balanceTask, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops balancing the workers.  The migrations in progress are completed.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+            this.timeout = null;
+        }
+    }
+
+    private void balance() {
+        List<NioWorker> workers = workerPool.getWorkers();
+        int size = workers.size();
+        long[] lastIoTimes = this.lastIoTimes;
+        long[] ioTimes = new long[size];
+        for (int i = 0; i < size; i ++) {
+            NioWorker worker = workers.get(i);
+            if (worker == null) {
+                // The pool has not been initialized yet.
+                return;
+            }
+            ioTimes[i] = worker.getIoTime();
+        }
+        this.lastIoTimes = ioTimes;
+        if (lastIoTimes == null) {
+            return;
+        }
+
+        int hot = 0;
+        int cold = 0;
+        long hotTime = Long.MIN_VALUE;
+        long coldTime = Long.MAX_VALUE;
+        for (int i = 0; i < size; i ++) {
+            long time = ioTimes[i] - lastIoTimes[i];
+            if (time > hotTime) {
+                hot = i;
+                hotTime = time;
+            }
+            if (time < coldTime) {
+                cold = i;
+                coldTime = time;
+            }
+        }
+
+        if (hot == cold || hotTime - coldTime <= threshold * intervalNanos) {
+            return;
+        }
+
+        final NioWorker from = workers.get(hot);
+        final NioWorker to = workers.get(cold);
+        // The busy worker will have spent this share of its I/O time on the channel to move.
+        final double share = (double) (hotTime - coldTime) / (2 * hotTime);
+        from.executeInIoThread(new Runnable() {
+            public void run() {
+                migrateOne(from, to, share);
+            }
+        }, true);
+    }
+
+    /**
+     * Migrates the channel of {@code from} whose share of the transferred
+     * bytes is the closest to {@code share} to {@code to}.  Must be called by
+     * the I/O thread of {@code from}.
+     */
+    private static void migrateOne(NioWorker from, NioWorker to, double share) {
+        Selector selector = from.selector;
+        if (selector == null) {
+            return;
+        }
+
+        long total = 0;
+        for (SelectionKey k: selector.keys()) {
+            NioSocketChannel ch = balancedChannel(k, from);
+            if (ch != null) {
+                total += ch.ioBytes - ch.balancedIoBytes;
+            }
+        }
+
+        // Moving more than twice the share would make the target busier than the source.
+        double goal = total * share;
+        double limit = goal * 2;
+        NioSocketChannel chosen = null;
+        double chosenDistance = Double.MAX_VALUE;
+        for (SelectionKey k: selector.keys()) {
+            NioSocketChannel ch = balancedChannel(k, from);
+            if (ch == null) {
+                continue;
+            }
+            long bytes = ch.ioBytes - ch.balancedIoBytes;
+            ch.balancedIoBytes = ch.ioBytes;
+            if (bytes > 0 && bytes < limit) {
+                double distance = Math.abs(bytes - goal);
+                if (distance < chosenDistance) {
+                    chosen = ch;
+                    chosenDistance = distance;
+                }
+            }
+        }
+
+        if (chosen != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Migrating " + chosen + " to a less busy worker.");
+            }
+            from.migrate(chosen, to, future(chosen));
+        }
+    }
+
+    private static NioSocketChannel balancedChannel(SelectionKey k, NioWorker worker) {
+        if (!k.isValid()) {
+            return null;
+        }
+        Object a = k.attachment();
+        if (!(a instanceof NioSocketChannel)) {
+            return null;
+        }
+        NioSocketChannel ch = (NioSocketChannel) a;
+        if (ch.worker != worker || !ch.isConnected()) {
+            return null;
+        }
+        return ch;
+    }
+
+    private final class BalanceTask implements TimerTask {
+        BalanceTask() {
+        }
+
+        public void run(Timeout timeout) throws Exception {
+            if (stopped) {
+                return;
+            }
+            try {
+                balance();
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Failed to balance the workers.", t);
+                }
+            }
+
+            synchronized (NioWorkerBalancer.this) {
+                if (!stopped) {
+                    NioWorkerBalancer.this.timeout =
+                        timer.newTimeout(this, intervalNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A flat array which replaces the internal selected-key set of a
+ * {@link Selector}, so that the selected keys can be processed by index
+ * without hashing them and without creating an {@link Iterator}.
+ * <p>
+ * {@link #contains(Object)} and {@link #remove(Object)} always return
+ * {@code false}; the selector thread must {@link #reset()} the set once it has
+ * processed the selected keys, before the next selection operation.
+ */
+final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+
+    private SelectionKey[] keys = new SelectionKey[1024];
+    private int size;
+
+    @Override
+    public boolean add(SelectionKey k) {
+        if (k == null) {
+            return false;
+        }
+
+        if (size == keys.length) {
+            SelectionKey[] newKeys = new SelectionKey[size << 1];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            keys = newKeys;
+        }
+        keys[size ++] = k;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the selected key at the specified index.
+     */
+    SelectionKey get(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Removes all selected keys.
+     */
+    void reset() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int index;
+
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            public SelectionKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index ++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
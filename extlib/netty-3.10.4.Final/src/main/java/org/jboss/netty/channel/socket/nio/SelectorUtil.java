@@ -20,6 +20,7 @@ import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.internal.SystemPropertyUtil;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.Selector;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +36,8 @@ final class SelectorUtil {
     static final long SELECT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT);
     static final boolean EPOLL_BUG_WORKAROUND =
             SystemPropertyUtil.getBoolean("org.jboss.netty.epollBugWorkaround", false);
+    static final boolean SELECTED_KEY_SET_OPTIMIZATION =
+            SystemPropertyUtil.getBoolean("org.jboss.netty.selectedKeySetOptimization", false);
 
     // Workaround for JDK NIO bug.
     //
@@ -56,6 +59,7 @@ final class SelectorUtil {
         if (logger.isDebugEnabled()) {
             logger.debug("Using select timeout of " + SELECT_TIMEOUT);
             logger.debug("Epoll-bug workaround enabled = " + EPOLL_BUG_WORKAROUND);
+            logger.debug("Selected-key set optimization enabled = " + SELECTED_KEY_SET_OPTIMIZATION);
         }
     }
 
@@ -63,9 +67,55 @@ final class SelectorUtil {
         return Selector.open();
     }
 
+    /**
+     * Replaces the selected-key set of the specified {@link Selector} with a
+     * {@link SelectedSelectionKeySet} if {@link #SELECTED_KEY_SET_OPTIMIZATION}
+     * is enabled.
+     *
+     * @return the new selected-key set, or {@code null} if the optimization is
+     *         disabled or the {@link Selector} implementation does not allow
+     *         its selected-key set to be replaced
+     */
+    static SelectedSelectionKeySet optimize(Selector selector) {
+        if (!SELECTED_KEY_SET_OPTIMIZATION) {
+            return null;
+        }
+
+        try {
+            Class<?> selectorImplClass =
+                    Class.forName("sun.nio.ch.SelectorImpl", false, SelectorUtil.class.getClassLoader());
+            if (!selectorImplClass.isAssignableFrom(selector.getClass())) {
+                return null;
+            }
+
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+
+            SelectedSelectionKeySet selectedKeys = new SelectedSelectionKeySet();
+            selectedKeysField.set(selector, selectedKeys);
+            publicSelectedKeysField.set(selector, selectedKeys);
+            return selectedKeys;
+        } catch (Throwable t) {
+            // Not a Sun/Oracle JDK or the internal fields are inaccessible.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to replace the selected-key set of " + selector, t);
+            }
+            return null;
+        }
+    }
+
     static int select(Selector selector) throws IOException {
+        return select(selector, SELECT_TIMEOUT);
+    }
+
+    static int select(Selector selector, long timeoutMillis) throws IOException {
         try {
-            return selector.select(SELECT_TIMEOUT);
+            if (timeoutMillis <= 0) {
+                return selector.selectNow();
+            }
+            return selector.select(timeoutMillis);
         } catch (CancelledKeyException e) {
             if (logger.isDebugEnabled()) {
                 logger.debug(
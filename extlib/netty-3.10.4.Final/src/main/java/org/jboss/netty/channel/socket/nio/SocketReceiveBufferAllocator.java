@@ -20,49 +20,77 @@ import org.jboss.netty.util.internal.ByteBufferUtil;
 
 import java.nio.ByteBuffer;
 
+/**
+ * A cache of the direct {@link ByteBuffer}s an I/O thread reads into before the
+ * received bytes are copied into a {@link org.jboss.netty.buffer.ChannelBuffer}.
+ * One buffer is retained per power-of-two size class from {@code 1 KiB} to
+ * {@code 1 MiB}, so a worker whose channels predict different receive buffer
+ * sizes does not allocate a new direct buffer whenever the predicted size
+ * changes.  Only the most recently requested buffer larger than that is
+ * retained.  Must only be accessed by the I/O thread, except for the counters.
+ */
 final class SocketReceiveBufferAllocator implements ExternalResourceReleasable {
 
-    private ByteBuffer buf;
-    private int exceedCount;
-    private final int maxExceedCount;
-    private final int percentual;
-
-    SocketReceiveBufferAllocator() {
-        this(16, 80);
-    }
+    private static final int MIN_SIZE_SHIFT = 10;
+    private static final int MAX_SIZE_SHIFT = 20;
 
-    SocketReceiveBufferAllocator(int maxExceedCount, int percentual) {
-        this.maxExceedCount = maxExceedCount;
-        this.percentual = percentual;
-    }
+    private final ByteBuffer[] buffers = new ByteBuffer[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+    private ByteBuffer oversizedBuffer;
+    private volatile long hits;
+    private volatile long misses;
 
+    /**
+     * Returns a cleared buffer whose capacity is at least {@code size}.  The
+     * buffer is returned again by a later call with a size of the same size
+     * class, so its content must have been consumed by then.
+     */
     ByteBuffer get(int size) {
-        if (buf == null) {
-            return newBuffer(size);
-        }
-        if (buf.capacity() < size) {
-            return newBuffer(size);
-        }
-        if (buf.capacity() * percentual / 100 > size) {
-            if (++exceedCount == maxExceedCount) {
-               return newBuffer(size);
-            } else {
-                buf.clear();
+        int sizeClass = sizeClass(size);
+        ByteBuffer buf;
+        if (sizeClass < buffers.length) {
+            buf = buffers[sizeClass];
+            if (buf == null) {
+                misses ++;
+                buffers[sizeClass] = buf = ByteBuffer.allocateDirect(1 << sizeClass + MIN_SIZE_SHIFT);
+                return buf;
             }
         } else {
-            exceedCount = 0;
-            buf.clear();
+            int capacity = normalizeCapacity(size);
+            buf = oversizedBuffer;
+            if (buf == null || buf.capacity() != capacity) {
+                misses ++;
+                if (buf != null) {
+                    ByteBufferUtil.destroy(buf);
+                }
+                oversizedBuffer = buf = ByteBuffer.allocateDirect(capacity);
+                return buf;
+            }
         }
+
+        hits ++;
+        buf.clear();
         return buf;
     }
 
-    private ByteBuffer newBuffer(int size) {
-        if (buf != null) {
-            exceedCount = 0;
-            ByteBufferUtil.destroy(buf);
+    /**
+     * Returns the number of {@link #get(int)} calls which returned a cached buffer.
+     */
+    long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of {@link #get(int)} calls which allocated a new buffer.
+     */
+    long misses() {
+        return misses;
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_SIZE_SHIFT) {
+            return 0;
         }
-        buf = ByteBuffer.allocateDirect(normalizeCapacity(size));
-        return buf;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_SHIFT;
     }
 
     private static int normalizeCapacity(int capacity) {
@@ -76,8 +104,15 @@ final class SocketReceiveBufferAllocator implements ExternalResourceReleasable {
     }
 
     public void releaseExternalResources() {
-        if (buf != null) {
-            ByteBufferUtil.destroy(buf);
+        for (int i = 0; i < buffers.length; i ++) {
+            if (buffers[i] != null) {
+                ByteBufferUtil.destroy(buffers[i]);
+                buffers[i] = null;
+            }
+        }
+        if (oversizedBuffer != null) {
+            ByteBufferUtil.destroy(oversizedBuffer);
+            oversizedBuffer = null;
         }
     }
 }
@@ -16,11 +16,16 @@
 package org.jboss.netty.channel.socket.nio;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.ChunkedDynamicChannelBuffer;
 import org.jboss.netty.buffer.CompositeChannelBuffer;
+import org.jboss.netty.buffer.MappedFileChannelBuffer;
+import org.jboss.netty.buffer.ReleasableChannelBuffer;
 import org.jboss.netty.channel.DefaultFileRegion;
 import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.util.ExternalResourceReleasable;
 import org.jboss.netty.util.internal.ByteBufferUtil;
+import org.jboss.netty.util.internal.DetectionUtil;
 
 import java.io.IOException;
 import java.lang.ref.SoftReference;
@@ -63,6 +68,7 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
     private SendBuffer acquire(ChannelBuffer src) {
         final int size = src.readableBytes();
         if (size == 0) {
+            ChannelBuffers.release(src);
             return EMPTY_BUFFER;
         }
 
@@ -70,11 +76,21 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
             return new GatheringSendBuffer(src.toByteBuffers());
         }
 
+        if (src instanceof ChunkedDynamicChannelBuffer && DetectionUtil.javaVersion() >= 7) {
+            // Write the chunks with a gathering write instead of merging them.
+            return new GatheringSendBuffer(src.toByteBuffers());
+        }
+
+        if (src instanceof MappedFileChannelBuffer) {
+            // Write the mapped regions as they are; never merge them.
+            return new GatheringSendBuffer(src.toByteBuffers());
+        }
+
         if (src.isDirect()) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
+            return newUnpooledSendBuffer(src);
         }
         if (src.readableBytes() > DEFAULT_PREALLOCATION_SIZE) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
+            return newUnpooledSendBuffer(src);
         }
 
         Preallocation current = this.current;
@@ -107,9 +123,19 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
         dstbuf.mark();
         src.getBytes(src.readerIndex(), dstbuf);
         dstbuf.reset();
+
+        // The content has been copied, so a pooled source can go back to its pool right away.
+        ChannelBuffers.release(src);
         return dst;
     }
 
+    private static SendBuffer newUnpooledSendBuffer(ChannelBuffer src) {
+        if (src instanceof ReleasableChannelBuffer) {
+            return new ReleasingSendBuffer((ReleasableChannelBuffer) src);
+        }
+        return new UnpooledSendBuffer(src.toByteBuffer());
+    }
+
     private Preallocation getPreallocation() {
         Preallocation current = this.current;
         if (current.refCnt == 0) {
@@ -212,6 +238,22 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
         }
     }
 
+    static final class ReleasingSendBuffer extends UnpooledSendBuffer {
+
+        private final ReleasableChannelBuffer src;
+
+        ReleasingSendBuffer(ReleasableChannelBuffer src) {
+            super(src.toByteBuffer());
+            this.src = src;
+        }
+
+        @Override
+        public void release() {
+            // The NIO buffer shares its memory with the source, which is released only now.
+            src.release();
+        }
+    }
+
     final class PooledSendBuffer extends UnpooledSendBuffer {
 
         private final Preallocation parent;
@@ -235,9 +277,8 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
 
     static class GatheringSendBuffer implements SendBuffer {
 
-        private final ByteBuffer[] buffers;
+        final ByteBuffer[] buffers;
         private final int last;
-        private long written;
         private final int total;
 
         GatheringSendBuffer(ByteBuffer[] buffers) {
@@ -255,7 +296,12 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
         }
 
         public long writtenBytes() {
-            return written;
+            // The buffers may also be written as a part of a larger gathering write.
+            long remaining = 0;
+            for (ByteBuffer buf: buffers) {
+                remaining += buf.remaining();
+            }
+            return total - remaining;
         }
 
         public long totalBytes() {
@@ -264,9 +310,7 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
 
         public long transferTo(WritableByteChannel ch) throws IOException {
             if (ch instanceof GatheringByteChannel) {
-                 long w = ((GatheringByteChannel) ch).write(buffers);
-                 written += w;
-                 return w;
+                 return ((GatheringByteChannel) ch).write(buffers);
             } else {
                 int send = 0;
                 for (ByteBuffer buf: buffers) {
@@ -279,7 +323,6 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
                         }
                     }
                 }
-                written += send;
                 return send;
             }
         }
@@ -296,8 +339,6 @@ final class SocketSendBufferPool implements ExternalResourceReleasable {
                     }
                 }
             }
-            written += send;
-
             return send;
         }
 
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.util.List;
+
+import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.util.internal.ThreadLocalRandom;
+
+/**
+ * Chooses the worker of an {@link AbstractNioWorkerPool} which a new channel
+ * is registered to.  The built-in strategies compare the load gauges
+ * exported by {@link NioWorker#getChannelCount()} and
+ * {@link NioWorker#getPendingWriteBytes()}, so they expect the workers of
+ * the NIO transport.
+ *
+ * @see AbstractNioWorkerPool#setWorkerSelectionStrategy(WorkerSelectionStrategy)
+ */
+public interface WorkerSelectionStrategy {
+
+    /**
+     * {@link WorkerSelectionStrategy} that assigns the workers in turn.
+     * This is the default.
+     */
+    WorkerSelectionStrategy ROUND_ROBIN = new WorkerSelectionStrategy() {
+        public <E extends Worker> E select(List<E> workers, int sequence) {
+            return workers.get(Math.abs(sequence % workers.size()));
+        }
+    };
+
+    /**
+     * {@link WorkerSelectionStrategy} that chooses the worker with the
+     * fewest open channels.  Ties are broken in round-robin order.
+     */
+    WorkerSelectionStrategy LEAST_CHANNELS = new WorkerSelectionStrategy() {
+        public <E extends Worker> E select(List<E> workers, int sequence) {
+            int size = workers.size();
+            int start = Math.abs(sequence % size);
+            E best = workers.get(start);
+            int bestLoad = ((AbstractNioWorker) best).getChannelCount();
+            for (int i = 1; i < size && bestLoad > 0; i ++) {
+                E w = workers.get((start + i) % size);
+                int load = ((AbstractNioWorker) w).getChannelCount();
+                if (load < bestLoad) {
+                    best = w;
+                    bestLoad = load;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * {@link WorkerSelectionStrategy} that chooses the worker whose channels
+     * have the fewest bytes waiting to be written.  Ties are broken in
+     * round-robin order.
+     */
+    WorkerSelectionStrategy LEAST_PENDING_WRITE_BYTES = new WorkerSelectionStrategy() {
+        public <E extends Worker> E select(List<E> workers, int sequence) {
+            int size = workers.size();
+            int start = Math.abs(sequence % size);
+            E best = workers.get(start);
+            long bestLoad = ((AbstractNioWorker) best).getPendingWriteBytes();
+            for (int i = 1; i < size && bestLoad > 0; i ++) {
+                E w = workers.get((start + i) % size);
+                long load = ((AbstractNioWorker) w).getPendingWriteBytes();
+                if (load < bestLoad) {
+                    best = w;
+                    bestLoad = load;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * {@link WorkerSelectionStrategy} that picks two distinct workers at
+     * random and chooses the one with fewer open channels.  Unlike
+     * {@link #LEAST_CHANNELS}, it does not read the gauges of every worker,
+     * and concurrent selections are less likely to pile onto the same worker.
+     */
+    WorkerSelectionStrategy POWER_OF_TWO_CHOICES = new WorkerSelectionStrategy() {
+        public <E extends Worker> E select(List<E> workers, int sequence) {
+            int size = workers.size();
+            if (size == 1) {
+                return workers.get(0);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = random.nextInt(size);
+            int b = random.nextInt(size - 1);
+            if (b >= a) {
+                b ++;
+            }
+            AbstractNioWorker first = (AbstractNioWorker) workers.get(a);
+            AbstractNioWorker second = (AbstractNioWorker) workers.get(b);
+            return workers.get(second.getChannelCount() < first.getChannelCount()? b : a);
+        }
+    };
+
+    /**
+     * Chooses the worker which the next channel is registered to.
+     *
+     * @param workers   the candidate workers; never empty
+     * @param sequence  a number which is incremented by one on every
+     *                  selection from the same pool, for strategies which
+     *                  assign the workers in turn
+     * @return one of the specified {@code workers}
+     */
+    <E extends Worker> E select(List<E> workers, int sequence);
+}
@@ -307,27 +307,30 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
      * found in the haystack.
      */
     private static int indexOf(ChannelBuffer haystack, ChannelBuffer needle) {
-        for (int i = haystack.readerIndex(); i < haystack.writerIndex(); i ++) {
-            int haystackIndex = i;
+        final int writerIndex = haystack.writerIndex();
+        final int needleLength = needle.capacity();
+        final byte first = needle.getByte(0);
+        int i = haystack.readerIndex();
+        for (;;) {
+            // Locate the candidates by the first byte of the needle in bulk.
+            i = haystack.indexOf(i, writerIndex, first);
+            if (i < 0 || writerIndex - i < needleLength) {
+                return -1;
+            }
+
             int needleIndex;
-            for (needleIndex = 0; needleIndex < needle.capacity(); needleIndex ++) {
-                if (haystack.getByte(haystackIndex) != needle.getByte(needleIndex)) {
+            for (needleIndex = 1; needleIndex < needleLength; needleIndex ++) {
+                if (haystack.getByte(i + needleIndex) != needle.getByte(needleIndex)) {
                     break;
-                } else {
-                    haystackIndex ++;
-                    if (haystackIndex == haystack.writerIndex() &&
-                        needleIndex != needle.capacity() - 1) {
-                        return -1;
-                    }
                 }
             }
 
-            if (needleIndex == needle.capacity()) {
+            if (needleIndex == needleLength) {
                 // Found the needle from the haystack!
                 return i - haystack.readerIndex();
             }
+            i ++;
         }
-        return -1;
     }
 
     private static void validateDelimiter(ChannelBuffer delimiter) {
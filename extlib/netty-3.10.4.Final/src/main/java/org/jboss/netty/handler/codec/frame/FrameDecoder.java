@@ -19,6 +19,7 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.buffer.CompositeChannelBuffer;
+import org.jboss.netty.buffer.ReleasableChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -33,6 +34,8 @@ import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Decodes the received {@link ChannelBuffer}s into a meaningful frame object.
@@ -135,6 +138,19 @@ import java.net.SocketAddress;
  * {@link ChannelUpstreamHandler} receives a {@link MessageEvent} which
  * contains a POJO rather than a {@link ChannelBuffer}.
  *
+ * <h3>Pooled buffers</h3>
+ * <p>
+ * A received {@link ReleasableChannelBuffer}, such as a buffer read from a
+ * channel whose {@link ChannelBufferFactory} is a
+ * {@link org.jboss.netty.buffer.PooledChannelBufferFactory}, is owned by
+ * {@link FrameDecoder} and is released as soon as its content has been
+ * decoded or copied into a new cumulation buffer.  The cumulation buffers
+ * allocated by {@link #newCumulationBuffer(ChannelHandlerContext, int)} are
+ * released in the same way.  Therefore, a frame must not be a slice or a
+ * duplicate of the cumulative buffer unless it is consumed before
+ * {@code decode()} returns.  {@link #extractFrame(ChannelBuffer, int, int)}
+ * copies the frame by default.
+ *
  * <h3>Replacing a decoder with another decoder in a pipeline</h3>
  * <p>
  * If you are going to write a protocol multiplexer, you will probably want to
@@ -186,6 +202,7 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
     private volatile ChannelHandlerContext ctx;
     private int copyThreshold;
     private int maxCumulationBufferComponents = DEFAULT_MAX_COMPOSITEBUFFER_COMPONENTS;
+    private List<ReleasableChannelBuffer> releasableBuffers;
 
     protected FrameDecoder() {
         this(false);
@@ -294,10 +311,12 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
 
         ChannelBuffer input = (ChannelBuffer) m;
         if (!input.readable()) {
+            ChannelBuffers.release(input);
             return;
         }
 
         if (cumulation == null) {
+            addReleasableBuffer(input);
             try {
                 // the cumulation buffer is not created yet so just pass the input to callDecode(...) method
                 callDecode(ctx, e.getChannel(), input, e.getRemoteAddress());
@@ -305,7 +324,9 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
                 updateCumulation(ctx, input);
             }
         } else {
+            ChannelBuffer received = input;
             input = appendToCumulation(input);
+            addReleasableBuffer(received);
             try {
                 callDecode(ctx, e.getChannel(), input, e.getRemoteAddress());
             } finally {
@@ -322,6 +343,7 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
             CompositeChannelBuffer composite = (CompositeChannelBuffer) cumulation;
             if (composite.numComponents() >= maxCumulationBufferComponents) {
                 cumulation = composite.copy();
+                releaseReleasableBuffers();
             }
         }
 
@@ -344,6 +366,8 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
                 // exceeded the threshold.
                 cumulation = newCumulation = newCumulationBuffer(ctx, input.readableBytes());
                 cumulation.writeBytes(input);
+                releaseReleasableBuffers();
+                addReleasableBuffer(newCumulation);
             } else {
                 // Nothing was consumed by callDecode() or input.capacity() did not
                 // exceed the threshold.
@@ -355,10 +379,38 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
             }
         } else {
             cumulation = newCumulation = null;
+            releaseReleasableBuffers();
         }
         return newCumulation;
     }
 
+    /**
+     * Takes the ownership of the specified buffer if it is a
+     * {@link ReleasableChannelBuffer}, so that it is released once the
+     * cumulation does not refer to it anymore.
+     */
+    private void addReleasableBuffer(ChannelBuffer buffer) {
+        if (!(buffer instanceof ReleasableChannelBuffer)) {
+            return;
+        }
+        List<ReleasableChannelBuffer> releasableBuffers = this.releasableBuffers;
+        if (releasableBuffers == null) {
+            this.releasableBuffers = releasableBuffers = new ArrayList<ReleasableChannelBuffer>(4);
+        }
+        releasableBuffers.add((ReleasableChannelBuffer) buffer);
+    }
+
+    private void releaseReleasableBuffers() {
+        List<ReleasableChannelBuffer> releasableBuffers = this.releasableBuffers;
+        if (releasableBuffers == null || releasableBuffers.isEmpty()) {
+            return;
+        }
+        for (ReleasableChannelBuffer buffer: releasableBuffers) {
+            buffer.release();
+        }
+        releasableBuffers.clear();
+    }
+
     @Override
     public void channelDisconnected(
             ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
@@ -490,6 +542,7 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler implemen
                 unfoldAndFireMessageReceived(ctx, null, partialFrame);
             }
         } finally {
+            releaseReleasableBuffers();
             ctx.sendUpstream(e);
         }
     }
@@ -142,15 +142,10 @@ public class LineBasedFrameDecoder extends FrameDecoder {
      * Returns -1 if no end of line was found in the buffer.
      */
     private static int findEndOfLine(final ChannelBuffer buffer) {
-        final int n = buffer.writerIndex();
-        for (int i = buffer.readerIndex(); i < n; i ++) {
-            final byte b = buffer.getByte(i);
-            if (b == '\n') {
-                return i;
-            } else if (b == '\r' && i < n - 1 && buffer.getByte(i + 1) == '\n') {
-                return i;  // \r\n
-            }
+        int i = buffer.indexOf(buffer.readerIndex(), buffer.writerIndex(), (byte) '\n');
+        if (i > buffer.readerIndex() && buffer.getByte(i - 1) == '\r') {
+            i --;  // \r\n
         }
-        return -1;  // Not found.
+        return i;  // -1 if not found.
     }
 }
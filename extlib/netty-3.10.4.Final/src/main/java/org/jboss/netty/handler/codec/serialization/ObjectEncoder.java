@@ -73,7 +73,7 @@ public class ObjectEncoder extends OneToOneEncoder {
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
         ChannelBufferOutputStream bout =
-            new ChannelBufferOutputStream(dynamicBuffer(
+            new ChannelBufferOutputStream(chunkedDynamicBuffer(
                     estimatedLength, ctx.getChannel().getConfig().getBufferFactory()));
         bout.write(LENGTH_PLACEHOLDER);
         ObjectOutputStream oout = new CompactObjectOutputStream(bout);
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.timeout;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.SchedulingWorker;
+import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.channel.socket.WorkerChannel;
+import org.jboss.netty.util.Timer;
+
+/**
+ * Picks the {@link Timer} the timeout handlers schedule their tasks with.
+ */
+final class ChannelTimers {
+
+    /**
+     * Returns the {@link Timer} of the {@link SchedulingWorker} which serves
+     * the specified {@link Channel}, so that the timeout tasks run in its
+     * I/O thread, or {@code defaultTimer} if the worker cannot schedule tasks.
+     */
+    static Timer timer(Timer defaultTimer, Channel channel) {
+        if (!(channel instanceof WorkerChannel)) {
+            return defaultTimer;
+        }
+
+        Worker worker = ((WorkerChannel) channel).getWorker();
+        if (worker instanceof SchedulingWorker) {
+            return ((SchedulingWorker) worker).getTimer();
+        }
+        return defaultTimer;
+    }
+
+    private ChannelTimers() {
+        // Unused
+    }
+}
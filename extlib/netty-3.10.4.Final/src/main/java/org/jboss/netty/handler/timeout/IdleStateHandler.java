@@ -112,6 +112,11 @@ import org.jboss.netty.util.TimerTask;
  * The {@link Timer} which was specified when the {@link IdleStateHandler} is
  * created should be stopped manually by calling {@link #releaseExternalResources()}
  * or {@link Timer#stop()} when your application shuts down.
+ * <p>
+ * If the channel is served by a
+ * {@link org.jboss.netty.channel.socket.SchedulingWorker}, as NIO and epoll
+ * channels are, the timeouts are scheduled in its I/O thread instead, and the
+ * {@link Timer} is used only for the other channels.
  * @see ReadTimeoutHandler
  * @see WriteTimeoutHandler
  *
@@ -320,17 +325,17 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
 
         state.lastReadTime = state.lastWriteTime = System.currentTimeMillis();
         if (readerIdleTimeMillis > 0) {
-            state.readerIdleTimeout = timer.newTimeout(
+            state.readerIdleTimeout = timer(ctx).newTimeout(
                     new ReaderIdleTimeoutTask(ctx),
                     readerIdleTimeMillis, TimeUnit.MILLISECONDS);
         }
         if (writerIdleTimeMillis > 0) {
-            state.writerIdleTimeout = timer.newTimeout(
+            state.writerIdleTimeout = timer(ctx).newTimeout(
                     new WriterIdleTimeoutTask(ctx),
                     writerIdleTimeMillis, TimeUnit.MILLISECONDS);
         }
         if (allIdleTimeMillis > 0) {
-            state.allIdleTimeout = timer.newTimeout(
+            state.allIdleTimeout = timer(ctx).newTimeout(
                     new AllIdleTimeoutTask(ctx),
                     allIdleTimeMillis, TimeUnit.MILLISECONDS);
         }
@@ -359,6 +364,10 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
         }
     }
 
+    private Timer timer(ChannelHandlerContext ctx) {
+        return ChannelTimers.timer(timer, ctx.getChannel());
+    }
+
     private static State state(ChannelHandlerContext ctx) {
         State state;
         synchronized (ctx) {
@@ -412,12 +421,12 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
             if (nextDelay <= 0) {
                 // Reader is idle - set a new timeout and notify the callback.
                 state.readerIdleTimeout =
-                    timer.newTimeout(this, readerIdleTimeMillis, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, readerIdleTimeMillis, TimeUnit.MILLISECONDS);
                 fireChannelIdle(ctx, IdleState.READER_IDLE, lastReadTime);
             } else {
                 // Read occurred before the timeout - set a new timeout with shorter delay.
                 state.readerIdleTimeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
             }
         }
     }
@@ -442,12 +451,12 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
             if (nextDelay <= 0) {
                 // Writer is idle - set a new timeout and notify the callback.
                 state.writerIdleTimeout =
-                    timer.newTimeout(this, writerIdleTimeMillis, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, writerIdleTimeMillis, TimeUnit.MILLISECONDS);
                 fireChannelIdle(ctx, IdleState.WRITER_IDLE, lastWriteTime);
             } else {
                 // Write occurred before the timeout - set a new timeout with shorter delay.
                 state.writerIdleTimeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
             }
         }
     }
@@ -473,13 +482,13 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
                 // Both reader and writer are idle - set a new timeout and
                 // notify the callback.
                 state.allIdleTimeout =
-                    timer.newTimeout(this, allIdleTimeMillis, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, allIdleTimeMillis, TimeUnit.MILLISECONDS);
                 fireChannelIdle(ctx, IdleState.ALL_IDLE, lastIoTime);
             } else {
                 // Either read or write occurred before the timeout - set a new
                 // timeout with shorter delay.
                 state.allIdleTimeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
             }
         }
     }
@@ -69,6 +69,11 @@ import static org.jboss.netty.channel.Channels.*;
  * The {@link Timer} which was specified when the {@link ReadTimeoutHandler} is
  * created should be stopped manually by calling {@link #releaseExternalResources()}
  * or {@link Timer#stop()} when your application shuts down.
+ * <p>
+ * If the channel is served by a
+ * {@link org.jboss.netty.channel.socket.SchedulingWorker}, as NIO and epoll
+ * channels are, the timeouts are scheduled in its I/O thread instead, and the
+ * {@link Timer} is used only for the other channels.
  * @see WriteTimeoutHandler
  * @see IdleStateHandler
  *
@@ -199,7 +204,7 @@ public class ReadTimeoutHandler extends SimpleChannelUpstreamHandler
         }
 
         if (timeoutMillis > 0) {
-            state.timeout = timer.newTimeout(new ReadTimeoutTask(ctx), timeoutMillis, TimeUnit.MILLISECONDS);
+            state.timeout = timer(ctx).newTimeout(new ReadTimeoutTask(ctx), timeoutMillis, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -218,6 +223,10 @@ public class ReadTimeoutHandler extends SimpleChannelUpstreamHandler
         }
     }
 
+    private Timer timer(ChannelHandlerContext ctx) {
+        return ChannelTimers.timer(timer, ctx.getChannel());
+    }
+
     private static State state(ChannelHandlerContext ctx) {
         State state;
         synchronized (ctx) {
@@ -259,12 +268,12 @@ public class ReadTimeoutHandler extends SimpleChannelUpstreamHandler
             if (nextDelay <= 0) {
                 // Read timed out - set a new timeout and notify the callback.
                 state.timeout =
-                    timer.newTimeout(this, timeoutMillis, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, timeoutMillis, TimeUnit.MILLISECONDS);
                 fireReadTimedOut(ctx);
             } else {
                 // Read occurred before the timeout - set a new timeout with shorter delay.
                 state.timeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                    timer(ctx).newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
             }
         }
 
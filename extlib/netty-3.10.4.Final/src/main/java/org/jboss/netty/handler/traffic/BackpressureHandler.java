@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.traffic;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioChannelConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Suspends reading from one or more source {@link Channel}s while the
+ * {@link Channel} this handler belongs to is not
+ * {@linkplain Channel#isWritable() writable}, and resumes reading once it is
+ * writable again.  For NIO channels, a {@link Channel} becomes unwritable when
+ * its queued writes exceed the
+ * {@linkplain NioChannelConfig#getWriteBufferHighWaterMark() high water mark},
+ * and writable again when they drop below the
+ * {@linkplain NioChannelConfig#getWriteBufferLowWaterMark() low water mark}.
+ * <p>
+ * A typical use is a proxy which writes everything it reads from an inbound
+ * {@link Channel} to an outbound {@link Channel}.  Without back pressure, a
+ * slow remote peer makes the outbound write queue grow without bounds:
+ * <pre>
+ * {@link Channel} inboundChannel = ...;
+ * {@link ChannelPipeline} outboundPipeline = ...;
+ * outboundPipeline.addLast("backpressure", <b>new {@link BackpressureHandler}(inboundChannel)</b>);
+ * </pre>
+ * A source may be throttled by several {@link BackpressureHandler}s; it is
+ * readable only while all of their {@link Channel}s are writable.  Do not
+ * call {@link Channel#setReadable(boolean)} on a source yourself, since the
+ * handler would override it.
+ * <p>
+ * A {@link BackpressureHandler} keeps track of the writability of a single
+ * {@link Channel}, so it must not be added to more than one
+ * {@link ChannelPipeline}.
+ */
+public class BackpressureHandler extends SimpleChannelUpstreamHandler {
+
+    /**
+     * The number of {@link BackpressureHandler}s which are currently
+     * suspending the reads of a source {@link Channel}.
+     */
+    private static final ChannelLocal<SuspendCount> suspendCounts = new ChannelLocal<SuspendCount>(true) {
+        @Override
+        protected SuspendCount initialValue(Channel channel) {
+            return new SuspendCount();
+        }
+    };
+
+    private final List<Channel> sources = new ArrayList<Channel>();
+
+    private final ChannelFutureListener sourceRemover = new ChannelFutureListener() {
+        public void operationComplete(ChannelFuture future) {
+            removeSource(future.getChannel());
+        }
+    };
+
+    private boolean suspended;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param sources the {@link Channel}s whose reads are suspended while the
+     *                {@link Channel} of this handler is not writable
+     */
+    public BackpressureHandler(Channel... sources) {
+        if (sources == null) {
+            throw new NullPointerException("sources");
+        }
+        for (Channel source: sources) {
+            addSource(source);
+        }
+    }
+
+    /**
+     * Starts suspending the reads of the specified {@link Channel} while the
+     * {@link Channel} of this handler is not writable.  The source is removed
+     * automatically once it is closed.
+     */
+    public void addSource(Channel source) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        boolean changed;
+        synchronized (this) {
+            if (sources.contains(source)) {
+                return;
+            }
+            sources.add(source);
+            changed = suspended && suspend(source);
+        }
+        if (changed) {
+            updateReadable(source);
+        }
+        source.getCloseFuture().addListener(sourceRemover);
+    }
+
+    /**
+     * Stops suspending the reads of the specified {@link Channel}, resuming
+     * them if this handler was the last one which suspended them.
+     */
+    public void removeSource(Channel source) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        boolean changed;
+        synchronized (this) {
+            if (!sources.remove(source)) {
+                return;
+            }
+            changed = suspended && resume(source);
+        }
+        if (changed) {
+            updateReadable(source);
+        }
+        source.getCloseFuture().removeListener(sourceRemover);
+    }
+
+    /**
+     * Returns {@code true} if and only if this handler is suspending the
+     * reads of its sources right now.
+     */
+    public synchronized boolean isSuspended() {
+        return suspended;
+    }
+
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        // The event may be fired later than the change, so look at the current state.
+        setSuspended(!ctx.getChannel().isWritable());
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        // Nothing will be written anymore - let the sources find out.
+        setSuspended(false);
+        ctx.sendUpstream(e);
+    }
+
+    private void setSuspended(boolean suspended) {
+        List<Channel> changed = null;
+        synchronized (this) {
+            if (this.suspended == suspended) {
+                return;
+            }
+            this.suspended = suspended;
+            for (Channel source: sources) {
+                if (suspended? suspend(source) : resume(source)) {
+                    if (changed == null) {
+                        changed = new ArrayList<Channel>(sources.size());
+                    }
+                    changed.add(source);
+                }
+            }
+        }
+
+        // setReadable() may fire an event to the handler of another source
+        // right away, so it must not be called while holding a lock.
+        if (changed != null) {
+            for (Channel source: changed) {
+                updateReadable(source);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the source has to become unreadable
+     */
+    private static boolean suspend(Channel source) {
+        SuspendCount count = suspendCounts.get(source);
+        synchronized (count) {
+            return count.value ++ == 0;
+        }
+    }
+
+    /**
+     * @return {@code true} if the source has to become readable
+     */
+    private static boolean resume(Channel source) {
+        SuspendCount count = suspendCounts.get(source);
+        synchronized (count) {
+            return -- count.value == 0;
+        }
+    }
+
+    /**
+     * Makes the source readable if and only if no handler suspends it.
+     */
+    private static void updateReadable(Channel source) {
+        SuspendCount count = suspendCounts.get(source);
+        boolean readable;
+        synchronized (count) {
+            readable = count.value == 0;
+        }
+        for (;;) {
+            source.setReadable(readable);
+            synchronized (count) {
+                // Another thread may have changed the count meanwhile and
+                // applied its state before this one - apply the latest state.
+                if ((count.value == 0) == readable) {
+                    return;
+                }
+                readable = !readable;
+            }
+        }
+    }
+
+    private static final class SuspendCount {
+        int value;
+
+        SuspendCount() {
+        }
+    }
+}
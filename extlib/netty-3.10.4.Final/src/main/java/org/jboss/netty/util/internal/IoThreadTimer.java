@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Timer} whose tasks are run by an I/O thread, which asks for the
+ * delay of the nearest task before it blocks and runs the expired tasks
+ * after it woke up.  It cannot be {@linkplain #stop() stopped}; its tasks
+ * are discarded when the I/O thread {@linkplain #clear() clears} it.
+ */
+public final class IoThreadTimer implements Timer {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(IoThreadTimer.class);
+
+    private final Executor ioThreadExecutor;
+
+    /**
+     * The scheduled tasks ordered by their deadline.  Only accessed by the I/O thread.
+     */
+    private final Queue<ScheduledTask> queue = new PriorityQueue<ScheduledTask>();
+
+    /**
+     * Creates a new timer.
+     *
+     * @param ioThreadExecutor the {@link Executor} which runs a task in the
+     *                         I/O thread, or right away if the caller is the
+     *                         I/O thread
+     */
+    public IoThreadTimer(Executor ioThreadExecutor) {
+        if (ioThreadExecutor == null) {
+            throw new NullPointerException("ioThreadExecutor");
+        }
+        this.ioThreadExecutor = ioThreadExecutor;
+    }
+
+    /**
+     * Runs the given {@link Runnable} in the I/O thread once the given delay
+     * has elapsed.
+     */
+    public Timeout schedule(final Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        return newTimeout(new TimerTask() {
+            public void run(Timeout timeout) {
+                task.run();
+            }
+        }, delay, unit);
+    }
+
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+
+        final ScheduledTask scheduledTask =
+                new ScheduledTask(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+        ioThreadExecutor.execute(new Runnable() {
+            public void run() {
+                queue.add(scheduledTask);
+            }
+        });
+        return scheduledTask;
+    }
+
+    public Set<Timeout> stop() {
+        throw new IllegalStateException(
+                "stop() cannot be called on the timer of an I/O thread; shut the I/O thread down instead");
+    }
+
+    /**
+     * Returns the time left until the nearest task is due, in nanoseconds,
+     * or {@code -1} if no task has been scheduled.  Must be called by the I/O
+     * thread.
+     */
+    public long nextDelayNanos() {
+        for (;;) {
+            ScheduledTask task = queue.peek();
+            if (task == null) {
+                return -1;
+            }
+            if (task.isCancelled()) {
+                // Cancelled tasks are removed lazily.
+                queue.remove();
+                continue;
+            }
+            return Math.max(task.deadline - System.nanoTime(), 0);
+        }
+    }
+
+    /**
+     * Runs the tasks which are due.  Must be called by the I/O thread.
+     */
+    public void runExpiredTasks() {
+        long now = System.nanoTime();
+        for (;;) {
+            ScheduledTask task = queue.peek();
+            if (task == null || task.deadline - now > 0) {
+                break;
+            }
+            queue.remove();
+            task.expire();
+        }
+    }
+
+    /**
+     * Discards all scheduled tasks.  Must be called by the I/O thread.
+     */
+    public void clear() {
+        queue.clear();
+    }
+
+    private final class ScheduledTask implements Timeout, Comparable<ScheduledTask> {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final TimerTask task;
+        final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        ScheduledTask(TimerTask task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public Timer getTimer() {
+            return IoThreadTimer.this;
+        }
+
+        public TimerTask getTask() {
+            return task;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public void cancel() {
+            // Removed from the queue by the I/O thread once it reaches the head.
+            state.compareAndSet(ST_INIT, ST_CANCELLED);
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run(this);
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(
+                            "An exception was thrown by " +
+                            TimerTask.class.getSimpleName() + '.', t);
+                }
+            }
+        }
+
+        public int compareTo(ScheduledTask o) {
+            long d = deadline - o.deadline;
+            if (d < 0) {
+                return -1;
+            }
+            if (d > 0) {
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
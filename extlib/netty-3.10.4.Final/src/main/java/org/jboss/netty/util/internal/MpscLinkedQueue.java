@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock-free unbounded queue which may be offered to by any number of
+ * threads, but which must be consumed by a single thread only.  An offer is
+ * a single atomic swap; a poll involves no atomic operation at all.
+ * <p>
+ * {@link #poll()} and {@link #peek()} may return {@code null} while an
+ * {@link #offer(Object)} which has been started concurrently has not
+ * returned yet.  A producer must therefore notify the consumer after offering,
+ * as a producer of a {@link java.util.concurrent.ConcurrentLinkedQueue} would.
+ * {@link #size()} and {@link #iterator()} are intended for the consumer thread.
+ */
+public final class MpscLinkedQueue<E> extends AbstractQueue<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscLinkedQueue, Node> tailUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(MpscLinkedQueue.class, Node.class, "tail");
+
+    /**
+     * The node whose value has been polled last.  Accessed by the consumer
+     * only.
+     */
+    private Node<E> head;
+    private volatile Node<E> tail;
+
+    public MpscLinkedQueue() {
+        Node<E> stub = new Node<E>(null);
+        head = stub;
+        tail = stub;
+    }
+
+    public boolean offer(E value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+
+        Node<E> node = new Node<E>(value);
+        @SuppressWarnings("unchecked")
+        Node<E> prev = tailUpdater.getAndSet(this, node);
+        // The node is visible to the consumer from now on.
+        prev.next = node;
+        return true;
+    }
+
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+
+        // The polled node becomes the new stub.
+        E value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public E peek() {
+        Node<E> next = head.next;
+        return next == null? null : next.value;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Node<E> n = head.next; n != null; n = n.next) {
+            size ++;
+        }
+        return size;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Node<E> next = head.next;
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public E next() {
+                Node<E> next = this.next;
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                this.next = next.next;
+                return next.value;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+/**
+ * A light-weight pool of objects which keeps a bounded stack of free objects
+ * per thread.  An object may be recycled by any thread; it is then reused by
+ * that thread.
+ */
+public abstract class Recycler<T> {
+
+    private final int maxCapacity;
+
+    private final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+
+    protected Recycler(int maxCapacity) {
+        if (maxCapacity < 0) {
+            throw new IllegalArgumentException("maxCapacity: " + maxCapacity + " (expected: >= 0)");
+        }
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Returns a free object of the current thread, or a new object if there
+     * is none.
+     */
+    public final T get() {
+        T o = stacks.get().pop();
+        if (o == null) {
+            o = newObject();
+        }
+        return o;
+    }
+
+    /**
+     * Makes the specified object available to {@link #get()} of the current
+     * thread.  The caller must not access the object anymore.
+     *
+     * @return {@code false} if the object was discarded because the stack of
+     *         the current thread is full
+     */
+    public final boolean recycle(T o) {
+        return stacks.get().push(o);
+    }
+
+    /**
+     * Creates a new object when the stack of the current thread is empty.
+     */
+    protected abstract T newObject();
+
+    private final class Stack {
+        private Object[] elements;
+        private int size;
+
+        Stack() {
+        }
+
+        @SuppressWarnings("unchecked")
+        T pop() {
+            int size = this.size;
+            if (size == 0) {
+                return null;
+            }
+            Object o = elements[-- size];
+            elements[size] = null;
+            this.size = size;
+            return (T) o;
+        }
+
+        boolean push(T o) {
+            Object[] elements = this.elements;
+            if (elements == null) {
+                if (maxCapacity == 0) {
+                    return false;
+                }
+                this.elements = elements = new Object[Math.min(maxCapacity, 16)];
+            }
+            int size = this.size;
+            if (size == elements.length) {
+                if (size == maxCapacity) {
+                    return false;
+                }
+                Object[] newElements = new Object[Math.min(maxCapacity, size << 1)];
+                System.arraycopy(elements, 0, newElements, 0, size);
+                this.elements = elements = newElements;
+            }
+            elements[size] = o;
+            this.size = size + 1;
+            return true;
+        }
+    }
+}
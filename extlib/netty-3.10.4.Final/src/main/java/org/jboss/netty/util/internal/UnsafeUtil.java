@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+import sun.misc.Unsafe;
+
+/**
+ * Raw memory access via {@code sun.misc.Unsafe}.  None of the accessors
+ * perform any bounds check; it is the responsibility of the caller to make
+ * sure the accessed address range is valid.  Check {@link #isAvailable()}
+ * before calling any other method.
+ *
+ * <br>
+ * The use of {@code sun.misc.Unsafe} is disabled by the same System properties
+ * which are honoured by {@link DetectionUtil#hasUnsafe()}.
+ */
+public final class UnsafeUtil {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(UnsafeUtil.class);
+
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS_FIELD_OFFSET;
+    private static final long BYTE_ARRAY_BASE_OFFSET;
+    private static final boolean AVAILABLE;
+
+    /**
+     * {@code true} if and only if the platform byte order is
+     * {@link ByteOrder#BIG_ENDIAN}.
+     */
+    public static final boolean BIG_ENDIAN_NATIVE_ORDER =
+        ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    static {
+        Unsafe unsafe = null;
+        long addressFieldOffset = -1;
+        long byteArrayBaseOffset = -1;
+        if (DetectionUtil.hasUnsafe() && DetectionUtil.javaVersion() >= 7) {
+            try {
+                unsafe = AccessController.doPrivileged(new PrivilegedExceptionAction<Unsafe>() {
+                    public Unsafe run() throws Exception {
+                        Field field = Unsafe.class.getDeclaredField("theUnsafe");
+                        field.setAccessible(true);
+                        return (Unsafe) field.get(null);
+                    }
+                });
+                addressFieldOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+                byteArrayBaseOffset = unsafe.arrayBaseOffset(byte[].class);
+
+                // Make sure the address we get is the real address of the buffer.
+                ByteBuffer direct = ByteBuffer.allocateDirect(1);
+                long address = unsafe.getLong(direct, addressFieldOffset);
+                direct.put(0, (byte) 42);
+                if (address == 0 || unsafe.getByte(address) != 42) {
+                    unsafe = null;
+                } else if (!isUnalignedAccessSupported()) {
+                    logger.debug("Unaligned memory access is not supported; not using sun.misc.Unsafe.");
+                    unsafe = null;
+                }
+                ByteBufferUtil.destroy(direct);
+            } catch (Throwable t) {
+                logger.debug("Unable to access sun.misc.Unsafe: " + t);
+                unsafe = null;
+            }
+        }
+
+        UNSAFE = unsafe;
+        ADDRESS_FIELD_OFFSET = addressFieldOffset;
+        BYTE_ARRAY_BASE_OFFSET = byteArrayBaseOffset;
+        AVAILABLE = unsafe != null;
+    }
+
+    private static boolean isUnalignedAccessSupported() {
+        try {
+            Class<?> bitsClass = Class.forName("java.nio.Bits", false, ClassLoader.getSystemClassLoader());
+            Method unalignedMethod = bitsClass.getDeclaredMethod("unaligned");
+            unalignedMethod.setAccessible(true);
+            return Boolean.TRUE.equals(unalignedMethod.invoke(null));
+        } catch (Throwable t) {
+            // java.nio.Bits is not accessible - fall back to the well-known architectures.
+            String arch = SystemPropertyUtil.get("os.arch", "");
+            return arch.matches("^(i[3-6]86|x86(_64)?|x64|amd64|aarch64)$");
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if {@code sun.misc.Unsafe} can be used
+     * to access the memory of direct buffers.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Returns the memory address of the specified direct buffer.
+     */
+    public static long directBufferAddress(ByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, ADDRESS_FIELD_OFFSET);
+    }
+
+    public static byte getByte(long address) {
+        return UNSAFE.getByte(address);
+    }
+
+    public static short getShort(long address) {
+        return UNSAFE.getShort(address);
+    }
+
+    public static int getInt(long address) {
+        return UNSAFE.getInt(address);
+    }
+
+    public static long getLong(long address) {
+        return UNSAFE.getLong(address);
+    }
+
+    /**
+     * Reads eight bytes of the specified array in the native byte order.
+     */
+    public static long getLong(byte[] array, int index) {
+        return UNSAFE.getLong(array, BYTE_ARRAY_BASE_OFFSET + index);
+    }
+
+    public static void putByte(long address, byte value) {
+        UNSAFE.putByte(address, value);
+    }
+
+    public static void putShort(long address, short value) {
+        UNSAFE.putShort(address, value);
+    }
+
+    public static void putInt(long address, int value) {
+        UNSAFE.putInt(address, value);
+    }
+
+    public static void putLong(long address, long value) {
+        UNSAFE.putLong(address, value);
+    }
+
+    /**
+     * Copies {@code length} bytes between two off-heap memory regions.
+     */
+    public static void copyMemory(long srcAddress, long dstAddress, long length) {
+        UNSAFE.copyMemory(srcAddress, dstAddress, length);
+    }
+
+    /**
+     * Copies {@code length} bytes from off-heap memory into a byte array.
+     */
+    public static void copyMemory(long srcAddress, byte[] dst, int dstIndex, long length) {
+        UNSAFE.copyMemory(null, srcAddress, dst, BYTE_ARRAY_BASE_OFFSET + dstIndex, length);
+    }
+
+    /**
+     * Copies {@code length} bytes from a byte array into off-heap memory.
+     */
+    public static void copyMemory(byte[] src, int srcIndex, long dstAddress, long length) {
+        UNSAFE.copyMemory(src, BYTE_ARRAY_BASE_OFFSET + srcIndex, null, dstAddress, length);
+    }
+
+    private UnsafeUtil() {
+        // Unused
+    }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.NoSuchElementException;
@@ -1503,6 +1504,28 @@ public abstract class AbstractChannelBufferTest {
         assertEquals("Hello, World!", buffer.toString(CharsetUtil.ISO_8859_1));
     }
 
+    @Test
+    public void testToStringWithCharsets() throws Exception {
+        byte[] bytes = new byte[] {
+                'a', (byte) 0xC3, (byte) 0xA9, (byte) 0xE2, (byte) 0x82, (byte) 0xAC,
+                (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, (byte) 0xFF, 'z' };
+        buffer.clear();
+        buffer.writeBytes(bytes);
+
+        Charset[] charsets = {
+                CharsetUtil.UTF_8, CharsetUtil.ISO_8859_1, CharsetUtil.US_ASCII, CharsetUtil.UTF_16BE };
+        for (Charset charset: charsets) {
+            String expected = CharsetUtil.getDecoder(charset).decode(ByteBuffer.wrap(bytes)).toString();
+            assertEquals(charset.name(), expected, buffer.toString(charset));
+            expected = CharsetUtil.getDecoder(charset).decode(ByteBuffer.wrap(bytes, 1, 4)).toString();
+            assertEquals(charset.name(), expected, buffer.toString(1, 4, charset));
+        }
+
+        assertEquals("a\u00e9\u20ac\ud83d\ude00\ufffdz", buffer.toString(CharsetUtil.UTF_8));
+        assertEquals("a\ufffd\ufffd", buffer.toString(0, 3, CharsetUtil.US_ASCII));
+        assertEquals("", buffer.toString(3, 0, CharsetUtil.UTF_8));
+    }
+
     @Test
     public void testIndexOf() {
         buffer.clear();
@@ -1518,6 +1541,31 @@ public abstract class AbstractChannelBufferTest {
         assertEquals(3, buffer.indexOf(4, 1, (byte) 2));
     }
 
+    @Test
+    public void testIndexOfAcrossWords() {
+        int length = Math.min(buffer.capacity(), 64);
+        for (int i = 0; i < length; i ++) {
+            buffer.clear();
+            buffer.writeZero(length);
+            buffer.setByte(i, (byte) 0xA0);
+            for (int from = 0; from <= i; from ++) {
+                assertEquals(i, buffer.indexOf(from, length, (byte) 0xA0));
+                assertEquals(i - from, buffer.bytesBefore(from, length - from, (byte) 0xA0));
+            }
+            assertEquals(-1, buffer.indexOf(i + 1, length, (byte) 0xA0));
+            assertEquals(-1, buffer.indexOf(0, i, (byte) 0xA0));
+
+            buffer.setByte(i, '\n');
+            if (i + 1 < length) {
+                buffer.setByte(i + 1, '\r');
+            }
+            assertEquals(i, buffer.indexOf(0, length, ChannelBufferIndexFinder.CRLF));
+            assertEquals(i, buffer.indexOf(0, length, ChannelBufferIndexFinder.LF));
+            assertEquals(i + 1 < length ? i + 1 : -1, buffer.indexOf(0, length, ChannelBufferIndexFinder.CR));
+            assertEquals(i == 0 ? 2 : 0, buffer.indexOf(0, length, ChannelBufferIndexFinder.NUL));
+        }
+    }
+
     @Test
     public void testToByteBuffer1() {
         byte[] value = new byte[buffer.capacity()];
@@ -17,10 +17,14 @@ package org.jboss.netty.buffer;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.jboss.netty.buffer.ChannelBuffers.*;
 import static org.junit.Assert.*;
@@ -363,4 +367,79 @@ public abstract class AbstractCompositeChannelBufferTest extends
         b.readBytes(new byte[4]);
         b.readBytes(new byte[0]);
     }
+
+    @Test
+    public void testRandomAccessWithManyComponents() {
+        testRandomAccessWithManyComponents(2);
+        testRandomAccessWithManyComponents(16);
+        testRandomAccessWithManyComponents(256);
+    }
+
+    private void testRandomAccessWithManyComponents(int numComponents) {
+        Random random = new Random(numComponents);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ChannelBuffer[] components = new ChannelBuffer[numComponents];
+        for (int i = 0; i < numComponents; i ++) {
+            byte[] bytes = new byte[1 + random.nextInt(16)];
+            random.nextBytes(bytes);
+            expected.write(bytes, 0, bytes.length);
+            components[i] = wrappedBuffer(order, bytes);
+        }
+        byte[] expectedBytes = expected.toByteArray();
+        CompositeChannelBuffer buf = (CompositeChannelBuffer) wrappedBuffer(components);
+        assertEquals(numComponents, buf.numComponents());
+
+        // Sequential, backward and random access must all agree.
+        for (int i = 0; i < expectedBytes.length; i ++) {
+            assertEquals(expectedBytes[i], buf.getByte(i));
+        }
+        for (int i = expectedBytes.length - 1; i >= 0; i --) {
+            assertEquals(expectedBytes[i], buf.getByte(i));
+        }
+        for (int i = 0; i < 1000; i ++) {
+            int index = random.nextInt(expectedBytes.length);
+            assertEquals(expectedBytes[index], buf.getByte(index));
+        }
+
+        assertEquals(numComponents, buf.toByteBuffers().length);
+        assertEquals(wrappedBuffer(order, expectedBytes), buf);
+    }
+
+    @Test
+    public void testGetBytesToGatheringByteChannelWritesComponents() throws IOException {
+        CompositeChannelBuffer buf = (CompositeChannelBuffer) wrappedBuffer(
+                false, wrappedBuffer(order, new byte[] { 1, 2, 3 }),
+                wrappedBuffer(order, new byte[] { 4, 5 }), wrappedBuffer(order, new byte[] { 6 }));
+        final List<ByteBuffer> written = new ArrayList<ByteBuffer>();
+        GatheringByteChannel channel = new GatheringByteChannel() {
+            public long write(ByteBuffer[] srcs, int offset, int length) {
+                throw new UnsupportedOperationException();
+            }
+
+            public long write(ByteBuffer[] srcs) {
+                throw new UnsupportedOperationException();
+            }
+
+            public int write(ByteBuffer src) {
+                int length = src.remaining();
+                written.add(src.duplicate());
+                src.position(src.limit());
+                return length;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+                // NOOP
+            }
+        };
+
+        assertEquals(5, buf.getBytes(1, channel, 5));
+        assertEquals(3, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[] { 2, 3 }), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[] { 4, 5 }), written.get(1));
+        assertEquals(ByteBuffer.wrap(new byte[] { 6 }), written.get(2));
+    }
 }
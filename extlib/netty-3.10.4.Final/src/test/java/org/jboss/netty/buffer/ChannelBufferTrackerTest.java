@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests sampled buffer allocation tracking
+ */
+public class ChannelBufferTrackerTest {
+
+    @Test
+    public void shouldNotWrapWhenDisabled() {
+        ChannelBufferTracker tracker = new ChannelBufferTracker(0);
+        ChannelBufferFactory factory = HeapChannelBufferFactory.getInstance();
+        assertFalse(tracker.isEnabled());
+        assertSame(factory, tracker.track(factory));
+    }
+
+    @Test
+    public void shouldSampleAllocations() {
+        ChannelBufferTracker tracker = new ChannelBufferTracker(4);
+        ChannelBufferFactory factory = tracker.track(HeapChannelBufferFactory.getInstance());
+        List<ChannelBuffer> buffers = new ArrayList<ChannelBuffer>();
+        for (int i = 0; i < 16; i ++) {
+            buffers.add(factory.getBuffer(100));
+        }
+
+        Map<String, Long> liveBytes = tracker.getLiveBytesPerSite();
+        assertEquals(1, liveBytes.size());
+        assertEquals(Long.valueOf(400), liveBytes.values().iterator().next());
+        assertEquals(16, buffers.size());
+    }
+
+    @Test
+    public void shouldNotCountReleasedBuffers() {
+        ChannelBufferTracker tracker = new ChannelBufferTracker(1);
+        ChannelBufferFactory factory = tracker.track(new PooledChannelBufferFactory());
+        ReleasableChannelBuffer a = (ReleasableChannelBuffer) factory.getBuffer(64);
+        ReleasableChannelBuffer b = (ReleasableChannelBuffer) factory.getBuffer(64);
+        assertEquals(Long.valueOf(128), tracker.getLiveBytesPerSite().values().iterator().next());
+
+        a.release();
+        assertEquals(Long.valueOf(64), tracker.getLiveBytesPerSite().values().iterator().next());
+        b.release();
+        assertTrue(tracker.getLiveBytesPerSite().isEmpty());
+    }
+
+    @Test
+    public void shouldReportBuffersRetainedAfterClose() {
+        ChannelBufferTracker tracker = new ChannelBufferTracker(1);
+        ChannelBufferFactory factory = tracker.track(HeapChannelBufferFactory.getInstance());
+        ChannelBuffer buf = factory.getBuffer(100);
+        assertTrue(tracker.getRetainedAfterClose().isEmpty());
+
+        // Buffers allocated after a factory change belong to the same owner.
+        factory = tracker.track(DirectChannelBufferFactory.getInstance(), factory);
+        ChannelBuffer direct = factory.getBuffer(10);
+
+        tracker.closed(factory, "owner");
+        List<String> retained = tracker.getRetainedAfterClose();
+        assertEquals(2, retained.size());
+        assertTrue(retained.get(0).contains("size class: 128") || retained.get(1).contains("size class: 128"));
+        assertTrue(retained.get(0).contains("owner: owner"));
+        assertNotNull(buf);
+        assertNotNull(direct);
+    }
+
+    @Test
+    public void shouldDescribeSiteUpToFirstCallerOutsideOfNetty() {
+        StackTraceElement[] trace = {
+                frame("org.jboss.netty.buffer.ChannelBuffers"),
+                frame("org.jboss.netty.handler.codec.frame.FrameDecoder"),
+                frame("org.jboss.netty.channel.SimpleChannelUpstreamHandler"),
+                frame("com.example.Handler"),
+                frame("org.jboss.netty.channel.DefaultChannelPipeline") };
+        assertEquals(
+                "org.jboss.netty.handler.codec.frame.FrameDecoder.m(Test.java:1)\n" +
+                "\tat org.jboss.netty.channel.SimpleChannelUpstreamHandler.m(Test.java:1)\n" +
+                "\tat com.example.Handler.m(Test.java:1)",
+                ChannelBufferTracker.allocationSite(trace));
+    }
+
+    @Test
+    public void shouldLimitSiteLength() {
+        StackTraceElement[] trace = new StackTraceElement[ChannelBufferTracker.MAX_SITE_FRAMES + 2];
+        trace[0] = frame("org.jboss.netty.buffer.ChannelBuffers");
+        for (int i = 1; i < trace.length; i ++) {
+            trace[i] = frame("org.jboss.netty.channel.socket.nio.NioWorker");
+        }
+        String site = ChannelBufferTracker.allocationSite(trace);
+        assertEquals(ChannelBufferTracker.MAX_SITE_FRAMES, site.split("\n").length);
+        assertFalse(site.contains("ChannelBuffers"));
+    }
+
+    @Test
+    public void shouldRoundSizeClassUp() {
+        assertEquals(1, ChannelBufferTracker.sizeClass(0));
+        assertEquals(64, ChannelBufferTracker.sizeClass(64));
+        assertEquals(128, ChannelBufferTracker.sizeClass(65));
+        assertEquals(Integer.MAX_VALUE, ChannelBufferTracker.sizeClass(Integer.MAX_VALUE));
+    }
+
+    private static StackTraceElement frame(String className) {
+        return new StackTraceElement(className, "m", "Test.java", 1);
+    }
+}
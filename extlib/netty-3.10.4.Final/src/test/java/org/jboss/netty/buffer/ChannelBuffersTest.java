@@ -21,7 +21,9 @@ import org.junit.Test;
 
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -323,6 +325,26 @@ public class ChannelBuffersTest {
                         ByteBuffer.wrap(new byte[] { 3 })));
     }
 
+    @Test
+    public void testCopiedBufferWithCharsets() throws Exception {
+        String text = "a\u00e9\u20ac\ud83d\ude00\ud800z";
+        Charset[] charsets = {
+                CharsetUtil.UTF_8, CharsetUtil.ISO_8859_1, CharsetUtil.US_ASCII, CharsetUtil.UTF_16 };
+        for (Charset charset: charsets) {
+            ChannelBuffer expected = wrappedBuffer(CharsetUtil.getEncoder(charset).encode(CharBuffer.wrap(text)));
+            assertEquals(charset.name(), expected, copiedBuffer(text, charset));
+            assertEquals(charset.name(), expected, copiedBuffer(new StringBuilder(text), charset));
+            assertEquals(charset.name(), expected, copiedBuffer(text.toCharArray(), charset));
+        }
+
+        assertEquals(wrappedBuffer(new byte[] { 'a', '?', '?', '?', '?', 'z' }),
+                copiedBuffer(text, CharsetUtil.US_ASCII));
+        assertEquals(wrappedBuffer(new byte[] {
+                'a', (byte) 0xC3, (byte) 0xA9, (byte) 0xE2, (byte) 0x82, (byte) 0xAC,
+                (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, '?', 'z' }),
+                copiedBuffer(text, CharsetUtil.UTF_8));
+    }
+
     @Test
     public void testHexDump() {
         assertEquals("", hexDump(EMPTY_BUFFER));
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Tests chunked dynamic channel buffers
+ */
+public class ChunkedDynamicChannelBufferTest extends AbstractChannelBufferTest {
+
+    private ChannelBuffer buffer;
+
+    @Override
+    protected ChannelBuffer newBuffer(int length) {
+        // Use small chunks so that many accesses cross a chunk boundary.
+        buffer = new ChunkedDynamicChannelBuffer(
+                ByteOrder.BIG_ENDIAN, length & 15, 16, HeapChannelBufferFactory.getInstance());
+        buffer.ensureWritableBytes(length);
+
+        assertEquals(0, buffer.readerIndex());
+        assertEquals(0, buffer.writerIndex());
+        assertEquals(length, buffer.capacity());
+
+        return buffer;
+    }
+
+    @Override
+    protected ChannelBuffer[] components() {
+        return new ChannelBuffer[] { buffer };
+    }
+
+    @Test
+    public void shouldGrowWithoutCopying() {
+        ChunkedDynamicChannelBuffer buf = new ChunkedDynamicChannelBuffer(
+                ByteOrder.LITTLE_ENDIAN, 3, 8, HeapChannelBufferFactory.getInstance(ByteOrder.LITTLE_ENDIAN));
+        assertEquals(1, buf.numChunks());
+        for (int i = 0; i < 10; i ++) {
+            buf.writeLong(i);
+        }
+        // 3 + 10 * 8 = 83 bytes; chunks of 3, 8, 8, ...
+        assertEquals(11, buf.numChunks());
+        assertEquals(83, buf.capacity());
+        for (int i = 0; i < 10; i ++) {
+            assertEquals(i, buf.readLong());
+        }
+
+        ByteBuffer[] buffers = buf.toByteBuffers(0, 80);
+        assertEquals(11, buffers.length);
+        assertEquals(3, buffers[0].remaining());
+        assertEquals(5, buffers[10].remaining());
+
+        ChannelBuffer copy = buf.copy(1, 70);
+        assertEquals(buf.slice(1, 70), copy);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPowerOfTwoChunkSize() {
+        new ChunkedDynamicChannelBuffer(ByteOrder.BIG_ENDIAN, 0, 100, HeapChannelBufferFactory.getInstance());
+    }
+}
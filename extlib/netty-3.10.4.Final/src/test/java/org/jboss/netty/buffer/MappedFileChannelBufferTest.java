@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests memory-mapped file channel buffers
+ */
+public class MappedFileChannelBufferTest {
+
+    private final byte[] content = new byte[100];
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    @Before
+    public void init() throws Exception {
+        new Random(42).nextBytes(content);
+        file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+    }
+
+    @After
+    public void dispose() throws Exception {
+        raf.close();
+    }
+
+    @Test
+    public void shouldMapFileRegion() throws Exception {
+        ChannelBuffer buf = ChannelBuffers.wrappedMappedFile(channel, 10, 80);
+        assertEquals(0, buf.readerIndex());
+        assertEquals(80, buf.writerIndex());
+        assertTrue(buf.isDirect());
+        assertEquals(ChannelBuffers.wrappedBuffer(content, 10, 80), buf);
+    }
+
+    @Test
+    public void shouldReadAcrossRegions() throws Exception {
+        // 16-byte regions so that every multi-byte access crosses a region boundary somewhere.
+        ChannelBuffer buf = new MappedFileChannelBuffer(channel, 3, 90, 4);
+        ChannelBuffer expected = ChannelBuffers.wrappedBuffer(content, 3, 90);
+        for (int i = 0; i < 90; i ++) {
+            assertEquals(expected.getByte(i), buf.getByte(i));
+        }
+        for (int i = 0; i <= 88; i ++) {
+            assertEquals(expected.getShort(i), buf.getShort(i));
+        }
+        for (int i = 0; i <= 87; i ++) {
+            assertEquals(expected.getUnsignedMedium(i), buf.getUnsignedMedium(i));
+        }
+        for (int i = 0; i <= 86; i ++) {
+            assertEquals(expected.getInt(i), buf.getInt(i));
+        }
+        for (int i = 0; i <= 82; i ++) {
+            assertEquals(expected.getLong(i), buf.getLong(i));
+        }
+
+        byte[] dst = new byte[50];
+        buf.getBytes(20, dst);
+        assertEquals(expected.slice(20, 50), ChannelBuffers.wrappedBuffer(dst));
+        assertEquals(expected.slice(7, 40), ChannelBuffers.wrappedBuffer(buf.toByteBuffer(7, 40)));
+        assertEquals(expected.copy(5, 60), buf.copy(5, 60));
+    }
+
+    @Test
+    public void shouldSliceWithoutCopy() throws Exception {
+        ChannelBuffer buf = new MappedFileChannelBuffer(channel, 0, 100, 4);
+        ChannelBuffer slice = buf.slice(30, 40);
+        assertTrue(slice instanceof MappedFileChannelBuffer);
+        assertEquals(ChannelBuffers.wrappedBuffer(content, 30, 40), slice);
+
+        ChannelBuffer sliceOfSlice = slice.slice(5, 20);
+        assertTrue(sliceOfSlice instanceof MappedFileChannelBuffer);
+        assertEquals(ChannelBuffers.wrappedBuffer(content, 35, 20), sliceOfSlice);
+
+        // 35..54 touches the regions starting at 32 and 48.
+        ByteBuffer[] regions = sliceOfSlice.toByteBuffers();
+        assertEquals(2, regions.length);
+        assertEquals(13, regions[0].remaining());
+        assertEquals(7, regions[1].remaining());
+        assertEquals(content[35], regions[0].get(0));
+        assertEquals(content[48], regions[1].get(0));
+    }
+
+    @Test
+    public void shouldBeReadOnly() throws Exception {
+        ChannelBuffer buf = ChannelBuffers.wrappedMappedFile(channel, 0, 100);
+        try {
+            buf.setByte(0, 1);
+            fail();
+        } catch (ReadOnlyBufferException e) {
+            // Expected
+        }
+        try {
+            buf.setBytes(0, new byte[1]);
+            fail();
+        } catch (ReadOnlyBufferException e) {
+            // Expected
+        }
+        assertFalse(buf.writable());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldFailOnOutOfRangeAccess() throws Exception {
+        new MappedFileChannelBuffer(channel, 0, 100, 4).getInt(97);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTooLongRegion() throws Exception {
+        ChannelBuffers.wrappedMappedFile(channel, 0, Integer.MAX_VALUE + 1L);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteOrder;
+
+/**
+ * Tests pooled direct channel buffers
+ */
+public class PooledDirectChannelBufferTest extends AbstractChannelBufferTest {
+
+    private final PooledChannelBufferFactory factory =
+            new PooledChannelBufferFactory(ByteOrder.LITTLE_ENDIAN, true);
+    private ChannelBuffer buffer;
+
+    @Override
+    protected ChannelBuffer newBuffer(int length) {
+        buffer = factory.getBuffer(length);
+        assertTrue(buffer instanceof ReleasableChannelBuffer);
+        assertTrue(buffer.isDirect());
+        assertSame(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertEquals(0, buffer.writerIndex());
+        return buffer;
+    }
+
+    @Override
+    protected ChannelBuffer[] components() {
+        return new ChannelBuffer[] { buffer };
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Tests pooled heap channel buffers
+ */
+public class PooledHeapChannelBufferTest extends AbstractChannelBufferTest {
+
+    private final PooledChannelBufferFactory factory =
+            new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, false, 65536, 1, 262144, 4194304);
+    private ChannelBuffer buffer;
+
+    @Override
+    protected ChannelBuffer newBuffer(int length) {
+        buffer = factory.getBuffer(length);
+        assertTrue(buffer instanceof ReleasableChannelBuffer);
+        assertEquals(length, buffer.capacity());
+        assertEquals(0, buffer.writerIndex());
+        return buffer;
+    }
+
+    @Override
+    protected ChannelBuffer[] components() {
+        return new ChannelBuffer[] { buffer };
+    }
+
+    @Test
+    public void shouldReuseReleasedChunk() {
+        ChannelBuffer a = factory.getBuffer(100);
+        byte[] array = a.array();
+        assertEquals(128, array.length);
+        assertTrue(ChannelBuffers.release(a));
+
+        ChannelBuffer b = factory.getBuffer(120);
+        assertSame(array, b.array());
+        assertEquals(120, b.capacity());
+    }
+
+    @Test
+    public void shouldReleaseOnlyWhenReferenceCountReachesZero() {
+        ReleasableChannelBuffer a = (ReleasableChannelBuffer) factory.getBuffer(100);
+        assertEquals(1, a.refCnt());
+        assertSame(a, a.retain());
+        assertEquals(2, a.refCnt());
+        assertFalse(a.release());
+        a.setByte(0, 1);
+        assertTrue(a.release());
+        assertEquals(0, a.refCnt());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotAllowAccessAfterRelease() {
+        ChannelBuffer a = factory.getBuffer(100);
+        ChannelBuffer slice = a.slice(0, 10);
+        ChannelBuffers.release(a);
+        slice.getByte(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotAllowDoubleRelease() {
+        ReleasableChannelBuffer a = (ReleasableChannelBuffer) factory.getBuffer(100);
+        a.release();
+        a.release();
+    }
+
+    @Test
+    public void shouldNotPoolLargeOrForeignOrderBuffers() {
+        assertFalse(factory.getBuffer(65537) instanceof ReleasableChannelBuffer);
+        assertFalse(factory.getBuffer(ByteOrder.LITTLE_ENDIAN, 16) instanceof ReleasableChannelBuffer);
+        assertFalse(ChannelBuffers.release(ChannelBuffers.buffer(16)));
+    }
+
+    @Test
+    public void shouldReturnChunkToItsArenaWhenReleasedByAnotherThread() throws Exception {
+        final ChannelBuffer a = factory.getBuffer(1000);
+        byte[] array = a.array();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                ChannelBuffers.release(a);
+            }
+        };
+        t.start();
+        t.join();
+
+        assertSame(array, factory.getBuffer(1000).array());
+    }
+}
@@ -19,6 +19,10 @@ import org.junit.Test;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -34,6 +38,10 @@ public class AbstractChannelTest {
             super(DUMMY_ID, null, null, pipeline, sink);
             config = new DefaultChannelConfig();
         }
+        TestChannel(ChannelSink sink) {
+            super(null, null, new DefaultChannelPipeline(), sink);
+            config = new DefaultChannelConfig();
+        }
         public ChannelConfig getConfig() {
             return config;
         }
@@ -117,4 +125,136 @@ public class AbstractChannelTest {
         assertEquals("false true ", buf.toString());
         assertEquals(0, channel.getInterestOps() & Channel.OP_WRITE);
     }
+
+    @Test
+    public void testAttributes() {
+        ChannelAttributeKey<String> a = new ChannelAttributeKey<String>("a");
+        ChannelAttributeKey<Integer> b = new ChannelAttributeKey<Integer>("b");
+        TestChannel channel = new TestChannel(new DefaultChannelPipeline(), new TestChannelSink());
+
+        assertNull(channel.getAttribute(a));
+        assertNull(channel.getAttribute(b));
+        assertNull(channel.setAttribute(b, 1));
+        assertNull(channel.getAttribute(a));
+        assertEquals(Integer.valueOf(1), channel.getAttribute(b));
+
+        assertNull(channel.setAttributeIfAbsent(a, "x"));
+        assertEquals("x", channel.setAttributeIfAbsent(a, "y"));
+        assertEquals("x", channel.setAttribute(a, "z"));
+        assertEquals("z", channel.getAttribute(a));
+
+        assertEquals("z", channel.removeAttribute(a));
+        assertNull(channel.getAttribute(a));
+        assertNull(channel.removeAttribute(a));
+        assertEquals(Integer.valueOf(1), channel.getAttribute(b));
+    }
+
+    @Test
+    public void testChannelLocal() {
+        ChannelLocal<String> local = new ChannelLocal<String>(true);
+        TestChannel channel1 = new TestChannel(new TestChannelSink());
+        TestChannel channel2 = new TestChannel(new TestChannelSink());
+
+        assertNull(local.get(channel1));
+        assertNull(local.set(channel1, "1"));
+        assertNull(local.setIfAbsent(channel2, "2"));
+        assertEquals("1", local.get(channel1));
+        assertEquals("2", local.get(channel2));
+
+        int count = 0;
+        for (Iterator<Entry<Channel, String>> i = local.iterator(); i.hasNext();) {
+            Entry<Channel, String> e = i.next();
+            assertEquals(e.getKey() == channel1? "1" : "2", e.getValue());
+            count ++;
+        }
+        assertEquals(2, count);
+
+        // Removed on close.
+        channel1.setClosed();
+        assertNull(local.get(channel1));
+        assertEquals("2", local.get(channel2));
+        Iterator<Entry<Channel, String>> i = local.iterator();
+        assertSame(channel2, i.next().getKey());
+        assertFalse(i.hasNext());
+
+        assertEquals("2", local.remove(channel2));
+        assertNull(local.get(channel2));
+        assertFalse(local.iterator().hasNext());
+    }
+
+    @Test
+    public void testChannelLocalWithExplicitId() {
+        ChannelLocal<String> local = new ChannelLocal<String>();
+        TestChannel channel1 = new TestChannel(new DefaultChannelPipeline(), new TestChannelSink());
+        TestChannel channel2 = new TestChannel(new DefaultChannelPipeline(), new TestChannelSink());
+
+        // The channels are not tracked by their ID but must be iterated anyway.
+        assertNull(local.set(channel1, "1"));
+        assertNull(local.setIfAbsent(channel2, "2"));
+        int count = 0;
+        for (Iterator<Entry<Channel, String>> i = local.iterator(); i.hasNext();) {
+            Entry<Channel, String> e = i.next();
+            assertEquals(e.getKey() == channel1? "1" : "2", e.getValue());
+            count ++;
+        }
+        assertEquals(2, count);
+
+        assertEquals("1", local.remove(channel1));
+        Iterator<Entry<Channel, String>> i = local.iterator();
+        assertSame(channel2, i.next().getKey());
+        assertFalse(i.hasNext());
+
+        // Closed channels are not included.
+        channel2.setClosed();
+        assertFalse(local.iterator().hasNext());
+    }
+
+    @Test
+    public void testChannelLocalInitialValue() {
+        ChannelLocal<String> local = new ChannelLocal<String>() {
+            @Override
+            protected String initialValue(Channel channel) {
+                return "initial";
+            }
+        };
+        TestChannel channel = new TestChannel(new DefaultChannelPipeline(), new TestChannelSink());
+
+        assertEquals("initial", local.get(channel));
+        assertEquals("initial", local.set(channel, "other"));
+        assertEquals("other", local.remove(channel));
+        assertEquals("initial", local.remove(channel));
+    }
+
+    @Test
+    public void testIdAllocation() {
+        TestChannel[] channels = new TestChannel[200];
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int i = 0; i < channels.length; i ++) {
+            channels[i] = new TestChannel(new TestChannelSink());
+            assertTrue(ids.add(channels[i].getId()));
+        }
+        for (TestChannel c: channels) {
+            assertSame(c, Channels.findChannel(c.getId()));
+        }
+
+        for (int i = 0; i < channels.length; i += 2) {
+            channels[i].setClosed();
+        }
+        for (int i = 0; i < channels.length; i ++) {
+            if (i % 2 == 0) {
+                assertNull(Channels.findChannel(channels[i].getId()));
+            } else {
+                assertSame(channels[i], Channels.findChannel(channels[i].getId()));
+            }
+        }
+
+        // The channels created with an ID are not found.
+        TestChannel c = new TestChannel(new DefaultChannelPipeline(), new TestChannelSink());
+        assertNotSame(c, Channels.findChannel(c.getId()));
+
+        for (int i = 1; i < channels.length; i += 2) {
+            channels[i].setClosed();
+            assertNull(Channels.findChannel(channels[i].getId()));
+        }
+    }
 }
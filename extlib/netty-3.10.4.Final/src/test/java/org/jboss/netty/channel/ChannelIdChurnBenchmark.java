@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import java.net.SocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the rate at which channels can be opened and closed concurrently,
+ * which is dominated by the allocation and release of their IDs, while a large
+ * population of channels stays open.  It is not run as part of the tests:
+ * <pre>
+ * java org.jboss.netty.channel.ChannelIdChurnBenchmark [threads] [channels]
+ * </pre>
+ */
+public final class ChannelIdChurnBenchmark {
+
+    private static final int LIVE_CHANNELS = 100000;
+    private static final int RING_SIZE = 64;
+    private static final int ROUNDS = 5;
+
+    private static final ChannelSink SINK = new AbstractChannelSink() {
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            // Do nothing
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int channels = args.length > 1? Integer.parseInt(args[1]) : 2000000;
+
+        BenchmarkChannel[] live = new BenchmarkChannel[LIVE_CHANNELS];
+        for (int i = 0; i < live.length; i ++) {
+            live[i] = new BenchmarkChannel();
+        }
+
+        for (int round = 0; round < ROUNDS; round ++) {
+            run(round, threads, channels / threads);
+        }
+
+        for (BenchmarkChannel c: live) {
+            c.setClosed();
+        }
+    }
+
+    private static void run(int round, int threads, final int channelsPerThread) throws Exception {
+        final CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i ++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    // Keep a few channels of every thread open, so that the
+                    // IDs are not released in the order they were allocated.
+                    BenchmarkChannel[] ring = new BenchmarkChannel[RING_SIZE];
+                    for (int j = 0; j < channelsPerThread; j ++) {
+                        int k = j % RING_SIZE;
+                        if (ring[k] != null) {
+                            ring[k].setClosed();
+                        }
+                        ring[k] = new BenchmarkChannel();
+                    }
+                    for (BenchmarkChannel c: ring) {
+                        if (c != null) {
+                            c.setClosed();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+
+        long elapsedNanos = System.nanoTime() - start;
+        long channels = (long) threads * channelsPerThread;
+        System.out.println(
+                "threads=" + threads + " round=" + round + ": " + channels + " channels in " +
+                elapsedNanos / 1000000 + " ms (" + elapsedNanos / channels + " ns/channel, " +
+                channels * 1000000000L / elapsedNanos + " channels/s)");
+    }
+
+    private static final class BenchmarkChannel extends AbstractChannel {
+
+        BenchmarkChannel() {
+            super(null, null, new DefaultChannelPipeline(), SINK);
+        }
+
+        @Override
+        protected boolean setClosed() {
+            return super.setClosed();
+        }
+
+        public ChannelConfig getConfig() {
+            return null;
+        }
+
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        public boolean isBound() {
+            return false;
+        }
+
+        public boolean isConnected() {
+            return false;
+        }
+    }
+
+    private ChannelIdChurnBenchmark() {
+        // Unused
+    }
+}
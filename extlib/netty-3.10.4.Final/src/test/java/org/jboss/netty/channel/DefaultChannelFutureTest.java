@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class DefaultChannelFutureTest {
+
+    private final Channel channel = createMock(Channel.class);
+
+    @Test
+    public void testSuccess() {
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, true);
+        assertFalse(future.isDone());
+        assertTrue(future.setSuccess());
+        assertTrue(future.isDone());
+        assertTrue(future.isSuccess());
+        assertNull(future.getCause());
+        assertFalse(future.isCancelled());
+
+        assertFalse(future.setSuccess());
+        assertFalse(future.setFailure(new Exception()));
+        assertFalse(future.cancel());
+        assertTrue(future.isSuccess());
+    }
+
+    @Test
+    public void testFailure() {
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        Exception cause = new Exception();
+        assertTrue(future.setFailure(cause));
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccess());
+        assertSame(cause, future.getCause());
+        assertFalse(future.setSuccess());
+    }
+
+    @Test
+    public void testCancel() {
+        assertFalse(new DefaultChannelFuture(channel, false).cancel());
+
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, true);
+        assertTrue(future.cancel());
+        assertTrue(future.isDone());
+        assertTrue(future.isCancelled());
+        assertFalse(future.isSuccess());
+        assertNull(future.getCause());
+    }
+
+    @Test
+    public void testListenersAreNotifiedInOrderOfAddition() {
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        List<Integer> notified = new ArrayList<Integer>();
+        for (int i = 0; i < 5; i ++) {
+            future.addListener(new RecordingListener(notified, i));
+        }
+        assertTrue(notified.isEmpty());
+
+        future.setSuccess();
+        assertEquals(5, notified.size());
+        for (int i = 0; i < 5; i ++) {
+            assertEquals(Integer.valueOf(i), notified.get(i));
+        }
+
+        // Notified right away once done.
+        future.addListener(new RecordingListener(notified, 5));
+        assertEquals(6, notified.size());
+        assertEquals(Integer.valueOf(5), notified.get(5));
+    }
+
+    @Test
+    public void testRemoveListener() {
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        List<Integer> notified = new ArrayList<Integer>();
+        ChannelFutureListener a = new RecordingListener(notified, 0);
+        ChannelFutureListener b = new RecordingListener(notified, 1);
+        ChannelFutureListener c = new RecordingListener(notified, 2);
+        future.addListener(a);
+        future.addListener(b);
+        future.addListener(c);
+        future.addListener(b);
+
+        // Removes the first occurrence only.
+        future.removeListener(b);
+        future.removeListener(new RecordingListener(notified, 3));
+        future.setSuccess();
+
+        assertEquals(3, notified.size());
+        assertEquals(Integer.valueOf(0), notified.get(0));
+        assertEquals(Integer.valueOf(2), notified.get(1));
+        assertEquals(Integer.valueOf(1), notified.get(2));
+    }
+
+    @Test
+    public void testProgressListeners() {
+        DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        final List<Long> progress = new ArrayList<Long>();
+        future.addListener(new RecordingListener(new ArrayList<Integer>(), 0));
+        future.addListener(new ChannelFutureProgressListener() {
+            public void operationProgressed(
+                    ChannelFuture future, long amount, long current, long total) {
+                progress.add(amount);
+            }
+
+            public void operationComplete(ChannelFuture future) {
+                // Ignore
+            }
+        });
+
+        assertTrue(future.setProgress(1, 1, 3));
+        assertTrue(future.setProgress(2, 3, 3));
+        future.setSuccess();
+        assertFalse(future.setProgress(3, 6, 3));
+
+        assertEquals(2, progress.size());
+        assertEquals(Long.valueOf(1), progress.get(0));
+        assertEquals(Long.valueOf(2), progress.get(1));
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        final DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+        assertFalse(future.await(10, TimeUnit.MILLISECONDS));
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                future.setSuccess();
+            }
+        };
+        t.start();
+
+        assertTrue(future.await(10, TimeUnit.SECONDS));
+        assertTrue(future.isSuccess());
+        future.awaitUninterruptibly();
+        t.join();
+    }
+
+    @Test
+    public void testConcurrentListenersAndCompletion() throws Exception {
+        for (int round = 0; round < 100; round ++) {
+            final DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+            final AtomicInteger notified = new AtomicInteger();
+            final ChannelFutureListener listener = new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture f) {
+                    notified.incrementAndGet();
+                }
+            };
+
+            final int threads = 4;
+            final int listenersPerThread = 100;
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i ++) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        }
+                        for (int j = 0; j < listenersPerThread; j ++) {
+                            future.addListener(listener);
+                        }
+                        done.countDown();
+                    }
+                }.start();
+            }
+
+            start.countDown();
+            future.setSuccess();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(threads * listenersPerThread, notified.get());
+        }
+    }
+
+    private static final class RecordingListener implements ChannelFutureListener {
+        private final List<Integer> notified;
+        private final int id;
+
+        RecordingListener(List<Integer> notified, int id) {
+            this.notified = notified;
+            this.id = id;
+        }
+
+        public void operationComplete(ChannelFuture future) {
+            notified.add(id);
+        }
+    }
+}
@@ -18,9 +18,11 @@ package org.jboss.netty.channel;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 public class DefaultChannelPipelineTest {
@@ -49,6 +51,97 @@ public class DefaultChannelPipelineTest {
         assertSame(pipeline.get("handler2"), newHandler2);
     }
 
+    @Test
+    public void testAddBeforeAndAfter() {
+        DefaultChannelPipeline pipeline = new DefaultChannelPipeline();
+        pipeline.addLast("b", new SimpleChannelHandler());
+        pipeline.addFirst("a", new SimpleChannelHandler());
+        pipeline.addLast("e", new SimpleChannelHandler());
+        pipeline.addAfter("b", "d", new SimpleChannelHandler());
+        pipeline.addBefore("d", "c", new SimpleChannelHandler());
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), pipeline.getNames());
+
+        pipeline.remove("c");
+        pipeline.removeFirst();
+        pipeline.removeLast();
+        assertEquals(Arrays.asList("b", "d"), pipeline.getNames());
+        assertNull(pipeline.get("c"));
+        assertNotNull(pipeline.getContext("d"));
+    }
+
+    @Test
+    public void testEventsSkipHandlersOfTheOtherDirection() {
+        final List<String> order = new ArrayList<String>();
+        DefaultChannelPipeline pipeline = new DefaultChannelPipeline();
+        pipeline.addLast("up1", new RecordingUpstreamHandler(order, "up1"));
+        pipeline.addLast("down1", new RecordingDownstreamHandler(order, "down1"));
+        pipeline.addLast("up2", new RecordingUpstreamHandler(order, "up2"));
+        pipeline.addLast("down2", new RecordingDownstreamHandler(order, "down2"));
+
+        Channel channel = createNiceMock(Channel.class);
+        replay(channel);
+        pipeline.sendUpstream(new UpstreamMessageEvent(channel, "msg", null));
+        assertEquals(Arrays.asList("up1", "up2"), order);
+
+        order.clear();
+        pipeline.sendDownstream(new DownstreamMessageEvent(
+                channel, new DefaultChannelFuture(channel, false), "msg", null));
+        assertEquals(Arrays.asList("down2", "down1"), order);
+    }
+
+    @Test
+    public void testRemovedHandlerForwardsToTheRestOfThePipeline() {
+        final List<String> order = new ArrayList<String>();
+        final DefaultChannelPipeline pipeline = new DefaultChannelPipeline();
+        pipeline.addLast("up1", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) {
+                order.add("up1");
+                pipeline.remove(this);
+                pipeline.remove("up2");
+                ctx.sendUpstream(e);
+            }
+        });
+        pipeline.addLast("up2", new RecordingUpstreamHandler(order, "up2"));
+        pipeline.addLast("up3", new RecordingUpstreamHandler(order, "up3"));
+
+        Channel channel = createNiceMock(Channel.class);
+        replay(channel);
+        pipeline.sendUpstream(new UpstreamMessageEvent(channel, "msg", null));
+        assertEquals(Arrays.asList("up1", "up2", "up3"), order);
+        assertEquals(Arrays.asList("up3"), pipeline.getNames());
+    }
+
+    private static final class RecordingUpstreamHandler implements ChannelUpstreamHandler {
+        private final List<String> order;
+        private final String name;
+
+        RecordingUpstreamHandler(List<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) {
+            order.add(name);
+            ctx.sendUpstream(e);
+        }
+    }
+
+    private static final class RecordingDownstreamHandler implements ChannelDownstreamHandler {
+        private final List<String> order;
+        private final String name;
+
+        RecordingDownstreamHandler(List<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent e) {
+            order.add(name);
+            ctx.sendDownstream(e);
+        }
+    }
+
     // Test for #505
     @Test
     public void testToString() {
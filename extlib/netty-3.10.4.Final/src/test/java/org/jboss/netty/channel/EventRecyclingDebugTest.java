@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import static org.jboss.netty.channel.EventRecyclingTest.*;
+import static org.junit.Assert.*;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the detection of recycled events being accessed.  Only runs when both
+ * the {@code org.jboss.netty.recycleEvents} and
+ * {@code org.jboss.netty.recycleEvents.debug} system properties are
+ * {@code true}.
+ */
+public class EventRecyclingDebugTest {
+
+    @Before
+    public void checkRecyclingDebugEnabled() {
+        Assume.assumeTrue(EventRecycling.DEBUG);
+    }
+
+    @Test
+    public void testRecycledUpstreamMessageEvent() {
+        RecordingHandler handler = new RecordingHandler();
+        Channel channel = newChannel(handler);
+
+        Channels.fireMessageReceived(channel, "first");
+        Channels.fireMessageReceived(channel, "second");
+
+        assertEquals(2, handler.events.size());
+        MessageEvent e = (MessageEvent) handler.events.get(0);
+        // Recycled events are never reused in debug mode.
+        assertNotSame(e, handler.events.get(1));
+        try {
+            e.getMessage();
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+        try {
+            e.getRemoteAddress();
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+        try {
+            e.getChannel();
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRecycledWriteCompletionEvent() {
+        RecordingHandler handler = new RecordingHandler();
+        Channel channel = newChannel(handler);
+
+        Channels.fireWriteComplete(channel, 10);
+        Channels.fireWriteComplete(channel, 20);
+
+        assertEquals(2, handler.events.size());
+        WriteCompletionEvent e = (WriteCompletionEvent) handler.events.get(0);
+        assertNotSame(e, handler.events.get(1));
+        try {
+            e.getWrittenAmount();
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRecycledDownstreamMessageEvent() {
+        RecordingSink sink = new RecordingSink();
+        Channel channel = new TestChannel(new DefaultChannelPipeline(), sink);
+
+        Channels.write(channel, "message");
+
+        DownstreamMessageEvent e = sink.event;
+        assertNotNull(e);
+        // The sink has recycled the event once it has been written.
+        try {
+            e.getMessage();
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+        try {
+            e.getFuture();
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testUnpooledEventIsNotRecycled() {
+        Channel channel = newChannel(new RecordingHandler());
+        DownstreamMessageEvent e = new DownstreamMessageEvent(
+                channel, Channels.future(channel), "message", null);
+
+        e.recycle();
+
+        assertEquals("message", e.getMessage());
+        assertSame(channel, e.getChannel());
+    }
+
+    private static final class RecordingSink extends AbstractChannelSink {
+        DownstreamMessageEvent event;
+
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            if (e instanceof DownstreamMessageEvent) {
+                event = (DownstreamMessageEvent) e;
+                event.getFuture().setSuccess();
+                event.recycle();
+            }
+        }
+    }
+}
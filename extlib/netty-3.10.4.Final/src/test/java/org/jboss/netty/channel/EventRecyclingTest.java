@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioSocketChannel;
+import org.jboss.netty.util.TestUtil;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the reuse of pooled events.  Only runs when the
+ * {@code org.jboss.netty.recycleEvents} system property is {@code true}.
+ */
+public class EventRecyclingTest {
+
+    @Before
+    public void checkRecyclingEnabled() {
+        Assume.assumeTrue(EventRecycling.ENABLED && !EventRecycling.DEBUG);
+    }
+
+    @Test
+    public void testUpstreamMessageEventIsReused() {
+        RecordingHandler handler = new RecordingHandler();
+        Channel channel = newChannel(handler);
+        SocketAddress remoteAddress = new InetSocketAddress(3);
+
+        Channels.fireMessageReceived(channel, "first", remoteAddress);
+        Channels.fireMessageReceived(channel, "second");
+
+        assertEquals(2, handler.events.size());
+        assertSame(handler.events.get(0), handler.events.get(1));
+        assertEquals("first", handler.messages.get(0));
+        assertEquals("second", handler.messages.get(1));
+        assertSame(remoteAddress, handler.remoteAddresses.get(0));
+        // The remote address of the first message must not leak into the second.
+        assertSame(channel.getRemoteAddress(), handler.remoteAddresses.get(1));
+    }
+
+    @Test
+    public void testWriteCompletionEventIsReused() {
+        RecordingHandler handler = new RecordingHandler();
+        Channel channel = newChannel(handler);
+
+        Channels.fireWriteComplete(channel, 10);
+        Channels.fireWriteComplete(channel, 20);
+
+        assertEquals(2, handler.events.size());
+        assertSame(handler.events.get(0), handler.events.get(1));
+        assertEquals(Long.valueOf(10), handler.messages.get(0));
+        assertEquals(Long.valueOf(20), handler.messages.get(1));
+    }
+
+    @Test
+    public void testDownstreamMessageEventIsReusedByNioWorker() throws Throwable {
+        ServerSocketChannel serverSocket = ServerSocketChannel.open();
+        serverSocket.socket().bind(new InetSocketAddress(0));
+
+        ClientBootstrap b = new ClientBootstrap(
+                new NioClientSocketChannelFactory(
+                        Executors.newCachedThreadPool(),
+                        Executors.newCachedThreadPool()));
+        final List<MessageEvent> writes = new ArrayList<MessageEvent>();
+        final List<Object> messages = new ArrayList<Object>();
+        b.getPipeline().addLast("handler", new SimpleChannelDownstreamHandler() {
+            @Override
+            public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+                writes.add(e);
+                messages.add(e.getMessage());
+                super.writeRequested(ctx, e);
+            }
+        });
+
+        try {
+            ChannelFuture f = b.connect(new InetSocketAddress(
+                    TestUtil.getLocalHost(),
+                    serverSocket.socket().getLocalPort()));
+            Socket s = serverSocket.accept().socket();
+            f.awaitUninterruptibly();
+            if (f.getCause() != null) {
+                throw f.getCause();
+            }
+            final NioSocketChannel ch = (NioSocketChannel) f.getChannel();
+
+            // Write from the I/O thread, which is where the worker returns
+            // the completed write requests to their pool.
+            for (int i = 0; i < 2; i ++) {
+                final int value = i;
+                final BlockingQueue<ChannelFuture> futures = new LinkedBlockingQueue<ChannelFuture>();
+                ch.getWorker().executeInIoThread(new Runnable() {
+                    public void run() {
+                        futures.add(ch.write(ChannelBuffers.wrappedBuffer(new byte[] { (byte) value })));
+                    }
+                }, true);
+                ChannelFuture writeFuture = futures.poll(10, TimeUnit.SECONDS);
+                assertNotNull(writeFuture);
+                assertTrue(writeFuture.awaitUninterruptibly(10000));
+                assertTrue(writeFuture.isSuccess());
+            }
+
+            assertEquals(2, writes.size());
+            assertSame(writes.get(0), writes.get(1));
+            assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 0 }), messages.get(0));
+            assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 1 }), messages.get(1));
+            // A completed write request must not keep its message reachable.
+            assertNull(writes.get(0).getMessage());
+
+            byte[] received = new byte[2];
+            new DataInputStream(s.getInputStream()).readFully(received);
+            assertEquals(0, received[0]);
+            assertEquals(1, received[1]);
+
+            ch.close().awaitUninterruptibly();
+            s.close();
+        } finally {
+            b.releaseExternalResources();
+            serverSocket.close();
+        }
+    }
+
+    static Channel newChannel(ChannelHandler handler) {
+        DefaultChannelPipeline pipeline = new DefaultChannelPipeline();
+        pipeline.addLast("handler", handler);
+        return new TestChannel(pipeline);
+    }
+
+    static final class RecordingHandler extends SimpleChannelUpstreamHandler {
+        final List<ChannelEvent> events = new ArrayList<ChannelEvent>();
+        final List<Object> messages = new ArrayList<Object>();
+        final List<SocketAddress> remoteAddresses = new ArrayList<SocketAddress>();
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            events.add(e);
+            messages.add(e.getMessage());
+            remoteAddresses.add(e.getRemoteAddress());
+        }
+
+        @Override
+        public void writeComplete(ChannelHandlerContext ctx, WriteCompletionEvent e) {
+            events.add(e);
+            messages.add(e.getWrittenAmount());
+        }
+    }
+
+    static final class TestChannel extends AbstractChannel {
+        private final ChannelConfig config = new DefaultChannelConfig();
+        private final SocketAddress localAddress = new InetSocketAddress(1);
+        private final SocketAddress remoteAddress = new InetSocketAddress(2);
+
+        TestChannel(ChannelPipeline pipeline) {
+            this(pipeline, new AbstractChannelSink() {
+                public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+                    // Do nothing
+                }
+            });
+        }
+
+        TestChannel(ChannelPipeline pipeline, ChannelSink sink) {
+            super(null, null, pipeline, sink);
+        }
+
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        public SocketAddress getLocalAddress() {
+            return localAddress;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public boolean isBound() {
+            return true;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class VoidChannelFutureTest {
+
+    @Test
+    public void testConstantProperties() {
+        Channel channel = createMock(Channel.class);
+        ChannelFuture future = new VoidChannelFuture(channel);
+        assertSame(channel, future.getChannel());
+        assertFalse(future.isDone());
+        assertFalse(future.isSuccess());
+        assertFalse(future.isCancelled());
+        assertNull(future.getCause());
+        assertFalse(future.cancel());
+        assertTrue(future.setSuccess());
+        assertFalse(future.setProgress(1, 1, 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectListeners() {
+        new VoidChannelFuture(createMock(Channel.class)).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAwait() {
+        new VoidChannelFuture(createMock(Channel.class)).awaitUninterruptibly();
+    }
+
+    @Test
+    public void testWriteWithVoidFuture() throws Exception {
+        final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+        final BlockingQueue<Throwable> caught = new LinkedBlockingQueue<Throwable>();
+
+        ServerBootstrap sb = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                received.add(e.getMessage());
+            }
+        });
+        ClientBootstrap cb = new ClientBootstrap(new DefaultLocalClientChannelFactory());
+        cb.getPipeline().addLast("failer", new SimpleChannelDownstreamHandler() {
+            @Override
+            public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+                if ("fail".equals(e.getMessage())) {
+                    e.getFuture().setFailure(new Exception("fail"));
+                } else {
+                    super.writeRequested(ctx, e);
+                }
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                caught.add(e.getCause());
+            }
+        });
+
+        LocalAddress addr = new LocalAddress("VoidChannelFutureTest");
+        Channel sc = sb.bind(addr);
+        Channel cc = cb.connect(addr).awaitUninterruptibly().getChannel();
+        try {
+            ChannelFuture future = Channels.voidFuture(cc);
+            assertSame(future, Channels.voidFuture(cc));
+
+            Channels.write(cc, future, "hello");
+            assertEquals("hello", received.poll(10, TimeUnit.SECONDS));
+            assertTrue(caught.isEmpty());
+
+            Channels.write(cc, future, "fail");
+            assertEquals("fail", caught.poll(10, TimeUnit.SECONDS).getMessage());
+        } finally {
+            cc.close().awaitUninterruptibly();
+            sc.close().awaitUninterruptibly();
+            cb.releaseExternalResources();
+            sb.releaseExternalResources();
+        }
+    }
+}
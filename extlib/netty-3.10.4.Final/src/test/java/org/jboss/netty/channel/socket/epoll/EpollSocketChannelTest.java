@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.junit.Assert.*;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.SchedulingWorker;
+import org.jboss.netty.channel.socket.WorkerChannel;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EpollSocketChannelTest {
+
+    private static final int DATA_SIZE = 4 * 1024 * 1024;
+
+    private ExecutorService executor;
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private ServerHandler serverHandler;
+    private ClientHandler clientHandler;
+    private int port;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Epoll.isAvailable());
+
+        executor = Executors.newCachedThreadPool();
+        sb = new ServerBootstrap(new EpollServerSocketChannelFactory(executor, executor, 2));
+        cb = new ClientBootstrap(new EpollClientSocketChannelFactory(executor, 2));
+        serverHandler = new ServerHandler();
+        clientHandler = new ClientHandler();
+        sb.getPipeline().addLast("handler", serverHandler);
+        cb.getPipeline().addLast("handler", clientHandler);
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        assertTrue(sc instanceof EpollServerSocketChannel);
+        port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+    }
+
+    @After
+    public void tearDown() {
+        if (executor == null) {
+            return;
+        }
+        cb.shutdown();
+        sb.shutdown();
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testConnectAndClose() throws Throwable {
+        ChannelFuture f = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(f.awaitUninterruptibly(10, TimeUnit.SECONDS));
+        assertTrue(f.isSuccess());
+
+        Channel cc = f.getChannel();
+        assertTrue(cc instanceof EpollSocketChannel);
+        assertTrue(cc.isConnected());
+        assertEquals(port, ((InetSocketAddress) cc.getRemoteAddress()).getPort());
+
+        Channel accepted = serverHandler.channels.poll(10, TimeUnit.SECONDS);
+        assertTrue(accepted instanceof EpollSocketChannel);
+        assertEquals(cc.getLocalAddress(), accepted.getRemoteAddress());
+
+        // The peer notices the close by the end of the stream.
+        cc.close().awaitUninterruptibly();
+        assertFalse(cc.isOpen());
+        assertTrue(accepted.getCloseFuture().awaitUninterruptibly(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConnectRefused() throws Throwable {
+        // Find a port nobody listens to.
+        ServerSocket ss = new ServerSocket(0);
+        int closedPort = ss.getLocalPort();
+        ss.close();
+
+        ChannelFuture f = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), closedPort));
+        assertTrue(f.awaitUninterruptibly(10, TimeUnit.SECONDS));
+        assertFalse(f.isSuccess());
+        assertTrue(f.getCause() instanceof ConnectException);
+        assertTrue(f.getChannel().getCloseFuture().awaitUninterruptibly(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSuspendedReadStopsTheWriter() throws Throwable {
+        ChannelFuture f = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(f.awaitUninterruptibly(10, TimeUnit.SECONDS));
+        Channel cc = f.getChannel();
+        cc.setReadable(false).awaitUninterruptibly();
+
+        Channel accepted = serverHandler.channels.poll(10, TimeUnit.SECONDS);
+        assertNotNull(accepted);
+
+        byte[] data = new byte[DATA_SIZE];
+        for (int i = 0; i < data.length; i ++) {
+            data[i] = (byte) i;
+        }
+        ChannelFuture wf = accepted.write(ChannelBuffers.wrappedBuffer(data));
+
+        // The socket buffers fill up, so the write waits for EPOLLOUT.
+        Thread.sleep(500);
+        assertFalse(wf.isDone());
+        assertFalse(accepted.isWritable());
+        assertTrue(clientHandler.received.get() < DATA_SIZE);
+
+        cc.setReadable(true);
+        assertTrue(wf.awaitUninterruptibly(10, TimeUnit.SECONDS));
+        assertTrue(wf.isSuccess());
+        assertTrue(accepted.isWritable());
+        assertTrue(clientHandler.done.await(10, TimeUnit.SECONDS));
+        assertNull(clientHandler.mismatch);
+    }
+
+    @Test
+    public void testScheduledTaskRunsInIoThread() throws Throwable {
+        ChannelFuture f = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(f.awaitUninterruptibly(10, TimeUnit.SECONDS));
+        assertTrue(f.isSuccess());
+
+        final EpollEventLoop loop = (EpollEventLoop) ((WorkerChannel) f.getChannel()).getWorker();
+        assertTrue(loop instanceof SchedulingWorker);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final long[] elapsed = new long[1];
+        final boolean[] inIoThread = new boolean[1];
+        loop.schedule(new Runnable() {
+            public void run() {
+                elapsed[0] = System.nanoTime() - start;
+                inIoThread[0] = loop.isIoThread();
+                latch.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(inIoThread[0]);
+        assertTrue(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testScheduleAfterShutdownIsRejected() {
+        EpollEventLoop loop = new EpollEventLoop(executor, "test", null);
+        loop.shutdown();
+        try {
+            loop.schedule(new Runnable() {
+                public void run() {
+                    // Never run
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (RejectedExecutionException expected) {
+            // Expected
+        }
+    }
+
+    private static class ServerHandler extends SimpleChannelUpstreamHandler {
+        final BlockingQueue<Channel> channels = new LinkedBlockingQueue<Channel>();
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            channels.add(e.getChannel());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+
+    private static class ClientHandler extends SimpleChannelUpstreamHandler {
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String mismatch;
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            ChannelBuffer buf = (ChannelBuffer) e.getMessage();
+            int offset = received.get();
+            while (buf.readable()) {
+                byte expected = (byte) offset;
+                byte actual = buf.readByte();
+                if (actual != expected && mismatch == null) {
+                    mismatch = "at " + offset + ": " + actual + " != " + expected;
+                }
+                offset ++;
+            }
+            received.set(offset);
+            if (offset == DATA_SIZE) {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+}
@@ -18,13 +18,18 @@ package org.jboss.netty.channel.socket.nio;
 import static org.easymock.EasyMock.*;
 
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.util.Timeout;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -55,6 +60,93 @@ public abstract class AbstractNioWorkerTest {
         reset(mockChannel, mockFuture);
     }
 
+    @Test
+    public void testScheduledTaskRunsInIoThreadBeforeSelectTimeout() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        final AbstractNioWorker worker = createWorker(executor);
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final long start = System.nanoTime();
+            final long[] elapsed = new long[1];
+            final boolean[] inIoThread = new boolean[1];
+            worker.schedule(new Runnable() {
+                public void run() {
+                    elapsed[0] = System.nanoTime() - start;
+                    inIoThread[0] = worker.isIoThread();
+                    latch.countDown();
+                }
+            }, 50, TimeUnit.MILLISECONDS);
+
+            Assert.assertTrue(latch.await(SelectorUtil.DEFAULT_SELECT_TIMEOUT * 10, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(inIoThread[0]);
+            Assert.assertTrue(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+            // The Selector must have been waken up by the deadline rather than its own timeout.
+            Assert.assertTrue(elapsed[0] < TimeUnit.MILLISECONDS.toNanos(SelectorUtil.DEFAULT_SELECT_TIMEOUT));
+        } finally {
+            worker.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testScheduledTasksRunInDeadlineOrder() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        final AbstractNioWorker worker = createWorker(executor);
+        try {
+            final CountDownLatch latch = new CountDownLatch(3);
+            final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+            worker.executeInIoThread(new Runnable() {
+                public void run() {
+                    for (final int delay: new int[] { 60, 20, 40 }) {
+                        worker.schedule(new Runnable() {
+                            public void run() {
+                                order.add(delay);
+                                latch.countDown();
+                            }
+                        }, delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+
+            Assert.assertTrue(latch.await(SelectorUtil.DEFAULT_SELECT_TIMEOUT * 10, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(20, (int) order.get(0));
+            Assert.assertEquals(40, (int) order.get(1));
+            Assert.assertEquals(60, (int) order.get(2));
+        } finally {
+            worker.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelledScheduledTaskIsNotRun() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        AbstractNioWorker worker = createWorker(executor);
+        try {
+            final CountDownLatch cancelled = new CountDownLatch(1);
+            final CountDownLatch latch = new CountDownLatch(1);
+            Timeout timeout = worker.schedule(new Runnable() {
+                public void run() {
+                    cancelled.countDown();
+                }
+            }, 20, TimeUnit.MILLISECONDS);
+            worker.schedule(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            }, 40, TimeUnit.MILLISECONDS);
+            timeout.cancel();
+
+            Assert.assertTrue(timeout.isCancelled());
+            Assert.assertTrue(latch.await(SelectorUtil.DEFAULT_SELECT_TIMEOUT * 10, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(1, cancelled.getCount());
+            Assert.assertFalse(timeout.isExpired());
+        } finally {
+            worker.shutdown();
+            executor.shutdown();
+        }
+    }
+
     protected abstract AbstractNioWorker createWorker(Executor executor);
 
     protected abstract AbstractNioChannel<?> createMockChannel();
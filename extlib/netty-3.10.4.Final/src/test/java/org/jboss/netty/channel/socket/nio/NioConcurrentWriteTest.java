@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.util.DummyHandler;
+import org.jboss.netty.util.TestUtil;
+import org.junit.Test;
+
+/**
+ * Tests the write buffer accounting of a channel written by many threads
+ */
+public class NioConcurrentWriteTest {
+
+    private static final int WRITERS = 4;
+    private static final int MESSAGES = 1000;
+    private static final int MESSAGE_SIZE = 100;
+
+    @Test
+    public void testWaterMarksWithConcurrentWriters() throws Throwable {
+        ServerSocketChannel serverSocket = ServerSocketChannel.open();
+        serverSocket.socket().bind(new InetSocketAddress(0));
+
+        ClientBootstrap b = new ClientBootstrap(
+                new NioClientSocketChannelFactory(
+                        Executors.newCachedThreadPool(),
+                        Executors.newCachedThreadPool()));
+        b.getPipeline().addLast("handler", new DummyHandler());
+        b.setOption("sendBufferSize", 2048);
+        b.setOption("writeBufferLowWaterMark", 2048);
+        b.setOption("writeBufferHighWaterMark", 8192);
+
+        try {
+            ChannelFuture f = b.connect(new InetSocketAddress(
+                    TestUtil.getLocalHost(),
+                    serverSocket.socket().getLocalPort()));
+            Socket s = serverSocket.accept().socket();
+            f.awaitUninterruptibly();
+            if (f.getCause() != null) {
+                throw f.getCause();
+            }
+            final NioSocketChannel ch = (NioSocketChannel) f.getChannel();
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicBoolean becameUnwritable = new AtomicBoolean();
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            final ChannelFuture[][] futures = new ChannelFuture[WRITERS][MESSAGES];
+            Thread[] writers = new Thread[WRITERS];
+            for (int i = 0; i < WRITERS; i ++) {
+                final int writer = i;
+                writers[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < MESSAGES; j ++) {
+                                futures[writer][j] = ch.write(message(writer, j));
+                                if (!ch.isWritable()) {
+                                    becameUnwritable.set(true);
+                                }
+                            }
+                        } catch (Throwable t) {
+                            error.set(t);
+                        }
+                    }
+                };
+                writers[i].start();
+            }
+            start.countDown();
+            for (Thread t: writers) {
+                t.join();
+            }
+            if (error.get() != null) {
+                throw error.get();
+            }
+
+            // Nothing has been read yet, so the high water mark must have been reached.
+            assertTrue(becameUnwritable.get());
+
+            // The messages of every writer must arrive in the order they were written.
+            byte[] received = new byte[WRITERS * MESSAGES * MESSAGE_SIZE];
+            new DataInputStream(s.getInputStream()).readFully(received);
+            ChannelBuffer in = ChannelBuffers.wrappedBuffer(received);
+            int[] next = new int[WRITERS];
+            while (in.readable()) {
+                ChannelBuffer msg = in.readSlice(MESSAGE_SIZE);
+                int writer = msg.getInt(0);
+                assertEquals(next[writer] ++, msg.getInt(4));
+            }
+            for (int i = 0; i < WRITERS; i ++) {
+                assertEquals(MESSAGES, next[i]);
+            }
+
+            for (ChannelFuture[] writerFutures: futures) {
+                for (ChannelFuture future: writerFutures) {
+                    assertTrue(future.awaitUninterruptibly(10000));
+                    assertTrue(future.isSuccess());
+                }
+            }
+
+            // Every write has completed, so the accounting must be back to the start.
+            assertEquals(0, ch.writeBufferSize.get());
+            assertEquals(0, ch.highWaterMarkCounter.get());
+            assertTrue(ch.isWritable());
+
+            ch.close().awaitUninterruptibly();
+            s.close();
+        } finally {
+            b.releaseExternalResources();
+            try {
+                serverSocket.close();
+            } catch (IOException ex) {
+                // Ignore.
+            }
+        }
+    }
+
+    private static ChannelBuffer message(int writer, int sequence) {
+        ChannelBuffer msg = ChannelBuffers.buffer(MESSAGE_SIZE);
+        msg.writeInt(writer);
+        msg.writeInt(sequence);
+        msg.writerIndex(MESSAGE_SIZE);
+        return msg;
+    }
+}
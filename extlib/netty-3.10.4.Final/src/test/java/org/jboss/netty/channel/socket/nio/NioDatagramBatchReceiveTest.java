@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.Test;
+
+/**
+ * Tests receiving several datagrams per readiness event
+ */
+public class NioDatagramBatchReceiveTest {
+
+    private static final int DATAGRAMS = 40;
+    private static final int DATAGRAM_SIZE = 100;
+
+    @Test
+    public void testSeparateMessages() throws Throwable {
+        List<Object> messages = receive(false);
+        assertEquals(DATAGRAMS, messages.size());
+        for (int i = 0; i < DATAGRAMS; i ++) {
+            assertDatagram(i, (ChannelBuffer) messages.get(i));
+        }
+    }
+
+    @Test
+    public void testBatch() throws Throwable {
+        List<Object> messages = receive(true);
+        int maxBatchSize = 0;
+        int i = 0;
+        for (Object m: messages) {
+            DatagramBatch batch = (DatagramBatch) m;
+            maxBatchSize = Math.max(maxBatchSize, batch.size());
+            for (int j = 0; j < batch.size(); j ++) {
+                assertNotNull(batch.getRemoteAddress(j));
+                assertDatagram(i ++, batch.getContent(j));
+            }
+            assertTrue(batch.release());
+        }
+        assertEquals(DATAGRAMS, i);
+        // The datagrams have been queued up before reading was enabled.
+        assertTrue(maxBatchSize > 1);
+        assertTrue(maxBatchSize <= 16);
+    }
+
+    private static List<Object> receive(boolean batchReceive) throws Throwable {
+        ConnectionlessBootstrap sb = new ConnectionlessBootstrap(
+                new NioDatagramChannelFactory(Executors.newCachedThreadPool()));
+        final BlockingQueue<Object> messages = new LinkedBlockingQueue<Object>();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                messages.add(e.getMessage());
+            }
+        });
+        sb.setOption("batchReceive", batchReceive);
+        sb.setOption("bufferFactory", new PooledChannelBufferFactory());
+
+        DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            Channel sc = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+            SocketAddress address = sc.getLocalAddress();
+            assertTrue(sc.setReadable(false).awaitUninterruptibly().isSuccess());
+
+            byte[] data = new byte[DATAGRAM_SIZE];
+            for (int i = 0; i < DATAGRAMS; i ++) {
+                data[0] = (byte) i;
+                data[DATAGRAM_SIZE - 1] = (byte) i;
+                socket.send(new DatagramPacket(data, data.length, address));
+            }
+            Thread.sleep(100);
+            assertTrue(sc.setReadable(true).awaitUninterruptibly().isSuccess());
+
+            List<Object> received = new ArrayList<Object>();
+            int datagrams = 0;
+            while (datagrams < DATAGRAMS) {
+                Object m = messages.poll(10, TimeUnit.SECONDS);
+                assertNotNull(m);
+                received.add(m);
+                datagrams += m instanceof DatagramBatch? ((DatagramBatch) m).size() : 1;
+            }
+            sc.close().awaitUninterruptibly();
+            return received;
+        } finally {
+            socket.close();
+            sb.releaseExternalResources();
+        }
+    }
+
+    private static void assertDatagram(int index, ChannelBuffer content) {
+        assertEquals(DATAGRAM_SIZE, content.readableBytes());
+        assertEquals((byte) index, content.getByte(content.readerIndex()));
+        assertEquals((byte) index, content.getByte(content.readerIndex() + DATAGRAM_SIZE - 1));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.util.DummyHandler;
+import org.jboss.netty.util.TestUtil;
+import org.junit.Test;
+
+/**
+ * Tests the coalescing of queued writes into gathering writes
+ */
+public class NioGatheringWriteTest {
+
+    private static final int MESSAGES = 2000;
+
+    @Test
+    public void testGatheringWrites() throws Throwable {
+        testWrites(16, 4096);
+    }
+
+    @Test
+    public void testGatheringWritesWithLargeMessages() throws Throwable {
+        testWrites(64, 256);
+    }
+
+    @Test
+    public void testSeparateWrites() throws Throwable {
+        testWrites(1, 65536);
+    }
+
+    private static void testWrites(int maxGatheringWriteMessages, int maxGatheringWriteBytes) throws Throwable {
+        ServerSocketChannel serverSocket = ServerSocketChannel.open();
+        serverSocket.socket().bind(new InetSocketAddress(0));
+
+        ClientBootstrap b = new ClientBootstrap(
+                new NioClientSocketChannelFactory(
+                        Executors.newCachedThreadPool(),
+                        Executors.newCachedThreadPool()));
+        b.getPipeline().addLast("handler", new DummyHandler());
+        // Small socket buffers so that most gathering writes are partial.
+        b.setOption("sendBufferSize", 2048);
+        b.setOption("maxGatheringWriteMessages", maxGatheringWriteMessages);
+        b.setOption("maxGatheringWriteBytes", maxGatheringWriteBytes);
+
+        try {
+            ChannelFuture f = b.connect(new InetSocketAddress(
+                    TestUtil.getLocalHost(),
+                    serverSocket.socket().getLocalPort()));
+            Socket s = serverSocket.accept().socket();
+            s.setReceiveBufferSize(2048);
+            f.awaitUninterruptibly();
+            if (f.getCause() != null) {
+                throw f.getCause();
+            }
+            Channel ch = f.getChannel();
+
+            final List<Integer> completed = new ArrayList<Integer>();
+            ChannelFuture[] futures = new ChannelFuture[MESSAGES];
+            byte[] expected = new byte[MESSAGES * 300];
+            int expectedLength = 0;
+            for (int i = 0; i < MESSAGES; i ++) {
+                ChannelBuffer msg = message(i);
+                msg.getBytes(msg.readerIndex(), expected, expectedLength, msg.readableBytes());
+                expectedLength += msg.readableBytes();
+
+                final int id = i;
+                futures[i] = ch.write(msg);
+                futures[i].addListener(new ChannelFutureListener() {
+                    public void operationComplete(ChannelFuture future) {
+                        synchronized (completed) {
+                            completed.add(id);
+                        }
+                    }
+                });
+            }
+
+            // Let the queue and the socket buffers fill up before reading.
+            Thread.sleep(100);
+            byte[] actual = new byte[expectedLength];
+            new DataInputStream(s.getInputStream()).readFully(actual);
+            assertEquals(ChannelBuffers.wrappedBuffer(expected, 0, expectedLength), ChannelBuffers.wrappedBuffer(actual));
+
+            for (int i = 0; i < MESSAGES; i ++) {
+                assertTrue(futures[i].awaitUninterruptibly(10000));
+                assertTrue(futures[i].isSuccess());
+            }
+            synchronized (completed) {
+                assertEquals(MESSAGES, completed.size());
+                for (int i = 0; i < MESSAGES; i ++) {
+                    assertEquals(i, completed.get(i).intValue());
+                }
+            }
+
+            ch.close().awaitUninterruptibly();
+            s.close();
+        } finally {
+            b.releaseExternalResources();
+            try {
+                serverSocket.close();
+            } catch (IOException ex) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Returns heap, direct, composite and empty messages of various lengths.
+     */
+    private static ChannelBuffer message(int i) {
+        int length = i % 7 == 0? 0 : i * 31 % 300;
+        byte[] content = new byte[length];
+        for (int j = 0; j < length; j ++) {
+            content[j] = (byte) (i + j);
+        }
+
+        switch (i % 3) {
+        case 0:
+            return ChannelBuffers.wrappedBuffer(content);
+        case 1:
+            ChannelBuffer direct = ChannelBuffers.directBuffer(Math.max(length, 1));
+            direct.writeBytes(content);
+            return direct;
+        default:
+            return ChannelBuffers.wrappedBuffer(
+                    ChannelBuffers.wrappedBuffer(content, 0, length / 2),
+                    ChannelBuffers.wrappedBuffer(content, length / 2, length - length / 2));
+        }
+    }
+}
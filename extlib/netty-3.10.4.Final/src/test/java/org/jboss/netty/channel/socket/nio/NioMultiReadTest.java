@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.ReceiveBufferSizePredictor;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.TestUtil;
+import org.junit.Test;
+
+/**
+ * Tests filling more than one receive buffer per readiness event
+ */
+public class NioMultiReadTest {
+
+    private static final int LENGTH = 262144;
+    private static final int RECEIVE_BUFFER_SIZE = 1024;
+
+    @Test
+    public void testMultipleReads() throws Throwable {
+        int maxEventSize = testReads(16, 8192);
+        assertTrue(maxEventSize > RECEIVE_BUFFER_SIZE);
+    }
+
+    @Test
+    public void testByteLimit() throws Throwable {
+        testReads(64, 4096);
+    }
+
+    @Test
+    public void testSingleRead() throws Throwable {
+        testReads(1, 65536);
+    }
+
+    @Test
+    public void testReadWithoutCopy() throws Throwable {
+        int maxEventSize = testReads(16, 8192, PooledChannelBufferFactory.getInstance());
+        assertEquals(RECEIVE_BUFFER_SIZE, maxEventSize);
+    }
+
+    @Test
+    public void testReadWithoutCopyIntoDirectBuffers() throws Throwable {
+        int maxEventSize = testReads(16, 8192, new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, true));
+        assertEquals(RECEIVE_BUFFER_SIZE, maxEventSize);
+    }
+
+    private static int testReads(int maxMessagesPerRead, int maxBytesPerRead) throws Throwable {
+        return testReads(maxMessagesPerRead, maxBytesPerRead, null);
+    }
+
+    /**
+     * Returns the size of the largest {@link MessageEvent}.
+     */
+    private static int testReads(
+            int maxMessagesPerRead, int maxBytesPerRead, ChannelBufferFactory readWithoutCopyFactory)
+            throws Throwable {
+        ServerSocketChannel serverSocket = ServerSocketChannel.open();
+        serverSocket.socket().bind(new InetSocketAddress(0));
+
+        final RecordingPredictor predictor = new RecordingPredictor();
+        final ChannelBuffer received = ChannelBuffers.dynamicBuffer();
+        final List<Integer> eventSizes = new ArrayList<Integer>();
+
+        ClientBootstrap b = new ClientBootstrap(
+                new NioClientSocketChannelFactory(
+                        Executors.newCachedThreadPool(),
+                        Executors.newCachedThreadPool()));
+        b.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                ChannelBuffer m = (ChannelBuffer) e.getMessage();
+                synchronized (received) {
+                    eventSizes.add(m.readableBytes());
+                    received.writeBytes(m);
+                    ChannelBuffers.release(m);
+                    received.notifyAll();
+                }
+            }
+        });
+        b.setOption("receiveBufferSizePredictor", predictor);
+        b.setOption("maxMessagesPerRead", maxMessagesPerRead);
+        b.setOption("maxBytesPerRead", maxBytesPerRead);
+        if (readWithoutCopyFactory != null) {
+            b.setOption("bufferFactory", readWithoutCopyFactory);
+            b.setOption("readWithoutCopy", true);
+        }
+
+        try {
+            ChannelFuture f = b.connect(new InetSocketAddress(
+                    TestUtil.getLocalHost(),
+                    serverSocket.socket().getLocalPort()));
+            Socket s = serverSocket.accept().socket();
+            f.awaitUninterruptibly();
+            if (f.getCause() != null) {
+                throw f.getCause();
+            }
+            Channel ch = f.getChannel();
+
+            byte[] expected = new byte[LENGTH];
+            for (int i = 0; i < expected.length; i ++) {
+                expected[i] = (byte) (i * 7);
+            }
+            OutputStream out = s.getOutputStream();
+            out.write(expected);
+            out.flush();
+
+            long deadline = System.currentTimeMillis() + 10000;
+            synchronized (received) {
+                while (received.readableBytes() < LENGTH && System.currentTimeMillis() < deadline) {
+                    received.wait(100);
+                }
+                assertEquals(ChannelBuffers.wrappedBuffer(expected), received);
+            }
+
+            int maxEventSize = 0;
+            synchronized (received) {
+                List<Integer> previousSizes = predictor.previousSizes();
+                if (readWithoutCopyFactory == null) {
+                    // The predictor learns from the whole burst which was passed as one event.
+                    assertEquals(eventSizes, previousSizes);
+                } else {
+                    // Every buffer was passed as a separate event.
+                    assertTrue(previousSizes.size() <= eventSizes.size());
+                }
+                for (int size: previousSizes) {
+                    assertTrue(size <= maxMessagesPerRead * RECEIVE_BUFFER_SIZE);
+                    assertTrue(size < maxBytesPerRead + RECEIVE_BUFFER_SIZE);
+                }
+                for (int size: eventSizes) {
+                    maxEventSize = Math.max(maxEventSize, size);
+                }
+            }
+
+            ch.close().awaitUninterruptibly();
+            s.close();
+            return maxEventSize;
+        } finally {
+            b.releaseExternalResources();
+            try {
+                serverSocket.close();
+            } catch (IOException ex) {
+                // Ignore.
+            }
+        }
+    }
+
+    private static final class RecordingPredictor implements ReceiveBufferSizePredictor {
+        private final List<Integer> previousSizes = new ArrayList<Integer>();
+
+        public int nextReceiveBufferSize() {
+            return RECEIVE_BUFFER_SIZE;
+        }
+
+        public synchronized void previousReceiveBufferSize(int previousReceiveBufferSize) {
+            previousSizes.add(previousReceiveBufferSize);
+        }
+
+        synchronized List<Integer> previousSizes() {
+            return new ArrayList<Integer>(previousSizes);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+/**
+ * Measures the rate at which an NIO server channel accepts connections from
+ * a local connect flood, with one and with several {@code SO_REUSEPORT}
+ * acceptors.  It is not run as part of the tests:
+ * <pre>
+ * java org.jboss.netty.channel.socket.nio.NioServerAcceptorConnectFlood [threads] [connectionsPerThread]
+ * </pre>
+ */
+public final class NioServerAcceptorConnectFlood {
+
+    private static final int BOSSES = 4;
+    private static final int WORKERS = 8;
+    private static final int[] ACCEPTORS = { 1, BOSSES };
+    private static final int ROUNDS = 2;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0? Integer.parseInt(args[0]) : 16;
+        int connectionsPerThread = args.length > 1? Integer.parseInt(args[1]) : 2000;
+
+        ServerSocketChannel probe = ServerSocketChannel.open();
+        try {
+            System.out.println("SO_REUSEPORT supported: " + NioServerAcceptor.setReusePort(probe));
+        } finally {
+            probe.close();
+        }
+
+        for (int round = 0; round < ROUNDS; round ++) {
+            for (int acceptors: ACCEPTORS) {
+                run(acceptors, threads, connectionsPerThread);
+            }
+        }
+    }
+
+    private static void run(int acceptors, int threads, final int connectionsPerThread) throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(executor, BOSSES, new NioWorkerPool(executor, WORKERS)));
+        final AtomicInteger accepted = new AtomicInteger();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                accepted.incrementAndGet();
+                e.getChannel().close();
+            }
+        });
+        sb.setOption("acceptors", acceptors);
+        sb.setOption("backlog", 4096);
+
+        try {
+            Channel sc = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+            final InetSocketAddress address = new InetSocketAddress(
+                    "127.0.0.1", ((InetSocketAddress) sc.getLocalAddress()).getPort());
+
+            int connections = threads * connectionsPerThread;
+            Thread[] clients = new Thread[threads];
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i ++) {
+                clients[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < connectionsPerThread; j ++) {
+                            try {
+                                Socket s = new Socket();
+                                // Reset instead of leaving the port in TIME_WAIT.
+                                s.setSoLinger(true, 0);
+                                s.connect(address);
+                                s.close();
+                            } catch (IOException e) {
+                                // Counted as a connection which was not accepted.
+                            }
+                        }
+                    }
+                };
+                clients[i].start();
+            }
+            for (Thread t: clients) {
+                t.join();
+            }
+
+            long deadline = start + TimeUnit.SECONDS.toNanos(30);
+            while (accepted.get() < connections && System.nanoTime() - deadline < 0) {
+                Thread.sleep(1);
+            }
+            long elapsedMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), 1);
+            System.out.println(
+                    "acceptors=" + acceptors + ": accepted " + accepted.get() + '/' + connections +
+                    " connections in " + elapsedMillis + " ms (" +
+                    accepted.get() * 1000L / elapsedMillis + " connections/s)");
+
+            sc.close().awaitUninterruptibly();
+        } finally {
+            sb.releaseExternalResources();
+            ExecutorUtil.terminate(executor);
+        }
+    }
+
+    private NioServerAcceptorConnectFlood() {
+        // Unused
+    }
+}
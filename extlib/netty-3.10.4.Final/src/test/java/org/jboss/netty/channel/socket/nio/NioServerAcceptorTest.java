@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.Test;
+
+/**
+ * Tests binding several listening sockets with {@code SO_REUSEPORT}
+ */
+public class NioServerAcceptorTest {
+
+    private static final int ACCEPTORS = 4;
+    private static final int WORKERS = 8;
+    private static final int CONNECTIONS = 200;
+
+    @Test
+    public void testMultipleAcceptors() throws Throwable {
+        ServerSocketChannel probe = ServerSocketChannel.open();
+        boolean reusePortSupported;
+        try {
+            reusePortSupported = NioServerAcceptor.setReusePort(probe);
+        } finally {
+            probe.close();
+        }
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        NioWorkerPool workerPool = new NioWorkerPool(executor, WORKERS);
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(executor, ACCEPTORS, workerPool));
+        final CountDownLatch connected = new CountDownLatch(CONNECTIONS);
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                connected.countDown();
+            }
+        });
+        sb.setOption("acceptors", ACCEPTORS);
+
+        Socket[] sockets = new Socket[CONNECTIONS];
+        try {
+            NioServerSocketChannel sc = (NioServerSocketChannel) sb.bind(new InetSocketAddress(0));
+            int port = sc.getLocalAddress().getPort();
+            NioServerAcceptor[] acceptors = sc.acceptors;
+            if (!reusePortSupported) {
+                assertEquals(1, acceptors.length);
+            } else {
+                assertEquals(ACCEPTORS, acceptors.length);
+                for (int i = 0; i < ACCEPTORS; i ++) {
+                    assertEquals(port, acceptors[i].socket.socket().getLocalPort());
+
+                    // Every acceptor hands its connections to its own workers.
+                    for (int j = 0; j < WORKERS / ACCEPTORS * 2; j ++) {
+                        assertSame(workerPool.worker(i + j % (WORKERS / ACCEPTORS) * ACCEPTORS),
+                                acceptors[i].nextWorker());
+                    }
+                }
+                assertNotSame(acceptors[0].boss, acceptors[1].boss);
+            }
+
+            for (int i = 0; i < CONNECTIONS; i ++) {
+                sockets[i] = new Socket(TestUtil.getLocalHost(), port);
+            }
+            assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+            sc.close().awaitUninterruptibly();
+            for (NioServerAcceptor a: acceptors) {
+                assertFalse(a.socket.isOpen());
+            }
+
+            // All listening sockets have been closed, so the port can be bound again.
+            Channel rebound = sb.bind(new InetSocketAddress(port));
+            rebound.close().awaitUninterruptibly();
+        } finally {
+            for (Socket s: sockets) {
+                if (s != null) {
+                    s.close();
+                }
+            }
+            sb.shutdown();
+            ExecutorUtil.terminate(executor);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioWorkerMigrationTest {
+
+    private static final int DATA_SIZE = 4 * 1024 * 1024;
+
+    private ExecutorService executor;
+    private NioWorkerPool workerPool;
+    private ServerBootstrap sb;
+    private EchoHandler handler;
+    private int port;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        workerPool = new NioWorkerPool(executor, 2);
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, workerPool));
+        handler = new EchoHandler();
+        sb.getPipeline().addLast("handler", handler);
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+    }
+
+    @After
+    public void tearDown() {
+        sb.shutdown();
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testMigrationKeepsOrder() throws Throwable {
+        Socket s = new Socket(TestUtil.getLocalHost(), port);
+        try {
+            final NioSocketChannel ch = handler.channels.poll(10, TimeUnit.SECONDS);
+            assertNotNull(ch);
+            Thread writer = startWriter(s.getOutputStream(), DATA_SIZE);
+
+            // Move the channel back and forth while the data is echoed.
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread migrator = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50 && ch.isConnected(); i ++) {
+                        ChannelFuture f = ch.migrate(workerPool.worker(i % 2)).awaitUninterruptibly();
+                        if (!f.isSuccess()) {
+                            failure.compareAndSet(null, f.getCause());
+                            return;
+                        }
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+            migrator.start();
+
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[8192];
+            int received = 0;
+            while (received < DATA_SIZE) {
+                int n = in.read(buf);
+                assertTrue(n > 0);
+                for (int i = 0; i < n; i ++) {
+                    assertEquals((byte) (received + i), buf[i]);
+                }
+                received += n;
+            }
+
+            migrator.join();
+            writer.join();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            if (handler.failure.get() != null) {
+                throw handler.failure.get();
+            }
+
+            // The last migration was to the second worker.
+            assertSame(workerPool.worker(1), ch.getWorker());
+            assertEquals(0, workerPool.worker(0).getChannelCount());
+            assertEquals(1, workerPool.worker(1).getChannelCount());
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testMigrateClosedChannel() throws Exception {
+        Socket s = new Socket(TestUtil.getLocalHost(), port);
+        NioSocketChannel ch = handler.channels.poll(10, TimeUnit.SECONDS);
+        assertNotNull(ch);
+        NioWorker worker = ch.getWorker();
+        ch.close().awaitUninterruptibly();
+        s.close();
+
+        ChannelFuture f = ch.migrate(worker == workerPool.worker(0)? workerPool.worker(1) : workerPool.worker(0));
+        assertTrue(f.awaitUninterruptibly(10000));
+        assertFalse(f.isSuccess());
+        assertSame(worker, ch.getWorker());
+        assertEquals(0, worker.getChannelCount());
+    }
+
+    @Test
+    public void testBalancer() throws Throwable {
+        Socket[] sockets = new Socket[2];
+        HashedWheelTimer timer = new HashedWheelTimer();
+        NioWorkerBalancer balancer = new NioWorkerBalancer(
+                workerPool, timer, 100, TimeUnit.MILLISECONDS, 0.01);
+        try {
+            NioWorker hot = workerPool.worker(0);
+            NioWorker cold = workerPool.worker(1);
+            for (int i = 0; i < sockets.length; i ++) {
+                sockets[i] = new Socket(TestUtil.getLocalHost(), port);
+                NioSocketChannel ch = handler.channels.poll(10, TimeUnit.SECONDS);
+                assertTrue(ch.migrate(hot).awaitUninterruptibly().isSuccess());
+            }
+            assertEquals(2, hot.getChannelCount());
+            assertEquals(0, cold.getChannelCount());
+
+            for (Socket s: sockets) {
+                // Keep the workers busy until the sockets are closed.
+                startWriter(s.getOutputStream(), Long.MAX_VALUE);
+                startDiscarder(s.getInputStream());
+            }
+            balancer.start();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (cold.getChannelCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, hot.getChannelCount());
+            assertEquals(1, cold.getChannelCount());
+            if (handler.failure.get() != null) {
+                throw handler.failure.get();
+            }
+        } finally {
+            balancer.stop();
+            timer.stop();
+            for (Socket s: sockets) {
+                if (s != null) {
+                    s.close();
+                }
+            }
+        }
+    }
+
+    private static Thread startWriter(final OutputStream out, final long size) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                byte[] data = new byte[1024];
+                try {
+                    for (long i = 0; i < size; i += data.length) {
+                        for (int j = 0; j < data.length; j ++) {
+                            data[j] = (byte) (i + j);
+                        }
+                        out.write(data);
+                    }
+                } catch (Exception e) {
+                    // Closed.
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    private static void startDiscarder(final InputStream in) {
+        new Thread() {
+            @Override
+            public void run() {
+                byte[] buf = new byte[8192];
+                try {
+                    while (in.read(buf) >= 0) {
+                        continue;
+                    }
+                } catch (Exception e) {
+                    // Closed.
+                }
+            }
+        }.start();
+    }
+
+    private static final class EchoHandler extends SimpleChannelUpstreamHandler {
+        final BlockingQueue<NioSocketChannel> channels = new LinkedBlockingQueue<NioSocketChannel>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        EchoHandler() {
+        }
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            channels.add((NioSocketChannel) e.getChannel());
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            NioSocketChannel ch = (NioSocketChannel) e.getChannel();
+            if (Thread.currentThread() != ch.getWorker().thread) {
+                failure.compareAndSet(null, new AssertionError("not in the I/O thread of the worker"));
+            }
+            ch.write(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.junit.Test;
+
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class SelectedSelectionKeySetTest {
+
+    @Test
+    public void testAddAndReset() throws Exception {
+        Selector selector = Selector.open();
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.source().configureBlocking(false);
+            pipe.sink().configureBlocking(false);
+            SelectionKey k1 = pipe.source().register(selector, SelectionKey.OP_READ);
+            SelectionKey k2 = pipe.sink().register(selector, SelectionKey.OP_WRITE);
+
+            SelectedSelectionKeySet set = new SelectedSelectionKeySet();
+            assertTrue(set.isEmpty());
+            for (int i = 0; i < 2048; i ++) {
+                assertTrue(set.add(i % 2 == 0? k1 : k2));
+            }
+            assertFalse(set.add(null));
+            assertEquals(2048, set.size());
+            assertSame(k1, set.get(0));
+            assertSame(k2, set.get(2047));
+
+            // Keys are never looked up, so the selector always adds them.
+            assertFalse(set.contains(k1));
+            assertFalse(set.remove(k1));
+            assertEquals(2048, set.size());
+
+            Iterator<SelectionKey> it = set.iterator();
+            assertSame(k1, it.next());
+            assertSame(k2, it.next());
+
+            set.reset();
+            assertTrue(set.isEmpty());
+            assertFalse(set.iterator().hasNext());
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+            selector.close();
+        }
+    }
+
+    @Test
+    public void testOptimizationDisabledByDefault() throws Exception {
+        Selector selector = SelectorUtil.open();
+        try {
+            if (!SelectorUtil.SELECTED_KEY_SET_OPTIMIZATION) {
+                assertNull(SelectorUtil.optimize(selector));
+            }
+        } finally {
+            selector.close();
+        }
+    }
+}
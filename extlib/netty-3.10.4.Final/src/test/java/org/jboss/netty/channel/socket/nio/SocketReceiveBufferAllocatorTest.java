@@ -18,23 +18,44 @@ package org.jboss.netty.channel.socket.nio;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Test;
 
 public class SocketReceiveBufferAllocatorTest {
 
     @Test
-    public void testDecreaseBuffer() {
-        SocketReceiveBufferAllocator allocator = new SocketReceiveBufferAllocator(2, 80);
+    public void testSizeClasses() {
+        SocketReceiveBufferAllocator allocator = new SocketReceiveBufferAllocator();
         assertEquals(8192, allocator.get(8192).capacity());
-        assertEquals(8192, allocator.get(1024).capacity());
-        
-        // Not 80% of the capacity so should just return the old buffer
-        assertEquals(8192, allocator.get(8000).capacity());
-
-        assertEquals(8192, allocator.get(1024).capacity());
         assertEquals(1024, allocator.get(1024).capacity());
+        assertEquals(1024, allocator.get(1).capacity());
+        assertEquals(8192, allocator.get(5000).capacity());
+        assertEquals(2, allocator.misses());
+        assertEquals(2, allocator.hits());
+
+        // Switching between size classes does not allocate again.
+        ByteBuffer large = allocator.get(65536);
+        large.position(100);
+        assertSame(large, allocator.get(40000));
+        assertEquals(0, large.position());
+        assertEquals(65536, large.limit());
+        assertEquals(3, allocator.misses());
+        assertEquals(3, allocator.hits());
 
         allocator.releaseExternalResources();
     }
 
+    @Test
+    public void testOversizedBuffer() {
+        SocketReceiveBufferAllocator allocator = new SocketReceiveBufferAllocator();
+        ByteBuffer buf = allocator.get(2000000);
+        assertEquals(2000896, buf.capacity());
+        assertSame(buf, allocator.get(2000000));
+        assertEquals(3000320, allocator.get(3000000).capacity());
+        assertEquals(2, allocator.misses());
+        assertEquals(1, allocator.hits());
+
+        allocator.releaseExternalResources();
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkerSelectionStrategyTest {
+
+    private ExecutorService executor;
+    private NioWorkerPool workerPool;
+    private List<NioWorker> workers;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        workerPool = new NioWorkerPool(executor, 3);
+        workers = workerPool.getWorkers();
+    }
+
+    @After
+    public void tearDown() {
+        workerPool.shutdown();
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testRoundRobin() {
+        assertSame(WorkerSelectionStrategy.ROUND_ROBIN, workerPool.getWorkerSelectionStrategy());
+        for (int i = 0; i < 6; i ++) {
+            assertSame(workers.get(i % 3), workerPool.nextWorker());
+        }
+    }
+
+    @Test
+    public void testLeastChannels() {
+        workerPool.setWorkerSelectionStrategy(WorkerSelectionStrategy.LEAST_CHANNELS);
+        NioClientSocketChannelFactory factory = new NioClientSocketChannelFactory(executor, 1, workerPool);
+        Channel[] channels = new Channel[6];
+        try {
+            for (int i = 0; i < channels.length; i ++) {
+                channels[i] = factory.newChannel(Channels.pipeline());
+            }
+            for (NioWorker worker: workers) {
+                assertEquals(2, worker.getChannelCount());
+            }
+
+            NioClientSocketChannel closed = (NioClientSocketChannel) channels[4];
+            closed.close().awaitUninterruptibly();
+            assertEquals(1, closed.getWorker().getChannelCount());
+
+            // The worker which has lost a channel is the least loaded one.
+            for (int i = 0; i < 3; i ++) {
+                assertSame(closed.getWorker(), workerPool.nextWorker());
+            }
+        } finally {
+            for (Channel ch: channels) {
+                if (ch != null) {
+                    ch.close().awaitUninterruptibly();
+                }
+            }
+            for (NioWorker worker: workers) {
+                assertEquals(0, worker.getChannelCount());
+            }
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeastPendingWriteBytes() {
+        workerPool.setWorkerSelectionStrategy(WorkerSelectionStrategy.LEAST_PENDING_WRITE_BYTES);
+        NioClientSocketChannelFactory factory = new NioClientSocketChannelFactory(executor, 1, workerPool);
+        try {
+            NioClientSocketChannel ch = (NioClientSocketChannel) factory.newChannel(Channels.pipeline());
+            AbstractNioWorker worker = ch.getWorker();
+            assertSame(workers.get(0), worker);
+
+            ch.writeBufferQueue.offer(new DownstreamMessageEvent(
+                    ch, Channels.future(ch), ChannelBuffers.wrappedBuffer(new byte[100]), null));
+            assertEquals(100, worker.getPendingWriteBytes());
+            for (int i = 0; i < 4; i ++) {
+                assertNotSame(worker, workerPool.nextWorker());
+            }
+
+            ch.writeBufferQueue.poll();
+            assertEquals(0, worker.getPendingWriteBytes());
+            ch.close().awaitUninterruptibly();
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() {
+        workerPool.setWorkerSelectionStrategy(WorkerSelectionStrategy.POWER_OF_TWO_CHOICES);
+        workers.get(0).channelCount.set(5);
+        workers.get(1).channelCount.set(10);
+        workers.get(2).channelCount.set(0);
+
+        boolean[] chosen = new boolean[3];
+        for (int i = 0; i < 100; i ++) {
+            chosen[workers.indexOf(workerPool.nextWorker())] = true;
+        }
+
+        // The most loaded worker loses every comparison.
+        assertFalse(chosen[1]);
+        assertTrue(chosen[2]);
+    }
+}
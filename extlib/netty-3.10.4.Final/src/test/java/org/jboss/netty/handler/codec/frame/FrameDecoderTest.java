@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.frame;
+
+import static org.junit.Assert.*;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.buffer.ReleasableChannelBuffer;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+public class FrameDecoderTest {
+
+    private final PooledChannelBufferFactory factory = new PooledChannelBufferFactory();
+
+    @Test
+    public void testReleasesConsumedPooledInput() {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(
+                factory, new FixedLengthFrameDecoder(2));
+
+        ReleasableChannelBuffer input = newInput("ABCD");
+        embedder.offer(input);
+        assertEquals(0, input.refCnt());
+        assertEquals("AB", embedder.poll().toString(CharsetUtil.US_ASCII));
+        assertEquals("CD", embedder.poll().toString(CharsetUtil.US_ASCII));
+        assertFalse(embedder.finish());
+    }
+
+    @Test
+    public void testReleasesPooledInputOnceCopiedIntoCumulation() {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(
+                factory, new FixedLengthFrameDecoder(4));
+
+        ReleasableChannelBuffer first = newInput("ABC");
+        embedder.offer(first);
+        // Nothing was consumed, so the input itself became the cumulation.
+        assertEquals(1, first.refCnt());
+
+        ReleasableChannelBuffer second = newInput("DEF");
+        embedder.offer(second);
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+        assertEquals("ABCD", embedder.poll().toString(CharsetUtil.US_ASCII));
+    }
+
+    @Test
+    public void testReleasesPooledCumulationOnClose() {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(
+                factory, new FixedLengthFrameDecoder(4));
+
+        ReleasableChannelBuffer input = newInput("AB");
+        embedder.offer(input);
+        assertEquals(1, input.refCnt());
+        embedder.finish();
+        assertEquals(0, input.refCnt());
+    }
+
+    private ReleasableChannelBuffer newInput(String content) {
+        ChannelBuffer buf = factory.getBuffer(content.length());
+        buf.writeBytes(content.getBytes(CharsetUtil.US_ASCII));
+        return (ReleasableChannelBuffer) buf;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.traffic;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class BackpressureHandlerTest {
+
+    private ServerSocket serverSocket;
+    private ClientBootstrap cb;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket();
+        serverSocket.setReceiveBufferSize(8192);
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        cb.setOption("writeBufferHighWaterMark", 8192);
+        cb.setOption("writeBufferLowWaterMark", 4096);
+        cb.setOption("sendBufferSize", 8192);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        cb.releaseExternalResources();
+    }
+
+    @Test(timeout = 10000)
+    public void testSourceFollowsWritability() throws Exception {
+        Channel source = connect();
+        Socket sourcePeer = serverSocket.accept();
+        Channel sink = connect();
+        Socket slowPeer = serverSocket.accept();
+
+        BackpressureHandler handler = new BackpressureHandler(source);
+        sink.getPipeline().addLast("backpressure", handler);
+
+        fill(sink);
+        while (source.isReadable()) {
+            Thread.sleep(10);
+        }
+        assertTrue(handler.isSuspended());
+
+        drain(slowPeer, sink);
+        while (!source.isReadable()) {
+            Thread.sleep(10);
+        }
+        assertFalse(handler.isSuspended());
+
+        source.close().awaitUninterruptibly();
+        sink.close().awaitUninterruptibly();
+        sourcePeer.close();
+        slowPeer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testSourceResumesOnlyWhenAllSinksAreWritable() throws Exception {
+        Channel source = connect();
+        Socket sourcePeer = serverSocket.accept();
+        Channel sinkA = connect();
+        Socket slowPeerA = serverSocket.accept();
+        Channel sinkB = connect();
+        Socket slowPeerB = serverSocket.accept();
+
+        sinkA.getPipeline().addLast("backpressure", new BackpressureHandler(source));
+        BackpressureHandler handlerB = new BackpressureHandler();
+        sinkB.getPipeline().addLast("backpressure", handlerB);
+
+        fill(sinkA);
+        fill(sinkB);
+        while (source.isReadable()) {
+            Thread.sleep(10);
+        }
+
+        // Added while sinkB is not writable.
+        handlerB.addSource(source);
+
+        drain(slowPeerA, sinkA);
+        Thread.sleep(100);
+        assertFalse(source.isReadable());
+
+        handlerB.removeSource(source);
+        while (!source.isReadable()) {
+            Thread.sleep(10);
+        }
+
+        source.close().awaitUninterruptibly();
+        sinkA.close().awaitUninterruptibly();
+        sinkB.close().awaitUninterruptibly();
+        sourcePeer.close();
+        slowPeerA.close();
+        slowPeerB.close();
+    }
+
+    private Channel connect() {
+        return cb.connect(serverSocket.getLocalSocketAddress()).awaitUninterruptibly().getChannel();
+    }
+
+    private static void fill(Channel sink) throws Exception {
+        // The peer never reads, so the write queue stays above the high water
+        // mark once the socket buffers are full.
+        do {
+            while (sink.isWritable()) {
+                sink.write(ChannelBuffers.wrappedBuffer(new byte[4096]));
+            }
+            Thread.sleep(100);
+        } while (sink.isWritable());
+    }
+
+    private static void drain(Socket slowPeer, Channel sink) throws Exception {
+        InputStream in = slowPeer.getInputStream();
+        byte[] buf = new byte[65536];
+        while (!sink.isWritable()) {
+            in.read(buf);
+        }
+    }
+}
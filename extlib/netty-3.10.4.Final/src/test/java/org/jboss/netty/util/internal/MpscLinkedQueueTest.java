@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class MpscLinkedQueueTest {
+
+    @Test
+    public void testSingleThread() {
+        MpscLinkedQueue<Integer> queue = new MpscLinkedQueue<Integer>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+
+        for (int i = 0; i < 10; i ++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.isEmpty());
+        assertEquals(10, queue.size());
+
+        Iterator<Integer> it = queue.iterator();
+        for (int i = 0; i < 10; i ++) {
+            assertTrue(it.hasNext());
+            assertEquals(Integer.valueOf(i), it.next());
+        }
+        assertFalse(it.hasNext());
+
+        for (int i = 0; i < 10; i ++) {
+            assertEquals(Integer.valueOf(i), queue.peek());
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullElement() {
+        new MpscLinkedQueue<Object>().offer(null);
+    }
+
+    @Test
+    public void testMultipleProducers() throws Exception {
+        final int producers = 4;
+        final int count = 100000;
+        final MpscLinkedQueue<int[]> queue = new MpscLinkedQueue<int[]>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i ++) {
+            final int producer = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < count; j ++) {
+                        queue.offer(new int[] { producer, j });
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+
+        // The messages of each producer must be polled in the order they were offered.
+        int[] expected = new int[producers];
+        int received = 0;
+        while (received < producers * count) {
+            int[] e = queue.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected[e[0]] ++, e[1]);
+            received ++;
+        }
+
+        for (Thread t: threads) {
+            t.join();
+        }
+        assertTrue(queue.isEmpty());
+        for (int e: expected) {
+            assertEquals(count, e);
+        }
+    }
+}
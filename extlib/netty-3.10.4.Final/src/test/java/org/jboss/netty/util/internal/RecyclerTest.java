@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RecyclerTest {
+
+    private static final class TestRecycler extends Recycler<Object> {
+        int created;
+
+        TestRecycler(int maxCapacity) {
+            super(maxCapacity);
+        }
+
+        @Override
+        protected Object newObject() {
+            created ++;
+            return new Object();
+        }
+    }
+
+    @Test
+    public void testRecycledObjectIsReused() {
+        TestRecycler recycler = new TestRecycler(16);
+        Object a = recycler.get();
+        Object b = recycler.get();
+        assertNotSame(a, b);
+        assertEquals(2, recycler.created);
+
+        assertTrue(recycler.recycle(a));
+        assertTrue(recycler.recycle(b));
+        assertSame(b, recycler.get());
+        assertSame(a, recycler.get());
+        assertEquals(2, recycler.created);
+
+        recycler.get();
+        assertEquals(3, recycler.created);
+    }
+
+    @Test
+    public void testMaxCapacity() {
+        TestRecycler recycler = new TestRecycler(40);
+        for (int i = 0; i < 40; i ++) {
+            assertTrue(recycler.recycle(new Object()));
+        }
+        assertFalse(recycler.recycle(new Object()));
+
+        for (int i = 0; i < 40; i ++) {
+            recycler.get();
+        }
+        assertEquals(0, recycler.created);
+        recycler.get();
+        assertEquals(1, recycler.created);
+    }
+
+    @Test
+    public void testZeroMaxCapacity() {
+        TestRecycler recycler = new TestRecycler(0);
+        assertFalse(recycler.recycle(recycler.get()));
+        recycler.get();
+        assertEquals(2, recycler.created);
+    }
+
+    @Test
+    public void testObjectsArePooledPerThread() throws Exception {
+        final TestRecycler recycler = new TestRecycler(16);
+        final Object o = new Object();
+        assertTrue(recycler.recycle(o));
+
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                result.set(recycler.get());
+            }
+        };
+        t.start();
+        t.join();
+
+        assertNotSame(o, result.get());
+        assertSame(o, recycler.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxCapacity() {
+        new TestRecycler(-1);
+    }
+}